@@ -0,0 +1,117 @@
+package com.example.realtimeedgedetection;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures native frame time with the trace ring enabled and disabled.
+ * Results are logged and reported as instrumentation status, e.g.:
+ * adb shell am instrument -w -e class com.example.realtimeedgedetection.NativeTraceBenchmarkTest ...
+ */
+@RunWith(AndroidJUnit4.class)
+public class NativeTraceBenchmarkTest {
+    private static final String TAG = "NativeTraceBenchmark";
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int WARMUP_FRAMES = 20;
+    private static final int MEASURED_FRAMES = 200;
+
+    @After
+    public void restoreDefaults() {
+        NativeImageProcessor.setNativeTraceEnabled(true);
+        NativeImageProcessor.setNativeLogLevel(NativeImageProcessor.LOG_LEVEL_INFO);
+    }
+
+    @Test
+    public void frameTimeWithTracingOnAndOff() {
+        Bitmap frame = createTestFrame();
+        NativeImageProcessor.setNativeLogLevel(NativeImageProcessor.LOG_LEVEL_INFO);
+
+        NativeImageProcessor.setNativeTraceEnabled(false);
+        double offMedianMs = medianFrameTimeMs(frame);
+
+        NativeImageProcessor.setNativeTraceEnabled(true);
+        double onMedianMs = medianFrameTimeMs(frame);
+
+        double overheadPct = (onMedianMs - offMedianMs) * 100.0 / offMedianMs;
+        String summary = String.format("%dx%d Canny: tracing off %.3fms, on %.3fms (%+.2f%%)",
+                WIDTH, HEIGHT, offMedianMs, onMedianMs, overheadPct);
+        Log.i(TAG, summary);
+
+        Bundle results = new Bundle();
+        results.putDouble("trace_off_median_ms", offMedianMs);
+        results.putDouble("trace_on_median_ms", onMedianMs);
+        results.putString("summary", summary);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+
+        assertTrue(offMedianMs > 0);
+        assertTrue(onMedianMs > 0);
+        frame.recycle();
+    }
+
+    @Test
+    public void traceRingRecordsOnlyWhenEnabled() {
+        Bitmap frame = createTestFrame();
+
+        NativeImageProcessor.setNativeTraceEnabled(false);
+        NativeImageProcessor.clearNativeTrace();
+        NativeImageProcessor.processBitmap(frame, NativeImageProcessor.FILTER_CANNY_EDGE);
+        assertEquals("", NativeImageProcessor.dumpNativeTrace());
+
+        NativeImageProcessor.setNativeTraceEnabled(true);
+        NativeImageProcessor.processBitmap(frame, NativeImageProcessor.FILTER_CANNY_EDGE);
+        String dump = NativeImageProcessor.dumpNativeTrace();
+        assertTrue(dump.contains("ImageProcessor.canny"));
+        assertTrue(dump.contains("jni.processBitmap"));
+        frame.recycle();
+    }
+
+    private double medianFrameTimeMs(Bitmap source) {
+        // processBitmap works in place, so every frame starts from the same pixels
+        int[] pixels = new int[WIDTH * HEIGHT];
+        source.getPixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+        Bitmap work = source.copy(Bitmap.Config.ARGB_8888, true);
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            work.setPixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+            NativeImageProcessor.processBitmap(work, NativeImageProcessor.FILTER_CANNY_EDGE);
+        }
+
+        long[] samples = new long[MEASURED_FRAMES];
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            work.setPixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+            long start = System.nanoTime();
+            NativeImageProcessor.processBitmap(work, NativeImageProcessor.FILTER_CANNY_EDGE);
+            samples[i] = System.nanoTime() - start;
+        }
+        work.recycle();
+
+        Arrays.sort(samples);
+        return samples[MEASURED_FRAMES / 2] / 1_000_000.0;
+    }
+
+    private static Bitmap createTestFrame() {
+        // Deterministic checkerboard with a gradient so Canny has real work to do
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int v = ((x / 40 + y / 40) % 2 == 0) ? (x * 255 / WIDTH) : 255 - (y * 255 / HEIGHT);
+                pixels[y * WIDTH + x] = Color.rgb(v, v, v);
+            }
+        }
+        return Bitmap.createBitmap(pixels, WIDTH, HEIGHT, Bitmap.Config.ARGB_8888)
+                .copy(Bitmap.Config.ARGB_8888, true);
+    }
+}
@@ -0,0 +1,101 @@
+#include "contour_set.h"
+#include <opencv2/imgproc.hpp>
+#include <algorithm>
+
+#define LOG_TAG "ContourSet"
+#include "edge_log.h"
+
+// The flat accessors hand these out as plain int arrays
+static_assert(sizeof(cv::Point) == 2 * sizeof(int32_t), "cv::Point must be two packed ints");
+static_assert(sizeof(cv::Rect) == 4 * sizeof(int32_t), "cv::Rect must be four packed ints");
+
+ContourSet::ContourSet() {
+    offsets_.push_back(0);
+}
+
+bool ContourSet::accepts(const Filter& filter, int pointCount, float area, float length) {
+    return pointCount >= filter.minPoints && area >= filter.minArea && length >= filter.minLength;
+}
+
+int ContourSet::find(const cv::Mat& binary, int mode, const Filter& filter) {
+    clear();
+    if (binary.empty()) {
+        return 0;
+    }
+    CV_Assert(binary.type() == CV_8UC1);
+    EDGE_SPAN("ContourSet.find");
+
+    cv::findContours(binary, found_, mode, cv::CHAIN_APPROX_SIMPLE);
+
+    size_t total = 0;
+    for (size_t i = 0; i < found_.size(); i++) {
+        total += found_[i].size();
+    }
+    points_.reserve(total);
+
+    for (size_t i = 0; i < found_.size(); i++) {
+        const std::vector<cv::Point>& contour = found_[i];
+        float area = (float) cv::contourArea(contour);
+        float length = (float) cv::arcLength(contour, true);
+        if (!accepts(filter, (int) contour.size(), area, length)) {
+            continue;
+        }
+        points_.insert(points_.end(), contour.begin(), contour.end());
+        offsets_.push_back((int32_t) points_.size());
+        areas_.push_back(area);
+        lengths_.push_back(length);
+        bounds_.push_back(cv::boundingRect(contour));
+    }
+
+    EDGE_TRACE("contours.found", (int64_t) found_.size(), (int64_t) areas_.size());
+    LOGV("find: %zu contours, kept %d with %d points", found_.size(), size(), totalPoints());
+    return size();
+}
+
+int ContourSet::filter(const Filter& filter) {
+    int kept = 0;
+    int32_t read = 0;
+    int32_t write = 0;
+    for (int i = 0; i < size(); i++) {
+        // offsets_[kept] is rewritten below and may alias offsets_[i + 1]
+        int32_t end = offsets_[i + 1];
+        int count = end - read;
+        if (!accepts(filter, count, areas_[i], lengths_[i])) {
+            read = end;
+            continue;
+        }
+        if (read != write) {
+            // Kept contours only ever move towards the front
+            std::copy(points_.begin() + read, points_.begin() + read + count, points_.begin() + write);
+        }
+        areas_[kept] = areas_[i];
+        lengths_[kept] = lengths_[i];
+        bounds_[kept] = bounds_[i];
+        write += count;
+        kept++;
+        offsets_[kept] = write;
+        read = end;
+    }
+    points_.resize(write);
+    offsets_.resize(kept + 1);
+    areas_.resize(kept);
+    lengths_.resize(kept);
+    bounds_.resize(kept);
+    return kept;
+}
+
+void ContourSet::clear() {
+    points_.clear();
+    offsets_.resize(1);
+    areas_.clear();
+    lengths_.clear();
+    bounds_.clear();
+}
+
+const int32_t* ContourSet::pointData() const {
+    return reinterpret_cast<const int32_t*>(points_.data());
+}
+
+const int32_t* ContourSet::boundsData() const {
+    return reinterpret_cast<const int32_t*>(bounds_.data());
+}
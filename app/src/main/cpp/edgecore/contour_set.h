@@ -0,0 +1,74 @@
+#ifndef CONTOUR_SET_H
+#define CONTOUR_SET_H
+
+#include <opencv2/core.hpp>
+#include <cstdint>
+#include <vector>
+
+/**
+ * All contours of an edge map in one flat point buffer.
+ *
+ * Contour i occupies points [offset(i), offset(i + 1)). Area, perimeter and
+ * bounding box are computed for every contour while the set is built, so the
+ * Java side can fetch them in bulk and discard small contours without ever
+ * materialising one object per contour. Buffers keep their capacity between
+ * calls; reusing one set per stream makes steady-state extraction allocation
+ * free apart from OpenCV's own scratch.
+ *
+ * Not thread-safe: each instance belongs to one caller at a time.
+ */
+class ContourSet {
+public:
+    /** Contours failing any bound are dropped; zero disables a bound */
+    struct Filter {
+        double minArea;
+        double minLength;
+        int minPoints;
+
+        Filter() : minArea(0.0), minLength(0.0), minPoints(0) {}
+    };
+
+    ContourSet();
+
+    /**
+     * Replace the contents with the contours of a binary image (e.g. Canny output)
+     * @param binary Single-channel 8-bit image; non-zero pixels are foreground
+     * @param mode cv::RETR_EXTERNAL or cv::RETR_LIST (no hierarchy is kept)
+     * @return Number of contours kept
+     */
+    int find(const cv::Mat& binary, int mode, const Filter& filter);
+
+    /** Drop contours failing filter, compacting in place; returns the remaining count */
+    int filter(const Filter& filter);
+
+    void clear();
+
+    int size() const { return (int) areas_.size(); }
+    int totalPoints() const { return (int) points_.size(); }
+
+    int pointCount(int i) const { return offsets_[i + 1] - offsets_[i]; }
+    const cv::Point* points(int i) const { return points_.data() + offsets_[i]; }
+    float area(int i) const { return areas_[i]; }
+    float length(int i) const { return lengths_[i]; }
+    const cv::Rect& bounds(int i) const { return bounds_[i]; }
+
+    // Flat arrays for bulk copies: points as x,y pairs, size() + 1 offsets,
+    // bounds as x,y,width,height quadruples
+    const int32_t* pointData() const;
+    const int32_t* offsetData() const { return offsets_.data(); }
+    const float* areaData() const { return areas_.data(); }
+    const float* lengthData() const { return lengths_.data(); }
+    const int32_t* boundsData() const;
+
+private:
+    static bool accepts(const Filter& filter, int pointCount, float area, float length);
+
+    std::vector<std::vector<cv::Point> > found_;   // findContours output, reused for its capacity
+    std::vector<cv::Point> points_;
+    std::vector<int32_t> offsets_;
+    std::vector<float> areas_;
+    std::vector<float> lengths_;
+    std::vector<cv::Rect> bounds_;
+};
+
+#endif // CONTOUR_SET_H
@@ -0,0 +1,187 @@
+#include "edge_log.h"
+#include <chrono>
+#include <cinttypes>
+#include <cstdio>
+#include <unistd.h>
+#include <sys/syscall.h>
+
+namespace edgelog {
+
+namespace {
+
+std::atomic<int> gRuntimeLevel(EDGE_LOG_LEVEL_INFO);
+std::atomic<bool> gTraceEnabled(true);
+
+enum TraceKind : uint32_t {
+    TRACE_INSTANT = 0,
+    TRACE_SPAN = 1   // arg0 holds the duration in nanoseconds
+};
+
+/**
+ * Seqlock-style slot: seq is 2*index+1 while the writer fills the slot and
+ * 2*index+2 once published, so readers can detect torn or overwritten events.
+ */
+struct TraceSlot {
+    std::atomic<uint64_t> seq;
+    std::atomic<uint32_t> kind;
+    std::atomic<int64_t> timestampNs;
+    std::atomic<const char*> name;
+    std::atomic<int64_t> arg0;
+    std::atomic<int64_t> arg1;
+    std::atomic<uint32_t> threadId;
+};
+
+TraceSlot gRing[TRACE_RING_CAPACITY];
+std::atomic<uint64_t> gHead(0);
+
+uint32_t currentThreadId() {
+    static thread_local uint32_t tid = (uint32_t) syscall(SYS_gettid);
+    return tid;
+}
+
+} // namespace
+
+int runtimeLevel() {
+    return gRuntimeLevel.load(std::memory_order_relaxed);
+}
+
+void setRuntimeLevel(int level) {
+    if (level < EDGE_LOG_LEVEL_VERBOSE) level = EDGE_LOG_LEVEL_VERBOSE;
+    if (level > EDGE_LOG_LEVEL_NONE) level = EDGE_LOG_LEVEL_NONE;
+    gRuntimeLevel.store(level, std::memory_order_relaxed);
+}
+
+int64_t nowNs() {
+    return std::chrono::duration_cast<std::chrono::nanoseconds>(
+            std::chrono::steady_clock::now().time_since_epoch()).count();
+}
+
+bool rateLimitPass(std::atomic<int64_t>& lastNs, int64_t intervalMs) {
+    int64_t now = nowNs();
+    int64_t last = lastNs.load(std::memory_order_relaxed);
+    if (last != 0 && now - last < intervalMs * 1000000LL) {
+        return false;
+    }
+    return lastNs.compare_exchange_strong(last, now, std::memory_order_relaxed);
+}
+
+bool traceEnabled() {
+    return gTraceEnabled.load(std::memory_order_relaxed);
+}
+
+void setTraceEnabled(bool enabled) {
+    gTraceEnabled.store(enabled, std::memory_order_relaxed);
+}
+
+static void recordSlot(uint32_t kind, const char* name, int64_t timestampNs, int64_t arg0, int64_t arg1) {
+    uint64_t index = gHead.fetch_add(1, std::memory_order_relaxed);
+    TraceSlot& slot = gRing[index & (TRACE_RING_CAPACITY - 1)];
+
+    slot.seq.store(2 * index + 1, std::memory_order_relaxed);
+    std::atomic_thread_fence(std::memory_order_release);
+    slot.kind.store(kind, std::memory_order_relaxed);
+    slot.timestampNs.store(timestampNs, std::memory_order_relaxed);
+    slot.name.store(name, std::memory_order_relaxed);
+    slot.arg0.store(arg0, std::memory_order_relaxed);
+    slot.arg1.store(arg1, std::memory_order_relaxed);
+    slot.threadId.store(currentThreadId(), std::memory_order_relaxed);
+    slot.seq.store(2 * index + 2, std::memory_order_release);
+}
+
+void traceRecord(const char* name, int64_t arg0, int64_t arg1) {
+    recordSlot(TRACE_INSTANT, name, nowNs(), arg0, arg1);
+}
+
+void traceSpan(const char* name, int64_t startNs, int64_t durNs) {
+    recordSlot(TRACE_SPAN, name, startNs, durNs, 0);
+}
+
+namespace {
+
+struct TraceSnapshot {
+    uint32_t kind;
+    int64_t timestampNs;
+    const char* name;
+    int64_t arg0;
+    int64_t arg1;
+    uint32_t threadId;
+};
+
+/** Visit every published event, oldest first, skipping torn or overwritten slots */
+template <typename Visitor>
+size_t visitTrace(Visitor visit) {
+    uint64_t head = gHead.load(std::memory_order_acquire);
+    uint64_t start = head > TRACE_RING_CAPACITY ? head - TRACE_RING_CAPACITY : 0;
+    size_t visited = 0;
+
+    for (uint64_t index = start; index < head; index++) {
+        TraceSlot& slot = gRing[index & (TRACE_RING_CAPACITY - 1)];
+        uint64_t before = slot.seq.load(std::memory_order_acquire);
+        if (before != 2 * index + 2) {
+            continue; // still being written, or already overwritten by a newer event
+        }
+        TraceSnapshot event;
+        event.kind = slot.kind.load(std::memory_order_relaxed);
+        event.timestampNs = slot.timestampNs.load(std::memory_order_relaxed);
+        event.name = slot.name.load(std::memory_order_relaxed);
+        event.arg0 = slot.arg0.load(std::memory_order_relaxed);
+        event.arg1 = slot.arg1.load(std::memory_order_relaxed);
+        event.threadId = slot.threadId.load(std::memory_order_relaxed);
+        std::atomic_thread_fence(std::memory_order_acquire);
+        if (slot.seq.load(std::memory_order_relaxed) != before) {
+            continue;
+        }
+        if (event.name == nullptr) {
+            event.name = "?";
+        }
+        visit(event);
+        visited++;
+    }
+    return visited;
+}
+
+} // namespace
+
+size_t dumpTrace(std::string& out) {
+    char line[160];
+    return visitTrace([&](const TraceSnapshot& e) {
+        if (e.kind == TRACE_SPAN) {
+            snprintf(line, sizeof(line), "%" PRId64 " [%u] %s dur=%" PRId64 "ns\n",
+                     e.timestampNs, e.threadId, e.name, e.arg0);
+        } else {
+            snprintf(line, sizeof(line), "%" PRId64 " [%u] %s %" PRId64 " %" PRId64 "\n",
+                     e.timestampNs, e.threadId, e.name, e.arg0, e.arg1);
+        }
+        out.append(line);
+    });
+}
+
+size_t dumpTraceJson(std::string& out, int pid) {
+    char event[256];
+    bool first = true;
+    return visitTrace([&](const TraceSnapshot& e) {
+        // Names are string literals from this library, so they need no JSON escaping
+        if (e.kind == TRACE_SPAN) {
+            snprintf(event, sizeof(event),
+                     "%s{\"name\":\"%s\",\"cat\":\"native\",\"ph\":\"X\",\"ts\":%.3f,\"dur\":%.3f,"
+                     "\"pid\":%d,\"tid\":%u}",
+                     first ? "" : ",", e.name, e.timestampNs / 1000.0, e.arg0 / 1000.0,
+                     pid, e.threadId);
+        } else {
+            snprintf(event, sizeof(event),
+                     "%s{\"name\":\"%s\",\"cat\":\"native\",\"ph\":\"i\",\"s\":\"t\",\"ts\":%.3f,"
+                     "\"pid\":%d,\"tid\":%u,\"args\":{\"a0\":%" PRId64 ",\"a1\":%" PRId64 "}}",
+                     first ? "" : ",", e.name, e.timestampNs / 1000.0,
+                     pid, e.threadId, e.arg0, e.arg1);
+        }
+        out.append(event);
+        first = false;
+    });
+}
+
+void clearTrace() {
+    // Advancing the head past every slot makes all existing events stale for readers
+    gHead.fetch_add(TRACE_RING_CAPACITY, std::memory_order_acq_rel);
+}
+
+} // namespace edgelog
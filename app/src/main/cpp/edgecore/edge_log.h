@@ -0,0 +1,140 @@
+#ifndef EDGE_LOG_H
+#define EDGE_LOG_H
+
+#include <atomic>
+#include <cstdint>
+#include <string>
+
+// ==================== Log Levels ====================
+
+#define EDGE_LOG_LEVEL_VERBOSE 0
+#define EDGE_LOG_LEVEL_DEBUG   1
+#define EDGE_LOG_LEVEL_INFO    2
+#define EDGE_LOG_LEVEL_WARN    3
+#define EDGE_LOG_LEVEL_ERROR   4
+#define EDGE_LOG_LEVEL_NONE    5
+
+/**
+ * Compile-time floor. Statements below this level are removed entirely by the
+ * compiler, including argument evaluation. Set from CMakeLists.txt per build type.
+ */
+#ifndef EDGE_LOG_MIN_LEVEL
+#define EDGE_LOG_MIN_LEVEL EDGE_LOG_LEVEL_VERBOSE
+#endif
+
+namespace edgelog {
+
+/** Runtime level, adjustable from Java via NativeImageProcessor.setNativeLogLevel() */
+int runtimeLevel();
+void setRuntimeLevel(int level);
+
+/**
+ * Emit one log line. Implemented per platform: logcat on Android
+ * (edge_log_android.cpp), stderr on desktop builds (edge_log_host.cpp).
+ */
+void write(int level, const char* tag, const char* fmt, ...)
+        __attribute__((format(printf, 3, 4)));
+
+/** Monotonic clock in nanoseconds, same time base as System.nanoTime() */
+int64_t nowNs();
+
+/**
+ * Returns true at most once per intervalMs for the call site owning lastNs.
+ * Lock-free: concurrent callers race on a single CAS, losers are suppressed.
+ */
+bool rateLimitPass(std::atomic<int64_t>& lastNs, int64_t intervalMs);
+
+// ==================== Trace Ring Buffer ====================
+
+/**
+ * Fixed-size, lock-free, in-memory trace ring. Writers claim a slot with one
+ * fetch_add and publish it with a sequence number, so recording an event never
+ * formats a string or blocks. Formatting happens only in dumpTrace().
+ */
+static const size_t TRACE_RING_CAPACITY = 1024; // must be a power of two
+
+bool traceEnabled();
+void setTraceEnabled(bool enabled);
+void traceRecord(const char* name, int64_t arg0, int64_t arg1);
+
+/** Record a completed span [startNs, startNs + durNs) on the calling thread */
+void traceSpan(const char* name, int64_t startNs, int64_t durNs);
+
+/** Append the ring contents, oldest first, to out. Safe to call while writers run. */
+size_t dumpTrace(std::string& out);
+
+/**
+ * Append the ring contents as comma-separated Chrome trace event objects
+ * (ph "X" for spans, "i" for instants, timestamps in microseconds).
+ */
+size_t dumpTraceJson(std::string& out, int pid);
+void clearTrace();
+
+/** RAII span: records one complete event when the scope exits */
+class ScopedSpan {
+public:
+    explicit ScopedSpan(const char* name)
+            : name_(name), startNs_(traceEnabled() ? nowNs() : 0) {}
+    ~ScopedSpan() {
+        if (startNs_ != 0) {
+            traceSpan(name_, startNs_, nowNs() - startNs_);
+        }
+    }
+
+private:
+    ScopedSpan(const ScopedSpan&);
+    ScopedSpan& operator=(const ScopedSpan&);
+
+    const char* name_;
+    int64_t startNs_;
+};
+
+} // namespace edgelog
+
+// ==================== Logging Macros ====================
+
+#define EDGE_LOG_ENABLED(level) \
+    ((level) >= EDGE_LOG_MIN_LEVEL && (level) >= edgelog::runtimeLevel())
+
+#define EDGE_LOG(level, tag, ...)                                                   \
+    do {                                                                            \
+        if (EDGE_LOG_ENABLED(level)) {                                              \
+            edgelog::write(level, tag, __VA_ARGS__);                                \
+        }                                                                           \
+    } while (0)
+
+/** Log from a per-frame site at most once per intervalMs */
+#define EDGE_LOG_RATE(level, intervalMs, tag, ...)                                  \
+    do {                                                                            \
+        if (EDGE_LOG_ENABLED(level)) {                                              \
+            static std::atomic<int64_t> edgeLogSiteLastNs_(0);                      \
+            if (edgelog::rateLimitPass(edgeLogSiteLastNs_, intervalMs)) {           \
+                edgelog::write(level, tag, __VA_ARGS__);                            \
+            }                                                                       \
+        }                                                                           \
+    } while (0)
+
+/** Record an instant trace event; name must be a string literal */
+#define EDGE_TRACE(name, arg0, arg1)                                                \
+    do {                                                                            \
+        if (edgelog::traceEnabled()) {                                              \
+            edgelog::traceRecord(name, (int64_t)(arg0), (int64_t)(arg1));           \
+        }                                                                           \
+    } while (0)
+
+#define EDGE_SPAN_CONCAT_(a, b) a##b
+#define EDGE_SPAN_VAR_(line) EDGE_SPAN_CONCAT_(edgeSpan_, line)
+
+/** Trace the enclosing scope as a span; name must be a string literal */
+#define EDGE_SPAN(name) edgelog::ScopedSpan EDGE_SPAN_VAR_(__LINE__)(name)
+
+#define LOGV(...) EDGE_LOG(EDGE_LOG_LEVEL_VERBOSE, LOG_TAG, __VA_ARGS__)
+#define LOGD(...) EDGE_LOG(EDGE_LOG_LEVEL_DEBUG, LOG_TAG, __VA_ARGS__)
+#define LOGI(...) EDGE_LOG(EDGE_LOG_LEVEL_INFO, LOG_TAG, __VA_ARGS__)
+#define LOGW(...) EDGE_LOG(EDGE_LOG_LEVEL_WARN, LOG_TAG, __VA_ARGS__)
+#define LOGE(...) EDGE_LOG(EDGE_LOG_LEVEL_ERROR, LOG_TAG, __VA_ARGS__)
+
+/** Per-frame error paths: report, but never flood logcat */
+#define LOGE_RATE(...) EDGE_LOG_RATE(EDGE_LOG_LEVEL_ERROR, 1000, LOG_TAG, __VA_ARGS__)
+
+#endif // EDGE_LOG_H
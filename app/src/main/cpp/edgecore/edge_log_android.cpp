@@ -0,0 +1,14 @@
+#include "edge_log.h"
+#include <android/log.h>
+#include <cstdarg>
+
+namespace edgelog {
+
+void write(int level, const char* tag, const char* fmt, ...) {
+    va_list args;
+    va_start(args, fmt);
+    __android_log_vprint(ANDROID_LOG_VERBOSE + level, tag, fmt, args);
+    va_end(args);
+}
+
+} // namespace edgelog
@@ -0,0 +1,24 @@
+#include "edge_log.h"
+#include <cstdarg>
+#include <cstdio>
+#include <mutex>
+
+namespace edgelog {
+
+// Logcat-style "D/Tag: message" lines on stderr
+void write(int level, const char* tag, const char* fmt, ...) {
+    static const char LEVELS[] = "VDIWE";
+    static std::mutex mutex;
+
+    char line[1024];
+    va_list args;
+    va_start(args, fmt);
+    std::vsnprintf(line, sizeof(line), fmt, args);
+    va_end(args);
+
+    // One line per call even when several threads log at once
+    std::lock_guard<std::mutex> lock(mutex);
+    std::fprintf(stderr, "%c/%s: %s\n", level >= 0 && level < 5 ? LEVELS[level] : '?', tag, line);
+}
+
+} // namespace edgelog
@@ -0,0 +1,137 @@
+#include "edge_map_cache.h"
+#include <opencv2/imgproc.hpp>
+
+#define LOG_TAG "EdgeMapCache"
+#include "edge_log.h"
+
+namespace {
+
+// Above this fraction of changed tiles, per-tile overhead outweighs the savings
+const int FULL_RECOMPUTE_TILES = EdgeMapCache::TILE_GRID * EdgeMapCache::TILE_GRID / 2;
+
+const int CELLS_PER_TILE = EdgeMapCache::SIGNATURE_GRID / EdgeMapCache::TILE_GRID;
+
+} // namespace
+
+EdgeMapCache::EdgeMapCache()
+        : enabled_(true),
+          threshold_(DEFAULT_THRESHOLD),
+          framesSinceFull_(0) {
+    resetStats();
+}
+
+EdgeMapCache::Outcome EdgeMapCache::process(const cv::Mat& gray, cv::Mat& edges, EdgeFunction compute) {
+    std::lock_guard<std::mutex> lock(mutex_);
+    stats_.frames++;
+
+    cv::resize(gray, signature_, cv::Size(SIGNATURE_GRID, SIGNATURE_GRID), 0, 0, cv::INTER_AREA);
+
+    bool canReuse = enabled_ && !edges_.empty() && edges_.size() == gray.size() &&
+                    framesSinceFull_ < MAX_REUSE_FRAMES;
+    int changedCount = 0;
+
+    if (canReuse) {
+        cv::absdiff(signature_, referenceSignature_, diff_);
+        for (int i = 0; i < TILE_GRID * TILE_GRID; i++) {
+            changedTiles_[i] = false;
+        }
+        for (int y = 0; y < SIGNATURE_GRID; y++) {
+            const uint8_t* row = diff_.ptr<uint8_t>(y);
+            for (int x = 0; x < SIGNATURE_GRID; x++) {
+                if (row[x] > threshold_) {
+                    bool& tile = changedTiles_[(y / CELLS_PER_TILE) * TILE_GRID + x / CELLS_PER_TILE];
+                    if (!tile) {
+                        tile = true;
+                        changedCount++;
+                    }
+                }
+            }
+        }
+    }
+
+    Outcome outcome;
+    if (!canReuse || changedCount > FULL_RECOMPUTE_TILES) {
+        EDGE_SPAN("EdgeMapCache.full");
+        compute(gray, edges_);
+        signature_.copyTo(referenceSignature_);
+        framesSinceFull_ = 0;
+        stats_.full++;
+        outcome = OUTCOME_FULL;
+    } else if (changedCount > 0) {
+        EDGE_SPAN("EdgeMapCache.partial");
+        for (int ty = 0; ty < TILE_GRID; ty++) {
+            for (int tx = 0; tx < TILE_GRID; tx++) {
+                if (changedTiles_[ty * TILE_GRID + tx]) {
+                    recomputeTile(gray, tx, ty, compute);
+                }
+            }
+        }
+        framesSinceFull_++;
+        stats_.partial++;
+        stats_.tilesRecomputed += changedCount;
+        outcome = OUTCOME_PARTIAL;
+    } else {
+        framesSinceFull_++;
+        stats_.reused++;
+        outcome = OUTCOME_REUSED;
+    }
+
+    EDGE_TRACE("EdgeMapCache.outcome", outcome, changedCount);
+    edges_.copyTo(edges);
+    return outcome;
+}
+
+void EdgeMapCache::recomputeTile(const cv::Mat& gray, int tx, int ty, EdgeFunction compute) {
+    int width = gray.cols;
+    int height = gray.rows;
+    cv::Rect tile(tx * width / TILE_GRID, ty * height / TILE_GRID, 0, 0);
+    tile.width = (tx + 1) * width / TILE_GRID - tile.x;
+    tile.height = (ty + 1) * height / TILE_GRID - tile.y;
+
+    // Pad the tile so blur and gradients at its border see real neighbours.
+    // Hysteresis can still differ slightly across tile seams, which a
+    // periodic full recompute cleans up.
+    cv::Rect padded(tile.x - TILE_MARGIN, tile.y - TILE_MARGIN,
+                    tile.width + 2 * TILE_MARGIN, tile.height + 2 * TILE_MARGIN);
+    padded &= cv::Rect(0, 0, width, height);
+
+    cv::Mat tileEdges;
+    compute(gray(padded), tileEdges);
+    cv::Rect inner(tile.x - padded.x, tile.y - padded.y, tile.width, tile.height);
+    tileEdges(inner).copyTo(edges_(tile));
+
+    for (int cy = ty * CELLS_PER_TILE; cy < (ty + 1) * CELLS_PER_TILE; cy++) {
+        for (int cx = tx * CELLS_PER_TILE; cx < (tx + 1) * CELLS_PER_TILE; cx++) {
+            referenceSignature_.at<uint8_t>(cy, cx) = signature_.at<uint8_t>(cy, cx);
+        }
+    }
+}
+
+void EdgeMapCache::setEnabled(bool enabled) {
+    std::lock_guard<std::mutex> lock(mutex_);
+    enabled_ = enabled;
+}
+
+void EdgeMapCache::setThreshold(int threshold) {
+    std::lock_guard<std::mutex> lock(mutex_);
+    threshold_ = threshold < 1 ? 1 : (threshold > 255 ? 255 : threshold);
+}
+
+void EdgeMapCache::invalidate() {
+    std::lock_guard<std::mutex> lock(mutex_);
+    edges_.release();
+}
+
+EdgeMapCache::Stats EdgeMapCache::stats() const {
+    std::lock_guard<std::mutex> lock(mutex_);
+    return stats_;
+}
+
+void EdgeMapCache::resetStats() {
+    std::lock_guard<std::mutex> lock(mutex_);
+    stats_.frames = 0;
+    stats_.reused = 0;
+    stats_.partial = 0;
+    stats_.full = 0;
+    stats_.tilesRecomputed = 0;
+}
@@ -0,0 +1,79 @@
+#ifndef EDGE_MAP_CACHE_H
+#define EDGE_MAP_CACHE_H
+
+#include <opencv2/core.hpp>
+#include <cstdint>
+#include <mutex>
+
+/**
+ * Reuses the previous edge map when the scene has not changed.
+ *
+ * Each frame is reduced to a 32x32 grid of mean luma values. The grid is
+ * compared with the grid of the frame the cached edges were computed from:
+ * if no cell moved by more than the sensitivity threshold the cached edges
+ * are returned as-is, if only a few tiles changed just those tiles are
+ * recomputed, and otherwise the whole frame is. A full recompute is also
+ * forced every MAX_REUSE_FRAMES frames so slow drift below the threshold
+ * cannot go stale forever.
+ */
+class EdgeMapCache {
+public:
+    /** Computes an edge map for a single-channel image of the same size */
+    typedef void (*EdgeFunction)(const cv::Mat& gray, cv::Mat& edges);
+
+    enum Outcome {
+        OUTCOME_REUSED = 0,
+        OUTCOME_PARTIAL = 1,
+        OUTCOME_FULL = 2
+    };
+
+    struct Stats {
+        int64_t frames;
+        int64_t reused;
+        int64_t partial;
+        int64_t full;
+        int64_t tilesRecomputed;
+    };
+
+    static const int SIGNATURE_GRID = 32;
+    static const int TILE_GRID = 8;                // 8x8 tiles of 4x4 signature cells
+    static const int TILE_MARGIN = 8;              // blur + Sobel support around a tile, in pixels
+    static const int MAX_REUSE_FRAMES = 30;
+    static const int DEFAULT_THRESHOLD = 4;        // mean luma difference per cell
+
+    EdgeMapCache();
+
+    /**
+     * Produce the edge map for gray, reusing cached tiles where possible
+     * @param gray Single-channel 8-bit input
+     * @param edges Output edge map (a private copy; safe to use after return)
+     * @param compute Edge detector applied to full frames and padded tiles
+     */
+    Outcome process(const cv::Mat& gray, cv::Mat& edges, EdgeFunction compute);
+
+    void setEnabled(bool enabled);
+    /** @param threshold Per-cell mean luma difference (1-255) that counts as a change */
+    void setThreshold(int threshold);
+    void invalidate();
+
+    Stats stats() const;
+    void resetStats();
+
+private:
+    void recomputeTile(const cv::Mat& gray, int tx, int ty, EdgeFunction compute);
+
+    mutable std::mutex mutex_;
+    bool enabled_;
+    int threshold_;
+    int framesSinceFull_;
+
+    cv::Mat edges_;
+    cv::Mat signature_;
+    cv::Mat referenceSignature_;   // signature the cached edges correspond to
+    cv::Mat diff_;
+    bool changedTiles_[TILE_GRID * TILE_GRID];
+
+    Stats stats_;
+};
+
+#endif // EDGE_MAP_CACHE_H
@@ -0,0 +1,351 @@
+#include "edge_stabilizer.h"
+#include <opencv2/imgproc.hpp>
+#include <opencv2/video/tracking.hpp>
+#include <algorithm>
+#include <cmath>
+
+#define LOG_TAG "EdgeStabilizer"
+#include "edge_log.h"
+
+namespace {
+
+// Above this many disagreeing tiles, per-tile overhead outweighs the savings
+const int FULL_RECOMPUTE_TILES = EdgeStabilizer::TILE_GRID * EdgeStabilizer::TILE_GRID / 2;
+
+// Fewer surviving tracks than this do not pin down the motion
+const size_t MIN_POINTS = 8;
+const double FEATURE_QUALITY = 0.01;
+const double FEATURE_MIN_DISTANCE = 8.0;
+const cv::Size LK_WINDOW(15, 15);
+const int LK_LEVELS = 2;
+
+// Tracks further than this from the fit, in small pixels, are outliers even if the median is lower
+const double MIN_OUTLIER_DISTANCE = 1.0;
+
+const int ECC_ITERATIONS = 30;
+const double ECC_EPSILON = 1e-4;
+const double ECC_MIN_CORRELATION = 0.8;
+
+} // namespace
+
+EdgeStabilizer::EdgeStabilizer() : framesSinceFull_(0) {
+    resetStats();
+}
+
+void EdgeStabilizer::setParams(const Params& params) {
+    std::lock_guard<std::mutex> lock(mutex_);
+    params_ = params;
+    params_.method = params.method == METHOD_ECC ? METHOD_ECC : METHOD_LK;
+    params_.analysisWidth = std::max(params.analysisWidth, 32);
+    params_.refreshInterval = std::max(params.refreshInterval, 1);
+    params_.residualThreshold = std::max(1, std::min(params.residualThreshold, 255));
+    params_.tileResidual = std::max(0.0f, std::min(params.tileResidual, 1.0f));
+    params_.maxFeatures = std::max(params.maxFeatures, (int) MIN_POINTS);
+    edges_.release();
+    previous_.release();
+    points_.clear();
+}
+
+EdgeStabilizer::Params EdgeStabilizer::params() const {
+    std::lock_guard<std::mutex> lock(mutex_);
+    return params_;
+}
+
+void EdgeStabilizer::reset() {
+    std::lock_guard<std::mutex> lock(mutex_);
+    edges_.release();
+    previous_.release();
+    points_.clear();
+    fullMotion_.release();
+}
+
+EdgeStabilizer::Outcome EdgeStabilizer::process(const cv::Mat& gray, cv::Mat& edges, EdgeFunction compute) {
+    CV_Assert(gray.type() == CV_8UC1);
+    std::lock_guard<std::mutex> lock(mutex_);
+    stats_.frames++;
+
+    double scale = std::min(1.0, (double) params_.analysisWidth / gray.cols);
+    if (scale < 1.0) {
+        cv::resize(gray, small_, cv::Size(), scale, scale, cv::INTER_AREA);
+    } else {
+        gray.copyTo(small_);
+    }
+
+    framesSinceFull_++;
+    bool canWarp = !edges_.empty() && edges_.size() == gray.size() && previous_.size() == small_.size() &&
+                   framesSinceFull_ < params_.refreshInterval;
+    bool haveMotion = false;
+    if (canWarp) {
+        haveMotion = estimateMotion();
+        if (!haveMotion) {
+            stats_.motionFailures++;
+        }
+    }
+    int changedCount = 0;
+    if (haveMotion) {
+        changedCount = markResidualTiles();
+        // Small-frame motion in input pixels: p_input = (p_small + 0.5) * s - 0.5 per axis
+        double sx = (double) gray.cols / small_.cols;
+        double sy = (double) gray.rows / small_.rows;
+        cv::Mat toInput = (cv::Mat_<double>(3, 3) << sx, 0, 0.5 * sx - 0.5, 0, sy, 0.5 * sy - 0.5, 0, 0, 1);
+        cv::Mat motion = cv::Mat::eye(3, 3, CV_64F);
+        motion_.copyTo(motion.rowRange(0, 2));
+        fullMotion_ = cv::Mat(toInput * motion * toInput.inv()).rowRange(0, 2).clone();
+    } else {
+        // Tracked features belong to the previous frame; the current one becomes previous
+        points_.clear();
+        fullMotion_.release();
+    }
+
+    Outcome outcome;
+    if (!haveMotion || changedCount > FULL_RECOMPUTE_TILES) {
+        EDGE_SPAN("EdgeStabilizer.full");
+        compute(gray, edges_);
+        framesSinceFull_ = 0;
+        stats_.full++;
+        outcome = OUTCOME_FULL;
+    } else {
+        EDGE_SPAN("EdgeStabilizer.warp");
+        // Nearest keeps the edge map binary and one pixel wide under translation
+        cv::warpAffine(edges_, warpedEdges_, fullMotion_, gray.size(), cv::INTER_NEAREST,
+                       cv::BORDER_CONSTANT, cv::Scalar(0));
+        cv::swap(edges_, warpedEdges_);
+        for (int ty = 0; ty < TILE_GRID; ty++) {
+            for (int tx = 0; tx < TILE_GRID; tx++) {
+                if (changedTiles_[ty * TILE_GRID + tx]) {
+                    recomputeTile(gray, tx, ty, compute);
+                }
+            }
+        }
+        stats_.tilesRecomputed += changedCount;
+        if (changedCount > 0) {
+            stats_.partial++;
+            outcome = OUTCOME_PARTIAL;
+        } else {
+            stats_.warped++;
+            outcome = OUTCOME_WARPED;
+        }
+    }
+
+    EDGE_TRACE("EdgeStabilizer.outcome", outcome, changedCount);
+    cv::swap(previous_, small_);
+    edges_.copyTo(edges);
+    return outcome;
+}
+
+bool EdgeStabilizer::estimateMotion() {
+    return params_.method == METHOD_ECC ? estimateMotionECC() : estimateMotionLK();
+}
+
+bool EdgeStabilizer::estimateMotionLK() {
+    if (points_.size() < (size_t) params_.maxFeatures / 2) {
+        cv::goodFeaturesToTrack(previous_, points_, params_.maxFeatures, FEATURE_QUALITY, FEATURE_MIN_DISTANCE);
+    }
+    if (points_.size() < MIN_POINTS) {
+        return false;
+    }
+    cv::calcOpticalFlowPyrLK(previous_, small_, points_, next_, status_, error_, LK_WINDOW, LK_LEVELS);
+    from_.clear();
+    to_.clear();
+    for (size_t i = 0; i < points_.size(); i++) {
+        if (status_[i]) {
+            from_.push_back(points_[i]);
+            to_.push_back(next_[i]);
+        }
+    }
+    if (from_.size() < MIN_POINTS || !fitSimilarity(from_, to_, motion_)) {
+        return false;
+    }
+
+    // Refit without the tracks that moved differently, e.g. on a passing object
+    std::vector<double> distances(from_.size());
+    const double* m = motion_.ptr<double>();
+    for (size_t i = 0; i < from_.size(); i++) {
+        double x = m[0] * from_[i].x + m[1] * from_[i].y + m[2];
+        double y = m[3] * from_[i].x + m[4] * from_[i].y + m[5];
+        distances[i] = std::hypot(x - to_[i].x, y - to_[i].y);
+    }
+    std::vector<double> sorted(distances);
+    std::nth_element(sorted.begin(), sorted.begin() + sorted.size() / 2, sorted.end());
+    double limit = std::max(MIN_OUTLIER_DISTANCE, 3.0 * sorted[sorted.size() / 2]);
+    size_t kept = 0;
+    for (size_t i = 0; i < from_.size(); i++) {
+        if (distances[i] <= limit) {
+            from_[kept] = from_[i];
+            to_[kept] = to_[i];
+            kept++;
+        }
+    }
+    from_.resize(kept);
+    to_.resize(kept);
+    if (kept < MIN_POINTS || !fitSimilarity(from_, to_, motion_)) {
+        return false;
+    }
+    // The inliers are features of the current frame, which is the next frame's previous
+    points_.swap(to_);
+    LOGV("estimateMotionLK: %d of %d tracks, shift %.2f,%.2f", (int) kept, (int) next_.size(),
+         motion_.at<double>(0, 2), motion_.at<double>(1, 2));
+    return true;
+}
+
+bool EdgeStabilizer::estimateMotionECC() {
+    // ECC finds the warp from the current frame into the previous one
+    cv::Mat warp = cv::Mat::eye(2, 3, CV_32F);
+    try {
+        double correlation = cv::findTransformECC(
+                small_, previous_, warp, cv::MOTION_EUCLIDEAN,
+                cv::TermCriteria(cv::TermCriteria::COUNT + cv::TermCriteria::EPS, ECC_ITERATIONS, ECC_EPSILON),
+                cv::noArray());
+        if (correlation < ECC_MIN_CORRELATION) {
+            return false;
+        }
+    } catch (const cv::Exception& e) {
+        // Thrown when the iteration diverges, e.g. on a featureless frame
+        LOGV("estimateMotionECC: %s", e.what());
+        return false;
+    }
+    cv::invertAffineTransform(warp, warp);
+    warp.convertTo(motion_, CV_64F);
+    return true;
+}
+
+int EdgeStabilizer::markResidualTiles() {
+    cv::warpAffine(previous_, warpedSmall_, motion_, small_.size(), cv::INTER_LINEAR,
+                   cv::BORDER_CONSTANT, cv::Scalar(0));
+    cv::absdiff(small_, warpedSmall_, residual_);
+    cv::threshold(residual_, residual_, params_.residualThreshold, 255, cv::THRESH_BINARY);
+
+    // Pixels the previous frame did not cover are residual by definition
+    if (ones_.size() != small_.size()) {
+        ones_ = cv::Mat(small_.size(), CV_8UC1, cv::Scalar(255));
+    }
+    cv::warpAffine(ones_, valid_, motion_, small_.size(), cv::INTER_NEAREST, cv::BORDER_CONSTANT, cv::Scalar(0));
+    cv::bitwise_not(valid_, valid_);
+    cv::bitwise_or(residual_, valid_, residual_);
+
+    // Mean of a 0/255 mask per tile, i.e. 255 x the residual fraction
+    cv::resize(residual_, tileResidual_, cv::Size(TILE_GRID, TILE_GRID), 0, 0, cv::INTER_AREA);
+    double limit = params_.tileResidual * 255.0;
+    int changedCount = 0;
+    for (int ty = 0; ty < TILE_GRID; ty++) {
+        const uint8_t* row = tileResidual_.ptr<uint8_t>(ty);
+        for (int tx = 0; tx < TILE_GRID; tx++) {
+            bool changed = row[tx] > limit;
+            changedTiles_[ty * TILE_GRID + tx] = changed;
+            changedCount += changed ? 1 : 0;
+        }
+    }
+    return changedCount;
+}
+
+void EdgeStabilizer::recomputeTile(const cv::Mat& gray, int tx, int ty, EdgeFunction compute) {
+    int width = gray.cols;
+    int height = gray.rows;
+    cv::Rect bounds(0, 0, width, height);
+    cv::Rect tile(tx * width / TILE_GRID, ty * height / TILE_GRID, 0, 0);
+    tile.width = (tx + 1) * width / TILE_GRID - tile.x;
+    tile.height = (ty + 1) * height / TILE_GRID - tile.y;
+
+    // Reach into the neighbours that keep warped edges; recomputed ones get their own
+    int left = tx > 0 && !changedTiles_[ty * TILE_GRID + tx - 1] ? SEAM_BAND : 0;
+    int right = tx < TILE_GRID - 1 && !changedTiles_[ty * TILE_GRID + tx + 1] ? SEAM_BAND : 0;
+    int top = ty > 0 && !changedTiles_[(ty - 1) * TILE_GRID + tx] ? SEAM_BAND : 0;
+    int bottom = ty < TILE_GRID - 1 && !changedTiles_[(ty + 1) * TILE_GRID + tx] ? SEAM_BAND : 0;
+    cv::Rect reach(tile.x - left, tile.y - top, tile.width + left + right, tile.height + top + bottom);
+    reach &= bounds;
+
+    cv::Rect padded(reach.x - TILE_MARGIN, reach.y - TILE_MARGIN,
+                    reach.width + 2 * TILE_MARGIN, reach.height + 2 * TILE_MARGIN);
+    padded &= bounds;
+
+    compute(gray(padded), tileEdges_);
+    cv::Rect inner(tile.x - padded.x, tile.y - padded.y, tile.width, tile.height);
+    tileEdges_(inner).copyTo(edges_(tile));
+    if (reach == tile) {
+        return;
+    }
+
+    // Fresh edges connected to the tile's own continue into the band on top of the
+    // warped ones, so a line crossing the seam does not stop at the border
+    cv::Mat fresh = tileEdges_(cv::Rect(reach.x - padded.x, reach.y - padded.y, reach.width, reach.height));
+    int count = cv::connectedComponents(fresh, seamLabels_, 8, CV_32S);
+    seamKeep_.assign(count, 0);
+    cv::Rect own(tile.x - reach.x, tile.y - reach.y, tile.width, tile.height);
+    for (int y = own.y; y < own.y + own.height; y++) {
+        const int* labels = seamLabels_.ptr<int>(y);
+        for (int x = own.x; x < own.x + own.width; x++) {
+            seamKeep_[labels[x]] = 1;
+        }
+    }
+    seamKeep_[0] = 0;
+    for (int y = 0; y < reach.height; y++) {
+        const int* labels = seamLabels_.ptr<int>(y);
+        uint8_t* out = edges_.ptr<uint8_t>(reach.y + y) + reach.x;
+        bool inside = y >= own.y && y < own.y + own.height;
+        for (int x = 0; x < reach.width; x++) {
+            if (inside && x >= own.x && x < own.x + own.width) {
+                continue;
+            }
+            if (seamKeep_[labels[x]]) {
+                out[x] = 255;
+            }
+        }
+    }
+}
+
+bool EdgeStabilizer::fitSimilarity(const std::vector<cv::Point2f>& from, const std::vector<cv::Point2f>& to,
+                                   cv::Mat& transform) {
+    size_t n = from.size();
+    if (n < 2 || to.size() != n) {
+        return false;
+    }
+    double fx = 0, fy = 0, tx = 0, ty = 0;
+    for (size_t i = 0; i < n; i++) {
+        fx += from[i].x;
+        fy += from[i].y;
+        tx += to[i].x;
+        ty += to[i].y;
+    }
+    fx /= n;
+    fy /= n;
+    tx /= n;
+    ty /= n;
+
+    // u = a x - b y + c, v = b x + a y + d, solved about the centroids
+    double sxx = 0, a = 0, b = 0;
+    for (size_t i = 0; i < n; i++) {
+        double x = from[i].x - fx, y = from[i].y - fy;
+        double u = to[i].x - tx, v = to[i].y - ty;
+        sxx += x * x + y * y;
+        a += x * u + y * v;
+        b += x * v - y * u;
+    }
+    if (sxx < 1e-9) {
+        return false;
+    }
+    a /= sxx;
+    b /= sxx;
+    transform = (cv::Mat_<double>(2, 3) << a, -b, tx - a * fx + b * fy,
+                                            b, a, ty - b * fx - a * fy);
+    return true;
+}
+
+cv::Mat EdgeStabilizer::lastMotion() const {
+    std::lock_guard<std::mutex> lock(mutex_);
+    return fullMotion_.clone();
+}
+
+EdgeStabilizer::Stats EdgeStabilizer::stats() const {
+    std::lock_guard<std::mutex> lock(mutex_);
+    return stats_;
+}
+
+void EdgeStabilizer::resetStats() {
+    std::lock_guard<std::mutex> lock(mutex_);
+    stats_.frames = 0;
+    stats_.warped = 0;
+    stats_.partial = 0;
+    stats_.full = 0;
+    stats_.tilesRecomputed = 0;
+    stats_.motionFailures = 0;
+}
@@ -0,0 +1,137 @@
+#ifndef EDGE_STABILIZER_H
+#define EDGE_STABILIZER_H
+
+#include <opencv2/core.hpp>
+#include <cstdint>
+#include <mutex>
+#include <vector>
+
+/**
+ * Carries the edge map forward from frame to frame while the camera pans,
+ * instead of running Canny on every frame.
+ *
+ * Global motion between consecutive frames is estimated on a copy shrunk to
+ * analysisWidth, either from Lucas-Kanade tracks of corner features (fitted
+ * with a similarity transform) or with ECC image alignment. The previous edge
+ * map is warped by that motion. The previous frame is warped the same way and
+ * compared with the current one; tiles where many pixels disagree (moving
+ * objects, parallax, newly exposed borders) get fresh edges, the rest keep
+ * the warped ones. Fresh edges that cross into a warped tile continue
+ * SEAM_BAND pixels past the border where they connect to the recomputed
+ * tile's edges, as in Canny's hysteresis, so lines do not break off at tile
+ * seams. Besides saving Canny passes, this removes the flicker of edges that
+ * appear and vanish between frames of a steady scene.
+ *
+ * The whole frame is recomputed on the first frame, when motion cannot be
+ * estimated, when more than half the tiles disagree, and every
+ * refreshInterval frames so warping error cannot build up.
+ */
+class EdgeStabilizer {
+public:
+    /** Same contract as EdgeMapCache::EdgeFunction */
+    typedef void (*EdgeFunction)(const cv::Mat& gray, cv::Mat& edges);
+
+    enum Method {
+        METHOD_LK = 0,
+        METHOD_ECC = 1
+    };
+
+    enum Outcome {
+        OUTCOME_WARPED = 0,     // previous edges warped, nothing recomputed
+        OUTCOME_PARTIAL = 1,    // warped, with high-residual tiles recomputed
+        OUTCOME_FULL = 2
+    };
+
+    struct Params {
+        int method;
+        int analysisWidth;      // frames wider than this are shrunk for motion estimation
+        int refreshInterval;    // frames between forced full recomputes
+        int residualThreshold;  // luma difference after alignment that counts as a residual pixel
+        float tileResidual;     // fraction of residual pixels above which a tile is recomputed
+        int maxFeatures;        // corners tracked by METHOD_LK
+
+        Params() : method(METHOD_LK), analysisWidth(160), refreshInterval(10), residualThreshold(24),
+                   tileResidual(0.05f), maxFeatures(100) {}
+    };
+
+    struct Stats {
+        int64_t frames;
+        int64_t warped;
+        int64_t partial;
+        int64_t full;
+        int64_t tilesRecomputed;
+        int64_t motionFailures; // frames whose motion could not be estimated
+    };
+
+    static const int TILE_GRID = 8;
+    static const int TILE_MARGIN = 8;      // blur + Sobel support around a tile, in pixels
+    static const int SEAM_BAND = 4;        // reach of fresh edges into warped neighbours, in pixels
+
+    EdgeStabilizer();
+
+    /** Takes effect from the next frame, which is recomputed in full */
+    void setParams(const Params& params);
+    Params params() const;
+
+    /**
+     * Produce the edge map for gray from the warped previous map where possible
+     * @param gray Single-channel 8-bit input
+     * @param edges Output edge map (a private copy; safe to use after return)
+     * @param compute Edge detector applied to full frames and padded tiles
+     */
+    Outcome process(const cv::Mat& gray, cv::Mat& edges, EdgeFunction compute);
+
+    void reset();
+
+    /** Motion from the previous frame to the last one, in input pixels (2x3, CV_64F); empty if not estimated */
+    cv::Mat lastMotion() const;
+
+    Stats stats() const;
+    void resetStats();
+
+    /**
+     * Least-squares similarity transform (rotation, uniform scale, translation)
+     * mapping from onto to
+     * @return false if the points do not determine one
+     */
+    static bool fitSimilarity(const std::vector<cv::Point2f>& from, const std::vector<cv::Point2f>& to,
+                              cv::Mat& transform);
+
+private:
+    bool estimateMotion();
+    bool estimateMotionLK();
+    bool estimateMotionECC();
+    int markResidualTiles();
+    void recomputeTile(const cv::Mat& gray, int tx, int ty, EdgeFunction compute);
+
+    mutable std::mutex mutex_;
+    Params params_;
+    int framesSinceFull_;
+
+    cv::Mat small_;
+    cv::Mat previous_;
+    cv::Mat motion_;            // previous -> current, small frame pixels
+    cv::Mat fullMotion_;        // the same in input pixels
+    cv::Mat warpedSmall_;
+    cv::Mat valid_;
+    cv::Mat ones_;
+    cv::Mat residual_;
+    cv::Mat tileResidual_;
+    cv::Mat edges_;
+    cv::Mat warpedEdges_;
+    cv::Mat tileEdges_;
+    cv::Mat seamLabels_;
+    std::vector<unsigned char> seamKeep_;   // per component of tileEdges_: touches the tile
+    bool changedTiles_[TILE_GRID * TILE_GRID];
+
+    std::vector<cv::Point2f> points_;   // features in previous_, reused while enough survive
+    std::vector<cv::Point2f> next_;
+    std::vector<cv::Point2f> from_;
+    std::vector<cv::Point2f> to_;
+    std::vector<unsigned char> status_;
+    std::vector<float> error_;
+
+    Stats stats_;
+};
+
+#endif // EDGE_STABILIZER_H
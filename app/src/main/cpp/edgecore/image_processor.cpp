@@ -0,0 +1,184 @@
+#include "image_processor.h"
+#include "edge_map_cache.h"
+#include "motion_gate.h"
+#include "edge_stabilizer.h"
+#include "strip_edge_detector.h"
+#include <opencv2/imgproc.hpp>
+
+#define LOG_TAG "ImageProcessor"
+#include "edge_log.h"
+
+const int ImageProcessor::CANNY_LOWER_THRESHOLD = 50;
+const int ImageProcessor::CANNY_UPPER_THRESHOLD = 150;
+
+cv::Mat ImageProcessor::convertNV21ToRGBA(const uint8_t* nv21, int width, int height) {
+    // Wraps the caller's buffer; cvtColor writes into a fresh Mat
+    cv::Mat yuv(height + height / 2, width, CV_8UC1, const_cast<uint8_t*>(nv21));
+    cv::Mat rgba;
+    try {
+        cv::cvtColor(yuv, rgba, cv::COLOR_YUV2RGBA_NV21);
+    } catch (const cv::Exception& e) {
+        LOGE_RATE("YUV conversion error: %s", e.what());
+        return cv::Mat();
+    }
+    return rgba;
+}
+
+cv::Mat ImageProcessor::convertToGrayscale(const cv::Mat& input) {
+    if (input.empty()) {
+        LOGE_RATE("Input image is empty for grayscale conversion");
+        return input;
+    }
+    
+    EDGE_SPAN("ImageProcessor.grayscale");
+    
+    cv::Mat gray, result;
+    try {
+        if (input.channels() == 4) {
+            cv::cvtColor(input, gray, cv::COLOR_RGBA2GRAY);
+        } else if (input.channels() == 3) {
+            cv::cvtColor(input, gray, cv::COLOR_RGB2GRAY);
+        } else if (input.channels() == 1) {
+            gray = input.clone();
+        } else {
+            LOGE_RATE("Unsupported number of channels: %d", input.channels());
+            return input;
+        }
+        
+        // Convert back to 4-channel for rendering
+        cv::cvtColor(gray, result, cv::COLOR_GRAY2RGBA);
+        return result;
+    } catch (const cv::Exception& e) {
+        LOGE_RATE("Error in convertToGrayscale: %s", e.what());
+        return input;
+    }
+}
+
+static float clampScale(float scale) {
+    if (!(scale > 0.0f)) return 1.0f; // also catches NaN
+    if (scale < 0.1f) return 0.1f;
+    return scale > 1.0f ? 1.0f : scale;
+}
+
+void ImageProcessor::detectEdges(const cv::Mat& gray, cv::Mat& edges) {
+    cv::Mat blurred;
+    cv::GaussianBlur(gray, blurred, cv::Size(5, 5), 1.5);
+    cv::Canny(blurred, edges, CANNY_LOWER_THRESHOLD, CANNY_UPPER_THRESHOLD);
+}
+
+void ImageProcessor::applyCannyInPlace(cv::Mat& rgba, int bandRows) {
+    StripEdgeDetector detector(CANNY_LOWER_THRESHOLD, CANNY_UPPER_THRESHOLD,
+                               bandRows > 0 ? bandRows : StripEdgeDetector::DEFAULT_BAND_ROWS);
+    detector.process(rgba);
+}
+
+cv::Mat ImageProcessor::applyCanny(const cv::Mat& input, float cannyScale, EdgeMapCache* cache,
+                                   MotionGate* gate, EdgeStabilizer* stabilizer) {
+    if (input.empty()) {
+        LOGE_RATE("Input image is empty for Canny edge detection");
+        return input;
+    }
+    
+    EDGE_SPAN("ImageProcessor.canny");
+    
+    cv::Mat gray, edges, result;
+    try {
+        // Convert to grayscale if needed
+        if (input.channels() == 4) {
+            cv::cvtColor(input, gray, cv::COLOR_RGBA2GRAY);
+        } else if (input.channels() == 3) {
+            cv::cvtColor(input, gray, cv::COLOR_RGB2GRAY);
+        } else if (input.channels() == 1) {
+            gray = input.clone();
+        } else {
+            LOGE_RATE("Unsupported number of channels: %d", input.channels());
+            return input;
+        }
+        
+        // Optionally detect edges on a smaller image; blur and Canny dominate the frame time
+        cannyScale = clampScale(cannyScale);
+        cv::Mat work = gray;
+        if (cannyScale < 1.0f) {
+            cv::resize(gray, work, cv::Size(), cannyScale, cannyScale, cv::INTER_AREA);
+        }
+        
+        // Blur to reduce noise, then Canny; the gate, stabilizer or cache skips both
+        // where earlier edges still hold
+        if (gate != nullptr) {
+            gate->process(work, edges, &ImageProcessor::detectEdges);
+        } else if (stabilizer != nullptr) {
+            stabilizer->process(work, edges, &ImageProcessor::detectEdges);
+        } else if (cache != nullptr) {
+            cache->process(work, edges, &ImageProcessor::detectEdges);
+        } else {
+            detectEdges(work, edges);
+        }
+        if (cannyScale < 1.0f) {
+            cv::resize(edges, edges, gray.size(), 0, 0, cv::INTER_NEAREST);
+        }
+        LOGV("Canny (thresholds %d-%d): %dx%d",
+             CANNY_LOWER_THRESHOLD, CANNY_UPPER_THRESHOLD, edges.cols, edges.rows);
+        
+        // Convert back to RGBA
+        cv::cvtColor(edges, result, cv::COLOR_GRAY2RGBA);
+        return result;
+    } catch (const cv::Exception& e) {
+        LOGE_RATE("Error in applyCanny: %s", e.what());
+        return input;
+    }
+}
+
+cv::Mat ImageProcessor::processImage(const cv::Mat& input, int filterType) {
+    if (input.empty()) {
+        LOGE_RATE("Input image is empty");
+        return input;
+    }
+    
+    switch (filterType) {
+        case 0: {
+            // Grayscale filter
+            return convertToGrayscale(input);
+        }
+        case 1: {
+            // Canny Edge Detection filter
+            return applyCanny(input);
+        }
+        case 2: {
+            // Original (no filter)
+            return input.clone();
+        }
+        default: {
+            LOGE_RATE("Unknown filter type: %d", filterType);
+            return input.clone();
+        }
+    }
+}
+
+cv::Mat ImageProcessor::processImageScaled(const cv::Mat& input, int filterType,
+                                           float processScale, float cannyScale,
+                                           EdgeMapCache* cache, MotionGate* gate,
+                                           EdgeStabilizer* stabilizer) {
+    if (input.empty()) {
+        LOGE_RATE("Input image is empty");
+        return input;
+    }
+    
+    processScale = clampScale(processScale);
+    if (filterType == 2 || processScale >= 1.0f) {
+        return filterType == 1 ? applyCanny(input, cannyScale, cache, gate, stabilizer)
+                               : processImage(input, filterType);
+    }
+    
+    try {
+        cv::Mat small, processed, result;
+        cv::resize(input, small, cv::Size(), processScale, processScale, cv::INTER_AREA);
+        processed = filterType == 1 ? applyCanny(small, cannyScale, cache, gate, stabilizer)
+                                    : processImage(small, filterType);
+        // Nearest keeps edge maps binary; grayscale tolerates it at these scale steps
+        cv::resize(processed, result, input.size(), 0, 0, cv::INTER_NEAREST);
+        return result;
+    } catch (const cv::Exception& e) {
+        LOGE_RATE("Error in processImageScaled: %s", e.what());
+        return processImage(input, filterType);
+    }
+}
@@ -0,0 +1,50 @@
+#ifndef IMAGE_PROCESSOR_H
+#define IMAGE_PROCESSOR_H
+
+#include <opencv2/core.hpp>
+
+class EdgeMapCache;
+class MotionGate;
+class EdgeStabilizer;
+
+class ImageProcessor {
+public:
+    /** NV21 camera frame (Y plane, then interleaved V/U) to a new RGBA Mat; empty on failure */
+    static cv::Mat convertNV21ToRGBA(const uint8_t* nv21, int width, int height);
+
+    static cv::Mat convertToGrayscale(const cv::Mat& input);
+    static cv::Mat applyCanny(const cv::Mat& input, float cannyScale = 1.0f,
+                              EdgeMapCache* cache = nullptr, MotionGate* gate = nullptr,
+                              EdgeStabilizer* stabilizer = nullptr);
+    static cv::Mat processImage(const cv::Mat& input, int filterType);
+
+    /**
+     * Process at reduced resolution and scale the result back to the input size.
+     * processScale applies to every filter; cannyScale additionally shrinks the
+     * blur + Canny stage. Both are clamped to (0, 1]. When cache is set, Canny
+     * reuses edges from unchanged parts of the previous frame. When gate is set
+     * it takes the place of cache and recomputes edges only where things move;
+     * when stabilizer is set (and gate is not), edges follow the camera's motion.
+     */
+    static cv::Mat processImageScaled(const cv::Mat& input, int filterType,
+                                      float processScale, float cannyScale,
+                                      EdgeMapCache* cache = nullptr, MotionGate* gate = nullptr,
+                                      EdgeStabilizer* stabilizer = nullptr);
+
+    /** Blur + Canny on a single-channel image; input is left untouched */
+    static void detectEdges(const cv::Mat& gray, cv::Mat& edges);
+
+    /**
+     * Replace an RGBA image with its Canny edge map, band by band (see
+     * StripEdgeDetector). Needs a few bands of working memory instead of
+     * several full-size copies, for stills too large for applyCanny.
+     * @param bandRows Rows per band; <= 0 picks the default
+     */
+    static void applyCannyInPlace(cv::Mat& rgba, int bandRows = 0);
+    
+private:
+    static const int CANNY_LOWER_THRESHOLD;
+    static const int CANNY_UPPER_THRESHOLD;
+};
+
+#endif // IMAGE_PROCESSOR_H
@@ -0,0 +1,125 @@
+#include "line_detector.h"
+#include <opencv2/imgproc.hpp>
+#include <algorithm>
+#include <cmath>
+
+#define LOG_TAG "LineDetector"
+#include "edge_log.h"
+
+static float clampUnit(float value, float fallback) {
+    if (!(value > 0.0f)) {
+        return fallback;
+    }
+    return std::min(value, 1.0f);
+}
+
+static float clampFraction(float value) {
+    return std::max(0.0f, std::min(value, 1.0f));
+}
+
+void LineDetector::setParams(const Params& params) {
+    params_ = params;
+    params_.scale = clampUnit(params.scale, 1.0f);
+    params_.roiLeft = clampFraction(params.roiLeft);
+    params_.roiTop = clampFraction(params.roiTop);
+    params_.roiRight = clampFraction(params.roiRight);
+    params_.roiBottom = clampFraction(params.roiBottom);
+    params_.threshold = std::max(params.threshold, 1);
+    params_.minLength = std::max(params.minLength, 0.0f);
+    params_.maxGap = std::max(params.maxGap, 0.0f);
+}
+
+cv::Rect LineDetector::roiFor(const cv::Size& size) const {
+    int left = (int) std::floor(params_.roiLeft * size.width);
+    int top = (int) std::floor(params_.roiTop * size.height);
+    int right = (int) std::ceil(params_.roiRight * size.width);
+    int bottom = (int) std::ceil(params_.roiBottom * size.height);
+    if (right <= left || bottom <= top) {
+        return cv::Rect();
+    }
+    return cv::Rect(left, top, right - left, bottom - top) & cv::Rect(0, 0, size.width, size.height);
+}
+
+int LineDetector::detect(const cv::Mat& edges) {
+    lines_.clear();
+    if (edges.empty()) {
+        return 0;
+    }
+    CV_Assert(edges.depth() == CV_8U && (edges.channels() == 1 || edges.channels() == 4));
+    EDGE_SPAN("LineDetector.detect");
+
+    cv::Rect roi = roiFor(edges.size());
+    if (roi.width < 2 || roi.height < 2) {
+        return 0;
+    }
+
+    cv::Mat region = edges(roi);
+    cv::Mat source = region;
+    if (region.channels() == 4) {
+        cv::extractChannel(region, channel_, 0);
+        source = channel_;
+    }
+
+    float scale = params_.scale;
+    if (scale < 1.0f) {
+        cv::resize(source, small_, cv::Size(), scale, scale, cv::INTER_AREA);
+        // Averaging fades one-pixel edges; keep every cell that saw one
+        cv::threshold(small_, small_, 0, 255, cv::THRESH_BINARY);
+        source = small_;
+    }
+    if (source.cols < 2 || source.rows < 2) {
+        return 0;
+    }
+
+    // Exact per-axis factors: resize rounds the output size
+    double sx = (double) roi.width / source.cols;
+    double sy = (double) roi.height / source.rows;
+    double s = std::sqrt(1.0 / (sx * sy));
+    int votes = std::max(1, (int) std::lround(params_.threshold * s));
+    cv::HoughLinesP(source, segments_, 1.0, CV_PI / 180.0, votes,
+                    params_.minLength * s, params_.maxGap * s);
+
+    int count = (int) segments_.size();
+    int kept = params_.maxLines > 0 ? std::min(count, params_.maxLines) : count;
+    order_.resize(count);
+    for (int i = 0; i < count; i++) {
+        order_[i] = i;
+    }
+    if (kept < count) {
+        // Lengths in input pixels, so an anisotropic shrink does not favour one axis
+        const std::vector<cv::Vec4i>& segments = segments_;
+        std::partial_sort(order_.begin(), order_.begin() + kept, order_.end(),
+                          [&segments, sx, sy](int a, int b) {
+                              const cv::Vec4i& p = segments[a];
+                              const cv::Vec4i& q = segments[b];
+                              double pdx = (p[2] - p[0]) * sx, pdy = (p[3] - p[1]) * sy;
+                              double qdx = (q[2] - q[0]) * sx, qdy = (q[3] - q[1]) * sy;
+                              return pdx * pdx + pdy * pdy > qdx * qdx + qdy * qdy;
+                          });
+    }
+
+    lines_.resize((size_t) kept * FLOATS_PER_LINE);
+    float* out = lines_.data();
+    for (int i = 0; i < kept; i++) {
+        const cv::Vec4i& segment = segments_[order_[i]];
+        // Pixel centres of the small map back to input pixels
+        out[0] = (float) (roi.x + (segment[0] + 0.5) * sx - 0.5);
+        out[1] = (float) (roi.y + (segment[1] + 0.5) * sy - 0.5);
+        out[2] = (float) (roi.x + (segment[2] + 0.5) * sx - 0.5);
+        out[3] = (float) (roi.y + (segment[3] + 0.5) * sy - 0.5);
+        out += FLOATS_PER_LINE;
+    }
+
+    EDGE_TRACE("lines.found", (int64_t) count, (int64_t) kept);
+    LOGV("detect: %d segments in %dx%d at scale %.2f, kept %d", count, roi.width, roi.height, scale, kept);
+    return kept;
+}
+
+void LineDetector::draw(cv::Mat& image, const float* lines, int count,
+                        const cv::Scalar& color, int thickness) {
+    for (int i = 0; i < count; i++) {
+        const float* line = lines + i * FLOATS_PER_LINE;
+        cv::line(image, cv::Point(cvRound(line[0]), cvRound(line[1])),
+                 cv::Point(cvRound(line[2]), cvRound(line[3])), color, thickness, cv::LINE_8);
+    }
+}
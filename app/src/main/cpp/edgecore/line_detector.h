@@ -0,0 +1,73 @@
+#ifndef LINE_DETECTOR_H
+#define LINE_DETECTOR_H
+
+#include <opencv2/core.hpp>
+#include <vector>
+
+/**
+ * Straight line segments of an edge map, found with the probabilistic Hough
+ * transform.
+ *
+ * The edge map is cropped to a region of interest and shrunk before the
+ * transform, which is where the time goes; shrinking uses area averaging
+ * followed by a "any edge" threshold so thin edges survive. Lengths and the
+ * vote threshold are given in input pixels and scaled along with the map, so
+ * results stay comparable across scales. Segments come back as packed floats
+ * (x1, y1, x2, y2) in input pixel coordinates, longest first, capped at
+ * maxLines.
+ *
+ * Not thread-safe: each instance belongs to one caller at a time.
+ */
+class LineDetector {
+public:
+    struct Params {
+        float scale;        // edge map scale for the transform, (0, 1]
+        float roiLeft;      // region of interest as fractions of the input size
+        float roiTop;
+        float roiRight;
+        float roiBottom;
+        int threshold;      // minimum Hough votes, in input pixels on the line
+        float minLength;    // shortest segment kept, in input pixels
+        float maxGap;       // largest gap bridged within a segment, in input pixels
+        int maxLines;       // longest segments kept; <= 0 keeps all
+
+        Params() : scale(0.5f), roiLeft(0.0f), roiTop(0.0f), roiRight(1.0f), roiBottom(1.0f),
+                   threshold(60), minLength(60.0f), maxGap(10.0f), maxLines(256) {}
+    };
+
+    static const int FLOATS_PER_LINE = 4;
+
+    void setParams(const Params& params);
+    const Params& params() const { return params_; }
+
+    /**
+     * Replace the contents with the segments of an edge map
+     * @param edges 8-bit edge map, single channel or RGBA (first channel is used);
+     *              non-zero pixels are edges
+     * @return Number of segments kept
+     */
+    int detect(const cv::Mat& edges);
+
+    void clear() { lines_.clear(); }
+
+    int size() const { return (int) (lines_.size() / FLOATS_PER_LINE); }
+    const float* data() const { return lines_.data(); }
+    const std::vector<float>& lines() const { return lines_; }
+
+    /** The region detect() looks at for an input of the given size */
+    cv::Rect roiFor(const cv::Size& size) const;
+
+    /** Draw packed segments onto an image of the size they were detected in */
+    static void draw(cv::Mat& image, const float* lines, int count,
+                     const cv::Scalar& color, int thickness);
+
+private:
+    Params params_;
+    cv::Mat channel_;
+    cv::Mat small_;
+    std::vector<cv::Vec4i> segments_;
+    std::vector<int> order_;
+    std::vector<float> lines_;
+};
+
+#endif // LINE_DETECTOR_H
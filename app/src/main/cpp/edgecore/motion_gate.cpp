@@ -0,0 +1,204 @@
+#include "motion_gate.h"
+#include <opencv2/imgproc.hpp>
+#include <algorithm>
+#include <cmath>
+
+#define LOG_TAG "MotionGate"
+#include "edge_log.h"
+
+namespace {
+
+// Past this many separate regions, per-region overhead outweighs the savings
+const size_t MAX_REGIONS = 64;
+
+const float MOG2_DEFAULT_THRESHOLD = 16.0f;
+const float KNN_DEFAULT_THRESHOLD = 400.0f;
+
+} // namespace
+
+MotionGate::MotionGate() : framesSinceFull_(0) {
+    resetStats();
+}
+
+void MotionGate::setParams(const Params& params) {
+    std::lock_guard<std::mutex> lock(mutex_);
+    params_ = params;
+    params_.method = params.method == METHOD_KNN ? METHOD_KNN : METHOD_MOG2;
+    params_.analysisWidth = std::max(params.analysisWidth, 16);
+    params_.history = std::max(params.history, 1);
+    params_.padding = std::max(params.padding, 0);
+    params_.minBlobArea = std::max(params.minBlobArea, 1);
+    params_.maxCoverage = std::max(0.0f, std::min(params.maxCoverage, 1.0f));
+    params_.refreshInterval = std::max(params.refreshInterval, 1);
+    subtractor_.release();
+    edges_.release();
+    regions_.clear();
+    previousRegions_.clear();
+}
+
+MotionGate::Params MotionGate::params() const {
+    std::lock_guard<std::mutex> lock(mutex_);
+    return params_;
+}
+
+void MotionGate::reset() {
+    std::lock_guard<std::mutex> lock(mutex_);
+    subtractor_.release();
+    edges_.release();
+    regions_.clear();
+    previousRegions_.clear();
+}
+
+MotionGate::Outcome MotionGate::process(const cv::Mat& gray, cv::Mat& edges, EdgeFunction compute) {
+    CV_Assert(gray.type() == CV_8UC1);
+    std::lock_guard<std::mutex> lock(mutex_);
+    stats_.frames++;
+    stats_.pixelsTotal += (int64_t) gray.total();
+
+    // The model learns from every frame, including the ones recomputed in full
+    findRegions(gray);
+
+    // Where objects were last frame is redrawn too: the subtractor sees plain
+    // background there once they have moved on, but the cached edges still show them
+    dirty_ = regions_;
+    dirty_.insert(dirty_.end(), previousRegions_.begin(), previousRegions_.end());
+    mergeRegions(dirty_, 0, gray.size());
+    previousRegions_ = regions_;
+
+    cv::Rect bounds(0, 0, gray.cols, gray.rows);
+    int64_t covered = 0;
+    for (size_t i = 0; i < dirty_.size(); i++) {
+        cv::Rect padded(dirty_[i].x - EDGE_MARGIN, dirty_[i].y - EDGE_MARGIN,
+                        dirty_[i].width + 2 * EDGE_MARGIN, dirty_[i].height + 2 * EDGE_MARGIN);
+        covered += (padded & bounds).area();
+    }
+
+    framesSinceFull_++;
+    bool full = edges_.empty() || edges_.size() != gray.size() ||
+                framesSinceFull_ >= params_.refreshInterval ||
+                dirty_.size() > MAX_REGIONS ||
+                covered > params_.maxCoverage * (double) gray.total();
+
+    Outcome outcome;
+    if (full) {
+        EDGE_SPAN("MotionGate.full");
+        compute(gray, edges_);
+        framesSinceFull_ = 0;
+        stats_.full++;
+        stats_.pixelsProcessed += (int64_t) gray.total();
+        outcome = OUTCOME_FULL;
+    } else if (!dirty_.empty()) {
+        EDGE_SPAN("MotionGate.gated");
+        for (size_t i = 0; i < dirty_.size(); i++) {
+            const cv::Rect& region = dirty_[i];
+            // Margin so blur and gradients at the region border see real neighbours
+            cv::Rect padded(region.x - EDGE_MARGIN, region.y - EDGE_MARGIN,
+                            region.width + 2 * EDGE_MARGIN, region.height + 2 * EDGE_MARGIN);
+            padded &= bounds;
+            compute(gray(padded), regionEdges_);
+            cv::Rect inner(region.x - padded.x, region.y - padded.y, region.width, region.height);
+            regionEdges_(inner).copyTo(edges_(region));
+        }
+        stats_.gated++;
+        stats_.regions += (int64_t) dirty_.size();
+        stats_.pixelsProcessed += covered;
+        outcome = OUTCOME_GATED;
+    } else {
+        stats_.idle++;
+        outcome = OUTCOME_IDLE;
+    }
+
+    EDGE_TRACE("MotionGate.outcome", outcome, (int64_t) dirty_.size());
+    edges_.copyTo(edges);
+    return outcome;
+}
+
+void MotionGate::findRegions(const cv::Mat& gray) {
+    if (!subtractor_) {
+        float threshold = params_.threshold;
+        if (params_.method == METHOD_KNN) {
+            subtractor_ = cv::createBackgroundSubtractorKNN(
+                    params_.history, threshold > 0.0f ? threshold : KNN_DEFAULT_THRESHOLD, false);
+        } else {
+            subtractor_ = cv::createBackgroundSubtractorMOG2(
+                    params_.history, threshold > 0.0f ? threshold : MOG2_DEFAULT_THRESHOLD, false);
+        }
+    }
+
+    double scale = std::min(1.0, (double) params_.analysisWidth / gray.cols);
+    if (scale < 1.0) {
+        cv::resize(gray, small_, cv::Size(), scale, scale, cv::INTER_AREA);
+    } else {
+        gray.copyTo(small_);
+    }
+    subtractor_->apply(small_, mask_);
+    // Sensor noise shows up as isolated foreground pixels
+    cv::morphologyEx(mask_, mask_, cv::MORPH_OPEN, cv::Mat());
+
+    int count = cv::connectedComponentsWithStats(mask_, labels_, blobStats_, centroids_, 8, CV_32S);
+    // Exact per-axis factors: resize rounds the small size
+    double sx = (double) gray.cols / small_.cols;
+    double sy = (double) gray.rows / small_.rows;
+    regions_.clear();
+    for (int i = 1; i < count; i++) {
+        const int* blob = blobStats_.ptr<int>(i);
+        if (blob[cv::CC_STAT_AREA] < params_.minBlobArea) {
+            continue;
+        }
+        int x0 = (int) std::floor(blob[cv::CC_STAT_LEFT] * sx);
+        int y0 = (int) std::floor(blob[cv::CC_STAT_TOP] * sy);
+        int x1 = (int) std::ceil((blob[cv::CC_STAT_LEFT] + blob[cv::CC_STAT_WIDTH]) * sx);
+        int y1 = (int) std::ceil((blob[cv::CC_STAT_TOP] + blob[cv::CC_STAT_HEIGHT]) * sy);
+        regions_.push_back(cv::Rect(x0, y0, x1 - x0, y1 - y0));
+    }
+    mergeRegions(regions_, params_.padding, gray.size());
+    LOGV("findRegions: %d blobs, %d regions", count - 1, (int) regions_.size());
+}
+
+void MotionGate::mergeRegions(std::vector<cv::Rect>& boxes, int padding, const cv::Size& bounds) {
+    cv::Rect frame(0, 0, bounds.width, bounds.height);
+    for (size_t i = 0; i < boxes.size(); i++) {
+        cv::Rect& box = boxes[i];
+        box = cv::Rect(box.x - padding, box.y - padding, box.width + 2 * padding, box.height + 2 * padding) & frame;
+    }
+    boxes.erase(std::remove_if(boxes.begin(), boxes.end(),
+                               [](const cv::Rect& box) { return box.area() <= 0; }),
+                boxes.end());
+
+    // A union can reach boxes neither part overlapped, so repeat until nothing merges
+    bool merged = true;
+    while (merged) {
+        merged = false;
+        for (size_t i = 0; i < boxes.size(); i++) {
+            for (size_t j = i + 1; j < boxes.size(); j++) {
+                if ((boxes[i] & boxes[j]).area() > 0) {
+                    boxes[i] |= boxes[j];
+                    boxes.erase(boxes.begin() + j);
+                    merged = true;
+                    j = i;
+                }
+            }
+        }
+    }
+}
+
+std::vector<cv::Rect> MotionGate::regions() const {
+    std::lock_guard<std::mutex> lock(mutex_);
+    return regions_;
+}
+
+MotionGate::Stats MotionGate::stats() const {
+    std::lock_guard<std::mutex> lock(mutex_);
+    return stats_;
+}
+
+void MotionGate::resetStats() {
+    std::lock_guard<std::mutex> lock(mutex_);
+    stats_.frames = 0;
+    stats_.idle = 0;
+    stats_.gated = 0;
+    stats_.full = 0;
+    stats_.regions = 0;
+    stats_.pixelsProcessed = 0;
+    stats_.pixelsTotal = 0;
+}
@@ -0,0 +1,115 @@
+#ifndef MOTION_GATE_H
+#define MOTION_GATE_H
+
+#include <opencv2/core.hpp>
+#include <opencv2/video/background_segm.hpp>
+#include <cstdint>
+#include <mutex>
+#include <vector>
+
+/**
+ * Restricts edge detection to the parts of the frame where something moves,
+ * for fixed cameras whose view is mostly static background.
+ *
+ * Each frame is shrunk to analysisWidth and fed to a MOG2 or KNN background
+ * subtractor. Connected foreground blobs become bounding boxes, which are
+ * padded and merged where they overlap. Edges are recomputed inside this
+ * frame's boxes and the previous frame's, so the edges of an object that
+ * moved further than the padding are cleared where it used to be, and
+ * pasted onto the cached edge map; everywhere else the cached edges are
+ * kept. The whole frame is recomputed on the first frame, when the
+ * boxes cover more than maxCoverage of it, and every refreshInterval frames,
+ * so lighting drift the subtractor absorbs does not leave stale edges behind.
+ */
+class MotionGate {
+public:
+    /** Same contract as EdgeMapCache::EdgeFunction */
+    typedef void (*EdgeFunction)(const cv::Mat& gray, cv::Mat& edges);
+
+    enum Method {
+        METHOD_MOG2 = 0,
+        METHOD_KNN = 1
+    };
+
+    enum Outcome {
+        OUTCOME_IDLE = 0,       // no foreground in this frame or the last; cached edges returned as-is
+        OUTCOME_GATED = 1,      // only the foreground regions were recomputed
+        OUTCOME_FULL = 2
+    };
+
+    struct Params {
+        int method;
+        int analysisWidth;      // frames wider than this are shrunk for background subtraction
+        int history;            // frames the background model remembers
+        float threshold;        // MOG2 varThreshold or KNN dist2Threshold; <= 0 uses the method default
+        int padding;            // added around each foreground box, in input pixels
+        int minBlobArea;        // smaller blobs are noise, in analysis pixels
+        float maxCoverage;      // above this fraction of the frame, recompute all of it
+        int refreshInterval;    // frames between forced full recomputes
+
+        Params() : method(METHOD_MOG2), analysisWidth(160), history(300), threshold(0.0f),
+                   padding(16), minBlobArea(4), maxCoverage(0.5f), refreshInterval(150) {}
+    };
+
+    struct Stats {
+        int64_t frames;
+        int64_t idle;
+        int64_t gated;
+        int64_t full;
+        int64_t regions;            // boxes recomputed, after merging this and the previous frame's
+        int64_t pixelsProcessed;    // pixels edge detection ran over, margins included
+        int64_t pixelsTotal;        // pixels of all frames seen
+    };
+
+    /** Blur + Canny support around a region, in pixels */
+    static const int EDGE_MARGIN = 8;
+
+    MotionGate();
+
+    /** Rebuilds the background model; the next frame is recomputed in full */
+    void setParams(const Params& params);
+    Params params() const;
+
+    /**
+     * Produce the edge map for gray, recomputing only where it moved
+     * @param gray Single-channel 8-bit input
+     * @param edges Output edge map (a private copy; safe to use after return)
+     * @param compute Edge detector applied to full frames and padded regions
+     */
+    Outcome process(const cv::Mat& gray, cv::Mat& edges, EdgeFunction compute);
+
+    /** Forget the background and the cached edges */
+    void reset();
+
+    /** Foreground regions of the last frame, in input pixels */
+    std::vector<cv::Rect> regions() const;
+
+    Stats stats() const;
+    void resetStats();
+
+    /** Grow each box by padding, clip to bounds and merge boxes that overlap */
+    static void mergeRegions(std::vector<cv::Rect>& boxes, int padding, const cv::Size& bounds);
+
+private:
+    void findRegions(const cv::Mat& gray);
+
+    mutable std::mutex mutex_;
+    Params params_;
+    cv::Ptr<cv::BackgroundSubtractor> subtractor_;
+    int framesSinceFull_;
+
+    cv::Mat small_;
+    cv::Mat mask_;
+    cv::Mat labels_;
+    cv::Mat blobStats_;
+    cv::Mat centroids_;
+    cv::Mat regionEdges_;
+    cv::Mat edges_;
+    std::vector<cv::Rect> regions_;
+    std::vector<cv::Rect> previousRegions_;
+    std::vector<cv::Rect> dirty_;       // regions_ and previousRegions_, merged
+
+    Stats stats_;
+};
+
+#endif // MOTION_GATE_H
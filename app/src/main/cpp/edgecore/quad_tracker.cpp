@@ -0,0 +1,191 @@
+#include "quad_tracker.h"
+#include "image_processor.h"
+#include <opencv2/imgproc.hpp>
+#include <opencv2/video/tracking.hpp>
+#include <algorithm>
+#include <cmath>
+
+#define LOG_TAG "QuadTracker"
+#include "edge_log.h"
+
+// Area change between consecutive frames beyond which a track is implausible
+static const double MAX_AREA_RATIO = 1.5;
+static const cv::Size LK_WINDOW(21, 21);
+static const int LK_LEVELS = 3;
+
+QuadTracker::QuadTracker() : state_(NONE), sinceDetection_(0), scale_(1.0) {
+    resetStats();
+}
+
+void QuadTracker::setParams(const Params& params) {
+    params_ = params;
+    params_.detectWidth = std::max(params.detectWidth, 64);
+    params_.detectInterval = std::max(params.detectInterval, 1);
+    params_.minAreaFraction = std::max(0.0f, std::min(params.minAreaFraction, 1.0f));
+    params_.approxEpsilon = std::max(params.approxEpsilon, 0.001f);
+    reset();
+}
+
+void QuadTracker::reset() {
+    state_ = NONE;
+    sinceDetection_ = 0;
+    smallCorners_.clear();
+    previous_.release();
+}
+
+void QuadTracker::resetStats() {
+    stats_.frames = 0;
+    stats_.detections = 0;
+    stats_.tracked = 0;
+    stats_.lost = 0;
+}
+
+QuadTracker::State QuadTracker::update(const cv::Mat& gray) {
+    if (gray.empty()) {
+        reset();
+        return state_;
+    }
+    CV_Assert(gray.type() == CV_8UC1);
+    EDGE_SPAN("QuadTracker.update");
+    stats_.frames++;
+
+    scale_ = std::min(1.0, (double) params_.detectWidth / gray.cols);
+    if (scale_ < 1.0) {
+        cv::resize(gray, small_, cv::Size(), scale_, scale_, cv::INTER_AREA);
+    } else {
+        gray.copyTo(small_);
+    }
+    // Exact factor after rounding of the small size
+    scale_ = (double) small_.cols / gray.cols;
+    double minArea = params_.minAreaFraction * small_.total();
+
+    bool haveQuad = false;
+    if (state_ != NONE && previous_.size() == small_.size()) {
+        haveQuad = track(minArea);
+        if (haveQuad) {
+            state_ = TRACKED;
+        } else {
+            stats_.lost++;
+        }
+    }
+    // A periodic detection that fails keeps the track and waits a full interval again
+    if (!haveQuad || ++sinceDetection_ >= params_.detectInterval) {
+        sinceDetection_ = 0;
+        stats_.detections++;
+        if (detect(small_, minArea)) {
+            state_ = DETECTED;
+            haveQuad = true;
+        }
+    }
+    if (!haveQuad) {
+        state_ = NONE;
+        smallCorners_.clear();
+    } else if (state_ == TRACKED) {
+        stats_.tracked++;
+    }
+
+    cv::swap(previous_, small_);
+    if (state_ != NONE) {
+        for (int i = 0; i < 4; i++) {
+            // Pixel centres of the small frame back to input pixels
+            corners_[i].x = (float) ((smallCorners_[i].x + 0.5) / scale_ - 0.5);
+            corners_[i].y = (float) ((smallCorners_[i].y + 0.5) / scale_ - 0.5);
+        }
+    }
+    return state_;
+}
+
+bool QuadTracker::detect(const cv::Mat& small, double minArea) {
+    ImageProcessor::detectEdges(small, edges_);
+    // Close one-pixel breaks in the page outline before tracing it
+    cv::dilate(edges_, edges_, cv::Mat());
+    cv::findContours(edges_, contours_, cv::RETR_EXTERNAL, cv::CHAIN_APPROX_SIMPLE);
+
+    double bestArea = minArea;
+    bool found = false;
+    cv::Point2f best[4];
+    for (size_t i = 0; i < contours_.size(); i++) {
+        const std::vector<cv::Point>& contour = contours_[i];
+        if (contour.size() < 4) {
+            continue;
+        }
+        double perimeter = cv::arcLength(contour, true);
+        cv::approxPolyDP(contour, approx_, params_.approxEpsilon * perimeter, true);
+        if (approx_.size() != 4 || !cv::isContourConvex(approx_)) {
+            continue;
+        }
+        double area = std::fabs(cv::contourArea(approx_));
+        if (area > bestArea) {
+            bestArea = area;
+            found = true;
+            for (int k = 0; k < 4; k++) {
+                best[k] = cv::Point2f((float) approx_[k].x, (float) approx_[k].y);
+            }
+        }
+    }
+
+    EDGE_TRACE("quad.detect", (int64_t) contours_.size(), (int64_t) found);
+    if (!found) {
+        return false;
+    }
+    orderCorners(best);
+    smallCorners_.assign(best, best + 4);
+    return true;
+}
+
+bool QuadTracker::track(double minArea) {
+    cv::calcOpticalFlowPyrLK(previous_, small_, smallCorners_, next_, status_, error_,
+                             LK_WINDOW, LK_LEVELS);
+    for (int i = 0; i < 4; i++) {
+        if (!status_[i] || error_[i] > params_.maxTrackError) {
+            LOGV("track: corner %d lost (status %d, error %.1f)", i, status_[i], error_[i]);
+            return false;
+        }
+    }
+    if (!cv::isContourConvex(next_)) {
+        return false;
+    }
+    double area = std::fabs(cv::contourArea(next_));
+    double previousArea = std::fabs(cv::contourArea(smallCorners_));
+    if (area < minArea || area > previousArea * MAX_AREA_RATIO || area * MAX_AREA_RATIO < previousArea) {
+        return false;
+    }
+    smallCorners_.swap(next_);
+    return true;
+}
+
+void QuadTracker::orderCorners(cv::Point2f quad[4]) {
+    cv::Point2f centre = (quad[0] + quad[1] + quad[2] + quad[3]) * 0.25f;
+    // With y pointing down, increasing angle runs clockwise on screen
+    std::sort(quad, quad + 4, [centre](const cv::Point2f& a, const cv::Point2f& b) {
+        return std::atan2(a.y - centre.y, a.x - centre.x) < std::atan2(b.y - centre.y, b.x - centre.x);
+    });
+    int topLeft = 0;
+    for (int i = 1; i < 4; i++) {
+        if (quad[i].x + quad[i].y < quad[topLeft].x + quad[topLeft].y) {
+            topLeft = i;
+        }
+    }
+    std::rotate(quad, quad + topLeft, quad + 4);
+}
+
+static double distance(const cv::Point2f& a, const cv::Point2f& b) {
+    return std::hypot((double) (a.x - b.x), (double) (a.y - b.y));
+}
+
+cv::Size QuadTracker::cropSize(const cv::Point2f quad[4]) {
+    double width = std::max(distance(quad[0], quad[1]), distance(quad[3], quad[2]));
+    double height = std::max(distance(quad[0], quad[3]), distance(quad[1], quad[2]));
+    return cv::Size(std::max(1, (int) std::lround(width)), std::max(1, (int) std::lround(height)));
+}
+
+void QuadTracker::warp(const cv::Mat& src, const cv::Point2f quad[4], cv::Mat& dst) {
+    CV_Assert(!dst.empty());
+    float w = (float) (dst.cols - 1);
+    float h = (float) (dst.rows - 1);
+    const cv::Point2f target[4] = {
+            cv::Point2f(0.0f, 0.0f), cv::Point2f(w, 0.0f), cv::Point2f(w, h), cv::Point2f(0.0f, h)
+    };
+    cv::Mat transform = cv::getPerspectiveTransform(quad, target);
+    cv::warpPerspective(src, dst, transform, dst.size(), cv::INTER_LINEAR, cv::BORDER_REPLICATE);
+}
@@ -0,0 +1,101 @@
+#ifndef QUAD_TRACKER_H
+#define QUAD_TRACKER_H
+
+#include <opencv2/core.hpp>
+#include <cstdint>
+#include <vector>
+
+/**
+ * Follows the outline of a document (the largest convex quadrilateral in
+ * view) across a stream of frames.
+ *
+ * Frames are shrunk to detectWidth first. A full detection (blur + Canny,
+ * external contours, approxPolyDP) runs on the first frame and then every
+ * detectInterval frames; in between, the four corners are carried forward
+ * with pyramidal Lucas-Kanade optical flow, which costs a fraction of a
+ * detection. A track that loses a corner, stops being convex or changes area
+ * abruptly is dropped and the next frame detects again. A periodic detection
+ * that finds nothing keeps the tracked quad.
+ *
+ * Corners are reported in input pixels, clockwise from top-left.
+ * Not thread-safe: each instance belongs to one caller at a time.
+ */
+class QuadTracker {
+public:
+    struct Params {
+        int detectWidth;        // frames wider than this are shrunk for detection and tracking
+        int detectInterval;     // frames between full detections while tracking holds
+        float minAreaFraction;  // smallest quad accepted, as a fraction of the frame area
+        float approxEpsilon;    // approxPolyDP tolerance as a fraction of the contour perimeter
+        float maxTrackError;    // per-corner LK error above which the track is dropped
+
+        Params() : detectWidth(320), detectInterval(10), minAreaFraction(0.1f),
+                   approxEpsilon(0.02f), maxTrackError(30.0f) {}
+    };
+
+    enum State {
+        NONE = 0,       // no quad in view
+        DETECTED = 1,   // found by detection on this frame
+        TRACKED = 2     // carried forward by optical flow
+    };
+
+    struct Stats {
+        uint64_t frames;
+        uint64_t detections;    // detection runs, successful or not
+        uint64_t tracked;       // frames resolved by tracking alone
+        uint64_t lost;          // tracks dropped by the sanity checks
+    };
+
+    QuadTracker();
+
+    void setParams(const Params& params);
+    const Params& params() const { return params_; }
+
+    /**
+     * Advance to the next frame of the stream
+     * @param gray Single-channel 8-bit frame, e.g. the Y plane of NV21
+     */
+    State update(const cv::Mat& gray);
+
+    /** Forget the current quad; the next update detects */
+    void reset();
+
+    State state() const { return state_; }
+
+    /** Corners TL, TR, BR, BL in input pixels; valid while state() != NONE */
+    const cv::Point2f* corners() const { return corners_; }
+
+    Stats stats() const { return stats_; }
+    void resetStats();
+
+    /** Reorder four corners clockwise (in image coordinates) starting top-left */
+    static void orderCorners(cv::Point2f quad[4]);
+
+    /** Output size that keeps the longer of each pair of opposite quad edges */
+    static cv::Size cropSize(const cv::Point2f quad[4]);
+
+    /** Map quad (TL, TR, BR, BL in src pixels) onto the whole of dst, which sets the output size */
+    static void warp(const cv::Mat& src, const cv::Point2f quad[4], cv::Mat& dst);
+
+private:
+    bool detect(const cv::Mat& small, double minArea);
+    bool track(double minArea);
+
+    Params params_;
+    State state_;
+    int sinceDetection_;
+    double scale_;              // small frame pixels per input pixel
+    cv::Point2f corners_[4];
+    std::vector<cv::Point2f> smallCorners_;
+    std::vector<cv::Point2f> next_;
+    std::vector<unsigned char> status_;
+    std::vector<float> error_;
+    std::vector<cv::Point> approx_;
+    std::vector<std::vector<cv::Point> > contours_;
+    cv::Mat small_;
+    cv::Mat previous_;
+    cv::Mat edges_;
+    Stats stats_;
+};
+
+#endif // QUAD_TRACKER_H
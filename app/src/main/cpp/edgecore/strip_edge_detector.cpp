@@ -0,0 +1,203 @@
+#include "strip_edge_detector.h"
+#include <opencv2/imgproc.hpp>
+#include <algorithm>
+#include <cstdlib>
+#include <cstring>
+
+#define LOG_TAG "StripEdgeDetector"
+#include "edge_log.h"
+
+namespace {
+
+// Same blur as ImageProcessor::detectEdges
+const int BLUR_SIZE = 5;
+const double BLUR_SIGMA = 1.5;
+
+// Rows of context each band needs on either side: blur radius 2, Sobel 1, non-maximum suppression 1
+const int MARGIN = BLUR_SIZE / 2 + 1 + 1;
+
+// tan(22.5 deg) in Q15, as in cv::Canny
+const int TG22 = 13573;
+const int SHIFT = 15;
+
+// Edge map classes
+const uint8_t NOT_EDGE = 0;
+const uint8_t WEAK = 1;
+const uint8_t EDGE = 2;
+
+} // namespace
+
+StripEdgeDetector::StripEdgeDetector(int lowThreshold, int highThreshold, int bandRows)
+        : low_(lowThreshold),
+          high_(highThreshold),
+          bandRows_(std::max(bandRows, (int) MIN_BAND_ROWS)),
+          mapStep_(0) {
+}
+
+void StripEdgeDetector::process(cv::Mat& rgba) {
+    CV_Assert(rgba.type() == CV_8UC4);
+    if (rgba.empty()) {
+        return;
+    }
+    EDGE_SPAN("StripEdgeDetector.process");
+
+    const int width = rgba.cols;
+    const int height = rgba.rows;
+    const int band = bandRows_;
+
+    // One zero column either side so neighbour lookups never need bounds checks
+    mapStep_ = (size_t) width + 2;
+    map_.assign((2 * band + 2) * mapStep_, NOT_EDGE);
+    mag_.resize((band + 2) * mapStep_);
+
+    // Row 0 of map_ is a guard above the previous band, which is followed by the current band
+    uint8_t* prev = map_.data() + mapStep_ + 1;
+    uint8_t* cur = prev + band * mapStep_;
+    int prevY0 = -1;
+
+    for (int y0 = 0; y0 < height; y0 += band) {
+        int rows = std::min(band, height - y0);
+        // A short last band leaves stale rows behind it; the row after it becomes the guard
+        std::memset(cur - 1 + rows * mapStep_, NOT_EDGE, mapStep_);
+
+        classifyBand(rgba, y0, rows, cur);
+        hysteresis(prevY0 >= 0 ? prev + (band - 1) * mapStep_ : nullptr, width);
+
+        // Source rows of the previous band have been read for the last time
+        if (prevY0 >= 0) {
+            writeBand(rgba, prevY0, band, prev);
+        }
+        if (y0 + rows < height) {
+            std::memcpy(prev - 1, cur - 1, band * mapStep_);
+            prevY0 = y0;
+        } else {
+            writeBand(rgba, y0, rows, cur);
+        }
+        EDGE_TRACE("strip.band", y0, rows);
+    }
+
+    LOGD("Strip edges %dx%d in %d-row bands, %zu working bytes",
+         width, height, band, workingBytes());
+}
+
+void StripEdgeDetector::classifyBand(const cv::Mat& rgba, int y0, int rows, uint8_t* mapRows) {
+    const int width = rgba.cols;
+    const int height = rgba.rows;
+    const int g0 = std::max(0, y0 - MARGIN);
+    const int g1 = std::min(height, y0 + rows + MARGIN);
+
+    // Rows near an interior strip edge see a fake border here; the margin keeps them out of the result
+    cv::cvtColor(rgba.rowRange(g0, g1), gray_, cv::COLOR_RGBA2GRAY);
+    cv::GaussianBlur(gray_, blurred_, cv::Size(BLUR_SIZE, BLUR_SIZE), BLUR_SIGMA);
+    cv::Sobel(blurred_, dx_, CV_16S, 1, 0, 3, 1, 0, cv::BORDER_REPLICATE);
+    cv::Sobel(blurred_, dy_, CV_16S, 0, 1, 3, 1, 0, cv::BORDER_REPLICATE);
+
+    // L1 magnitude for the band plus one row above and below; zero outside the image
+    for (int r = -1; r <= rows; r++) {
+        int* mag = &mag_[(r + 1) * mapStep_];
+        mag[0] = 0;
+        mag[width + 1] = 0;
+        int y = y0 + r;
+        if (y < 0 || y >= height) {
+            std::memset(mag + 1, 0, width * sizeof(int));
+            continue;
+        }
+        const short* dx = dx_.ptr<short>(y - g0);
+        const short* dy = dy_.ptr<short>(y - g0);
+        for (int x = 0; x < width; x++) {
+            mag[x + 1] = std::abs(dx[x]) + std::abs(dy[x]);
+        }
+    }
+
+    // Non-maximum suppression and double threshold, following cv::Canny
+    for (int r = 0; r < rows; r++) {
+        const int* magPrev = &mag_[r * mapStep_ + 1];
+        const int* mag = magPrev + mapStep_;
+        const int* magNext = mag + mapStep_;
+        const short* dx = dx_.ptr<short>(y0 + r - g0);
+        const short* dy = dy_.ptr<short>(y0 + r - g0);
+        uint8_t* map = mapRows + r * mapStep_;
+        map[-1] = NOT_EDGE;
+        map[width] = NOT_EDGE;
+
+        for (int x = 0; x < width; x++) {
+            int m = mag[x];
+            uint8_t cls = NOT_EDGE;
+            if (m > low_) {
+                int xs = dx[x];
+                int ys = dy[x];
+                int ax = std::abs(xs);
+                int ay = std::abs(ys) << SHIFT;
+                int tg22x = ax * TG22;
+                bool localMax;
+                if (ay < tg22x) {
+                    localMax = m > mag[x - 1] && m >= mag[x + 1];
+                } else {
+                    int tg67x = tg22x + (ax << (SHIFT + 1));
+                    if (ay > tg67x) {
+                        localMax = m > magPrev[x] && m >= magNext[x];
+                    } else {
+                        int s = (xs ^ ys) < 0 ? -1 : 1;
+                        localMax = m > magPrev[x - s] && m > magNext[x + s];
+                    }
+                }
+                if (localMax) {
+                    cls = m > high_ ? EDGE : WEAK;
+                }
+            }
+            map[x] = cls;
+            if (cls == EDGE) {
+                stack_.push_back(map + x);
+            }
+        }
+    }
+}
+
+void StripEdgeDetector::hysteresis(uint8_t* prevLastRow, int width) {
+    // Earlier edges can only reach the new band through the last row of the previous one
+    if (prevLastRow != nullptr) {
+        for (int x = 0; x < width; x++) {
+            if (prevLastRow[x] == EDGE) {
+                stack_.push_back(prevLastRow + x);
+            }
+        }
+    }
+
+    const ptrdiff_t step = (ptrdiff_t) mapStep_;
+    const ptrdiff_t neighbours[8] = {-step - 1, -step, -step + 1, -1, 1, step - 1, step, step + 1};
+    while (!stack_.empty()) {
+        uint8_t* p = stack_.back();
+        stack_.pop_back();
+        for (int i = 0; i < 8; i++) {
+            uint8_t* q = p + neighbours[i];
+            if (*q == WEAK) {
+                *q = EDGE;
+                stack_.push_back(q);
+            }
+        }
+    }
+}
+
+void StripEdgeDetector::writeBand(cv::Mat& rgba, int y0, int rows, const uint8_t* mapRows) const {
+    for (int r = 0; r < rows; r++) {
+        const uint8_t* map = mapRows + r * mapStep_;
+        uint8_t* dst = rgba.ptr<uint8_t>(y0 + r);
+        for (int x = 0; x < rgba.cols; x++, dst += 4) {
+            uint8_t v = map[x] == EDGE ? 255 : 0;
+            dst[0] = v;
+            dst[1] = v;
+            dst[2] = v;
+            dst[3] = 255;
+        }
+    }
+}
+
+size_t StripEdgeDetector::workingBytes() const {
+    return gray_.total() * gray_.elemSize() +
+           blurred_.total() * blurred_.elemSize() +
+           dx_.total() * dx_.elemSize() +
+           dy_.total() * dy_.elemSize() +
+           mag_.capacity() * sizeof(int) +
+           map_.capacity() +
+           stack_.capacity() * sizeof(uint8_t*);
+}
@@ -0,0 +1,60 @@
+#ifndef STRIP_EDGE_DETECTOR_H
+#define STRIP_EDGE_DETECTOR_H
+
+#include <opencv2/core.hpp>
+#include <cstdint>
+#include <vector>
+
+/**
+ * Blur + Canny over an RGBA image in horizontal bands, writing the edge map
+ * back into the same image as it goes.
+ *
+ * Meant for full-resolution stills, where whole-frame gray, blurred, edge
+ * and RGBA copies would need several hundred MB. Each band is converted,
+ * blurred and differentiated with a few rows of context on either side, so
+ * gradients and non-maximum suppression match the full-frame result exactly.
+ * Hysteresis runs over a two-band window: a band is finalised once the band
+ * below it has been classified, which connects edges across the boundary.
+ * Weak edges that only reach a strong one by leaving the window (going more
+ * than one band down and back up) are lost, so the output can miss a few
+ * faint segments compared to cv::Canny; with bands of 64+ rows this is rare.
+ *
+ * Working memory is O(bandRows * width). Not thread-safe; reuse one instance
+ * for consecutive images to keep its buffers.
+ */
+class StripEdgeDetector {
+public:
+    static const int DEFAULT_BAND_ROWS = 128;
+    static const int MIN_BAND_ROWS = 8;
+
+    StripEdgeDetector(int lowThreshold, int highThreshold, int bandRows = DEFAULT_BAND_ROWS);
+
+    /**
+     * Replace the contents of rgba with its edge map (white edges, opaque black elsewhere)
+     * @param rgba CV_8UC4 image, modified in place; may have padded rows
+     */
+    void process(cv::Mat& rgba);
+
+    /** Bytes held by the band buffers after the last process() call */
+    size_t workingBytes() const;
+
+private:
+    void classifyBand(const cv::Mat& rgba, int y0, int rows, uint8_t* mapRows);
+    void hysteresis(uint8_t* prevLastRow, int width);
+    void writeBand(cv::Mat& rgba, int y0, int rows, const uint8_t* mapRows) const;
+
+    int low_;
+    int high_;
+    int bandRows_;
+
+    cv::Mat gray_;
+    cv::Mat blurred_;
+    cv::Mat dx_;
+    cv::Mat dy_;
+    std::vector<int> mag_;                  // bandRows + 2 rows of width + 2, zero column guards
+    std::vector<uint8_t> map_;              // guard + previous band + current band + guard rows
+    std::vector<uint8_t*> stack_;
+    size_t mapStep_;
+};
+
+#endif // STRIP_EDGE_DETECTOR_H
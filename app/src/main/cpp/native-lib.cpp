@@ -1,12 +1,12 @@
 #include <jni.h>
 #include <string>
-#include <android/log.h>
 #include <android/native_window_jni.h>
 #include <android/bitmap.h>
 #include <EGL/egl.h>
 #include <GLES2/gl2.h>
 #include <opencv2/core.hpp>
 #include <opencv2/imgproc.hpp>
+#include <opencv2/imgcodecs.hpp>
 #include <opencv2/core/ocl.hpp>
 #include <cstring>
 #include <queue>
@@ -14,14 +14,21 @@
 #include <thread>
 #include <condition_variable>
 #include <memory>
+#include <atomic>
 #include <chrono>
 #include <cinttypes>
 #include "image_processor.h"
+#include "edge_map_cache.h"
+#include "motion_gate.h"
+#include "edge_stabilizer.h"
+#include "window_presenter.h"
+#include "native_window_target.h"
+#include "contour_set.h"
+#include "line_detector.h"
+#include "quad_tracker.h"
 
 #define LOG_TAG "EdgeDetectionJNI"
-#define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
-#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
-#define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
+#include "edge_log.h"
 
 // ==================== Global Variables ====================
 
@@ -70,6 +77,26 @@ static bool processingEnabled = false;
 static int64_t frameProcessingTimeMs = 0;
 static int64_t frameCount = 0;
 
+// Resolution scaling for the streaming path, set by the Java frame-rate governor
+static std::atomic<float> processingScale(1.0f);
+static std::atomic<float> cannyScale(1.0f);
+
+// Reuses edges of unchanged regions between consecutive streamed frames
+static EdgeMapCache sceneCache;
+
+// Fixed cameras: recompute edges only where background subtraction sees motion.
+// Replaces sceneCache while enabled.
+static MotionGate motionGate;
+static std::atomic<bool> motionGatingEnabled(false);
+
+// Handheld pans: warp the previous edges by the camera motion instead of recomputing
+static EdgeStabilizer edgeStabilizer;
+static std::atomic<bool> edgeStabilizationEnabled(false);
+
+// Draws processed streamed frames straight into the preview window (see processFrame)
+static WindowPresenter previewPresenter;
+static std::mutex windowMutex;
+
 // ==================== Forward Declarations ====================
 
 extern "C" JNIEXPORT jbyteArray JNICALL
@@ -171,57 +198,47 @@ const char* FRAGMENT_SHADER_EDGE = R"glsl(
 
 cv::Mat processFrameWithFilter(const cv::Mat& inputFrame, int filterType) {
     if (inputFrame.empty()) {
-        LOGE("Input frame is empty");
+        LOGE_RATE("Input frame is empty");
         return inputFrame;
     }
 
-    LOGI("processFrameWithFilter: input size=%dx%d, channels=%d, filterType=%d", 
-         inputFrame.cols, inputFrame.rows, inputFrame.channels(), filterType);
+    EDGE_SPAN("processFrameWithFilter");
 
     cv::Mat result;
     try {
         switch (filterType) {
             case 0: { // Grayscale
-                LOGI("Applying GRAYSCALE filter");
                 cv::Mat gray;
                 cv::cvtColor(inputFrame, gray, cv::COLOR_RGBA2GRAY);
-                LOGI("After cvtColor to gray: size=%dx%d, channels=%d", gray.cols, gray.rows, gray.channels());
                 cv::cvtColor(gray, result, cv::COLOR_GRAY2RGBA);
-                LOGI("After cvtColor to RGBA: size=%dx%d, channels=%d", result.cols, result.rows, result.channels());
                 break;
             }
             case 1: { // Canny Edge Detection
-                LOGI("Applying CANNY EDGE filter");
                 cv::Mat gray;
                 cv::cvtColor(inputFrame, gray, cv::COLOR_RGBA2GRAY);
-                LOGI("After cvtColor to gray: size=%dx%d, channels=%d", gray.cols, gray.rows, gray.channels());
                 
                 // Apply Gaussian blur for better edge detection
                 cv::GaussianBlur(gray, gray, cv::Size(5, 5), 1.5);
-                LOGI("After GaussianBlur: size=%dx%d, channels=%d", gray.cols, gray.rows, gray.channels());
                 
                 cv::Mat edges;
                 cv::Canny(gray, edges, 50, 150);
-                LOGI("After Canny: size=%dx%d, channels=%d", edges.cols, edges.rows, edges.channels());
                 
                 // Convert back to RGBA
                 cv::cvtColor(edges, result, cv::COLOR_GRAY2RGBA);
-                LOGI("After cvtColor to RGBA: size=%dx%d, channels=%d", result.cols, result.rows, result.channels());
                 break;
             }
             case 2: { // Original (no filter)
-                LOGI("Applying ORIGINAL (no filter)");
                 result = inputFrame.clone();
                 break;
             }
             default: {
-                LOGE("Unknown filter type: %d", filterType);
+                LOGE_RATE("Unknown filter type: %d", filterType);
                 result = inputFrame.clone();
                 break;
             }
         }
     } catch (const cv::Exception& e) {
-        LOGE("OpenCV error in processFrame: %s", e.what());
+        LOGE_RATE("OpenCV error in processFrame: %s", e.what());
         result = inputFrame.clone();
     }
     
@@ -310,6 +327,76 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_getPerformanceMetric
     return env->NewStringUTF(metrics);
 }
 
+// ==================== Logging & Trace Control ====================
+
+/**
+ * JNI Method: Set runtime native log level
+ * Java signature: setNativeLogLevel(int level) -> void
+ * Levels below the compile-time floor (EDGE_LOG_MIN_LEVEL) stay stripped.
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_setNativeLogLevel(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jint level) {
+    edgelog::setRuntimeLevel(level);
+}
+
+/**
+ * JNI Method: Enable or disable the in-memory trace ring
+ * Java signature: setNativeTraceEnabled(boolean enabled) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_setNativeTraceEnabled(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jboolean enabled) {
+    edgelog::setTraceEnabled(enabled == JNI_TRUE);
+}
+
+/**
+ * JNI Method: Dump the trace ring, oldest event first
+ * Java signature: dumpNativeTrace() -> String
+ * Each line: "<monotonic ns> [<tid>] <event> <arg0> <arg1>"
+ */
+extern "C" JNIEXPORT jstring JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_dumpNativeTrace(
+        JNIEnv *env,
+        jclass /* clazz */) {
+    std::string dump;
+    dump.reserve(edgelog::TRACE_RING_CAPACITY * 48);
+    edgelog::dumpTrace(dump);
+    return env->NewStringUTF(dump.c_str());
+}
+
+/**
+ * JNI Method: Export the trace ring as Chrome trace event objects
+ * Java signature: exportNativeTraceJson(int pid) -> String
+ * Returns comma-separated event objects (no enclosing array) so the Java
+ * Tracer can merge them with its own events into one traceEvents list.
+ */
+extern "C" JNIEXPORT jstring JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_exportNativeTraceJson(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jint pid) {
+    std::string json;
+    json.reserve(edgelog::TRACE_RING_CAPACITY * 128);
+    edgelog::dumpTraceJson(json, pid);
+    return env->NewStringUTF(json.c_str());
+}
+
+/**
+ * JNI Method: Discard all buffered trace events
+ * Java signature: clearNativeTrace() -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_clearNativeTrace(
+        JNIEnv *env,
+        jclass /* clazz */) {
+    edgelog::clearTrace();
+}
+
 // ==================== Filter Application Helpers ====================
 
 /**
@@ -371,7 +458,7 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_processBatchNV21(
     for (jint i = 0; i < batchSize; i++) {
         jobject frameObj = env->GetObjectArrayElement(frames, i);
         if (frameObj == nullptr) {
-            LOGD("Skipping null frame at index %d", i);
+            LOGV("Skipping null frame at index %d", i);
             continue;
         }
         
@@ -487,9 +574,13 @@ Java_com_example_realtimeedgedetection_MainActivity_cleanup(
     
     processingEnabled = false;
     
-    if (currentWindow != nullptr) {
-        ANativeWindow_release(currentWindow);
-        currentWindow = nullptr;
+    previewPresenter.detach();
+    {
+        std::lock_guard<std::mutex> lock(windowMutex);
+        if (currentWindow != nullptr) {
+            ANativeWindow_release(currentWindow);
+            currentWindow = nullptr;
+        }
     }
     
     if (eglDisplay != EGL_NO_DISPLAY) {
@@ -522,63 +613,892 @@ Java_com_example_realtimeedgedetection_MainActivity_cleanup(
     LOGI("Cleanup completed. Processed %" PRId64 " frames in %" PRId64 "ms", frameCount, frameProcessingTimeMs);
 }
 
-// ==================== YUV to RGBA Conversion ====================
+// ==================== Native Window Presentation ====================
 
 /**
- * Convert NV21 (YUV420SP) to RGBA format
- * Optimized for real-time camera frame processing
+ * Point the preview presenter at the window behind surface. A null surface,
+ * or one that cannot be turned into a window, detaches the presenter.
+ * Re-binding the window that is already attached is a no-op, so callers may
+ * pass the surface with every frame.
  */
-static inline void convertNV21ToRGBA(const uint8_t* nv21Data, uint8_t* rgbaData, 
-                                     int width, int height) {
-    int frameSize = width * height;
+static void bindPreviewSurface(JNIEnv *env, jobject surface) {
+    ANativeWindow* window = surface != nullptr ? ANativeWindow_fromSurface(env, surface) : nullptr;
+
+    std::lock_guard<std::mutex> lock(windowMutex);
+    if (window != nullptr && window == currentWindow) {
+        ANativeWindow_release(window);
+        return;
+    }
+
+    previewPresenter.detach();
+    if (currentWindow != nullptr) {
+        ANativeWindow_release(currentWindow);
+        currentWindow = nullptr;
+    }
+    if (window == nullptr) {
+        if (surface != nullptr) {
+            LOGE("ANativeWindow_fromSurface failed");
+        }
+        return;
+    }
+
+    // Keep 16-bit windows 16-bit; everything else gets RGBA so Canny output stays exact
+    int32_t format = ANativeWindow_getFormat(window) == WINDOW_FORMAT_RGB_565
+                     ? WINDOW_PIXEL_RGB_565 : WINDOW_PIXEL_RGBA_8888;
+    currentWindow = window;
+    previewPresenter.attach(std::unique_ptr<WindowTarget>(new NativeWindowTarget(window)), format);
+    LOGI("Preview window bound: %dx%d, format=%d",
+         ANativeWindow_getWidth(window), ANativeWindow_getHeight(window), format);
+}
+
+static void processFrameToSurface(JNIEnv *env, jobject surface, jint width, jint height, jint filterType) {
+    bindPreviewSurface(env, surface);
+
+    if (filterType >= 0 && filterType <= 2) {
+        std::lock_guard<std::mutex> lock(frameMutex);
+        currentFilterType = filterType;
+    }
+    LOGD("processFrame: surface=%s, %dx%d, filter=%d",
+         surface != nullptr ? "bound" : "none", width, height, filterType);
+}
+
+/**
+ * JNI Method: Present processed frames on a Surface
+ * Java signature: MainActivity.processFrame(Surface surface, int width, int height, int filterType) -> void
+ *
+ * Binds the surface as the preview target of the streaming path; every frame
+ * processed by processNV21Frame afterwards is drawn into it on the presenter's
+ * render thread. Pass null to stop presenting.
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_MainActivity_processFrame(
+        JNIEnv *env,
+        jobject /* this */,
+        jobject surface,
+        jint width,
+        jint height,
+        jint filterType) {
+    processFrameToSurface(env, surface, width, height, filterType);
+}
+
+/**
+ * JNI Method: Present processed frames on a Surface
+ * Java signature: processFrame(Object surface, int width, int height, int filterType) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_processFrame(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jobject surface,
+        jint width,
+        jint height,
+        jint filterType) {
+    processFrameToSurface(env, surface, width, height, filterType);
+}
+
+/**
+ * JNI Method: Get preview presenter statistics
+ * Java signature: getPresenterStats() -> long[] {submitted, presented, dropped, lockFailures, lastPresentNs}
+ */
+extern "C" JNIEXPORT jlongArray JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_getPresenterStats(
+        JNIEnv *env,
+        jclass /* clazz */) {
     
-    for (int i = 0; i < height; i++) {
-        for (int j = 0; j < width; j++) {
-            int Y = nv21Data[i * width + j] & 0xff;
-            int pixelIndex = (i * width + j) * 4;
-            
-            int index = frameSize + (i >> 1) * width + (j & ~1);
-            int V = nv21Data[index] & 0xff;
-            int U = nv21Data[index + 1] & 0xff;
-            
-            V -= 128;
-            U -= 128;
-            
-            int Y1192 = 1192 * Y;
-            int r = (Y1192 + 1634 * V) >> 10;
-            int g = (Y1192 - 400 * U - 833 * V) >> 10;
-            int b = (Y1192 + 2066 * U) >> 10;
-            
-            r = std::max(0, std::min(255, r));
-            g = std::max(0, std::min(255, g));
-            b = std::max(0, std::min(255, b));
-            
-            rgbaData[pixelIndex] = r;
-            rgbaData[pixelIndex + 1] = g;
-            rgbaData[pixelIndex + 2] = b;
-            rgbaData[pixelIndex + 3] = 255;
+    WindowPresenter::Stats stats = previewPresenter.stats();
+    jlong values[5] = {
+            (jlong) stats.submitted,
+            (jlong) stats.presented,
+            (jlong) stats.dropped,
+            (jlong) stats.lockFailures,
+            (jlong) stats.lastPresentNs
+    };
+    jlongArray result = env->NewLongArray(5);
+    if (result != nullptr) {
+        env->SetLongArrayRegion(result, 0, 5, values);
+    }
+    return result;
+}
+
+// ==================== Stream Sessions ====================
+
+/**
+ * State of one camera stream in a set of concurrently running ones, e.g. the
+ * front and back cameras. Each session keeps its own scene cache so the
+ * streams never evict each other's edges. Only the displayed session hands
+ * its frames to the preview presenter; the others keep their caches warm so
+ * switching the display costs nothing. Line, document, motion gate and
+ * stabilizer state stay with processNV21Frame.
+ */
+struct StreamSession {
+    EdgeMapCache cache;
+    std::atomic<int64_t> frames;
+    std::atomic<int64_t> displayed;
+    std::atomic<int64_t> processNs;
+
+    StreamSession() : frames(0), displayed(0), processNs(0) {}
+};
+
+/**
+ * JNI Method: Create a stream session
+ * Java signature: StreamSession.nativeCreate() -> long
+ */
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_example_realtimeedgedetection_session_StreamSession_nativeCreate(
+        JNIEnv *env,
+        jclass /* clazz */) {
+    return (jlong) new StreamSession();
+}
+
+/**
+ * JNI Method: Destroy a stream session
+ * Java signature: StreamSession.nativeDestroy(long handle) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_session_StreamSession_nativeDestroy(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong handle) {
+    delete (StreamSession*) handle;
+}
+
+/**
+ * JNI Method: Filter one NV21 frame of a session
+ * Java signature: StreamSession.nativeProcess(long handle, byte[] nv21, int width, int height, int filterType, boolean display, byte[] rgbaOut) -> boolean
+ *
+ * With display set the result goes to the preview presenter (see
+ * processFrame); otherwise it only updates the session's cache. The result
+ * is copied back to Java only when rgbaOut is given (width * height * 4).
+ */
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_realtimeedgedetection_session_StreamSession_nativeProcess(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong handle,
+        jbyteArray frameData,
+        jint width,
+        jint height,
+        jint filterType,
+        jboolean display,
+        jbyteArray rgbaOut) {
+    StreamSession* session = (StreamSession*) handle;
+    if (frameData == nullptr || width <= 0 || height <= 0 ||
+        env->GetArrayLength(frameData) < width * height * 3 / 2 ||
+        (rgbaOut != nullptr && env->GetArrayLength(rgbaOut) < width * height * 4)) {
+        LOGE_RATE("Invalid session frame: %dx%d", width, height);
+        return JNI_FALSE;
+    }
+
+    auto startTime = std::chrono::steady_clock::now();
+    EDGE_SPAN("jni.StreamSession.process");
+    jbyte* nv21 = env->GetByteArrayElements(frameData, nullptr);
+    if (nv21 == nullptr) {
+        LOGE_RATE("Failed to get NV21 array elements");
+        return JNI_FALSE;
+    }
+
+    bool ok = false;
+    try {
+        cv::Mat rgba = ImageProcessor::convertNV21ToRGBA((const uint8_t*) nv21, width, height);
+        if (!rgba.empty()) {
+            cv::Mat processed = ImageProcessor::processImageScaled(
+                    rgba, filterType,
+                    processingScale.load(std::memory_order_relaxed),
+                    cannyScale.load(std::memory_order_relaxed),
+                    &session->cache);
+            ok = !processed.empty();
+            if (ok && display && previewPresenter.isAttached()) {
+                previewPresenter.submit(processed.data, processed.cols, processed.rows,
+                                        (int32_t) processed.step[0], processed.channels());
+                session->displayed.fetch_add(1, std::memory_order_relaxed);
+            }
+            if (ok && rgbaOut != nullptr) {
+                ok = processed.isContinuous() && processed.cols == width && processed.rows == height &&
+                     processed.type() == CV_8UC4;
+                if (ok) {
+                    env->SetByteArrayRegion(rgbaOut, 0, width * height * 4, (const jbyte*) processed.data);
+                } else {
+                    LOGE_RATE("Session output is not %dx%d RGBA", width, height);
+                }
+            }
+        }
+    } catch (const std::exception& e) {
+        LOGE_RATE("Exception in StreamSession.process: %s", e.what());
+    }
+    env->ReleaseByteArrayElements(frameData, nv21, JNI_ABORT);
+
+    if (ok) {
+        session->frames.fetch_add(1, std::memory_order_relaxed);
+        session->processNs.fetch_add(std::chrono::duration_cast<std::chrono::nanoseconds>(
+                std::chrono::steady_clock::now() - startTime).count(), std::memory_order_relaxed);
+    }
+    return ok ? JNI_TRUE : JNI_FALSE;
+}
+
+/**
+ * JNI Method: Get stream session statistics
+ * Java signature: StreamSession.nativeGetStats(long handle) -> long[] {frames, displayed, processNs}
+ */
+extern "C" JNIEXPORT jlongArray JNICALL
+Java_com_example_realtimeedgedetection_session_StreamSession_nativeGetStats(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong handle) {
+    StreamSession* session = (StreamSession*) handle;
+    jlong values[3] = {
+            (jlong) session->frames.load(std::memory_order_relaxed),
+            (jlong) session->displayed.load(std::memory_order_relaxed),
+            (jlong) session->processNs.load(std::memory_order_relaxed)
+    };
+    jlongArray result = env->NewLongArray(3);
+    if (result != nullptr) {
+        env->SetLongArrayRegion(result, 0, 3, values);
+    }
+    return result;
+}
+
+// ==================== Contour Extraction ====================
+
+static ContourSet::Filter makeContourFilter(jdouble minArea, jdouble minLength, jint minPoints) {
+    ContourSet::Filter filter;
+    filter.minArea = minArea;
+    filter.minLength = minLength;
+    filter.minPoints = minPoints;
+    return filter;
+}
+
+/**
+ * JNI Method: Allocate a native contour set
+ * Java signature: ContourSet.nativeCreate() -> long
+ */
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_example_realtimeedgedetection_ContourSet_nativeCreate(
+        JNIEnv *env,
+        jclass /* clazz */) {
+    return (jlong) new ContourSet();
+}
+
+/**
+ * JNI Method: Free a native contour set
+ * Java signature: ContourSet.nativeDestroy(long handle) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_ContourSet_nativeDestroy(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong handle) {
+    delete (ContourSet*) handle;
+}
+
+/**
+ * JNI Method: Find contours in an 8-bit edge mask
+ * Java signature: ContourSet.nativeFind(long handle, byte[] edges, int width, int height, int mode,
+ *                                       double minArea, double minLength, int minPoints) -> int
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_com_example_realtimeedgedetection_ContourSet_nativeFind(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong handle,
+        jbyteArray edges,
+        jint width,
+        jint height,
+        jint mode,
+        jdouble minArea,
+        jdouble minLength,
+        jint minPoints) {
+
+    ContourSet* set = (ContourSet*) handle;
+    jbyte* pixels = env->GetByteArrayElements(edges, nullptr);
+    if (pixels == nullptr) {
+        set->clear();
+        return 0;
+    }
+
+    jint count = 0;
+    try {
+        cv::Mat mask(height, width, CV_8UC1, (uint8_t*) pixels);
+        count = set->find(mask, mode, makeContourFilter(minArea, minLength, minPoints));
+    } catch (const cv::Exception& e) {
+        LOGE("OpenCV error in contour extraction: %s", e.what());
+        set->clear();
+    }
+    env->ReleaseByteArrayElements(edges, pixels, JNI_ABORT);
+    return count;
+}
+
+/**
+ * JNI Method: Run edge detection on an RGBA bitmap and find contours in the result
+ * Java signature: ContourSet.nativeFindInBitmap(long handle, Bitmap bitmap, int mode,
+ *                                               double minArea, double minLength, int minPoints) -> int
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_com_example_realtimeedgedetection_ContourSet_nativeFindInBitmap(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong handle,
+        jobject bitmap,
+        jint mode,
+        jdouble minArea,
+        jdouble minLength,
+        jint minPoints) {
+
+    ContourSet* set = (ContourSet*) handle;
+    set->clear();
+
+    AndroidBitmapInfo info;
+    if (AndroidBitmap_getInfo(env, bitmap, &info) < 0 || info.format != ANDROID_BITMAP_FORMAT_RGBA_8888) {
+        LOGE("findInBitmap: bitmap must be ARGB_8888");
+        return 0;
+    }
+    void* pixels = nullptr;
+    if (AndroidBitmap_lockPixels(env, bitmap, &pixels) < 0) {
+        LOGE("AndroidBitmap_lockPixels failed");
+        return 0;
+    }
+
+    jint count = 0;
+    try {
+        EDGE_SPAN("jni.findContoursInBitmap");
+        cv::Mat rgba(info.height, info.width, CV_8UC4, pixels, info.stride);
+        cv::Mat gray, edges;
+        cv::cvtColor(rgba, gray, cv::COLOR_RGBA2GRAY);
+        AndroidBitmap_unlockPixels(env, bitmap);
+        pixels = nullptr;
+
+        ImageProcessor::detectEdges(gray, edges);
+        count = set->find(edges, mode, makeContourFilter(minArea, minLength, minPoints));
+    } catch (const cv::Exception& e) {
+        LOGE("OpenCV error in contour extraction: %s", e.what());
+        set->clear();
+    }
+    if (pixels != nullptr) {
+        AndroidBitmap_unlockPixels(env, bitmap);
+    }
+    return count;
+}
+
+/**
+ * JNI Method: Drop contours below the given bounds
+ * Java signature: ContourSet.nativeFilter(long handle, double minArea, double minLength, int minPoints) -> int
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_com_example_realtimeedgedetection_ContourSet_nativeFilter(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong handle,
+        jdouble minArea,
+        jdouble minLength,
+        jint minPoints) {
+    return ((ContourSet*) handle)->filter(makeContourFilter(minArea, minLength, minPoints));
+}
+
+/**
+ * JNI Method: Total number of points over all contours
+ * Java signature: ContourSet.nativeTotalPoints(long handle) -> int
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_com_example_realtimeedgedetection_ContourSet_nativeTotalPoints(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong handle) {
+    return ((ContourSet*) handle)->totalPoints();
+}
+
+/**
+ * JNI Method: Copy one of the flat contour arrays into a Java array
+ * Java signature: ContourSet.nativeCopyInts(long handle, int which, int[] dst) -> void
+ *
+ * which: 0 = points (x,y pairs), 1 = offsets (size + 1), 2 = bounds (x,y,width,height).
+ * The Java side sizes dst from size() and totalPoints().
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_ContourSet_nativeCopyInts(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong handle,
+        jint which,
+        jintArray dst) {
+
+    const ContourSet* set = (const ContourSet*) handle;
+    switch (which) {
+        case 0:
+            env->SetIntArrayRegion(dst, 0, set->totalPoints() * 2, set->pointData());
+            break;
+        case 1:
+            env->SetIntArrayRegion(dst, 0, set->size() + 1, set->offsetData());
+            break;
+        case 2:
+            env->SetIntArrayRegion(dst, 0, set->size() * 4, set->boundsData());
+            break;
+        default:
+            LOGE("nativeCopyInts: unknown array %d", which);
+            break;
+    }
+}
+
+/**
+ * JNI Method: Copy per-contour areas or perimeters into a Java array
+ * Java signature: ContourSet.nativeCopyFloats(long handle, int which, float[] dst) -> void
+ *
+ * which: 0 = areas, 1 = perimeters.
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_ContourSet_nativeCopyFloats(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong handle,
+        jint which,
+        jfloatArray dst) {
+
+    const ContourSet* set = (const ContourSet*) handle;
+    if (which == 0) {
+        env->SetFloatArrayRegion(dst, 0, set->size(), set->areaData());
+    } else if (which == 1) {
+        env->SetFloatArrayRegion(dst, 0, set->size(), set->lengthData());
+    } else {
+        LOGE("nativeCopyFloats: unknown array %d", which);
+    }
+}
+
+// ==================== Recording ====================
+
+/**
+ * JNI Method: Convert a packed RGBA frame to planar I420 for video encoders
+ * Java signature: convertRGBAToI420(byte[] rgba, int width, int height, byte[] i420) -> boolean
+ */
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_convertRGBAToI420(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jbyteArray rgbaArray,
+        jint width,
+        jint height,
+        jbyteArray i420Array) {
+
+    // 4:2:0 needs even dimensions
+    if (width <= 0 || height <= 0 || (width & 1) || (height & 1) ||
+        env->GetArrayLength(rgbaArray) < (jsize) width * height * 4 ||
+        env->GetArrayLength(i420Array) < (jsize) width * height * 3 / 2) {
+        LOGE_RATE("convertRGBAToI420: bad arguments for %dx%d", width, height);
+        return JNI_FALSE;
+    }
+
+    jbyte* rgbaData = (jbyte*) env->GetPrimitiveArrayCritical(rgbaArray, nullptr);
+    jbyte* i420Data = rgbaData != nullptr ? (jbyte*) env->GetPrimitiveArrayCritical(i420Array, nullptr) : nullptr;
+    bool ok = false;
+    if (i420Data != nullptr) {
+        try {
+            cv::Mat rgba(height, width, CV_8UC4, rgbaData);
+            cv::Mat i420(height + height / 2, width, CV_8UC1, i420Data);
+            cv::cvtColor(rgba, i420, cv::COLOR_RGBA2YUV_I420);
+            ok = true;
+        } catch (const cv::Exception& e) {
+            LOGE_RATE("convertRGBAToI420: %s", e.what());
+        }
+    }
+    if (i420Data != nullptr) {
+        env->ReleasePrimitiveArrayCritical(i420Array, i420Data, 0);
+    }
+    if (rgbaData != nullptr) {
+        env->ReleasePrimitiveArrayCritical(rgbaArray, rgbaData, JNI_ABORT);
+    }
+    return ok ? JNI_TRUE : JNI_FALSE;
+}
+
+/**
+ * JNI Method: Write a packed RGBA frame as PNG. Bilevel output thresholds the
+ * gray values at 128 and stores 1 bit per pixel, which keeps Canny edge maps
+ * lossless at a fraction of the 8-bit size.
+ * Java signature: writePng(byte[] rgba, int width, int height, String path, boolean bilevel) -> boolean
+ */
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_writePng(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jbyteArray rgbaArray,
+        jint width,
+        jint height,
+        jstring pathString,
+        jboolean bilevel) {
+
+    if (width <= 0 || height <= 0 || env->GetArrayLength(rgbaArray) < (jsize) width * height * 4) {
+        LOGE_RATE("writePng: bad arguments for %dx%d", width, height);
+        return JNI_FALSE;
+    }
+    const char* path = env->GetStringUTFChars(pathString, nullptr);
+    if (path == nullptr) {
+        return JNI_FALSE;
+    }
+
+    // Encoding is slow, so convert out of a copy instead of holding the array critical
+    cv::Mat rgba(height, width, CV_8UC4);
+    env->GetByteArrayRegion(rgbaArray, 0, width * height * 4, (jbyte*) rgba.data);
+
+    bool ok = false;
+    try {
+        std::vector<int> params;
+        cv::Mat image;
+        if (bilevel) {
+            cv::Mat gray;
+            cv::cvtColor(rgba, gray, cv::COLOR_RGBA2GRAY);
+            // The bilevel encoder packs the lowest bit of each byte
+            cv::threshold(gray, image, 127, 1, cv::THRESH_BINARY);
+            params.push_back(cv::IMWRITE_PNG_BILEVEL);
+            params.push_back(1);
+        } else {
+            cv::cvtColor(rgba, image, cv::COLOR_RGBA2BGR);
+        }
+        params.push_back(cv::IMWRITE_PNG_COMPRESSION);
+        params.push_back(1);    // favour speed; edge maps compress well regardless
+        ok = cv::imwrite(path, image, params);
+        if (!ok) {
+            LOGE_RATE("writePng: cannot write %s", path);
+        }
+    } catch (const cv::Exception& e) {
+        LOGE_RATE("writePng: %s", e.what());
+    }
+    env->ReleaseStringUTFChars(pathString, path);
+    return ok ? JNI_TRUE : JNI_FALSE;
+}
+
+// ==================== Line Extraction ====================
+
+// Hough segments of streamed Canny frames. The detector is only touched by the
+// processing thread; settings and the latest result cross threads under lineMutex.
+static LineDetector lineDetector;
+static std::mutex lineMutex;
+static LineDetector::Params lineParams;
+static bool lineParamsChanged = false;
+static std::vector<float> latestLines;
+static std::atomic<bool> lineDetectionEnabled(false);
+static std::atomic<bool> lineOverlayEnabled(false);
+
+static const cv::Scalar LINE_OVERLAY_COLOR(0, 255, 0, 255);
+static const int LINE_OVERLAY_THICKNESS = 2;
+
+/** Find segments in a streamed RGBA edge map, publish them and optionally draw them onto it */
+static void extractStreamLines(cv::Mat& edgesRgba) {
+    {
+        std::lock_guard<std::mutex> lock(lineMutex);
+        if (lineParamsChanged) {
+            lineDetector.setParams(lineParams);
+            lineParamsChanged = false;
         }
     }
+
+    try {
+        lineDetector.detect(edgesRgba);
+        if (lineOverlayEnabled.load(std::memory_order_relaxed)) {
+            LineDetector::draw(edgesRgba, lineDetector.data(), lineDetector.size(),
+                               LINE_OVERLAY_COLOR, LINE_OVERLAY_THICKNESS);
+        }
+    } catch (const cv::Exception& e) {
+        LOGE_RATE("OpenCV error in line extraction: %s", e.what());
+        lineDetector.clear();
+    }
+
+    std::lock_guard<std::mutex> lock(lineMutex);
+    latestLines.assign(lineDetector.lines().begin(), lineDetector.lines().end());
+}
+
+/**
+ * JNI Method: Enable line segment extraction on streamed Canny frames
+ * Java signature: setLineDetection(boolean enabled, boolean overlay) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_setLineDetection(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jboolean enabled,
+        jboolean overlay) {
+
+    lineDetectionEnabled.store(enabled == JNI_TRUE);
+    lineOverlayEnabled.store(overlay == JNI_TRUE);
+    if (!enabled) {
+        std::lock_guard<std::mutex> lock(lineMutex);
+        latestLines.clear();
+    }
+    LOGI("Line detection: %s, overlay %s", enabled ? "on" : "off", overlay ? "on" : "off");
+}
+
+/**
+ * JNI Method: Configure line segment extraction; lengths are in frame pixels
+ * Java signature: setLineDetectionParams(float scale, float left, float top, float right, float bottom,
+ *                                        int threshold, float minLength, float maxGap, int maxLines) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_setLineDetectionParams(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jfloat scale,
+        jfloat left,
+        jfloat top,
+        jfloat right,
+        jfloat bottom,
+        jint threshold,
+        jfloat minLength,
+        jfloat maxGap,
+        jint maxLines) {
+
+    LineDetector::Params params;
+    params.scale = scale;
+    params.roiLeft = left;
+    params.roiTop = top;
+    params.roiRight = right;
+    params.roiBottom = bottom;
+    params.threshold = threshold;
+    params.minLength = minLength;
+    params.maxGap = maxGap;
+    params.maxLines = maxLines;
+
+    std::lock_guard<std::mutex> lock(lineMutex);
+    lineParams = params;
+    lineParamsChanged = true;
+    LOGI("Line detection params: scale=%.2f roi=[%.2f,%.2f,%.2f,%.2f] votes=%d minLength=%.0f maxGap=%.0f max=%d",
+         scale, left, top, right, bottom, threshold, minLength, maxGap, maxLines);
+}
+
+/**
+ * JNI Method: Line segments of the last streamed Canny frame
+ * Java signature: getLines() -> float[] {x1, y1, x2, y2, ...}
+ */
+extern "C" JNIEXPORT jfloatArray JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_getLines(
+        JNIEnv *env,
+        jclass /* clazz */) {
+
+    std::lock_guard<std::mutex> lock(lineMutex);
+    jfloatArray result = env->NewFloatArray((jsize) latestLines.size());
+    if (result != nullptr && !latestLines.empty()) {
+        env->SetFloatArrayRegion(result, 0, (jsize) latestLines.size(), latestLines.data());
+    }
+    return result;
+}
+
+// ==================== Document Detection ====================
+
+// Document outline on streamed frames: detected every few frames, tracked with
+// optical flow in between. The tracker is only touched by the processing
+// thread; settings and the latest quad cross threads under quadMutex.
+static QuadTracker quadTracker;
+static std::mutex quadMutex;
+static QuadTracker::Params quadParams;
+static bool quadParamsChanged = false;
+static bool quadFound = false;
+static float latestQuad[8];     // TL, TR, BR, BL as x,y fractions of the frame
+static QuadTracker::Stats quadStats = QuadTracker::Stats();
+static std::atomic<bool> quadDetectionEnabled(false);
+
+static const cv::Scalar QUAD_DETECTED_COLOR(0, 255, 0, 255);
+static const cv::Scalar QUAD_TRACKED_COLOR(255, 200, 0, 255);
+static const int QUAD_OVERLAY_THICKNESS = 3;
+
+/** Advance the tracker on a streamed frame's luma, publish the quad and outline it on output */
+static void trackStreamQuad(const cv::Mat& luma, cv::Mat& output) {
+    QuadTracker::State state;
+    {
+        std::lock_guard<std::mutex> lock(quadMutex);
+        if (quadParamsChanged) {
+            quadTracker.setParams(quadParams);
+            quadParamsChanged = false;
+        }
+    }
+
+    try {
+        state = quadTracker.update(luma);
+    } catch (const cv::Exception& e) {
+        LOGE_RATE("OpenCV error in document tracking: %s", e.what());
+        quadTracker.reset();
+        state = QuadTracker::NONE;
+    }
+
+    const cv::Point2f* corners = quadTracker.corners();
+    if (state != QuadTracker::NONE) {
+        cv::Point outline[4];
+        for (int i = 0; i < 4; i++) {
+            outline[i] = cv::Point(cvRound(corners[i].x), cvRound(corners[i].y));
+        }
+        const cv::Point* polygon = outline;
+        int points = 4;
+        cv::polylines(output, &polygon, &points, 1, true,
+                      state == QuadTracker::DETECTED ? QUAD_DETECTED_COLOR : QUAD_TRACKED_COLOR,
+                      QUAD_OVERLAY_THICKNESS);
+    }
+
+    std::lock_guard<std::mutex> lock(quadMutex);
+    quadStats = quadTracker.stats();
+    quadFound = state != QuadTracker::NONE;
+    if (quadFound) {
+        for (int i = 0; i < 4; i++) {
+            latestQuad[i * 2] = corners[i].x / luma.cols;
+            latestQuad[i * 2 + 1] = corners[i].y / luma.rows;
+        }
+    }
+}
+
+/**
+ * JNI Method: Enable document outline detection and tracking on streamed frames
+ * Java signature: setQuadDetection(boolean enabled, int detectInterval, int detectWidth) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_setQuadDetection(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jboolean enabled,
+        jint detectInterval,
+        jint detectWidth) {
+
+    std::lock_guard<std::mutex> lock(quadMutex);
+    quadParams.detectInterval = detectInterval;
+    quadParams.detectWidth = detectWidth;
+    quadParamsChanged = true;
+    quadFound = false;
+    quadDetectionEnabled.store(enabled == JNI_TRUE);
+    LOGI("Document detection: %s, detect every %d frames at width %d",
+         enabled ? "on" : "off", detectInterval, detectWidth);
+}
+
+/**
+ * JNI Method: Document outline in the last streamed frame
+ * Java signature: getQuad() -> float[] {x0, y0, ..., x3, y3} or null
+ *
+ * Corners run clockwise from top-left, as fractions of the frame size.
+ */
+extern "C" JNIEXPORT jfloatArray JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_getQuad(
+        JNIEnv *env,
+        jclass /* clazz */) {
+
+    std::lock_guard<std::mutex> lock(quadMutex);
+    if (!quadFound) {
+        return nullptr;
+    }
+    jfloatArray result = env->NewFloatArray(8);
+    if (result != nullptr) {
+        env->SetFloatArrayRegion(result, 0, 8, latestQuad);
+    }
+    return result;
+}
+
+/**
+ * JNI Method: Get document tracking statistics
+ * Java signature: getQuadStats() -> long[] {frames, detections, tracked, lost}
+ */
+extern "C" JNIEXPORT jlongArray JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_getQuadStats(
+        JNIEnv *env,
+        jclass /* clazz */) {
+
+    QuadTracker::Stats stats;
+    {
+        std::lock_guard<std::mutex> lock(quadMutex);
+        stats = quadStats;
+    }
+    jlong values[4] = {
+            (jlong) stats.frames,
+            (jlong) stats.detections,
+            (jlong) stats.tracked,
+            (jlong) stats.lost
+    };
+    jlongArray result = env->NewLongArray(4);
+    if (result != nullptr) {
+        env->SetLongArrayRegion(result, 0, 4, values);
+    }
+    return result;
 }
 
 /**
- * Optimized YUV to RGB using OpenCV (faster for large frames)
+ * JNI Method: Perspective-correct a quadrilateral region of a bitmap into another bitmap
+ * Java signature: warpQuad(Bitmap src, float[] quad, Bitmap dst) -> boolean
+ *
+ * quad holds TL, TR, BR, BL in src pixels; the region is stretched over all of dst.
  */
-static cv::Mat convertYUVToRGBA(const std::vector<uint8_t>& yuvData, 
-                                 int width, int height) {
-    cv::Mat yuvMat(height + height / 2, width, CV_8UC1, (uchar*)yuvData.data());
-    cv::Mat rgbaMat;
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_warpQuad(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jobject srcBitmap,
+        jfloatArray quadArray,
+        jobject dstBitmap) {
+
+    AndroidBitmapInfo srcInfo, dstInfo;
+    if (AndroidBitmap_getInfo(env, srcBitmap, &srcInfo) < 0 || AndroidBitmap_getInfo(env, dstBitmap, &dstInfo) < 0 ||
+        srcInfo.format != ANDROID_BITMAP_FORMAT_RGBA_8888 || dstInfo.format != ANDROID_BITMAP_FORMAT_RGBA_8888) {
+        LOGE("warpQuad: bitmaps must be ARGB_8888");
+        return JNI_FALSE;
+    }
+    if (env->GetArrayLength(quadArray) < 8) {
+        LOGE("warpQuad: quad needs 8 coordinates");
+        return JNI_FALSE;
+    }
+    float values[8];
+    env->GetFloatArrayRegion(quadArray, 0, 8, values);
+    cv::Point2f quad[4];
+    for (int i = 0; i < 4; i++) {
+        quad[i] = cv::Point2f(values[i * 2], values[i * 2 + 1]);
+    }
+
+    void* srcPixels = nullptr;
+    void* dstPixels = nullptr;
+    if (AndroidBitmap_lockPixels(env, srcBitmap, &srcPixels) < 0) {
+        LOGE("AndroidBitmap_lockPixels (source) failed");
+        return JNI_FALSE;
+    }
+    if (AndroidBitmap_lockPixels(env, dstBitmap, &dstPixels) < 0) {
+        LOGE("AndroidBitmap_lockPixels (destination) failed");
+        AndroidBitmap_unlockPixels(env, srcBitmap);
+        return JNI_FALSE;
+    }
+
+    bool ok = false;
     try {
-        cv::cvtColor(yuvMat, rgbaMat, cv::COLOR_YUV2RGBA_NV21);
-        return rgbaMat;
+        EDGE_SPAN("jni.warpQuad");
+        cv::Mat src(srcInfo.height, srcInfo.width, CV_8UC4, srcPixels, srcInfo.stride);
+        cv::Mat dst(dstInfo.height, dstInfo.width, CV_8UC4, dstPixels, dstInfo.stride);
+        QuadTracker::warp(src, quad, dst);
+        ok = true;
     } catch (const cv::Exception& e) {
-        LOGE("YUV conversion error: %s", e.what());
-        return cv::Mat();
+        LOGE("OpenCV error in warpQuad: %s", e.what());
     }
+    AndroidBitmap_unlockPixels(env, dstBitmap);
+    AndroidBitmap_unlockPixels(env, srcBitmap);
+    return ok ? JNI_TRUE : JNI_FALSE;
 }
 
 // ==================== Single Image Processing ====================
 
+// Canny stills at or above this size are processed in bands, in place (see StripEdgeDetector)
+static const size_t STREAMING_CANNY_MIN_PIXELS = 12u * 1000 * 1000;
+
+/**
+ * Helper: Replace an RGBA_8888 bitmap with its edge map, band by band
+ */
+static jobject processBitmapInBands(JNIEnv *env, jobject bitmap, const AndroidBitmapInfo& info, int bandRows) {
+    if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888) {
+        LOGE("Streaming edge detection needs an RGBA_8888 bitmap, got format %d", info.format);
+        return nullptr;
+    }
+    void* pixels = nullptr;
+    if (AndroidBitmap_lockPixels(env, bitmap, &pixels) < 0) {
+        LOGE("AndroidBitmap_lockPixels failed");
+        return nullptr;
+    }
+
+    jobject result = bitmap;
+    try {
+        EDGE_SPAN("jni.processBitmapInBands");
+        cv::Mat rgba(info.height, info.width, CV_8UC4, pixels, info.stride);
+        ImageProcessor::applyCannyInPlace(rgba, bandRows);
+        EDGE_TRACE("bitmap.bands", info.width, info.height);
+    } catch (const cv::Exception& e) {
+        LOGE("OpenCV error in streaming edge detection: %s", e.what());
+        result = nullptr;
+    }
+    AndroidBitmap_unlockPixels(env, bitmap);
+    return result;
+}
+
 /**
  * JNI Method: Process bitmap with Grayscale filter
  * Java signature: processBitmap(Bitmap bitmap, int filterType) -> Bitmap
@@ -603,8 +1523,14 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_processBitmap(
             return nullptr;
         }
 
-        LOGI("processBitmap: %dx%d, format=%d, stride=%d, filterType=%d", 
+        LOGD("processBitmap: %dx%d, format=%d, stride=%d, filterType=%d",
              bitmapInfo.width, bitmapInfo.height, bitmapInfo.format, bitmapInfo.stride, filterType);
+        EDGE_SPAN("jni.processBitmap");
+
+        // Full-resolution stills would need several full-size intermediate Mats
+        if (filterType == 1 && (size_t) bitmapInfo.width * bitmapInfo.height >= STREAMING_CANNY_MIN_PIXELS) {
+            return processBitmapInBands(env, bitmap, bitmapInfo, 0);
+        }
 
         // Lock input bitmap pixels
         void* inputPixels = nullptr;
@@ -615,15 +1541,9 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_processBitmap(
 
         // Create OpenCV Mat from bitmap
         cv::Mat inputMat(bitmapInfo.height, bitmapInfo.width, CV_8UC4, (uint8_t*)inputPixels);
-        
-        LOGD("Created input Mat: size=%dx%d, channels=%d", 
-             inputMat.cols, inputMat.rows, inputMat.channels());
 
         // Process the image using ImageProcessor
         cv::Mat processedMat = ImageProcessor::processImage(inputMat, filterType);
-        
-        LOGD("Processed Mat: size=%dx%d, channels=%d", 
-             processedMat.cols, processedMat.rows, processedMat.channels());
 
         // Lock output bitmap
         void* outputPixels = nullptr;
@@ -640,8 +1560,7 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_processBitmap(
             
             if (processedMat.total() == pixelCount && processedMat.channels() == 4) {
                 std::memcpy(outputPixels, processedMat.data, bytesToCopy);
-                LOGI("✓ Bitmap processing successful: %dx%d (%zu bytes)", 
-                     bitmapInfo.width, bitmapInfo.height, bytesToCopy);
+                EDGE_TRACE("bitmap.copied", filterType, bytesToCopy);
             } else {
                 LOGE("✗ Mat dimensions mismatch: expected %zu pixels, got %ld with %d channels",
                      pixelCount, processedMat.total(), processedMat.channels());
@@ -670,7 +1589,7 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_processGrayscale(
         JNIEnv *env,
         jclass clazz,
         jobject bitmap) {
-    LOGI("processGrayscale called");
+    LOGD("processGrayscale called");
     return Java_com_example_realtimeedgedetection_NativeImageProcessor_processBitmap(
         env, clazz, bitmap, 0);
 }
@@ -684,11 +1603,34 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_processCannyEdge(
         JNIEnv *env,
         jclass clazz,
         jobject bitmap) {
-    LOGI("processCannyEdge called");
+    LOGD("processCannyEdge called");
     return Java_com_example_realtimeedgedetection_NativeImageProcessor_processBitmap(
         env, clazz, bitmap, 1);
 }
 
+/**
+ * JNI Method: Canny edge detection on a bitmap in row bands, in place
+ * Java signature: processCannyEdgeInBands(Bitmap bitmap, int bandRows) -> Bitmap
+ */
+extern "C" JNIEXPORT jobject JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_processCannyEdgeInBands(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jobject bitmap,
+        jint bandRows) {
+
+    if (bitmap == nullptr) {
+        LOGE("Input bitmap is null");
+        return nullptr;
+    }
+    AndroidBitmapInfo bitmapInfo;
+    if (AndroidBitmap_getInfo(env, bitmap, &bitmapInfo) < 0) {
+        LOGE("AndroidBitmap_getInfo failed");
+        return nullptr;
+    }
+    return processBitmapInBands(env, bitmap, bitmapInfo, bandRows);
+}
+
 /**
  * JNI Method: Configure Canny Edge Detection thresholds
  * Java signature: setCannyThresholds(int lowThreshold, int highThreshold) -> boolean
@@ -710,6 +1652,26 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_setCannyThresholds(
     return JNI_TRUE;
 }
 
+/**
+ * JNI Method: Set resolution scaling for streamed frames
+ * Java signature: setProcessingScale(float processScale, float cannyScale) -> void
+ *
+ * Applies to processNV21Frame only; still captures keep full resolution.
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_setProcessingScale(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jfloat processScale,
+        jfloat edgeScale) {
+    
+    float previous = processingScale.exchange(processScale, std::memory_order_relaxed);
+    float previousCanny = cannyScale.exchange(edgeScale, std::memory_order_relaxed);
+    if (previous != processScale || previousCanny != edgeScale) {
+        LOGI("Processing scale set: frame=%.2f canny=%.2f", processScale, edgeScale);
+    }
+}
+
 // ==================== Camera Frame Streaming ====================
 
 /**
@@ -736,6 +1698,9 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_initializeFrameProce
         processingEnabled = true;
         frameCount = 0;
         frameProcessingTimeMs = 0;
+        sceneCache.invalidate();
+        motionGate.reset();
+        edgeStabilizer.reset();
         
         LOGI("Frame processing initialized: %dx%d", width, height);
         return JNI_TRUE;
@@ -761,48 +1726,68 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_processNV21Frame(
         jint filterType) {
 
     if (frameData == nullptr) {
-        LOGE("Frame data is null");
+        LOGE_RATE("Frame data is null");
         return nullptr;
     }
 
     if (!processingEnabled) {
-        LOGE("Frame processing not initialized");
+        LOGE_RATE("Frame processing not initialized");
         return nullptr;
     }
 
     auto startTime = std::chrono::high_resolution_clock::now();
+    EDGE_SPAN("jni.processNV21Frame");
 
     try {
         // Get byte array elements
         jbyte* nv21 = env->GetByteArrayElements(frameData, nullptr);
         if (nv21 == nullptr) {
-            LOGE("Failed to get NV21 array elements");
+            LOGE_RATE("Failed to get NV21 array elements");
             return nullptr;
         }
 
         // Convert NV21 to RGBA using OpenCV
-        std::vector<uint8_t> yuvVector((uint8_t*)nv21, (uint8_t*)nv21 + width * height * 3 / 2);
-        cv::Mat rgbaFrame = convertYUVToRGBA(yuvVector, width, height);
+        cv::Mat rgbaFrame = ImageProcessor::convertNV21ToRGBA((const uint8_t*) nv21, width, height);
 
         if (rgbaFrame.empty()) {
-            LOGE("YUV to RGBA conversion failed");
+            LOGE_RATE("YUV to RGBA conversion failed");
             env->ReleaseByteArrayElements(frameData, nv21, JNI_ABORT);
             return nullptr;
         }
 
         // Apply filter
-        cv::Mat processedFrame = ImageProcessor::processImage(rgbaFrame, filterType);
+        cv::Mat processedFrame = ImageProcessor::processImageScaled(
+                rgbaFrame, filterType,
+                processingScale.load(std::memory_order_relaxed),
+                cannyScale.load(std::memory_order_relaxed),
+                &sceneCache,
+                motionGatingEnabled.load(std::memory_order_relaxed) ? &motionGate : nullptr,
+                edgeStabilizationEnabled.load(std::memory_order_relaxed) ? &edgeStabilizer : nullptr);
 
         if (processedFrame.empty()) {
-            LOGE("Image processing failed");
+            LOGE_RATE("Image processing failed");
             env->ReleaseByteArrayElements(frameData, nv21, JNI_ABORT);
             return nullptr;
         }
 
+        if (filterType == 1 && lineDetectionEnabled.load(std::memory_order_relaxed)) {
+            extractStreamLines(processedFrame);
+        }
+        if (quadDetectionEnabled.load(std::memory_order_relaxed)) {
+            // The NV21 Y plane is the frame's luma at full size
+            trackStreamQuad(cv::Mat(height, width, CV_8UC1, (uint8_t*) nv21), processedFrame);
+        }
+
+        // Straight to the preview window when one is bound; no-op otherwise
+        if (previewPresenter.isAttached()) {
+            previewPresenter.submit(processedFrame.data, processedFrame.cols, processedFrame.rows,
+                                    (int32_t) processedFrame.step[0], processedFrame.channels());
+        }
+
         // Create output byte array with processed data
         jbyteArray outputArray = env->NewByteArray(width * height * 4);
         if (outputArray == nullptr) {
-            LOGE("Failed to allocate output array");
+            LOGE_RATE("Failed to allocate output array");
             env->ReleaseByteArrayElements(frameData, nv21, JNI_ABORT);
             return nullptr;
         }
@@ -819,13 +1804,10 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_processNV21Frame(
         frameProcessingTimeMs += duration.count();
         frameCount++;
 
-        LOGD("Frame processed in %ldms (avg: %ldms)", (long)duration.count(), 
-             (long)(frameProcessingTimeMs / frameCount));
-
         return outputArray;
 
     } catch (const std::exception& e) {
-        LOGE("Exception in processNV21Frame: %s", e.what());
+        LOGE_RATE("Exception in processNV21Frame: %s", e.what());
         return nullptr;
     }
 }
@@ -844,25 +1826,26 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_processRGBAFrame(
         jint filterType) {
 
     if (frameData == nullptr) {
-        LOGE("RGBA frame data is null");
+        LOGE_RATE("RGBA frame data is null");
         return nullptr;
     }
 
     try {
         jbyte* rgba = env->GetByteArrayElements(frameData, nullptr);
         if (rgba == nullptr) {
-            LOGE("Failed to get RGBA array elements");
+            LOGE_RATE("Failed to get RGBA array elements");
             return nullptr;
         }
 
         // Create Mat from RGBA data
+        EDGE_SPAN("jni.processRGBAFrame");
         cv::Mat rgbaFrame(height, width, CV_8UC4, (uint8_t*)rgba);
 
         // Apply filter
         cv::Mat processedFrame = ImageProcessor::processImage(rgbaFrame, filterType);
 
         if (processedFrame.empty()) {
-            LOGE("RGBA image processing failed");
+            LOGE_RATE("RGBA image processing failed");
             env->ReleaseByteArrayElements(frameData, rgba, JNI_ABORT);
             return nullptr;
         }
@@ -870,7 +1853,7 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_processRGBAFrame(
         // Create output array
         jbyteArray outputArray = env->NewByteArray(width * height * 4);
         if (outputArray == nullptr) {
-            LOGE("Failed to allocate RGBA output array");
+            LOGE_RATE("Failed to allocate RGBA output array");
             env->ReleaseByteArrayElements(frameData, rgba, JNI_ABORT);
             return nullptr;
         }
@@ -880,11 +1863,10 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_processRGBAFrame(
 
         env->ReleaseByteArrayElements(frameData, rgba, JNI_ABORT);
 
-        LOGI("RGBA frame processed successfully: %dx%d", width, height);
         return outputArray;
 
     } catch (const std::exception& e) {
-        LOGE("Exception in processRGBAFrame: %s", e.what());
+        LOGE_RATE("Exception in processRGBAFrame: %s", e.what());
         return nullptr;
     }
 }
@@ -905,7 +1887,7 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_getFrameStats(
     long avgTime = frameProcessingTimeMs / frameCount;
     long stats = (frameCount << 32) | (avgTime & 0xFFFFFFFF);
     
-    LOGI("Frame stats - Count: %" PRId64 ", Avg time: %ldms", frameCount, avgTime);
+    LOGD("Frame stats - Count: %" PRId64 ", Avg time: %ldms", frameCount, avgTime);
     return stats;
 }
 
@@ -920,9 +1902,153 @@ Java_com_example_realtimeedgedetection_NativeImageProcessor_resetFrameStats(
     
     frameCount = 0;
     frameProcessingTimeMs = 0;
+    sceneCache.resetStats();
+    motionGate.resetStats();
+    edgeStabilizer.resetStats();
+    previewPresenter.resetStats();
     LOGI("Frame statistics reset");
 }
 
+/**
+ * JNI Method: Configure static-scene edge map reuse for streamed frames
+ * Java signature: setSceneChangeDetection(boolean enabled, int threshold) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_setSceneChangeDetection(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jboolean enabled,
+        jint threshold) {
+    
+    sceneCache.setEnabled(enabled == JNI_TRUE);
+    sceneCache.setThreshold(threshold);
+    LOGI("Scene change detection: %s, threshold=%d", enabled ? "on" : "off", threshold);
+}
+
+/**
+ * JNI Method: Get static-scene edge map reuse statistics
+ * Java signature: getSceneCacheStats() -> long[] {frames, reused, partial, full, tilesRecomputed}
+ */
+extern "C" JNIEXPORT jlongArray JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_getSceneCacheStats(
+        JNIEnv *env,
+        jclass /* clazz */) {
+    
+    EdgeMapCache::Stats stats = sceneCache.stats();
+    jlong values[5] = {
+            (jlong) stats.frames,
+            (jlong) stats.reused,
+            (jlong) stats.partial,
+            (jlong) stats.full,
+            (jlong) stats.tilesRecomputed
+    };
+    jlongArray result = env->NewLongArray(5);
+    if (result != nullptr) {
+        env->SetLongArrayRegion(result, 0, 5, values);
+    }
+    return result;
+}
+
+/**
+ * JNI Method: Configure motion-gated edge detection for streamed frames
+ * Java signature: setMotionGating(boolean enabled, int method, int analysisWidth, int padding, int refreshInterval) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_setMotionGating(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jboolean enabled,
+        jint method,
+        jint analysisWidth,
+        jint padding,
+        jint refreshInterval) {
+    
+    MotionGate::Params params;
+    params.method = method;
+    params.analysisWidth = analysisWidth;
+    params.padding = padding;
+    params.refreshInterval = refreshInterval;
+    // Rebuilds the background model, so the next gated frame is a full one
+    motionGate.setParams(params);
+    motionGatingEnabled.store(enabled == JNI_TRUE, std::memory_order_relaxed);
+    LOGI("Motion gating: %s, %s at %dpx, padding=%d, refresh=%d", enabled ? "on" : "off",
+         method == MotionGate::METHOD_KNN ? "KNN" : "MOG2", analysisWidth, padding, refreshInterval);
+}
+
+/**
+ * JNI Method: Get motion-gated edge detection statistics
+ * Java signature: getMotionGateStats() -> long[] {frames, idle, gated, full, regions, pixelsProcessed, pixelsTotal}
+ */
+extern "C" JNIEXPORT jlongArray JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_getMotionGateStats(
+        JNIEnv *env,
+        jclass /* clazz */) {
+    
+    MotionGate::Stats stats = motionGate.stats();
+    jlong values[7] = {
+            (jlong) stats.frames,
+            (jlong) stats.idle,
+            (jlong) stats.gated,
+            (jlong) stats.full,
+            (jlong) stats.regions,
+            (jlong) stats.pixelsProcessed,
+            (jlong) stats.pixelsTotal
+    };
+    jlongArray result = env->NewLongArray(7);
+    if (result != nullptr) {
+        env->SetLongArrayRegion(result, 0, 7, values);
+    }
+    return result;
+}
+
+/**
+ * JNI Method: Configure motion-compensated edge reuse for streamed frames
+ * Java signature: setEdgeStabilization(boolean enabled, int method, int refreshInterval, int residualThreshold) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_setEdgeStabilization(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jboolean enabled,
+        jint method,
+        jint refreshInterval,
+        jint residualThreshold) {
+    
+    EdgeStabilizer::Params params;
+    params.method = method;
+    params.refreshInterval = refreshInterval;
+    params.residualThreshold = residualThreshold;
+    edgeStabilizer.setParams(params);
+    edgeStabilizationEnabled.store(enabled == JNI_TRUE, std::memory_order_relaxed);
+    LOGI("Edge stabilization: %s, %s, refresh=%d, residual=%d", enabled ? "on" : "off",
+         method == EdgeStabilizer::METHOD_ECC ? "ECC" : "LK", refreshInterval, residualThreshold);
+}
+
+/**
+ * JNI Method: Get motion-compensated edge reuse statistics
+ * Java signature: getEdgeStabilizerStats() -> long[] {frames, warped, partial, full, tilesRecomputed, motionFailures}
+ */
+extern "C" JNIEXPORT jlongArray JNICALL
+Java_com_example_realtimeedgedetection_NativeImageProcessor_getEdgeStabilizerStats(
+        JNIEnv *env,
+        jclass /* clazz */) {
+    
+    EdgeStabilizer::Stats stats = edgeStabilizer.stats();
+    jlong values[6] = {
+            (jlong) stats.frames,
+            (jlong) stats.warped,
+            (jlong) stats.partial,
+            (jlong) stats.full,
+            (jlong) stats.tilesRecomputed,
+            (jlong) stats.motionFailures
+    };
+    jlongArray result = env->NewLongArray(6);
+    if (result != nullptr) {
+        env->SetLongArrayRegion(result, 0, 6, values);
+    }
+    return result;
+}
+
 /**
  * JNI Method: Stop frame processing
  * Java signature: stopFrameProcessing() -> void
@@ -968,10 +2094,15 @@ Java_com_example_realtimeedgedetection_MainActivity_notifyFilterChange(
         return;
     }
 
+    bool changed;
     {
         std::lock_guard<std::mutex> lock(frameMutex);
+        changed = currentFilterType != filterType;
         currentFilterType = filterType;
     }
 
-    LOGI("Filter changed to: %d (0=Grayscale, 1=Canny Edge, 2=Original)", filterType);
+    // Called once per preview frame, so only the actual transitions are logged
+    if (changed) {
+        LOGI("Filter changed to: %d (0=Grayscale, 1=Canny Edge, 2=Original)", filterType);
+    }
 }
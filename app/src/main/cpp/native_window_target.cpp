@@ -0,0 +1,39 @@
+#include "native_window_target.h"
+
+#define LOG_TAG "NativeWindowTarget"
+#include "edge_log.h"
+
+NativeWindowTarget::NativeWindowTarget(ANativeWindow* window)
+        : window_(window) {
+    ANativeWindow_acquire(window_);
+}
+
+NativeWindowTarget::~NativeWindowTarget() {
+    ANativeWindow_release(window_);
+}
+
+bool NativeWindowTarget::configure(int32_t width, int32_t height, int32_t format) {
+    int32_t result = ANativeWindow_setBuffersGeometry(window_, width, height, format);
+    if (result != 0) {
+        LOGE("ANativeWindow_setBuffersGeometry(%d, %d, %d) failed: %d", width, height, format, result);
+        return false;
+    }
+    return true;
+}
+
+bool NativeWindowTarget::lock(WindowBuffer& buffer) {
+    ANativeWindow_Buffer locked;
+    if (ANativeWindow_lock(window_, &locked, nullptr) != 0) {
+        return false;
+    }
+    buffer.bits = locked.bits;
+    buffer.width = locked.width;
+    buffer.height = locked.height;
+    buffer.stride = locked.stride;
+    buffer.format = locked.format;
+    return true;
+}
+
+void NativeWindowTarget::unlockAndPost() {
+    ANativeWindow_unlockAndPost(window_);
+}
@@ -0,0 +1,26 @@
+#ifndef NATIVE_WINDOW_TARGET_H
+#define NATIVE_WINDOW_TARGET_H
+
+#include <android/native_window.h>
+#include "window_presenter.h"
+
+/** WindowTarget backed by an ANativeWindow; holds its own reference to the window */
+class NativeWindowTarget : public WindowTarget {
+public:
+    explicit NativeWindowTarget(ANativeWindow* window);
+    ~NativeWindowTarget() override;
+
+    bool configure(int32_t width, int32_t height, int32_t format) override;
+    bool lock(WindowBuffer& buffer) override;
+    void unlockAndPost() override;
+
+    ANativeWindow* window() const { return window_; }
+
+private:
+    NativeWindowTarget(const NativeWindowTarget&);
+    NativeWindowTarget& operator=(const NativeWindowTarget&);
+
+    ANativeWindow* window_;
+};
+
+#endif // NATIVE_WINDOW_TARGET_H
@@ -0,0 +1,309 @@
+#include "window_presenter.h"
+#include <algorithm>
+#include <cstring>
+
+#define LOG_TAG "WindowPresenter"
+#include "edge_log.h"
+
+namespace {
+
+inline uint16_t packRGB565(uint8_t r, uint8_t g, uint8_t b) {
+    return (uint16_t) (((r & 0xF8) << 8) | ((g & 0xFC) << 3) | (b >> 3));
+}
+
+int bytesPerPixel(int32_t format) {
+    switch (format) {
+        case WINDOW_PIXEL_RGBA_8888:
+        case WINDOW_PIXEL_RGBX_8888:
+            return 4;
+        case WINDOW_PIXEL_RGB_565:
+            return 2;
+        default:
+            return 0;
+    }
+}
+
+void convertRow8888(const uint8_t* src, int32_t channels, uint8_t* dst, int32_t count) {
+    if (channels == 4) {
+        std::memcpy(dst, src, (size_t) count * 4);
+        return;
+    }
+    for (int32_t x = 0; x < count; x++) {
+        uint8_t v = src[x];
+        dst[0] = v;
+        dst[1] = v;
+        dst[2] = v;
+        dst[3] = 0xFF;
+        dst += 4;
+    }
+}
+
+void convertRow565(const uint8_t* src, int32_t channels, uint16_t* dst, int32_t count) {
+    if (channels == 4) {
+        for (int32_t x = 0; x < count; x++) {
+            dst[x] = packRGB565(src[0], src[1], src[2]);
+            src += 4;
+        }
+        return;
+    }
+    for (int32_t x = 0; x < count; x++) {
+        dst[x] = packRGB565(src[x], src[x], src[x]);
+    }
+}
+
+} // namespace
+
+WindowPresenter::WindowPresenter()
+        : running_(false),
+          pendingSlot_(-1),
+          format_(WINDOW_PIXEL_RGBA_8888),
+          configuredWidth_(0),
+          configuredHeight_(0) {
+    for (int i = 0; i < SLOT_COUNT; i++) {
+        slots_[i].width = 0;
+        slots_[i].height = 0;
+        slots_[i].channels = 0;
+        slots_[i].state = SLOT_FREE;
+    }
+    resetStats();
+}
+
+WindowPresenter::~WindowPresenter() {
+    detach();
+}
+
+void WindowPresenter::attach(std::unique_ptr<WindowTarget> target, int32_t format) {
+    std::lock_guard<std::mutex> control(controlMutex_);
+    std::unique_lock<std::mutex> lock(mutex_);
+    stopLocked(lock);
+
+    target_ = std::move(target);
+    if (!target_) {
+        return;
+    }
+    format_ = bytesPerPixel(format) != 0 ? format : WINDOW_PIXEL_RGBA_8888;
+    configuredWidth_ = 0;
+    configuredHeight_ = 0;
+    running_ = true;
+    renderThread_ = std::thread(&WindowPresenter::renderLoop, this);
+    LOGI("Attached window target, format=%d", format_);
+}
+
+void WindowPresenter::detach() {
+    std::lock_guard<std::mutex> control(controlMutex_);
+    std::unique_lock<std::mutex> lock(mutex_);
+    stopLocked(lock);
+    if (target_) {
+        target_.reset();
+        LOGI("Detached window target");
+    }
+}
+
+bool WindowPresenter::isAttached() const {
+    std::lock_guard<std::mutex> lock(mutex_);
+    return running_;
+}
+
+void WindowPresenter::stopLocked(std::unique_lock<std::mutex>& lock) {
+    if (!running_) {
+        return;
+    }
+    running_ = false;
+    frameReady_.notify_all();
+    std::thread thread(std::move(renderThread_));
+    lock.unlock();
+    thread.join();
+    lock.lock();
+
+    // Whatever was still waiting is never shown
+    if (pendingSlot_ >= 0) {
+        slots_[pendingSlot_].state = SLOT_FREE;
+        pendingSlot_ = -1;
+        stats_.dropped++;
+    }
+    frameDone_.notify_all();
+}
+
+bool WindowPresenter::submit(const uint8_t* data, int32_t width, int32_t height,
+                             int32_t stepBytes, int32_t channels) {
+    if (data == nullptr || width <= 0 || height <= 0 || (channels != 1 && channels != 4) ||
+        stepBytes < width * channels) {
+        LOGE_RATE("Unsupported frame: %dx%d, %d channels, step %d", width, height, channels, stepBytes);
+        return false;
+    }
+
+    int index = -1;
+    {
+        std::lock_guard<std::mutex> lock(mutex_);
+        if (!running_) {
+            return false;
+        }
+        stats_.submitted++;
+        if (pendingSlot_ >= 0) {
+            // The render thread hasn't picked the previous frame up yet; replace it
+            index = pendingSlot_;
+            pendingSlot_ = -1;
+            stats_.dropped++;
+        } else {
+            for (int i = 0; i < SLOT_COUNT; i++) {
+                if (slots_[i].state == SLOT_FREE) {
+                    index = i;
+                    break;
+                }
+            }
+        }
+        if (index < 0) {
+            // Only reachable with several producers filling slots at once
+            stats_.dropped++;
+            return false;
+        }
+        slots_[index].state = SLOT_FILLING;
+    }
+
+    // Copy outside the lock so the render thread is never held up by the producer
+    Slot& slot = slots_[index];
+    size_t rowBytes = (size_t) width * channels;
+    if (slot.pixels.size() < rowBytes * height) {
+        slot.pixels.resize(rowBytes * height);
+    }
+    if (stepBytes == (int32_t) rowBytes) {
+        std::memcpy(slot.pixels.data(), data, rowBytes * height);
+    } else {
+        for (int32_t y = 0; y < height; y++) {
+            std::memcpy(slot.pixels.data() + y * rowBytes, data + (size_t) y * stepBytes, rowBytes);
+        }
+    }
+    slot.width = width;
+    slot.height = height;
+    slot.channels = channels;
+
+    {
+        std::lock_guard<std::mutex> lock(mutex_);
+        if (!running_) {
+            slot.state = SLOT_FREE;
+            return false;
+        }
+        slot.state = SLOT_PENDING;
+        pendingSlot_ = index;
+    }
+    frameReady_.notify_one();
+    return true;
+}
+
+void WindowPresenter::flush() {
+    std::unique_lock<std::mutex> lock(mutex_);
+    frameDone_.wait(lock, [this] {
+        if (!running_) {
+            return true;
+        }
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            if (slots_[i].state != SLOT_FREE) {
+                return false;
+            }
+        }
+        return true;
+    });
+}
+
+void WindowPresenter::renderLoop() {
+    LOGD("Render thread started");
+    std::unique_lock<std::mutex> lock(mutex_);
+    while (true) {
+        frameReady_.wait(lock, [this] { return !running_ || pendingSlot_ >= 0; });
+        if (!running_) {
+            break;
+        }
+        Slot& slot = slots_[pendingSlot_];
+        pendingSlot_ = -1;
+        slot.state = SLOT_DRAWING;
+
+        lock.unlock();
+        present(slot);
+        lock.lock();
+
+        slot.state = SLOT_FREE;
+        frameDone_.notify_all();
+    }
+    LOGD("Render thread stopped");
+}
+
+void WindowPresenter::present(Slot& slot) {
+    EDGE_SPAN("WindowPresenter.present");
+    int64_t start = edgelog::nowNs();
+
+    // Buffers match the frame size; the compositor does the scaling to the view
+    if (slot.width != configuredWidth_ || slot.height != configuredHeight_) {
+        if (!target_->configure(slot.width, slot.height, format_)) {
+            LOGW("Could not set window geometry %dx%d format %d", slot.width, slot.height, format_);
+        }
+        configuredWidth_ = slot.width;
+        configuredHeight_ = slot.height;
+    }
+
+    WindowBuffer buffer;
+    if (!target_->lock(buffer)) {
+        LOGE_RATE("Failed to lock window buffer");
+        std::lock_guard<std::mutex> lock(mutex_);
+        stats_.lockFailures++;
+        return;
+    }
+
+    bool converted = convert(slot.pixels.data(), slot.width, slot.height, slot.width * slot.channels,
+                             slot.channels, buffer);
+    target_->unlockAndPost();
+    if (!converted) {
+        LOGE_RATE("Unsupported window format: %d", buffer.format);
+    }
+
+    int64_t elapsed = edgelog::nowNs() - start;
+    EDGE_TRACE("presenter.posted", slot.width, elapsed);
+    std::lock_guard<std::mutex> lock(mutex_);
+    if (converted) {
+        stats_.presented++;
+    }
+    stats_.lastPresentNs = elapsed;
+}
+
+bool WindowPresenter::convert(const uint8_t* src, int32_t width, int32_t height, int32_t stepBytes,
+                              int32_t channels, const WindowBuffer& dst) {
+    int bpp = bytesPerPixel(dst.format);
+    if (bpp == 0 || dst.bits == nullptr || (channels != 1 && channels != 4)) {
+        return false;
+    }
+
+    int32_t copyWidth = std::min(width, dst.width);
+    int32_t copyHeight = std::min(height, dst.height);
+    size_t dstStepBytes = (size_t) dst.stride * bpp;
+    uint8_t* dstBase = static_cast<uint8_t*>(dst.bits);
+
+    for (int32_t y = 0; y < copyHeight; y++) {
+        const uint8_t* srcRow = src + (size_t) y * stepBytes;
+        uint8_t* dstRow = dstBase + y * dstStepBytes;
+        if (bpp == 4) {
+            convertRow8888(srcRow, channels, dstRow, copyWidth);
+        } else {
+            convertRow565(srcRow, channels, reinterpret_cast<uint16_t*>(dstRow), copyWidth);
+        }
+        if (copyWidth < dst.width) {
+            std::memset(dstRow + (size_t) copyWidth * bpp, 0, (size_t) (dst.width - copyWidth) * bpp);
+        }
+    }
+    for (int32_t y = copyHeight; y < dst.height; y++) {
+        std::memset(dstBase + y * dstStepBytes, 0, (size_t) dst.width * bpp);
+    }
+    return true;
+}
+
+WindowPresenter::Stats WindowPresenter::stats() const {
+    std::lock_guard<std::mutex> lock(mutex_);
+    return stats_;
+}
+
+void WindowPresenter::resetStats() {
+    std::lock_guard<std::mutex> lock(mutex_);
+    stats_.submitted = 0;
+    stats_.presented = 0;
+    stats_.dropped = 0;
+    stats_.lockFailures = 0;
+    stats_.lastPresentNs = 0;
+}
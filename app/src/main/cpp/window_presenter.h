@@ -0,0 +1,139 @@
+#ifndef WINDOW_PRESENTER_H
+#define WINDOW_PRESENTER_H
+
+#include <condition_variable>
+#include <cstdint>
+#include <memory>
+#include <mutex>
+#include <thread>
+#include <vector>
+
+/** Pixel formats a window buffer may use, same values as WINDOW_FORMAT_* */
+enum WindowPixelFormat {
+    WINDOW_PIXEL_RGBA_8888 = 1,
+    WINDOW_PIXEL_RGBX_8888 = 2,
+    WINDOW_PIXEL_RGB_565 = 4
+};
+
+/** A locked window buffer; stride is in pixels, as in ANativeWindow_Buffer */
+struct WindowBuffer {
+    void* bits;
+    int32_t width;
+    int32_t height;
+    int32_t stride;
+    int32_t format;
+};
+
+/**
+ * Destination the presenter draws into. The device implementation wraps an
+ * ANativeWindow (see native_window_target.h); host tests use an in-memory one.
+ * Methods are only called from the presenter's render thread.
+ */
+class WindowTarget {
+public:
+    virtual ~WindowTarget() {}
+
+    /** Request buffers of the given size and format; the compositor scales them to the view */
+    virtual bool configure(int32_t width, int32_t height, int32_t format) = 0;
+
+    /** Dequeue and lock the next buffer; false if none is available */
+    virtual bool lock(WindowBuffer& buffer) = 0;
+
+    /** Queue the buffer locked by lock() for display */
+    virtual void unlockAndPost() = 0;
+};
+
+/**
+ * Copies processed frames straight into window buffers on a dedicated render
+ * thread, so the streaming path never goes through a Java Bitmap.
+ *
+ * Frames are staged in three preallocated slots: one being drawn, one holding
+ * the newest submitted frame and one free for the producer. The producer never
+ * waits for the display; if a frame is still pending when the next one is
+ * submitted, the older one is dropped and its slot reused.
+ */
+class WindowPresenter {
+public:
+    struct Stats {
+        int64_t submitted;
+        int64_t presented;
+        int64_t dropped;          // replaced before the render thread got to it
+        int64_t lockFailures;
+        int64_t lastPresentNs;    // time spent converting and posting the last frame
+    };
+
+    static const int SLOT_COUNT = 3;
+
+    WindowPresenter();
+    ~WindowPresenter();
+
+    /**
+     * Start presenting into target, replacing any previous target
+     * @param format Preferred buffer format (WINDOW_PIXEL_*)
+     */
+    void attach(std::unique_ptr<WindowTarget> target, int32_t format);
+
+    /** Stop the render thread and release the target */
+    void detach();
+
+    bool isAttached() const;
+
+    /**
+     * Queue a frame for display. Returns without waiting for the render thread.
+     * @param data Top-left pixel of an 8-bit RGBA (channels == 4) or gray (channels == 1) image
+     * @param stepBytes Bytes between the starts of consecutive rows
+     * @return false if nothing is attached or the frame layout is unsupported
+     */
+    bool submit(const uint8_t* data, int32_t width, int32_t height, int32_t stepBytes, int32_t channels);
+
+    /** Block until every submitted frame has been presented or dropped (tests, shutdown) */
+    void flush();
+
+    Stats stats() const;
+    void resetStats();
+
+    /**
+     * Convert one frame into a locked buffer, honouring the buffer stride.
+     * Copies the overlapping area when sizes differ and clears the rest.
+     * @return false if the buffer format is not supported
+     */
+    static bool convert(const uint8_t* src, int32_t width, int32_t height, int32_t stepBytes,
+                        int32_t channels, const WindowBuffer& dst);
+
+private:
+    enum SlotState {
+        SLOT_FREE,
+        SLOT_FILLING,
+        SLOT_PENDING,
+        SLOT_DRAWING
+    };
+
+    struct Slot {
+        std::vector<uint8_t> pixels;   // tightly packed, grows but never shrinks
+        int32_t width;
+        int32_t height;
+        int32_t channels;
+        SlotState state;
+    };
+
+    void renderLoop();
+    void stopLocked(std::unique_lock<std::mutex>& lock);
+    void present(Slot& slot);
+
+    std::mutex controlMutex_;      // serializes attach/detach
+    mutable std::mutex mutex_;
+    std::condition_variable frameReady_;
+    std::condition_variable frameDone_;
+    std::thread renderThread_;
+    std::unique_ptr<WindowTarget> target_;
+    bool running_;
+    int pendingSlot_;
+    int32_t format_;
+    int32_t configuredWidth_;
+    int32_t configuredHeight_;
+
+    Slot slots_[SLOT_COUNT];
+    Stats stats_;
+};
+
+#endif // WINDOW_PRESENTER_H
@@ -9,8 +9,7 @@ import androidx.camera.lifecycle.ProcessCameraProvider
 import androidx.camera.view.PreviewView
 import androidx.core.content.ContextCompat
 import androidx.lifecycle.LifecycleOwner
-import java.util.concurrent.ExecutorService
-import java.util.concurrent.Executors
+import com.example.realtimeedgedetection.ComputeScheduler
 
 class CameraManager(private val context: Context) {
     
@@ -19,7 +18,8 @@ class CameraManager(private val context: Context) {
     }
     
     private var cameraProvider: ProcessCameraProvider? = null
-    private var cameraExecutor: ExecutorService = Executors.newSingleThreadExecutor()
+    // KEEP_ONLY_LATEST keeps one analysis in flight, so the PREVIEW queue never rejects it
+    private val cameraExecutor = ComputeScheduler.getDefault().executor(ComputeScheduler.Priority.PREVIEW)
     
     fun startCamera(
         previewView: PreviewView,
@@ -74,7 +74,7 @@ class CameraManager(private val context: Context) {
     }
     
     fun shutdown() {
-        cameraExecutor.shutdown()
+        // The shared compute pool outlives this manager
         Log.d(TAG, "CameraManager shutdown")
     }
 }
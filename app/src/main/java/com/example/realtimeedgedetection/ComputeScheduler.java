@@ -0,0 +1,385 @@
+package com.example.realtimeedgedetection;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The app's one pool of worker threads, shared by preview processing, photo
+ * capture, encoding, I/O and background indexing.
+ *
+ * Work is submitted under a priority class. Each class has its own bounded
+ * queue; a full queue rejects new work instead of growing, so callers decide
+ * what to drop. A free worker always takes the oldest task of the highest
+ * class that has one. Workers run each task at its class's thread priority.
+ *
+ * Priority alone cannot stop a long gallery scan that already holds every
+ * worker from delaying the next preview frame, so the classes below PREVIEW
+ * together may occupy at most the pool size minus a reserve, and BACKGROUND
+ * has a smaller cap of its own. The reserved workers only ever run PREVIEW
+ * tasks, which therefore start as soon as they are queued unless other
+ * preview work already fills the reserve.
+ *
+ * Per-class counters (queue wait, busy time, rejections) are exported by
+ * registerMetrics(). Failed tasks are counted and passed to the
+ * FailureHandler (logcat for the default scheduler); a worker killed by an
+ * Error is replaced before the Error propagates. Pure Java, so the
+ * scheduling can be tested off-device.
+ */
+public final class ComputeScheduler {
+
+    /** Told about each task that threw, on the worker that ran it */
+    public interface FailureHandler {
+        void onFailure(Priority priority, Throwable failure);
+    }
+
+    public enum Priority {
+        PREVIEW("preview", Thread.MAX_PRIORITY - 1, 8),
+        CAPTURE("capture", Thread.NORM_PRIORITY + 2, 4),
+        ENCODE("encode", Thread.NORM_PRIORITY + 1, 4),
+        IO("io", Thread.NORM_PRIORITY, 32),
+        BACKGROUND("background", Thread.MIN_PRIORITY, 16);
+
+        public final String label;
+        final int threadPriority;
+        final int capacity;
+
+        Priority(String label, int threadPriority, int capacity) {
+            this.label = label;
+            this.threadPriority = threadPriority;
+            this.capacity = capacity;
+        }
+    }
+
+    /** Counters of one class since the scheduler started */
+    public static final class Stats {
+        public final long submitted;
+        public final long completed;
+        public final long rejected;       // queue full or scheduler shut down
+        public final long failed;         // tasks that threw
+        public final long busyNanos;      // worker time spent running tasks
+        public final long waitNanos;      // total time tasks spent queued
+        public final int pending;
+        public final int running;
+
+        Stats(long submitted, long completed, long rejected, long failed, long busyNanos, long waitNanos,
+              int pending, int running) {
+            this.submitted = submitted;
+            this.completed = completed;
+            this.rejected = rejected;
+            this.failed = failed;
+            this.busyNanos = busyNanos;
+            this.waitNanos = waitNanos;
+            this.pending = pending;
+            this.running = running;
+        }
+    }
+
+    private static final class Task {
+        final Runnable runnable;
+        final long queuedAt;
+
+        Task(Runnable runnable, long queuedAt) {
+            this.runnable = runnable;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private static final class ClassState {
+        final ArrayDeque<Task> queue;
+        final int limit;
+        int running = 0;
+        long submitted = 0;
+        long completed = 0;
+        long rejected = 0;
+        long failed = 0;
+        long busyNanos = 0;
+        long waitNanos = 0;
+
+        ClassState(int capacity, int limit) {
+            this.queue = new ArrayDeque<>(capacity);
+            this.limit = limit;
+        }
+    }
+
+    private static volatile ComputeScheduler defaultScheduler;
+
+    private final Object lock = new Object();
+    private final ClassState[] classes = new ClassState[Priority.values().length];
+    private final Executor[] executors = new Executor[Priority.values().length];
+    private final Thread[] workers;     // guarded by lock once started
+    private final FailureHandler failureHandler;
+    private final int sharedLimit;      // workers the classes below PREVIEW may hold together
+    private int sharedRunning = 0;
+    private boolean shutdown = false;
+
+    /** The process-wide scheduler, one worker per core */
+    public static ComputeScheduler getDefault() {
+        ComputeScheduler scheduler = defaultScheduler;
+        if (scheduler == null) {
+            synchronized (ComputeScheduler.class) {
+                scheduler = defaultScheduler;
+                if (scheduler == null) {
+                    scheduler = new ComputeScheduler("Compute", Runtime.getRuntime().availableProcessors(),
+                            new TaskFailureLog());
+                    defaultScheduler = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /** A scheduler whose failed tasks are only counted */
+    public ComputeScheduler(String name, int threads) {
+        this(name, threads, null);
+    }
+
+    /** @param failureHandler Told about tasks that threw; may be null */
+    public ComputeScheduler(String name, int threads, FailureHandler failureHandler) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        // A quarter of the pool (at least one worker) is kept for preview; a
+        // single-core pool cannot reserve anything
+        int reserve = threads > 1 ? Math.max(1, threads / 4) : 0;
+        sharedLimit = threads - reserve;
+        this.failureHandler = failureHandler;
+        int backgroundLimit = Math.max(1, threads / 4);
+        for (Priority priority : Priority.values()) {
+            int limit = priority == Priority.PREVIEW ? threads
+                    : priority == Priority.BACKGROUND ? Math.min(backgroundLimit, sharedLimit) : sharedLimit;
+            classes[priority.ordinal()] = new ClassState(priority.capacity, limit);
+            executors[priority.ordinal()] = runnable -> {
+                if (!execute(priority, runnable)) {
+                    throw new RejectedExecutionException(priority.label + " queue full");
+                }
+            };
+        }
+
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::workLoop, name + "-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    /** Most workers the given class may occupy at once */
+    public int getLimit(Priority priority) {
+        return classes[priority.ordinal()].limit;
+    }
+
+    /**
+     * Queue a task
+     * @return false if the class's queue is full or the scheduler is shut down; the task will not run
+     */
+    public boolean execute(Priority priority, Runnable task) {
+        ClassState state = classes[priority.ordinal()];
+        synchronized (lock) {
+            if (shutdown || state.queue.size() >= priority.capacity) {
+                state.rejected++;
+                return false;
+            }
+            state.submitted++;
+            state.queue.addLast(new Task(task, System.nanoTime()));
+            lock.notify();
+            return true;
+        }
+    }
+
+    /** Executor view of one class; throws RejectedExecutionException where execute() returns false */
+    public Executor executor(Priority priority) {
+        return executors[priority.ordinal()];
+    }
+
+    public Stats getStats(Priority priority) {
+        ClassState state = classes[priority.ordinal()];
+        synchronized (lock) {
+            return new Stats(state.submitted, state.completed, state.rejected, state.failed, state.busyNanos,
+                    state.waitNanos, state.queue.size(), state.running);
+        }
+    }
+
+    /** Stop the workers; queued tasks are discarded, running ones finish */
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            for (ClassState state : classes) {
+                state.queue.clear();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /** @return true if every worker exited within timeoutMs */
+    public boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (int i = 0; i < workers.length; i++) {
+            Thread worker;
+            synchronized (lock) {
+                worker = workers[i];
+            }
+            worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Export per-class counters and gauges. Utilization is the fraction of the
+     * pool a class kept busy between two scrapes.
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.gauge("edge_scheduler_workers", "Worker threads in the shared compute pool", this::getThreadCount);
+        for (Priority priority : Priority.values()) {
+            String label = priority.label;
+            registry.counter("edge_scheduler_tasks_completed_total", "Tasks run by the compute pool per priority class",
+                    () -> getStats(priority).completed, "class", label);
+            registry.counter("edge_scheduler_tasks_failed_total", "Tasks of a priority class that threw",
+                    () -> getStats(priority).failed, "class", label);
+            registry.counter("edge_scheduler_tasks_rejected_total", "Tasks refused because a priority class queue was full",
+                    () -> getStats(priority).rejected, "class", label);
+            registry.gauge("edge_scheduler_pending", "Tasks queued per priority class",
+                    () -> getStats(priority).pending, "class", label);
+            registry.counter("edge_scheduler_busy_seconds_total", "Worker time spent per priority class",
+                    () -> getStats(priority).busyNanos / 1e9, "class", label);
+            registry.counter("edge_scheduler_wait_seconds_total", "Total time tasks of a priority class waited for a worker",
+                    () -> getStats(priority).waitNanos / 1e9, "class", label);
+            registry.gauge("edge_scheduler_utilization", "Fraction of the pool busy with a priority class since the last scrape",
+                    new UtilizationSampler(priority)::sample, "class", label);
+        }
+    }
+
+    private final class UtilizationSampler {
+        private final Priority priority;
+        private long lastBusy;
+        private long lastTime = System.nanoTime();
+
+        UtilizationSampler(Priority priority) {
+            this.priority = priority;
+            this.lastBusy = getStats(priority).busyNanos;
+        }
+
+        synchronized double sample() {
+            long busy = getStats(priority).busyNanos;
+            long now = System.nanoTime();
+            double utilization = now > lastTime ? (double) (busy - lastBusy) / ((now - lastTime) * workers.length) : 0.0;
+            lastBusy = busy;
+            lastTime = now;
+            return utilization;
+        }
+    }
+
+    private void workLoop() {
+        Thread self = Thread.currentThread();
+        while (true) {
+            Priority priority;
+            Task task;
+            synchronized (lock) {
+                while ((priority = pickLocked()) == null) {
+                    if (shutdown) {
+                        return;
+                    }
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                ClassState state = classes[priority.ordinal()];
+                task = state.queue.pollFirst();
+                state.running++;
+                if (priority != Priority.PREVIEW) {
+                    sharedRunning++;
+                }
+                state.waitNanos += System.nanoTime() - task.queuedAt;
+            }
+
+            if (self.getPriority() != priority.threadPriority) {
+                self.setPriority(priority.threadPriority);
+            }
+            long start = System.nanoTime();
+            Throwable failure = null;
+            try {
+                task.runnable.run();
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                synchronized (lock) {
+                    ClassState state = classes[priority.ordinal()];
+                    state.running--;
+                    if (priority != Priority.PREVIEW) {
+                        sharedRunning--;
+                        // A capped class may have work that can run now
+                        lock.notify();
+                    }
+                    state.completed++;
+                    state.busyNanos += elapsed;
+                    if (failure != null) {
+                        state.failed++;
+                    }
+                }
+            }
+            if (failure != null) {
+                reportFailure(priority, failure);
+            }
+            if (failure instanceof Error) {
+                replaceWorker(self);
+                throw (Error) failure;
+            }
+        }
+    }
+
+    private void reportFailure(Priority priority, Throwable failure) {
+        if (failureHandler == null) {
+            return;
+        }
+        try {
+            failureHandler.onFailure(priority, failure);
+        } catch (RuntimeException e) {
+            // A broken handler must not take the worker down with it
+        }
+    }
+
+    /** Start a worker in place of one about to die, so the pool keeps its size */
+    private void replaceWorker(Thread dying) {
+        synchronized (lock) {
+            if (shutdown) {
+                return;
+            }
+            for (int i = 0; i < workers.length; i++) {
+                if (workers[i] == dying) {
+                    workers[i] = new Thread(this::workLoop, dying.getName());
+                    workers[i].setDaemon(true);
+                    workers[i].start();
+                    return;
+                }
+            }
+        }
+    }
+
+    private Priority pickLocked() {
+        if (shutdown) {
+            return null;
+        }
+        for (Priority priority : Priority.values()) {
+            ClassState state = classes[priority.ordinal()];
+            if (state.queue.isEmpty() || state.running >= state.limit) {
+                continue;
+            }
+            if (priority != Priority.PREVIEW && sharedRunning >= sharedLimit) {
+                // Every class from here down is capped by the same limit
+                return null;
+            }
+            return priority;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.realtimeedgedetection;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+/**
+ * Contours of an edge map, held natively in one flat point buffer.
+ *
+ * Replaces Imgproc.findContours' List&lt;MatOfPoint&gt;: instead of a Java object
+ * and a native Mat per contour, the whole set lives behind a single handle and
+ * contour i is addressed by index. Area, perimeter and bounding box are
+ * computed natively while the set is built, and the min* bounds drop small
+ * contours before anything is copied to Java. Per-contour getters copy the
+ * matching array for all contours in one JNI call on first use after each
+ * find or filter; the Java arrays are kept and only grow, so reuse one
+ * instance per stream.
+ *
+ * Not thread-safe. close() frees the native buffers.
+ */
+public final class ContourSet implements AutoCloseable {
+
+    static {
+        System.loadLibrary("realtimeedgedetection");
+    }
+
+    // Contour retrieval modes (same values as cv::RETR_*)
+    public static final int MODE_EXTERNAL = 0;
+    public static final int MODE_LIST = 1;
+
+    private static final int INTS_POINTS = 0;
+    private static final int INTS_OFFSETS = 1;
+    private static final int INTS_BOUNDS = 2;
+    private static final int FLOATS_AREAS = 0;
+    private static final int FLOATS_LENGTHS = 1;
+
+    private long handle;
+    private int size = 0;
+    private int totalPoints = -1;   // fetched lazily
+
+    private int[] points = new int[0];
+    private int[] offsets = new int[0];
+    private int[] bounds = new int[0];
+    private float[] areas = new float[0];
+    private float[] lengths = new float[0];
+    private boolean pointsValid, offsetsValid, boundsValid, areasValid, lengthsValid;
+
+    public ContourSet() {
+        handle = nativeCreate();
+    }
+
+    /**
+     * Replace the contents with all contours of an edge mask
+     * @param edges 8-bit mask, width * height bytes, non-zero = edge (e.g. Canny output)
+     * @return Number of contours
+     */
+    public int find(byte[] edges, int width, int height) {
+        return find(edges, width, height, MODE_LIST, 0.0, 0.0, 0);
+    }
+
+    /**
+     * Replace the contents with the contours of an edge mask that pass the given bounds
+     * @param mode MODE_LIST or MODE_EXTERNAL (outer contours only)
+     * @param minArea Minimum enclosed area in pixels, 0 for any
+     * @param minLength Minimum perimeter in pixels, 0 for any
+     * @param minPoints Minimum number of contour vertices, 0 for any
+     * @return Number of contours kept
+     */
+    public int find(byte[] edges, int width, int height, int mode,
+                    double minArea, double minLength, int minPoints) {
+        checkOpen();
+        if (width <= 0 || height <= 0 || edges.length < width * height) {
+            throw new IllegalArgumentException("Edge mask of " + edges.length + " bytes is too small for "
+                    + width + "x" + height);
+        }
+        return update(nativeFind(handle, edges, width, height, checkMode(mode), minArea, minLength, minPoints));
+    }
+
+    /**
+     * Run the app's blur + Canny on an ARGB_8888 bitmap and keep the contours of the result
+     * @return Number of contours kept
+     */
+    public int findInBitmap(Bitmap bitmap, int mode, double minArea, double minLength, int minPoints) {
+        checkOpen();
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            throw new IllegalArgumentException("Bitmap must be ARGB_8888, got " + bitmap.getConfig());
+        }
+        return update(nativeFindInBitmap(handle, bitmap, checkMode(mode), minArea, minLength, minPoints));
+    }
+
+    /**
+     * Drop contours below the given bounds, natively and in place
+     * @return Number of contours remaining
+     */
+    public int filter(double minArea, double minLength, int minPoints) {
+        checkOpen();
+        return update(nativeFilter(handle, minArea, minLength, minPoints));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int totalPoints() {
+        checkOpen();
+        if (totalPoints < 0) {
+            totalPoints = nativeTotalPoints(handle);
+        }
+        return totalPoints;
+    }
+
+    /** Enclosed area of contour i in pixels */
+    public float area(int i) {
+        checkIndex(i);
+        if (!areasValid) {
+            areas = copyFloats(FLOATS_AREAS, areas, size);
+            areasValid = true;
+        }
+        return areas[i];
+    }
+
+    /** Perimeter of contour i in pixels, treating it as closed */
+    public float length(int i) {
+        checkIndex(i);
+        if (!lengthsValid) {
+            lengths = copyFloats(FLOATS_LENGTHS, lengths, size);
+            lengthsValid = true;
+        }
+        return lengths[i];
+    }
+
+    /** Store the bounding box of contour i in out and return it */
+    public Rect bounds(int i, Rect out) {
+        checkIndex(i);
+        if (!boundsValid) {
+            bounds = copyInts(INTS_BOUNDS, bounds, size * 4);
+            boundsValid = true;
+        }
+        int b = i * 4;
+        out.set(bounds[b], bounds[b + 1], bounds[b] + bounds[b + 2], bounds[b + 1] + bounds[b + 3]);
+        return out;
+    }
+
+    /** Number of vertices of contour i */
+    public int pointCount(int i) {
+        checkIndex(i);
+        int[] o = offsets();
+        return o[i + 1] - o[i];
+    }
+
+    /**
+     * Copy the vertices of contour i into dst as x,y pairs
+     * @return Number of points copied
+     */
+    public int copyPoints(int i, int[] dst) {
+        int count = pointCount(i);
+        if (dst.length < count * 2) {
+            throw new IllegalArgumentException("Destination holds " + dst.length / 2 + " points, contour has " + count);
+        }
+        System.arraycopy(points(), offsets()[i] * 2, dst, 0, count * 2);
+        return count;
+    }
+
+    /**
+     * All vertices as x,y pairs; contour i spans points [offsets()[i], offsets()[i + 1]).
+     * The array is owned by this set and overwritten by the next find or filter.
+     */
+    public int[] points() {
+        checkOpen();
+        if (!pointsValid) {
+            points = copyInts(INTS_POINTS, points, totalPoints() * 2);
+            pointsValid = true;
+        }
+        return points;
+    }
+
+    /** size() + 1 point offsets; owned by this set like points() */
+    public int[] offsets() {
+        checkOpen();
+        if (!offsetsValid) {
+            offsets = copyInts(INTS_OFFSETS, offsets, size + 1);
+            offsetsValid = true;
+        }
+        return offsets;
+    }
+
+    @Override
+    public void close() {
+        if (handle != 0) {
+            nativeDestroy(handle);
+            handle = 0;
+            size = 0;
+        }
+    }
+
+    private int update(int count) {
+        size = count;
+        totalPoints = -1;
+        pointsValid = offsetsValid = boundsValid = areasValid = lengthsValid = false;
+        return count;
+    }
+
+    private int[] copyInts(int which, int[] dst, int length) {
+        if (dst.length < length) {
+            dst = new int[length];
+        }
+        nativeCopyInts(handle, which, dst);
+        return dst;
+    }
+
+    private float[] copyFloats(int which, float[] dst, int length) {
+        if (dst.length < length) {
+            dst = new float[length];
+        }
+        nativeCopyFloats(handle, which, dst);
+        return dst;
+    }
+
+    private static int checkMode(int mode) {
+        if (mode != MODE_LIST && mode != MODE_EXTERNAL) {
+            throw new IllegalArgumentException("Unsupported contour mode: " + mode);
+        }
+        return mode;
+    }
+
+    private void checkIndex(int i) {
+        checkOpen();
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Contour " + i + " out of bounds for size " + size);
+        }
+    }
+
+    private void checkOpen() {
+        if (handle == 0) {
+            throw new IllegalStateException("ContourSet is closed");
+        }
+    }
+
+    private static native long nativeCreate();
+    private static native void nativeDestroy(long handle);
+    private static native int nativeFind(long handle, byte[] edges, int width, int height, int mode,
+                                         double minArea, double minLength, int minPoints);
+    private static native int nativeFindInBitmap(long handle, Bitmap bitmap, int mode,
+                                                 double minArea, double minLength, int minPoints);
+    private static native int nativeFilter(long handle, double minArea, double minLength, int minPoints);
+    private static native int nativeTotalPoints(long handle);
+    private static native void nativeCopyInts(long handle, int which, int[] dst);
+    private static native void nativeCopyFloats(long handle, int which, float[] dst);
+}
@@ -2,9 +2,16 @@ package com.example.realtimeedgedetection
 
 import android.content.Context
 import android.graphics.Bitmap
+import android.os.Build
+import android.os.PowerManager
 import android.util.Log
+import android.view.Surface
+import com.example.realtimeedgedetection.recording.FrameRecorder
+import com.example.realtimeedgedetection.recording.VideoSink
+import java.nio.ByteBuffer
 import java.util.concurrent.LinkedBlockingQueue
 import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
 
 /**
  * DataFlowController manages the complete image processing pipeline:
@@ -19,10 +26,17 @@ class DataFlowController(private val context: Context) {
     // Frame buffer queue for backpressure handling
     private val frameQueue = LinkedBlockingQueue<FrameData>(2)
     
-    // Processing thread
-    private var processingThread: Thread? = null
+    // Frames are drained by one PREVIEW task at a time on the shared compute pool;
+    // processLock is held while a frame is in flight so stopPipeline can wait for it
+    private val scheduler = ComputeScheduler.getDefault()
+    private val drainScheduled = AtomicBoolean(false)
+    private val processLock = Any()
     private val isRunning = AtomicBoolean(false)
     
+    // Latest processed frame waiting for JPEG encoding, done by one ENCODE task at a time
+    private val pendingWebFrame = AtomicReference<Bitmap?>(null)
+    private val encodeScheduled = AtomicBoolean(false)
+    
     // Current state
     @Volatile
     private var currentFilter = FilterType.CANNY_EDGE
@@ -30,18 +44,39 @@ class DataFlowController(private val context: Context) {
     @Volatile
     private var isProcessing = false
     
-    // Performance metrics
-    private var frameCount = 0L
+    // Records processed frames on its own encoder thread while set; recordLock keeps
+    // offers from the pipeline and from camera sessions on one thread at a time
+    @Volatile
+    private var recorder: FrameRecorder? = null
+    private val recordLock = Any()
+    
+    // Adapts resolution and frame skipping to keep p95 latency within one 30fps frame
+    private val governor = FrameRateGovernor(LATENCY_BUDGET_NS, FrameRateGovernor.SYSTEM_CLOCK)
+    private var thermalListener: PowerManager.OnThermalStatusChangedListener? = null
+    private var nativeWidth = 0
+    private var nativeHeight = 0
+    
+    // Performance metrics (cumulative counts live in PipelineMetrics)
+    private var lastMetricsFrames = 0L
     private var lastMetricsTime = System.currentTimeMillis()
     private var currentFps = 0.0
     
+    /**
+     * @param timestamp Wall-clock capture time in ms, as reported to web clients
+     * @param timestampNs System.nanoTime() at capture, the clock camera sessions
+     *        also stamp recorded frames with
+     * @param release Hands rawData back to its owner once the pipeline is done
+     *        with it, whether the frame was processed, dropped or rejected
+     */
     data class FrameData(
         val frameId: Long,
         val rawData: ByteArray,
         val width: Int,
         val height: Int,
         val format: String, // YUV_420, RGBA, etc.
-        val timestamp: Long = System.currentTimeMillis()
+        val timestamp: Long = System.currentTimeMillis(),
+        val timestampNs: Long = System.nanoTime(),
+        val release: Runnable? = null
     )
     
     data class ProcessedFrame(
@@ -55,6 +90,17 @@ class DataFlowController(private val context: Context) {
     fun initialize() {
         try {
             webServer = WebServerManager(context)
+            MetricsRegistry.getDefault().gauge("edge_queue_depth", "Frames waiting in the pipeline queue",
+                { frameQueue.size.toDouble() }, "stage", PipelineMetrics.STAGE_PIPELINE)
+            MetricsRegistry.getDefault().gauge("edge_governor_level", "Frame-rate governor quality level (0 = full)",
+                { governor.settings.level.toDouble() })
+            MetricsRegistry.getDefault().gauge("edge_governor_p95_seconds", "Processing latency p95 seen by the governor",
+                { governor.p95Nanos / 1e9 })
+            
+            governor.setListener { settings ->
+                NativeImageProcessor.setProcessingScale(settings.processScale, settings.cannyScale)
+                Log.i(TAG, "Governor: $settings (p95 ${governor.p95Nanos / 1_000_000}ms)")
+            }
             Log.d(TAG, "DataFlowController initialized")
         } catch (e: Exception) {
             Log.e(TAG, "Failed to initialize DataFlowController", e)
@@ -69,15 +115,7 @@ class DataFlowController(private val context: Context) {
         
         try {
             webServer.startServer()
-            
-            // Start processing thread
-            processingThread = Thread {
-                processingLoop()
-            }.apply {
-                name = "DataFlowProcessing"
-                priority = Thread.MAX_PRIORITY - 1
-                start()
-            }
+            registerThermalListener()
             
             Log.d(TAG, "Processing pipeline started")
         } catch (e: Exception) {
@@ -86,13 +124,23 @@ class DataFlowController(private val context: Context) {
         }
     }
     
+    /**
+     * Stop processing. A running recording is left alone: finishing it blocks,
+     * so the caller stops it with stopRecording() off the main thread.
+     */
     fun stopPipeline() {
         if (!isRunning.getAndSet(false)) {
             return
         }
         
         try {
-            processingThread?.join(2000)
+            // Wait for the frame in flight; the drain task stops at the next frame
+            synchronized(processLock) {}
+            while (true) {
+                (frameQueue.poll() ?: break).release?.run()
+            }
+            setPreviewSurface(null)
+            unregisterThermalListener()
             webServer.stopServer()
             Log.d(TAG, "Processing pipeline stopped")
         } catch (e: Exception) {
@@ -106,19 +154,50 @@ class DataFlowController(private val context: Context) {
      */
     fun submitFrame(frameData: FrameData): Boolean {
         if (!isRunning.get()) {
+            frameData.release?.run()
             return false
         }
         
+        val traceStart = Tracer.begin()
+        PipelineMetrics.PIPELINE_FRAMES_IN.inc()
         // Drop oldest frame if queue is full (backpressure)
         if (!frameQueue.offer(frameData)) {
-            frameQueue.poll() // Drop oldest
-            frameQueue.offer(frameData)
+            frameQueue.poll()?.release?.run() // Drop oldest
+            if (!frameQueue.offer(frameData)) {
+                frameData.release?.run()
+            }
+            PipelineMetrics.PIPELINE_FRAMES_DROPPED.inc()
+            Tracer.instant("DataFlow.frameDropped")
             Log.w(TAG, "Frame queue overflow - dropped frame")
         }
+        scheduleDrain()
+        Tracer.end("DataFlow.submitFrame", traceStart)
         
         return true
     }
     
+    private fun registerThermalListener() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return
+        }
+        val powerManager = context.getSystemService(Context.POWER_SERVICE) as? PowerManager ?: return
+        val listener = PowerManager.OnThermalStatusChangedListener { status ->
+            Log.i(TAG, "Thermal status: $status")
+            governor.setThermalStatus(status)
+        }
+        powerManager.addThermalStatusListener(context.mainExecutor, listener)
+        thermalListener = listener
+    }
+    
+    private fun unregisterThermalListener() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return
+        }
+        val listener = thermalListener ?: return
+        (context.getSystemService(Context.POWER_SERVICE) as? PowerManager)?.removeThermalStatusListener(listener)
+        thermalListener = null
+    }
+    
     fun setActiveFilter(filter: FilterType) {
         currentFilter = filter
         Log.d(TAG, "Filter changed to: $filter")
@@ -126,11 +205,115 @@ class DataFlowController(private val context: Context) {
     
     fun getActiveFilter(): FilterType = currentFilter
     
+    /**
+     * Draw processed frames natively into surface, or stop when null.
+     * The surface must not also be a camera output target.
+     */
+    fun setPreviewSurface(surface: Surface?) {
+        NativeImageProcessor.processFrame(surface, nativeWidth, nativeHeight, currentFilter.ordinal)
+    }
+    
+    /**
+     * Tune static-scene edge reuse; lower thresholds recompute on smaller changes
+     */
+    fun setSceneChangeDetection(enabled: Boolean, threshold: Int = SCENE_CHANGE_THRESHOLD) {
+        NativeImageProcessor.setSceneChangeDetection(enabled, threshold)
+    }
+    
+    /**
+     * Recompute edges only where something moves, for fixed cameras. Restarts the
+     * background model, so the next frame runs in full.
+     * @param method NativeImageProcessor.MOTION_METHOD_MOG2 or MOTION_METHOD_KNN
+     */
+    fun setMotionGating(enabled: Boolean, method: Int = NativeImageProcessor.MOTION_METHOD_MOG2,
+                        analysisWidth: Int = MOTION_ANALYSIS_WIDTH, padding: Int = MOTION_PADDING,
+                        refreshInterval: Int = MOTION_REFRESH_INTERVAL) {
+        NativeImageProcessor.setMotionGating(enabled, method, analysisWidth, padding, refreshInterval)
+        Log.d(TAG, "Motion gating: $enabled")
+    }
+    
+    /**
+     * Carry edges along with the camera's motion while panning, recomputing only
+     * where the warped frame disagrees, plus a full pass every refreshInterval frames
+     * @param method NativeImageProcessor.STABILIZE_METHOD_LK or STABILIZE_METHOD_ECC
+     */
+    fun setEdgeStabilization(enabled: Boolean, method: Int = NativeImageProcessor.STABILIZE_METHOD_LK,
+                             refreshInterval: Int = STABILIZE_REFRESH_INTERVAL,
+                             residualThreshold: Int = STABILIZE_RESIDUAL_THRESHOLD) {
+        NativeImageProcessor.setEdgeStabilization(enabled, method, refreshInterval, residualThreshold)
+        Log.d(TAG, "Edge stabilization: $enabled")
+    }
+    
+    /**
+     * Find and follow a document outline on streamed frames. Full detection runs
+     * every detectInterval frames on a detectWidth-wide copy; optical flow tracks
+     * the corners in between, which keeps up with the preview rate.
+     */
+    fun setDocumentDetection(enabled: Boolean, detectInterval: Int = QUAD_DETECT_INTERVAL,
+                             detectWidth: Int = QUAD_DETECT_WIDTH) {
+        NativeImageProcessor.setQuadDetection(enabled, detectInterval, detectWidth)
+        Log.d(TAG, "Document detection: $enabled")
+    }
+    
+    /**
+     * Document corners in the latest processed frame, clockwise from top-left as
+     * fractions of the frame size, or null when none is in view
+     */
+    fun getDocumentQuad(): FloatArray? = NativeImageProcessor.getQuad()
+    
+    /**
+     * Start recording processed frames into sink. Frames are copied into a small
+     * ring and encoded on a separate thread; when the sink falls behind, frames
+     * are dropped from the recording rather than slowing the pipeline.
+     * @return false if a recording is already running
+     */
+    @Synchronized
+    fun startRecording(sink: VideoSink): Boolean {
+        if (recorder != null) {
+            return false
+        }
+        recorder = FrameRecorder(sink).apply { start() }
+        Log.i(TAG, "Recording started")
+        return true
+    }
+    
+    /**
+     * Stop recording and wait for queued frames to be encoded and the file finished.
+     * Blocks for up to a few seconds, so call it off the main thread.
+     * @return Final recorder counters, or null if nothing was recording
+     */
+    fun stopRecording(): FrameRecorder.Stats? {
+        val active = synchronized(this) {
+            val current = recorder
+            recorder = null
+            current
+        } ?: return null
+        
+        val stats = active.stop()
+        PipelineMetrics.RECORD_FRAMES_OUT.add(stats.written)
+        // Drops at offer() were counted as they happened; add the ones after queueing
+        PipelineMetrics.RECORD_FRAMES_DROPPED.add(stats.queued - stats.written)
+        if (stats.error != null) {
+            Log.e(TAG, "Recording failed", stats.error)
+        }
+        Log.i(TAG, "Recording stopped: $stats")
+        return stats
+    }
+    
+    fun isRecording(): Boolean = recorder != null
+    
+    /**
+     * Whether processed frames have anywhere to go: a recording, or web clients
+     * that fetched frames or lines recently. Camera paths skip submitting while not.
+     */
+    fun hasConsumers(): Boolean =
+        isRunning.get() && (recorder != null || webServer.hasFrameViewers() || webServer.hasLineViewers())
+    
     fun isProcessing(): Boolean = isProcessing
     
     fun getMetrics(): ProcessingMetrics {
         return ProcessingMetrics(
-            frameCount = frameCount,
+            frameCount = PipelineMetrics.PIPELINE_FRAMES_OUT.get(),
             fps = currentFps,
             queueSize = frameQueue.size,
             isRunning = isRunning.get()
@@ -144,59 +327,188 @@ class DataFlowController(private val context: Context) {
         val isRunning: Boolean
     )
     
-    private fun processingLoop() {
+    /** Start a drain task unless one is already queued or running */
+    private fun scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true) &&
+            !scheduler.execute(ComputeScheduler.Priority.PREVIEW) { drainFrames() }) {
+            // Preview queue full; the next submitted frame tries again
+            drainScheduled.set(false)
+        }
+    }
+    
+    /** Process queued frames in order, then give the worker back to the pool */
+    private fun drainFrames() {
         try {
             while (isRunning.get()) {
-                val frameData = frameQueue.poll()
-                
-                if (frameData != null) {
+                synchronized(processLock) {
+                    if (!isRunning.get()) return
+                    val frameData = frameQueue.poll() ?: return
                     processFrame(frameData)
-                } else {
-                    Thread.sleep(1) // Prevent busy waiting
                 }
-                
-                // Update metrics
                 updateMetrics()
             }
         } catch (e: Exception) {
             Log.e(TAG, "Error in processing loop", e)
+        } finally {
+            drainScheduled.set(false)
+            // A frame submitted between the last poll and the reset above would otherwise wait
+            if (isRunning.get() && !frameQueue.isEmpty()) {
+                scheduleDrain()
+            }
+        }
+    }
+    
+    /** Hand the frame to the web encoder, replacing one still waiting */
+    private fun publishWebFrame(bitmap: Bitmap) {
+        if (pendingWebFrame.getAndSet(bitmap) != null) {
+            PipelineMetrics.ENCODE_FRAMES_DROPPED.inc()
+        }
+        scheduleEncode()
+    }
+    
+    private fun scheduleEncode() {
+        if (encodeScheduled.compareAndSet(false, true) &&
+            !scheduler.execute(ComputeScheduler.Priority.ENCODE) { encodeWebFrames() }) {
+            // The pending frame is replaced (and counted) by the next one
+            encodeScheduled.set(false)
+        }
+    }
+    
+    private fun encodeWebFrames() {
+        try {
+            while (true) {
+                val bitmap = pendingWebFrame.getAndSet(null) ?: break
+                webServer.updateFrame(bitmap)
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "Error encoding web frame", e)
+        } finally {
+            encodeScheduled.set(false)
+            if (pendingWebFrame.get() != null) {
+                scheduleEncode()
+            }
         }
     }
     
     private fun processFrame(frameData: FrameData) {
         isProcessing = true
         val startTime = System.currentTimeMillis()
+        val startNanos = System.nanoTime()
+        val traceStart = Tracer.begin()
         
         try {
-            // Create placeholder bitmap for demo
-            val processedBitmap = Bitmap.createBitmap(frameData.width, frameData.height, Bitmap.Config.ARGB_8888)
+            // Frames the governor skips are converted but not filtered
+            val filter = if (governor.shouldProcess()) {
+                currentFilter
+            } else {
+                PipelineMetrics.PIPELINE_FRAMES_SKIPPED.inc()
+                FilterType.ORIGINAL
+            }
+            
+            // Only /api/frame viewers need a Bitmap and its JPEG; lines and recording use rgba
+            val processedBitmap = if (webServer.hasFrameViewers()) {
+                Bitmap.createBitmap(frameData.width, frameData.height, Bitmap.Config.ARGB_8888).also {
+                    PipelineMetrics.BITMAP_ALLOCATIONS.inc()
+                    PipelineMetrics.BITMAP_ALLOCATED_BYTES.add(it.byteCount.toLong())
+                }
+            } else {
+                null
+            }
             
+            if (frameData.format == FORMAT_NV21) {
+                ensureNativeFrameSize(frameData.width, frameData.height)
+                val rgba = NativeImageProcessor.processNV21Frame(
+                    frameData.rawData, frameData.width, frameData.height, filter.ordinal)
+                if (rgba != null) {
+                    if (filter == FilterType.CANNY_EDGE && LineDetection.enabled) {
+                        publishLines(frameData)
+                    }
+                    processedBitmap?.copyPixelsFromBuffer(ByteBuffer.wrap(rgba))
+                    // Capture time, so the recording keeps real-time pacing across dropped frames
+                    recordFrame(rgba, frameData.width, frameData.height, frameData.timestampNs)
+                }
+            }
+            
+            val processingNanos = System.nanoTime() - startNanos
             val processingTime = System.currentTimeMillis() - startTime
+            PipelineMetrics.PIPELINE_PROCESS_TIME.observeNanos(processingNanos)
+            if (filter != FilterType.ORIGINAL || currentFilter == FilterType.ORIGINAL) {
+                governor.onFrameProcessed(processingNanos, frameQueue.size)
+            }
             
-            // Send to web server with latest frame
-            webServer.updateFrame(processedBitmap)
+            // JPEG encoding for web viewers runs off the preview worker
+            if (processedBitmap != null) {
+                publishWebFrame(processedBitmap)
+            }
             
-            frameCount++
+            PipelineMetrics.PIPELINE_FRAMES_OUT.inc()
             
         } catch (e: Exception) {
             Log.e(TAG, "Error processing frame", e)
         } finally {
+            frameData.release?.run()
+            Tracer.end("DataFlow.processFrame", traceStart)
             isProcessing = false
         }
     }
     
+    private fun publishLines(frameData: FrameData) {
+        val lines = NativeImageProcessor.getLines() ?: return
+        PipelineMetrics.LINES_FRAMES_OUT.inc()
+        PipelineMetrics.LINE_SEGMENTS.add((lines.size / 4).toLong())
+        webServer.updateLines(frameData.frameId, frameData.width, frameData.height, frameData.timestamp, lines)
+    }
+    
+    /**
+     * Offer a processed RGBA frame to the running recording, if any. Frames come
+     * from processFrame, or from a camera session when those run instead.
+     * @param timestampNs System.nanoTime() at capture, whichever path the frame took
+     */
+    fun recordFrame(rgba: ByteArray, width: Int, height: Int, timestampNs: Long) {
+        val active = recorder ?: return
+        PipelineMetrics.RECORD_FRAMES_IN.inc()
+        synchronized(recordLock) {
+            if (!active.offer(rgba, width, height, timestampNs)) {
+                PipelineMetrics.RECORD_FRAMES_DROPPED.inc()
+            }
+        }
+    }
+    
+    private fun ensureNativeFrameSize(width: Int, height: Int) {
+        if (width != nativeWidth || height != nativeHeight) {
+            if (NativeImageProcessor.initializeFrameProcessing(width, height)) {
+                nativeWidth = width
+                nativeHeight = height
+            }
+        }
+    }
+    
     private fun updateMetrics() {
         val now = System.currentTimeMillis()
         val elapsed = now - lastMetricsTime
         
         if (elapsed >= 1000) {
-            currentFps = (frameCount * 1000.0) / elapsed
-            frameCount = 0
+            val frames = PipelineMetrics.PIPELINE_FRAMES_OUT.get()
+            currentFps = ((frames - lastMetricsFrames) * 1000.0) / elapsed
+            lastMetricsFrames = frames
             lastMetricsTime = now
             
             val metrics = getMetrics()
             Log.d(TAG, "Metrics - FPS: %.1f, Queue: %d".format(metrics.fps, metrics.queueSize))
         }
     }
+    
+    companion object {
+        const val FORMAT_NV21 = "NV21"
+        const val SCENE_CHANGE_THRESHOLD = 4
+        const val QUAD_DETECT_INTERVAL = 10
+        const val QUAD_DETECT_WIDTH = 320
+        const val MOTION_ANALYSIS_WIDTH = 160
+        const val MOTION_PADDING = 16
+        const val MOTION_REFRESH_INTERVAL = 150
+        const val STABILIZE_REFRESH_INTERVAL = 10
+        const val STABILIZE_RESIDUAL_THRESHOLD = 24
+        private const val LATENCY_BUDGET_NS = 33_000_000L
+    }
 }
 
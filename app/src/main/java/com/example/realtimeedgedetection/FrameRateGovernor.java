@@ -0,0 +1,219 @@
+package com.example.realtimeedgedetection;
+
+import java.util.Arrays;
+
+/**
+ * Keeps streaming frame latency under a budget by trading quality for time.
+ *
+ * The governor walks a fixed ladder of quality levels. Each level sets the
+ * processing resolution, the Canny resolution and how many frames are passed
+ * through unfiltered between processed ones. It steps down when the p95 of
+ * recent frame latencies exceeds the budget or the frame queue backs up, and
+ * steps back up only after latency has stayed well under budget for a hold
+ * period, so it doesn't oscillate. Thermal status sets a floor that the
+ * governor won't climb above until the device cools down.
+ *
+ * All timing comes from the injected Clock, so the behaviour is deterministic
+ * and can be driven from unit tests with a simulated clock.
+ */
+public final class FrameRateGovernor {
+
+    public interface Clock {
+        long nanoTime();
+    }
+
+    public interface Listener {
+        void onSettingsChanged(Settings settings);
+    }
+
+    public static final Clock SYSTEM_CLOCK = System::nanoTime;
+
+    // Mirrors android.os.PowerManager.THERMAL_STATUS_* so this class stays platform-free
+    public static final int THERMAL_NONE = 0;
+    public static final int THERMAL_LIGHT = 1;
+    public static final int THERMAL_MODERATE = 2;
+    public static final int THERMAL_SEVERE = 3;
+    public static final int THERMAL_CRITICAL = 4;
+
+    static final int WINDOW_SIZE = 60;
+    static final int MIN_SAMPLES = 20;      // fewer samples make p95 just the max
+    static final long EVALUATION_INTERVAL_NS = 500_000_000L;
+    static final long UPGRADE_HOLD_NS = 3_000_000_000L;
+    static final double UPGRADE_HEADROOM = 0.6;   // step up only when p95 < 60% of budget
+    static final int QUEUE_PRESSURE_DEPTH = 2;    // DataFlowController queue capacity
+
+    /** Processing parameters for one quality level */
+    public static final class Settings {
+        public final int level;
+        public final float processScale;
+        public final float cannyScale;
+        public final int frameSkip; // process 1 of every frameSkip frames
+
+        Settings(int level, float processScale, float cannyScale, int frameSkip) {
+            this.level = level;
+            this.processScale = processScale;
+            this.cannyScale = cannyScale;
+            this.frameSkip = frameSkip;
+        }
+
+        @Override
+        public String toString() {
+            return "level=" + level + " scale=" + processScale + " canny=" + cannyScale + " skip=" + frameSkip;
+        }
+    }
+
+    static final Settings[] LEVELS = {
+            new Settings(0, 1.0f, 1.0f, 1),
+            new Settings(1, 1.0f, 0.75f, 1),
+            new Settings(2, 0.75f, 0.75f, 1),
+            new Settings(3, 0.5f, 0.75f, 1),
+            new Settings(4, 0.5f, 0.5f, 1),
+            new Settings(5, 0.5f, 0.5f, 2),
+            new Settings(6, 0.5f, 0.5f, 3),
+    };
+    static final int MAX_LEVEL = LEVELS.length - 1;
+
+    private final long latencyBudgetNs;
+    private final Clock clock;
+    private volatile Listener listener;
+
+    private final long[] window = new long[WINDOW_SIZE];
+    private final long[] scratch = new long[WINDOW_SIZE];
+    private int windowCount = 0;
+    private int windowNext = 0;
+
+    private volatile Settings settings = LEVELS[0];
+    private volatile long lastP95Ns = 0;
+    private int thermalStatus = THERMAL_NONE;
+    private int maxQueueDepth = 0;
+    private long lastEvaluationNs;
+    private long healthySinceNs = -1;
+
+    private long frameCounter = 0;
+
+    public FrameRateGovernor(long latencyBudgetNs, Clock clock) {
+        if (latencyBudgetNs <= 0) {
+            throw new IllegalArgumentException("Latency budget must be positive");
+        }
+        this.latencyBudgetNs = latencyBudgetNs;
+        this.clock = clock;
+        this.lastEvaluationNs = clock.nanoTime();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    /** p95 latency from the most recent evaluation, 0 until enough samples exist */
+    public long getP95Nanos() {
+        return lastP95Ns;
+    }
+
+    public long getLatencyBudgetNanos() {
+        return latencyBudgetNs;
+    }
+
+    /**
+     * Decide whether the next frame gets the full filter or is passed through.
+     * Call once per incoming frame from the processing thread.
+     */
+    public boolean shouldProcess() {
+        int skip = settings.frameSkip;
+        return skip <= 1 || (frameCounter++ % skip) == 0;
+    }
+
+    /**
+     * Report a processed frame
+     * @param latencyNs Time spent processing the frame
+     * @param queueDepth Frames waiting behind it
+     */
+    public synchronized void onFrameProcessed(long latencyNs, int queueDepth) {
+        window[windowNext] = latencyNs;
+        windowNext = (windowNext + 1) % WINDOW_SIZE;
+        if (windowCount < WINDOW_SIZE) {
+            windowCount++;
+        }
+        maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+        evaluate(clock.nanoTime());
+    }
+
+    /**
+     * Report the device thermal status (one of THERMAL_*). Hotter states force
+     * the level down immediately instead of waiting for latency to degrade.
+     */
+    public synchronized void setThermalStatus(int status) {
+        thermalStatus = status;
+        int floor = thermalFloor(status);
+        if (settings.level < floor) {
+            setLevel(floor, clock.nanoTime());
+        }
+    }
+
+    private void evaluate(long now) {
+        if (now - lastEvaluationNs < EVALUATION_INTERVAL_NS) {
+            return;
+        }
+        lastEvaluationNs = now;
+        if (windowCount < MIN_SAMPLES) {
+            return;
+        }
+
+        long p95 = percentile95();
+        lastP95Ns = p95;
+        int level = settings.level;
+        boolean queueBackedUp = maxQueueDepth >= QUEUE_PRESSURE_DEPTH;
+        maxQueueDepth = 0;
+
+        if (p95 > latencyBudgetNs || queueBackedUp) {
+            healthySinceNs = -1;
+            if (level < MAX_LEVEL) {
+                setLevel(level + 1, now);
+            }
+        } else if (p95 < latencyBudgetNs * UPGRADE_HEADROOM) {
+            if (healthySinceNs < 0) {
+                healthySinceNs = now;
+            } else if (now - healthySinceNs >= UPGRADE_HOLD_NS && level > thermalFloor(thermalStatus)) {
+                setLevel(level - 1, now);
+            }
+        } else {
+            healthySinceNs = -1;
+        }
+    }
+
+    private void setLevel(int level, long now) {
+        level = Math.max(thermalFloor(thermalStatus), Math.min(MAX_LEVEL, level));
+        if (level == settings.level) {
+            return;
+        }
+        settings = LEVELS[level];
+        // Samples from the previous level say nothing about the new one
+        windowCount = 0;
+        windowNext = 0;
+        maxQueueDepth = 0;
+        healthySinceNs = -1;
+        lastEvaluationNs = now;
+
+        Listener l = listener;
+        if (l != null) {
+            l.onSettingsChanged(settings);
+        }
+    }
+
+    private long percentile95() {
+        System.arraycopy(window, 0, scratch, 0, windowCount);
+        Arrays.sort(scratch, 0, windowCount);
+        int index = (int) Math.ceil(windowCount * 0.95) - 1;
+        return scratch[Math.max(0, index)];
+    }
+
+    static int thermalFloor(int status) {
+        if (status >= THERMAL_CRITICAL) return MAX_LEVEL;
+        if (status >= THERMAL_SEVERE) return 4;
+        if (status >= THERMAL_MODERATE) return 2;
+        return 0;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.realtimeedgedetection
+
+/**
+ * Line segment extraction on the streaming path. Streamed Canny frames are
+ * reduced natively to Hough line segments (see NativeImageProcessor.getLines),
+ * which the web server publishes at /api/lines for clients that only need the
+ * structure of the scene, not the pixels.
+ */
+object LineDetection {
+
+    /**
+     * Detector settings. The region of interest is in fractions of the frame;
+     * threshold, minLength and maxGap are in frame pixels.
+     */
+    data class Settings(
+        val scale: Float = 0.5f,
+        val left: Float = 0f,
+        val top: Float = 0f,
+        val right: Float = 1f,
+        val bottom: Float = 1f,
+        val threshold: Int = 60,
+        val minLength: Float = 60f,
+        val maxGap: Float = 10f,
+        val maxLines: Int = 256
+    )
+
+    @Volatile
+    var enabled = false
+        private set
+
+    @Volatile
+    var overlay = false
+        private set
+
+    @Volatile
+    var settings = Settings()
+        private set
+
+    /**
+     * @param overlay Also draw the segments onto the processed frames
+     */
+    @Synchronized
+    fun setEnabled(enabled: Boolean, overlay: Boolean = this.overlay) {
+        if (enabled && !this.enabled) {
+            apply(settings)
+        }
+        this.enabled = enabled
+        this.overlay = overlay
+        NativeImageProcessor.setLineDetection(enabled, overlay)
+    }
+
+    @Synchronized
+    fun update(settings: Settings) {
+        this.settings = settings
+        apply(settings)
+    }
+
+    private fun apply(s: Settings) {
+        NativeImageProcessor.setLineDetectionParams(s.scale, s.left, s.top, s.right, s.bottom,
+            s.threshold, s.minLength, s.maxGap, s.maxLines)
+    }
+}
@@ -7,6 +7,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
@@ -19,8 +20,10 @@ import android.media.Image;
 import android.media.ImageReader;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Environment;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
 import android.util.Log;
 import android.util.Size;
 import android.view.Surface;
@@ -34,13 +37,21 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import com.example.realtimeedgedetection.databinding.ActivityMainBinding;
+import com.example.realtimeedgedetection.recording.FrameRecorder;
+import com.example.realtimeedgedetection.session.CameraSession;
+import com.example.realtimeedgedetection.session.MultiCameraController;
 
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -50,16 +61,26 @@ public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = "MainActivity";
     private static final int REQUEST_CAMERA_PERMISSION = 200;
+    // NV21 buffers for the pipeline: its queue of two plus the frame in flight
+    private static final int PIPELINE_BUFFERS = 3;
+    // Delay before queueing a recording's finish again while the I/O queue is full
+    private static final long RECORDING_STOP_RETRY_MS = 50;
     private ActivityMainBinding binding;
 
     private HandlerThread backgroundThread;
     private Handler backgroundHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private CameraDevice cameraDevice;
     private CameraCaptureSession captureSession;
     private CaptureRequest.Builder captureRequestBuilder;
     private Size imageDimension;
     private Surface surface;
 
+    // YUV copy of the single-camera preview, fed to dataFlowController
+    private Size pipelineDimension;
+    private ImageReader pipelineReader;
+    private long pipelineFrameId = 0;
+
     private int currentFilter = 1; // 0: Grayscale, 1: Canny Edge, 2: Original
     private int cameraFacing = CameraCharacteristics.LENS_FACING_BACK; // 0: Back, 1: Front
     
@@ -81,7 +102,7 @@ public class MainActivity extends AppCompatActivity {
         @Override
         public void onSurfaceTextureAvailable(@NonNull SurfaceTexture surfaceTexture, int width, int height) {
             Log.d(TAG, "onSurfaceTextureAvailable");
-            openCamera();
+            startPreview();
         }
 
         @Override
@@ -94,6 +115,8 @@ public class MainActivity extends AppCompatActivity {
 
         @Override
         public void onSurfaceTextureUpdated(@NonNull SurfaceTexture surfaceTexture) {
+            long traceStart = Tracer.begin();
+            PipelineMetrics.CAMERA_FRAMES_IN.inc();
             updateFps();
             
             // Update filter in JNI layer
@@ -101,10 +124,13 @@ public class MainActivity extends AppCompatActivity {
                 backgroundHandler.post(() -> {
                     if (currentFilter >= 0 && currentFilter <= 2) {
                         // Signal the native layer about the current filter
+                        long notifyStart = Tracer.begin();
                         notifyFilterChange(currentFilter);
+                        Tracer.end("JNI.notifyFilterChange", notifyStart);
                     }
                 });
             }
+            Tracer.end("Camera.onSurfaceTextureUpdated", traceStart);
         }
     };
 
@@ -136,6 +162,11 @@ public class MainActivity extends AppCompatActivity {
     // Data flow controller for pipeline management
     private DataFlowController dataFlowController;
 
+    // Both cameras streaming at once, on devices that support it; null while a single camera runs
+    private MultiCameraController multiCamera;
+    private Surface sessionSurface;
+    private boolean concurrentCameras = false;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -155,6 +186,7 @@ public class MainActivity extends AppCompatActivity {
         // Initialize data flow controller
         dataFlowController = new DataFlowController(this);
         dataFlowController.initialize();
+        PipelineMetrics.registerRuntimeGauges();
         
         binding.textureView.setSurfaceTextureListener(textureListener);
 
@@ -177,6 +209,24 @@ public class MainActivity extends AppCompatActivity {
             captureImage();
         });
         
+        // Long-press capture to toggle document mode
+        binding.captureButton.setOnLongClickListener(v -> {
+            Log.d(TAG, "Capture button long-pressed");
+            toggleDocumentMode();
+            return true;
+        });
+        
+        // Record button: tap for MP4, long-press for a lossless PNG sequence
+        binding.recordButton.setOnClickListener(v -> {
+            Log.d(TAG, "Record button clicked");
+            toggleRecording(false);
+        });
+        binding.recordButton.setOnLongClickListener(v -> {
+            Log.d(TAG, "Record button long-pressed");
+            toggleRecording(true);
+            return true;
+        });
+        
         // Gallery button listener
         binding.galleryButton.setOnClickListener(v -> {
             Log.d(TAG, "Gallery button clicked");
@@ -194,8 +244,12 @@ public class MainActivity extends AppCompatActivity {
         Log.d(TAG, "setFilter: " + filter);
         currentFilter = filter;
         frameProcessor.setFilterType(filter);
+        if (multiCamera != null) {
+            multiCamera.getDisplayed().setFilterType(filter);
+        }
         if (photoMode != null) {
-            photoMode.setFilterType(filter);
+            // With concurrent cameras the view already shows filtered frames
+            photoMode.setFilterType(multiCamera != null ? 2 : filter);
         } else {
             Log.w(TAG, "PhotoMode not initialized yet");
         }
@@ -249,8 +303,12 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // Camera2 callbacks need a Looper below API 28; compute work goes to ComputeScheduler
     protected void startBackgroundThread() {
         Log.d(TAG, "startBackgroundThread");
+        if (backgroundThread != null) {
+            return;
+        }
         backgroundThread = new HandlerThread("Camera Background");
         backgroundThread.start();
         backgroundHandler = new Handler(backgroundThread.getLooper());
@@ -258,6 +316,9 @@ public class MainActivity extends AppCompatActivity {
 
     protected void stopBackgroundThread() {
         Log.d(TAG, "stopBackgroundThread");
+        if (backgroundThread == null) {
+            return;
+        }
         backgroundThread.quitSafely();
         try {
             backgroundThread.join();
@@ -275,10 +336,12 @@ public class MainActivity extends AppCompatActivity {
             assert texture != null;
             texture.setDefaultBufferSize(imageDimension.getWidth(), imageDimension.getHeight());
             surface = new Surface(texture);
+            setupImageReader(pipelineDimension.getWidth(), pipelineDimension.getHeight());
             captureRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
             captureRequestBuilder.addTarget(surface);
+            captureRequestBuilder.addTarget(pipelineReader.getSurface());
 
-            cameraDevice.createCaptureSession(Collections.singletonList(surface), new CameraCaptureSession.StateCallback() {
+            cameraDevice.createCaptureSession(Arrays.asList(surface, pipelineReader.getSurface()), new CameraCaptureSession.StateCallback() {
                 @Override
                 public void onConfigured(@NonNull CameraCaptureSession session) {
                     Log.d(TAG, "onConfigured");
@@ -300,8 +363,53 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     
+    /**
+     * Stream the camera's frames into dataFlowController as NV21, next to the
+     * TextureView preview, while it has a recording or web viewers to feed.
+     * Frames are copied into a small pool of buffers that the pipeline hands
+     * back once done; with every buffer in use the frame is dropped rather than
+     * holding up the camera.
+     */
     private void setupImageReader(int width, int height) {
-        // Placeholder - not actively used in current implementation
+        closeImageReader();
+        ArrayBlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(PIPELINE_BUFFERS);
+        for (int i = 0; i < PIPELINE_BUFFERS; i++) {
+            buffers.offer(new byte[width * height * 3 / 2]);
+        }
+        pipelineReader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, 2);
+        pipelineReader.setOnImageAvailableListener(reader -> {
+            Image image = reader.acquireLatestImage();
+            if (image == null) {
+                return;
+            }
+            // Same clock as CameraSession, so a recording can switch between the two
+            long timestampNs = System.nanoTime();
+            byte[] nv21 = null;
+            try {
+                if (!dataFlowController.hasConsumers()) {
+                    return;
+                }
+                nv21 = buffers.poll();
+                if (nv21 == null) {
+                    PipelineMetrics.PIPELINE_FRAMES_DROPPED.inc();
+                    return;
+                }
+                CameraSession.toNV21(image, nv21);
+            } finally {
+                image.close();
+            }
+            byte[] buffer = nv21;
+            dataFlowController.submitFrame(new DataFlowController.FrameData(pipelineFrameId++, buffer,
+                    width, height, DataFlowController.FORMAT_NV21, System.currentTimeMillis(), timestampNs,
+                    () -> buffers.offer(buffer)));
+        }, backgroundHandler);
+    }
+
+    private void closeImageReader() {
+        if (pipelineReader != null) {
+            pipelineReader.close();
+            pipelineReader = null;
+        }
     }
     
     private void processFrameForFilter(Image image, int filterType) {
@@ -336,6 +444,7 @@ public class MainActivity extends AppCompatActivity {
             StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
             assert map != null;
             imageDimension = chooseOptimalSize(map.getOutputSizes(SurfaceTexture.class), binding.textureView.getWidth(), binding.textureView.getHeight());
+            pipelineDimension = CameraSession.chooseSize(map.getOutputSizes(ImageFormat.YUV_420_888));
             binding.resolutionText.setText(String.format("%dx%d", imageDimension.getWidth(), imageDimension.getHeight()));
 
 
@@ -404,6 +513,7 @@ public class MainActivity extends AppCompatActivity {
             captureSession.close();
             captureSession = null;
         }
+        closeImageReader();
     }
 
     @Override
@@ -427,13 +537,12 @@ public class MainActivity extends AppCompatActivity {
         dataFlowController.startPipeline();
         webServerManager.startServer();
         
-        // Initialize photo mode after background thread is ready
         if (photoMode == null) {
-            photoMode = new PhotoMode(this, binding.textureView, backgroundHandler);
+            photoMode = new PhotoMode(this, binding.textureView);
         }
         
         if (binding.textureView.isAvailable()) {
-            openCamera();
+            startPreview();
         } else {
             binding.textureView.setSurfaceTextureListener(textureListener);
         }
@@ -443,11 +552,16 @@ public class MainActivity extends AppCompatActivity {
     protected void onPause() {
         Log.d(TAG, "onPause");
         
+        // Finishing a recording blocks on the encoder, so it completes in the background
+        if (dataFlowController.isRecording()) {
+            stopRecording();
+        }
         // Stop web server and data flow pipeline
         dataFlowController.stopPipeline();
         webServerManager.stopServer();
         
         closeCamera();
+        stopConcurrentCameras();
         stopBackgroundThread();
         super.onPause();
     }
@@ -492,6 +606,83 @@ public class MainActivity extends AppCompatActivity {
         );
     }
 
+    private void toggleDocumentMode() {
+        if (photoMode == null) {
+            return;
+        }
+        boolean enable = !photoMode.isDocumentMode();
+        dataFlowController.setDocumentDetection(enable);
+        photoMode.setDocumentMode(enable ? dataFlowController::getDocumentQuad : null);
+        Toast.makeText(this, enable ? "Document mode: captures are cropped to the page" : "Document mode off",
+                Toast.LENGTH_SHORT).show();
+    }
+
+    private void toggleRecording(boolean pngSequence) {
+        if (dataFlowController.isRecording()) {
+            stopRecording();
+            return;
+        }
+
+        File moviesDir = getExternalFilesDir(Environment.DIRECTORY_MOVIES);
+        if (moviesDir == null) {
+            moviesDir = getCacheDir();
+        }
+        File folder = new File(moviesDir, "RealTimeEdgeDetection");
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            Toast.makeText(this, "Cannot create recording folder", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        String name = "edge_recording_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        File output;
+        boolean started;
+        if (pngSequence) {
+            // Edge maps are binary, so store them at 1 bit per pixel
+            output = new File(folder, name);
+            started = dataFlowController.startRecording(
+                    new PngSequenceSink(output, currentFilter == NativeImageProcessor.FILTER_CANNY_EDGE));
+        } else {
+            output = new File(folder, name + ".mp4");
+            started = dataFlowController.startRecording(new MediaCodecSink(output));
+        }
+        if (started) {
+            if (multiCamera != null) {
+                multiCamera.setFrameListener(dataFlowController::recordFrame);
+            }
+            binding.recordButton.setBackgroundResource(R.drawable.record_button_background);
+            Toast.makeText(this, "Recording to " + output.getName(), Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void stopRecording() {
+        binding.recordButton.setEnabled(false);
+        if (multiCamera != null) {
+            multiCamera.setFrameListener(null);
+        }
+        // Finishing the file waits for the encoder, so keep it off the main thread
+        Runnable finish = () -> {
+            FrameRecorder.Stats stats = dataFlowController.stopRecording();
+            runOnUiThread(() -> {
+                binding.recordButton.setEnabled(true);
+                binding.recordButton.setBackgroundResource(R.drawable.round_button_background);
+                if (stats == null) {
+                    return;
+                }
+                String message = stats.error != null
+                        ? "Recording failed: " + stats.error.getMessage()
+                        : String.format(Locale.US, "Recorded %d frames (%d dropped)", stats.written, stats.dropped());
+                Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT).show();
+            });
+        };
+        submitRecordingStop(finish);
+    }
+
+    /** Queue finish as I/O work; a full queue drains quickly, so try again shortly */
+    private void submitRecordingStop(Runnable finish) {
+        if (!ComputeScheduler.getDefault().execute(ComputeScheduler.Priority.IO, finish)) {
+            mainHandler.postDelayed(() -> submitRecordingStop(finish), RECORDING_STOP_RETRY_MS);
+        }
+    }
+
     private void openGallery() {
         Log.d(TAG, "Gallery button clicked");
         
@@ -515,16 +706,98 @@ public class MainActivity extends AppCompatActivity {
         
         String cameraType = cameraFacing == CameraCharacteristics.LENS_FACING_BACK ? "Back" : "Front";
         Toast.makeText(this, "Switched to " + cameraType + " camera", Toast.LENGTH_SHORT).show();
-        
+
+        if (multiCamera != null) {
+            // Both streams are warm; only the displayed one changes
+            multiCamera.setDisplayed(cameraFacing);
+            showDisplayedSessionFilter();
+            return;
+        }
+
+        // The first flip on a device that can stream both cameras starts them together
+        concurrentCameras = MultiCameraController.findConcurrentPair(this) != null;
         closeCamera();
-        startBackgroundThread();
         if (binding.textureView.isAvailable()) {
-            openCamera();
+            startPreview();
         } else {
             binding.textureView.setSurfaceTextureListener(textureListener);
         }
     }
 
+    private void startPreview() {
+        if (concurrentCameras && startConcurrentCameras()) {
+            return;
+        }
+        openCamera();
+    }
+
+    /**
+     * Stream both cameras into sessions and present the displayed one on the
+     * TextureView through the native presenter, in place of the camera's own
+     * preview output.
+     * @return false if the cameras could not be started; the caller falls back to one camera
+     */
+    private boolean startConcurrentCameras() {
+        String[] pair = MultiCameraController.findConcurrentPair(this);
+        SurfaceTexture texture = binding.textureView.getSurfaceTexture();
+        if (pair == null || texture == null) {
+            return false;
+        }
+        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(MainActivity.this, new String[]{Manifest.permission.CAMERA}, REQUEST_CAMERA_PERMISSION);
+            return true;
+        }
+        Log.d(TAG, "startConcurrentCameras: back=" + pair[0] + ", front=" + pair[1]);
+        multiCamera = new MultiCameraController(this, pair);
+        for (CameraSession session : multiCamera.getSessions()) {
+            session.setFilterType(currentFilter);
+        }
+        multiCamera.setDisplayed(cameraFacing);
+        if (dataFlowController.isRecording()) {
+            // The recording continues from the sessions' frames
+            multiCamera.setFrameListener(dataFlowController::recordFrame);
+        }
+        sessionSurface = new Surface(texture);
+        processFrame(sessionSurface, binding.textureView.getWidth(), binding.textureView.getHeight(), currentFilter);
+        try {
+            multiCamera.start();
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "startConcurrentCameras: ", e);
+            stopConcurrentCameras();
+            concurrentCameras = false;
+            return false;
+        }
+        if (photoMode != null) {
+            photoMode.setFilterType(2);
+        }
+        binding.cameraFeedPlaceholder.setVisibility(View.GONE);
+        return true;
+    }
+
+    private void stopConcurrentCameras() {
+        if (multiCamera == null) {
+            return;
+        }
+        Log.d(TAG, "stopConcurrentCameras");
+        multiCamera.close();
+        multiCamera = null;
+        // Unbind before releasing so the camera can produce into the texture again
+        processFrame(null, 0, 0, -1);
+        sessionSurface.release();
+        sessionSurface = null;
+        if (photoMode != null) {
+            photoMode.setFilterType(currentFilter);
+        }
+    }
+
+    /** Each session keeps its own filter; show the one now on screen */
+    private void showDisplayedSessionFilter() {
+        currentFilter = multiCamera.getDisplayed().getFilterType();
+        frameProcessor.setFilterType(currentFilter);
+        updateButtonStyles();
+        binding.filterText.setText(getFilterName(currentFilter));
+    }
+
     private void updateFps() {
         frameCount++;
         long currentTime = System.currentTimeMillis();
@@ -534,6 +807,7 @@ public class MainActivity extends AppCompatActivity {
             currentFps = frameCount;
             frameCount = 0;
             lastFpsUpdateTime = currentTime;
+            PipelineMetrics.PREVIEW_FPS.set(currentFps);
             
             // Update UI on main thread
             runOnUiThread(() -> {
@@ -0,0 +1,209 @@
+package com.example.realtimeedgedetection;
+
+import android.media.Image;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import com.example.realtimeedgedetection.recording.VideoSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Records frames as H.264 into an MP4 file with the platform encoder.
+ *
+ * Frames keep the recorder's timestamps as presentation times, so the file
+ * plays back at capture pace even when frames were dropped on the way. If the
+ * encoder has no input buffer free within a few milliseconds the frame is
+ * declined rather than waited for.
+ */
+public final class MediaCodecSink implements VideoSink {
+    private static final String TAG = "MediaCodecSink";
+
+    private static final String MIME_TYPE = MediaFormat.MIMETYPE_VIDEO_AVC;
+    private static final long INPUT_TIMEOUT_US = 10_000;
+    private static final long DRAIN_TIMEOUT_US = 10_000;
+    private static final int MAX_EOS_WAITS = 200;   // 2 s for the encoder to flush
+    private static final int I_FRAME_INTERVAL_S = 1;
+
+    private final File file;
+    private final int frameRate;
+    private final float bitsPerPixel;
+
+    private MediaCodec codec;
+    private MediaMuxer muxer;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private int track = -1;
+    private boolean muxerStarted = false;
+    private int width;
+    private int height;
+    private byte[] i420;
+    private long lastTimestampUs = -1;
+
+    /**
+     * @param frameRate Nominal rate for the encoder's rate control; timestamps decide playback
+     * @param bitsPerPixel Target bit rate per pixel per frame; 0.1 to 0.2 suits camera footage
+     */
+    public MediaCodecSink(File file, int frameRate, float bitsPerPixel) {
+        this.file = file;
+        this.frameRate = frameRate;
+        this.bitsPerPixel = bitsPerPixel;
+    }
+
+    public MediaCodecSink(File file) {
+        this(file, 30, 0.15f);
+    }
+
+    @Override
+    public void open(int width, int height) throws IOException {
+        if ((width & 1) != 0 || (height & 1) != 0) {
+            throw new IOException("H.264 needs even frame dimensions, got " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.i420 = new byte[width * height * 3 / 2];
+
+        MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, width, height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, (int) (width * height * frameRate * bitsPerPixel));
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL_S);
+
+        try {
+            codec = MediaCodec.createEncoderByType(MIME_TYPE);
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            codec.start();
+            muxer = new MediaMuxer(file.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            if (codec != null) {
+                codec.release();
+                codec = null;
+            }
+            throw new IOException("Cannot start " + MIME_TYPE + " encoder for " + width + "x" + height, e);
+        }
+        Log.i(TAG, "Recording " + width + "x" + height + " to " + file.getName());
+    }
+
+    @Override
+    public boolean write(byte[] rgba, long timestampUs) throws IOException {
+        try {
+            drain(false);
+            int index = codec.dequeueInputBuffer(INPUT_TIMEOUT_US);
+            if (index < 0) {
+                return false;
+            }
+            Image image = codec.getInputImage(index);
+            if (image == null || !NativeImageProcessor.convertRGBAToI420(rgba, width, height, i420)) {
+                codec.queueInputBuffer(index, 0, 0, timestampUs, 0);
+                return false;
+            }
+            copyPlane(image.getPlanes()[0], 0, width, height);
+            copyPlane(image.getPlanes()[1], width * height, width / 2, height / 2);
+            copyPlane(image.getPlanes()[2], width * height + width * height / 4, width / 2, height / 2);
+
+            // The muxer rejects repeated presentation times
+            long pts = Math.max(timestampUs, lastTimestampUs + 1);
+            lastTimestampUs = pts;
+            codec.queueInputBuffer(index, 0, i420.length, pts, 0);
+            drain(false);
+            return true;
+        } catch (IllegalStateException e) {
+            throw new IOException("Encoder failed", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (codec == null) {
+            return;
+        }
+        if (muxer == null) {
+            // open() failed after starting the encoder
+            codec.stop();
+            codec.release();
+            codec = null;
+            return;
+        }
+        try {
+            int index = codec.dequeueInputBuffer(INPUT_TIMEOUT_US * 10);
+            if (index >= 0) {
+                codec.queueInputBuffer(index, 0, 0, Math.max(lastTimestampUs + 1, 0),
+                        MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                drain(true);
+            } else {
+                Log.w(TAG, "No input buffer for end of stream; the last frames may be lost");
+            }
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Error flushing encoder", e);
+        } finally {
+            codec.stop();
+            codec.release();
+            codec = null;
+            try {
+                if (muxerStarted) {
+                    muxer.stop();
+                }
+            } catch (IllegalStateException e) {
+                throw new IOException("Cannot finish " + file.getName(), e);
+            } finally {
+                muxer.release();
+                muxer = null;
+            }
+        }
+    }
+
+    /** Copy one plane of i420 into an encoder input plane, honouring its strides */
+    private void copyPlane(Image.Plane plane, int offset, int planeWidth, int planeHeight) {
+        ByteBuffer buffer = plane.getBuffer();
+        int rowStride = plane.getRowStride();
+        int pixelStride = plane.getPixelStride();
+        for (int row = 0; row < planeHeight; row++) {
+            int src = offset + row * planeWidth;
+            int dst = row * rowStride;
+            if (pixelStride == 1) {
+                buffer.position(dst);
+                buffer.put(i420, src, planeWidth);
+            } else {
+                // Semi-planar layouts interleave U and V; write every pixelStride-th byte
+                for (int col = 0; col < planeWidth; col++) {
+                    buffer.put(dst + col * pixelStride, i420[src + col]);
+                }
+            }
+        }
+    }
+
+    /** Move encoded output into the muxer; with endOfStream, wait until the encoder is done */
+    private void drain(boolean endOfStream) {
+        int waits = 0;
+        while (true) {
+            int index = codec.dequeueOutputBuffer(info, endOfStream ? DRAIN_TIMEOUT_US : 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream || ++waits > MAX_EOS_WAITS) {
+                    return;
+                }
+            } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                track = muxer.addTrack(codec.getOutputFormat());
+                muxer.start();
+                muxerStarted = true;
+            } else if (index >= 0) {
+                ByteBuffer data = codec.getOutputBuffer(index);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                    info.size = 0;   // already in the format passed to addTrack
+                }
+                if (info.size > 0 && muxerStarted && data != null) {
+                    data.position(info.offset);
+                    data.limit(info.offset + info.size);
+                    muxer.writeSampleData(track, data, info);
+                }
+                codec.releaseOutputBuffer(index, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.realtimeedgedetection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Process-wide registry of counters, gauges and histograms, rendered in the
+ * Prometheus text exposition format for the /metrics endpoint.
+ *
+ * Metrics are looked up once (keep the returned instance in a field) and then
+ * updated lock-free from any thread. Labels are passed as name/value pairs:
+ *
+ *     Counter dropped = registry.counter("frames_dropped_total", "Dropped frames", "stage", "pipeline");
+ *     dropped.inc();
+ */
+public final class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    /** Default latency buckets in seconds, tuned for per-frame work (1ms .. 1s) */
+    public static final double[] LATENCY_BUCKETS = {
+            0.001, 0.002, 0.005, 0.010, 0.016, 0.033, 0.050, 0.100, 0.250, 0.500, 1.0
+    };
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter").child(labels, () -> new Counter());
+    }
+
+    public Gauge gauge(String name, String help, String... labels) {
+        return (Gauge) family(name, help, "gauge").child(labels, () -> new Gauge());
+    }
+
+    /**
+     * Gauge sampled at scrape time, e.g. queue depth or a native counter.
+     * Registering the same name and labels again replaces the previous supplier.
+     */
+    public void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        family(name, help, "gauge").children.put(labelString(labels), new SuppliedValue(supplier));
+    }
+
+    /**
+     * Counter sampled at scrape time from a total kept elsewhere, e.g. a
+     * scheduler's completed tasks. The supplier must never decrease.
+     * Registering the same name and labels again replaces the previous supplier.
+     */
+    public void counter(String name, String help, DoubleSupplier supplier, String... labels) {
+        family(name, help, "counter").children.put(labelString(labels), new SuppliedValue(supplier));
+    }
+
+    /** Drop one labelled series, e.g. once the object its supplier reads is closed */
+    public void remove(String name, String... labels) {
+        Family family = families.get(name);
+        if (family != null) {
+            family.children.remove(labelString(labels));
+        }
+    }
+
+    public Histogram histogram(String name, String help, double[] buckets, String... labels) {
+        return (Histogram) family(name, help, "histogram").child(labels, () -> new Histogram(buckets));
+    }
+
+    /** Render every metric in Prometheus text format (version 0.0.4) */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        List<String> names = new ArrayList<>(families.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            families.get(name).write(name, out);
+        }
+        return out.toString();
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.get(name);
+        if (family == null) {
+            Family created = new Family(help, type);
+            family = families.putIfAbsent(name, created);
+            if (family == null) {
+                family = created;
+            }
+        }
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " already registered as " + family.type);
+        }
+        return family;
+    }
+
+    private static String labelString(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(labels[i]).append("=\"");
+            String value = labels[i + 1];
+            for (int c = 0; c < value.length(); c++) {
+                char ch = value.charAt(c);
+                if (ch == '"' || ch == '\\') sb.append('\\');
+                if (ch == '\n') {
+                    sb.append("\\n");
+                } else {
+                    sb.append(ch);
+                }
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    private static void appendValue(StringBuilder out, double value) {
+        if (Double.isNaN(value)) {
+            out.append("NaN");
+        } else if (Double.isInfinite(value)) {
+            out.append(value > 0 ? "+Inf" : "-Inf");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+    }
+
+    private interface Factory {
+        Metric create();
+    }
+
+    private abstract static class Metric {
+        abstract void write(String name, String labels, StringBuilder out);
+
+        static void sample(StringBuilder out, String name, String labels, double value) {
+            out.append(name);
+            if (!labels.isEmpty()) {
+                out.append('{').append(labels).append('}');
+            }
+            out.append(' ');
+            appendValue(out, value);
+            out.append('\n');
+        }
+    }
+
+    private static final class Family {
+        final String help;
+        final String type;
+        final Map<String, Metric> children = new ConcurrentHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+
+        Metric child(String[] labels, Factory factory) {
+            String key = labelString(labels);
+            Metric metric = children.get(key);
+            if (metric == null) {
+                Metric created = factory.create();
+                metric = children.putIfAbsent(key, created);
+                if (metric == null) {
+                    metric = created;
+                }
+            }
+            return metric;
+        }
+
+        void write(String name, StringBuilder out) {
+            if (children.isEmpty()) {
+                return;
+            }
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            List<String> keys = new ArrayList<>(children.keySet());
+            Collections.sort(keys);
+            for (String labels : keys) {
+                children.get(labels).write(name, labels, out);
+            }
+        }
+    }
+
+    public static final class Counter extends Metric {
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        void write(String name, String labels, StringBuilder out) {
+            sample(out, name, labels, value.sum());
+        }
+    }
+
+    public static final class Gauge extends Metric {
+        private final AtomicLong bits = new AtomicLong(Double.doubleToRawLongBits(0.0));
+
+        public void set(double value) {
+            bits.set(Double.doubleToRawLongBits(value));
+        }
+
+        public void inc() {
+            add(1.0);
+        }
+
+        public void dec() {
+            add(-1.0);
+        }
+
+        public void add(double delta) {
+            long current;
+            long next;
+            do {
+                current = bits.get();
+                next = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + delta);
+            } while (!bits.compareAndSet(current, next));
+        }
+
+        public double get() {
+            return Double.longBitsToDouble(bits.get());
+        }
+
+        @Override
+        void write(String name, String labels, StringBuilder out) {
+            sample(out, name, labels, get());
+        }
+    }
+
+    private static final class SuppliedValue extends Metric {
+        private final DoubleSupplier supplier;
+
+        SuppliedValue(DoubleSupplier supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        void write(String name, String labels, StringBuilder out) {
+            double value;
+            try {
+                value = supplier.getAsDouble();
+            } catch (RuntimeException | LinkageError e) {
+                value = Double.NaN;
+            }
+            sample(out, name, labels, value);
+        }
+    }
+
+    /** Cumulative fixed-bucket histogram; observe() is a bucket scan plus two adds */
+    public static final class Histogram extends Metric {
+        private final double[] upperBounds;
+        private final AtomicLongArray bucketCounts;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(double[] upperBounds) {
+            this.upperBounds = upperBounds.clone();
+            this.bucketCounts = new AtomicLongArray(upperBounds.length);
+        }
+
+        public void observe(double value) {
+            for (int i = 0; i < upperBounds.length; i++) {
+                if (value <= upperBounds[i]) {
+                    bucketCounts.incrementAndGet(i);
+                    break;
+                }
+            }
+            count.increment();
+            sum.add(value);
+        }
+
+        /** Convenience for System.nanoTime() deltas, recorded in seconds */
+        public void observeNanos(long nanos) {
+            observe(nanos / 1e9);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        void write(String name, String labels, StringBuilder out) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < upperBounds.length; i++) {
+                cumulative += bucketCounts.get(i);
+                StringBuilder le = new StringBuilder(prefix).append("le=\"");
+                appendValue(le, upperBounds[i]);
+                le.append('"');
+                sample(out, name + "_bucket", le.toString(), cumulative);
+            }
+            long total = count.sum();
+            sample(out, name + "_bucket", prefix + "le=\"+Inf\"", total);
+            sample(out, name + "_sum", labels, sum.sum());
+            sample(out, name + "_count", labels, total);
+        }
+    }
+}
@@ -18,15 +18,31 @@ public class NativeImageProcessor {
     public static final int FILTER_CANNY_EDGE = 1;
     public static final int FILTER_ORIGINAL = 2;
 
+    // Native log levels (see edge_log.h)
+    public static final int LOG_LEVEL_VERBOSE = 0;
+    public static final int LOG_LEVEL_DEBUG = 1;
+    public static final int LOG_LEVEL_INFO = 2;
+    public static final int LOG_LEVEL_WARN = 3;
+    public static final int LOG_LEVEL_ERROR = 4;
+    public static final int LOG_LEVEL_NONE = 5;
+
     /**
-     * Process a single frame with the specified filter
-     * @param surface The Surface to render to
+     * Render processed streaming frames into a Surface. Frames from processNV21Frame
+     * are then drawn into the surface natively, without going through a Bitmap.
+     * The surface must not have another producer attached (e.g. a camera session).
+     * @param surface The Surface to render to, or null to stop rendering
      * @param width Frame width
      * @param height Frame height
      * @param filterType Filter type (0=Grayscale, 1=Canny Edge, 2=Original)
      */
     public static native void processFrame(Object surface, int width, int height, int filterType);
 
+    /**
+     * Get statistics of the native surface presenter
+     * @return {submitted, presented, dropped, lockFailures, lastPresentNs}
+     */
+    public static native long[] getPresenterStats();
+
     /**
      * Process a bitmap with grayscale filter
      * @param bitmap The input bitmap
@@ -41,6 +57,18 @@ public class NativeImageProcessor {
      */
     public static native Bitmap processCannyEdge(Bitmap bitmap);
 
+    /**
+     * Process a bitmap with Canny edge detection in row bands, writing the result
+     * in place. Working memory is a few bands rather than several full-size
+     * copies, for full-resolution stills; edges are connected across at most one
+     * band boundary, so results can differ slightly from processCannyEdge.
+     * processBitmap switches to this automatically for bitmaps of 12 MP and up.
+     * @param bitmap ARGB_8888 bitmap, modified in place
+     * @param bandRows Rows per band (at least 8), or 0 for the default
+     * @return The same bitmap, or null on failure
+     */
+    public static native Bitmap processCannyEdgeInBands(Bitmap bitmap, int bandRows);
+
     /**
      * Process a bitmap with specified filter
      * @param bitmap The input bitmap
@@ -49,11 +77,220 @@ public class NativeImageProcessor {
      */
     public static native Bitmap processBitmap(Bitmap bitmap, int filterType);
 
+    /**
+     * Prepare the native streaming path for frames of the given size
+     * @param width Frame width
+     * @param height Frame height
+     * @return true if frame processing is ready
+     */
+    public static native boolean initializeFrameProcessing(int width, int height);
+
+    /**
+     * Process an NV21 camera frame
+     * @param frameData NV21 bytes (width * height * 3 / 2)
+     * @param width Frame width
+     * @param height Frame height
+     * @param filterType Filter type (0=Grayscale, 1=Canny Edge, 2=Original)
+     * @return RGBA bytes (width * height * 4), or null on failure
+     */
+    public static native byte[] processNV21Frame(byte[] frameData, int width, int height, int filterType);
+
+    /**
+     * Set resolution scaling for processNV21Frame; results are scaled back to frame size
+     * @param processScale Scale applied before any filter, in (0, 1]
+     * @param cannyScale Additional scale for the blur + Canny stage, in (0, 1]
+     */
+    public static native void setProcessingScale(float processScale, float cannyScale);
+
+    /**
+     * Configure edge map reuse for static scenes on the streaming path. Each frame
+     * is reduced to a 32x32 mean-luma grid; unchanged frames reuse the previous
+     * edges and frames with a few changed tiles recompute only those tiles.
+     * @param enabled false to run full Canny on every frame
+     * @param threshold Mean luma difference per grid cell (1-255) that counts as a change;
+     *                  lower is more sensitive
+     */
+    public static native void setSceneChangeDetection(boolean enabled, int threshold);
+
+    /**
+     * Get edge map reuse statistics
+     * @return {frames, reused, partial, full, tilesRecomputed}
+     */
+    public static native long[] getSceneCacheStats();
+
+    /** Background subtraction with a Gaussian mixture per pixel; see setMotionGating */
+    public static final int MOTION_METHOD_MOG2 = 0;
+    /** Background subtraction by nearest neighbours; slower, copes better with waving foliage and flicker */
+    public static final int MOTION_METHOD_KNN = 1;
+
+    /**
+     * Restrict streamed Canny to the parts of the frame that move, for fixed
+     * cameras. A background subtractor runs on a low-resolution copy of each
+     * frame; edges are recomputed inside the padded foreground boxes and kept
+     * from earlier frames everywhere else. Takes precedence over scene change
+     * detection while enabled. Every call restarts the background model.
+     * @param method MOTION_METHOD_MOG2 or MOTION_METHOD_KNN
+     * @param analysisWidth Width frames are downscaled to for background subtraction
+     * @param padding Margin added around each moving region, in frame pixels
+     * @param refreshInterval Frames between full recomputes
+     */
+    public static native void setMotionGating(boolean enabled, int method, int analysisWidth,
+                                              int padding, int refreshInterval);
+
+    /**
+     * Get motion gating statistics
+     * @return {frames, idle, gated, full, regions, pixelsProcessed, pixelsTotal}
+     */
+    public static native long[] getMotionGateStats();
+
+    /** Global motion from Lucas-Kanade tracks of corner features; see setEdgeStabilization */
+    public static final int STABILIZE_METHOD_LK = 0;
+    /** Global motion by ECC image alignment; needs no corners, costs more per frame */
+    public static final int STABILIZE_METHOD_ECC = 1;
+
+    /**
+     * Follow camera motion with the edge map instead of running Canny on every
+     * streamed frame. Motion between consecutive frames is estimated on a small
+     * copy, the previous edges are warped by it, and only tiles that still
+     * disagree after alignment are recomputed. Steadier edges, fewer full Canny
+     * passes. Motion gating takes precedence while both are enabled.
+     * @param method STABILIZE_METHOD_LK or STABILIZE_METHOD_ECC
+     * @param refreshInterval Frames between full recomputes
+     * @param residualThreshold Luma difference after alignment (1-255) that marks a pixel as changed
+     */
+    public static native void setEdgeStabilization(boolean enabled, int method, int refreshInterval,
+                                                   int residualThreshold);
+
+    /**
+     * Get edge stabilization statistics
+     * @return {frames, warped, partial, full, tilesRecomputed, motionFailures}
+     */
+    public static native long[] getEdgeStabilizerStats();
+
+    /**
+     * Find straight line segments in streamed Canny frames with the probabilistic
+     * Hough transform, on a downscaled copy of the edge map. Segments of the last
+     * frame are available from getLines().
+     * @param enabled false to skip line extraction
+     * @param overlay true to draw the segments onto the processed frame
+     */
+    public static native void setLineDetection(boolean enabled, boolean overlay);
+
+    /**
+     * Configure line extraction. The region of interest is given as fractions of
+     * the frame; lengths and the vote threshold are in frame pixels and scaled
+     * with the edge map.
+     * @param scale Edge map scale for the transform, in (0, 1]; smaller is faster
+     * @param threshold Minimum Hough votes (edge pixels on the line)
+     * @param minLength Shortest segment reported
+     * @param maxGap Largest gap bridged within one segment
+     * @param maxLines Longest segments kept per frame, 0 for all
+     */
+    public static native void setLineDetectionParams(float scale, float left, float top, float right, float bottom,
+                                                     int threshold, float minLength, float maxGap, int maxLines);
+
+    /**
+     * Get the line segments of the last streamed Canny frame, longest first
+     * @return Packed {x1, y1, x2, y2, ...} in frame pixels; empty when none were found
+     */
+    public static native float[] getLines();
+
+    /**
+     * Find the outline of a document (the largest convex quadrilateral) in streamed
+     * frames. Detection runs on a downscaled frame every detectInterval frames and
+     * the corners are tracked with optical flow in between; the outline is drawn
+     * onto the processed frame.
+     * @param enabled false to stop detection
+     * @param detectInterval Frames between full detections while tracking holds
+     * @param detectWidth Width frames are downscaled to for detection and tracking
+     */
+    public static native void setQuadDetection(boolean enabled, int detectInterval, int detectWidth);
+
+    /**
+     * Get the document outline in the last streamed frame
+     * @return {x0, y0, ..., x3, y3} clockwise from top-left as fractions of the
+     *         frame size, or null if no document is in view
+     */
+    public static native float[] getQuad();
+
+    /**
+     * Get document tracking statistics
+     * @return {frames, detections, tracked, lost}
+     */
+    public static native long[] getQuadStats();
+
+    /**
+     * Perspective-correct a quadrilateral region of src into the whole of dst
+     * @param quad TL, TR, BR, BL corners in src pixels, as x,y pairs
+     * @param dst ARGB_8888 bitmap receiving the rectified region
+     * @return false if the bitmaps or quad are invalid
+     */
+    public static native boolean warpQuad(Bitmap src, float[] quad, Bitmap dst);
+
+    /**
+     * Convert a packed RGBA frame to planar I420 (Y, then U, then V), as video encoders take it
+     * @param rgba width * height * 4 bytes
+     * @param width Frame width, even
+     * @param height Frame height, even
+     * @param i420 Destination of at least width * height * 3 / 2 bytes
+     * @return false if the arguments are invalid
+     */
+    public static native boolean convertRGBAToI420(byte[] rgba, int width, int height, byte[] i420);
+
+    /**
+     * Write a packed RGBA frame as a PNG file
+     * @param bilevel true to store 1 bit per pixel (gray thresholded at 128), lossless for edge maps
+     * @return false if encoding or writing failed
+     */
+    public static native boolean writePng(byte[] rgba, int width, int height, String path, boolean bilevel);
+
     /**
      * Clean up native resources
      */
     public static native void cleanup();
 
+    /**
+     * Set the runtime native log level. Levels below the compile-time floor
+     * (INFO in release builds) remain stripped regardless of this setting.
+     * @param level One of the LOG_LEVEL_* constants
+     */
+    public static native void setNativeLogLevel(int level);
+
+    /**
+     * Enable or disable recording into the native in-memory trace ring
+     * @param enabled true to record per-frame trace events
+     */
+    public static native void setNativeTraceEnabled(boolean enabled);
+
+    /**
+     * Dump the native trace ring, oldest event first
+     * @return One event per line: "&lt;monotonic ns&gt; [&lt;tid&gt;] &lt;event&gt; &lt;arg0&gt; &lt;arg1&gt;"
+     */
+    public static native String dumpNativeTrace();
+
+    /**
+     * Export the native trace ring as Chrome trace event objects
+     * @param pid Process id to tag the events with
+     * @return Comma-separated event objects, ready to merge via Tracer.exportChromeJson()
+     */
+    public static native String exportNativeTraceJson(int pid);
+
+    /**
+     * Discard all buffered native trace events
+     */
+    public static native void clearNativeTrace();
+
+    /**
+     * Get native frame processing statistics for the NV21 path
+     * @return High 32 bits = processed frame count, low 32 bits = average time in ms
+     */
+    public static native long getFrameStats();
+
+    /**
+     * Reset native frame processing statistics
+     */
+    public static native void resetFrameStats();
+
     /**
      * Log version info
      */
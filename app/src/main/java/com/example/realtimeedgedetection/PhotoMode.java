@@ -3,6 +3,7 @@ package com.example.realtimeedgedetection;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.TextureView;
 
@@ -13,20 +14,34 @@ public class PhotoMode {
 
     private final Context context;
     private final TextureView textureView;
-    private final Handler backgroundHandler;
+    private final ComputeScheduler scheduler = ComputeScheduler.getDefault();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private int currentFilterType = 1; // Default to Canny Edge
     private boolean isCapturing = false;
+    private volatile QuadSource documentQuadSource;
 
-    public PhotoMode(Context context, TextureView textureView, Handler backgroundHandler) {
+    public PhotoMode(Context context, TextureView textureView) {
         this.context = context;
         this.textureView = textureView;
-        this.backgroundHandler = backgroundHandler;
     }
 
     public void setFilterType(int filterType) {
         currentFilterType = filterType;
     }
 
+    /**
+     * Crop captures to the document outlined by source, perspective-corrected at
+     * full resolution. Captures without a document in view are kept whole.
+     * @param source Document outline provider, or null to capture the whole frame
+     */
+    public void setDocumentMode(QuadSource source) {
+        documentQuadSource = source;
+    }
+
+    public boolean isDocumentMode() {
+        return documentQuadSource != null;
+    }
+
     public void capturePhotoWithFilter(
             OnCaptureDone onCaptureDone,
             OnProcessingDone onProcessingDone
@@ -39,27 +54,43 @@ public class PhotoMode {
         isCapturing = true;
         Log.d(TAG, "Starting capture process");
         
-        backgroundHandler.post(() -> {
+        boolean scheduled = scheduler.execute(ComputeScheduler.Priority.CAPTURE, () -> {
             try {
                 // Get bitmap from texture view
+                long captureStart = Tracer.begin();
                 Bitmap originalBitmap = textureView.getBitmap();
+                Tracer.end("Photo.captureBitmap", captureStart);
+                // The outline as of the captured frame, not of when processing starts
+                QuadSource quadSource = documentQuadSource;
+                float[] documentQuad = quadSource != null ? quadSource.currentQuad() : null;
 
                 if (originalBitmap != null) {
                     Log.d(TAG, "Original bitmap captured: " + originalBitmap.getWidth() + "x" + originalBitmap.getHeight());
                     onCaptureDone.onCapture(originalBitmap);
 
-                    // Process the bitmap with the selected filter
-                    Thread processingThread = new Thread(() -> {
+                    // Process the bitmap with the selected filter as a separate task, so the
+                    // next capture can grab its frame meanwhile
+                    Runnable processing = () -> {
                         try {
-                            Bitmap processedBitmap = processImageWithFilter(originalBitmap, currentFilterType);
+                            Bitmap source = originalBitmap;
+                            if (documentQuad != null) {
+                                Bitmap document = cropDocument(originalBitmap, documentQuad);
+                                if (document != null) {
+                                    source = document;
+                                }
+                            }
+                            Bitmap processedBitmap = processImageWithFilter(source, currentFilterType);
                             onProcessingDone.onProcessing(processedBitmap);
                             Log.d(TAG, "Image processing completed");
                         } catch (Exception e) {
                             Log.e(TAG, "Error processing image: " + e.getMessage(), e);
                             onProcessingDone.onProcessing(null);
                         }
-                    });
-                    processingThread.start();
+                    };
+                    if (!scheduler.execute(ComputeScheduler.Priority.CAPTURE, processing)) {
+                        Log.w(TAG, "Capture queue full, processing on the capture worker");
+                        processing.run();
+                    }
                 } else {
                     Log.e(TAG, "Failed to capture bitmap from TextureView");
                     onCaptureDone.onCapture(null);
@@ -73,30 +104,90 @@ public class PhotoMode {
                 isCapturing = false;
             }
         });
+        if (!scheduled) {
+            Log.w(TAG, "Capture queue full, capture skipped");
+            onCaptureDone.onCapture(null);
+            onProcessingDone.onProcessing(null);
+            isCapturing = false;
+            return;
+        }
         
         // Reset flag after a delay to allow for multiple rapid captures
-        backgroundHandler.postDelayed(() -> {
+        mainHandler.postDelayed(() -> {
             isCapturing = false;
             Log.d(TAG, "Capture flag reset - ready for next capture");
         }, 500);
     }
 
+    /**
+     * Rectify the document outlined by quad. The quad is in fractions of the
+     * streamed frame, which shows the same field of view as the capture.
+     * @return The document as a new bitmap, or null if the outline is degenerate
+     */
+    private static Bitmap cropDocument(Bitmap bitmap, float[] quad) {
+        if (quad.length < 8 || bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            return null;
+        }
+        long traceStart = Tracer.begin();
+        try {
+            float[] corners = new float[8];
+            for (int i = 0; i < 8; i += 2) {
+                corners[i] = quad[i] * bitmap.getWidth();
+                corners[i + 1] = quad[i + 1] * bitmap.getHeight();
+            }
+            // Keep the longer of each pair of opposite edges, so no side is downsampled
+            int width = Math.round(Math.max(distance(corners, 0, 1), distance(corners, 3, 2)));
+            int height = Math.round(Math.max(distance(corners, 0, 3), distance(corners, 1, 2)));
+            if (width < 2 || height < 2) {
+                return null;
+            }
+            Bitmap document = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            if (!NativeImageProcessor.warpQuad(bitmap, corners, document)) {
+                document.recycle();
+                return null;
+            }
+            Log.d(TAG, "Document cropped to " + width + "x" + height);
+            return document;
+        } finally {
+            Tracer.end("Photo.cropDocument", traceStart);
+        }
+    }
+
+    private static float distance(float[] corners, int a, int b) {
+        return (float) Math.hypot(corners[a * 2] - corners[b * 2], corners[a * 2 + 1] - corners[b * 2 + 1]);
+    }
+
     private Bitmap processImageWithFilter(Bitmap bitmap, int filterType) {
+        long traceStart = Tracer.begin();
+        long start = System.nanoTime();
+        PipelineMetrics.PHOTO_FRAMES_IN.inc();
         try {
+            Bitmap result;
             switch (filterType) {
                 case 0:
                     Log.d(TAG, "Applying Grayscale filter");
-                    return NativeImageProcessor.processGrayscale(bitmap);
+                    result = NativeImageProcessor.processGrayscale(bitmap);
+                    PipelineMetrics.JNI_GRAYSCALE_TIME.observeNanos(System.nanoTime() - start);
+                    break;
                 case 1:
                     Log.d(TAG, "Applying Canny Edge filter");
-                    return NativeImageProcessor.processCannyEdge(bitmap);
+                    result = NativeImageProcessor.processCannyEdge(bitmap);
+                    PipelineMetrics.JNI_CANNY_TIME.observeNanos(System.nanoTime() - start);
+                    break;
                 default:
                     Log.d(TAG, "Returning original image");
-                    return bitmap;
+                    result = bitmap;
+                    break;
+            }
+            if (result != null) {
+                PipelineMetrics.PHOTO_FRAMES_OUT.inc();
             }
+            return result;
         } catch (Exception e) {
             Log.e(TAG, "Error processing image with filter " + filterType + ": " + e.getMessage(), e);
             return null;
+        } finally {
+            Tracer.end("Photo.processWithFilter", traceStart);
         }
     }
 
@@ -105,16 +196,23 @@ public class PhotoMode {
             ImageStorageUtils imageStorageUtils,
             OnSaveDone onSaveDone
     ) {
-        backgroundHandler.post(() -> {
+        boolean scheduled = scheduler.execute(ComputeScheduler.Priority.IO, () -> {
+            long traceStart = Tracer.begin();
+            File savedFile = null;
             try {
                 String filterName = getFilterName(currentFilterType);
-                File savedFile = imageStorageUtils.saveBitmapWithFilter(bitmap, filterName);
-                onSaveDone.onSave(savedFile);
+                savedFile = imageStorageUtils.saveBitmapWithFilter(bitmap, filterName);
             } catch (Exception e) {
                 Log.e(TAG, "Error saving image: " + e.getMessage(), e);
-                onSaveDone.onSave(null);
+            } finally {
+                Tracer.end("Photo.save", traceStart);
             }
+            onSaveDone.onSave(savedFile);
         });
+        if (!scheduled) {
+            Log.w(TAG, "I/O queue full, image not saved");
+            onSaveDone.onSave(null);
+        }
     }
 
     private String getFilterName(int filterType) {
@@ -133,6 +231,11 @@ public class PhotoMode {
     }
 
     // Callback interfaces
+    public interface QuadSource {
+        /** Document corners clockwise from top-left as fractions of the frame, or null */
+        float[] currentQuad();
+    }
+
     public interface OnCaptureDone {
         void onCapture(Bitmap bitmap);
     }
@@ -36,7 +36,7 @@ class PhotoResultDisplay : AppCompatActivity() {
     }
 
     private fun loadAndDisplayBitmap(bitmapPath: String, filterType: Int) {
-        Thread {
+        val scheduled = ComputeScheduler.getDefault().execute(ComputeScheduler.Priority.IO) {
             try {
                 val bitmap = android.graphics.BitmapFactory.decodeFile(bitmapPath)
                 if (bitmap != null) {
@@ -63,6 +63,10 @@ class PhotoResultDisplay : AppCompatActivity() {
                     finish()
                 }
             }
-        }.start()
+        }
+        if (!scheduled) {
+            Toast.makeText(this, "Busy, try again", Toast.LENGTH_SHORT).show()
+            finish()
+        }
     }
 }
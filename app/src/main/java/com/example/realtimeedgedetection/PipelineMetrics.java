@@ -0,0 +1,203 @@
+package com.example.realtimeedgedetection;
+
+import android.os.Debug;
+import android.util.Log;
+
+import com.example.realtimeedgedetection.MetricsRegistry.Counter;
+import com.example.realtimeedgedetection.MetricsRegistry.Gauge;
+import com.example.realtimeedgedetection.MetricsRegistry.Histogram;
+
+/**
+ * Metric definitions shared by the capture, processing, encoding and web stages.
+ * Every stage reports frames in/out/dropped under the same metric names with a
+ * "stage" label, so a scrape of /metrics shows where frames are lost.
+ */
+public final class PipelineMetrics {
+    private static final String TAG = "PipelineMetrics";
+
+    public static final String STAGE_CAMERA = "camera";
+    public static final String STAGE_PIPELINE = "pipeline";
+    public static final String STAGE_ENCODE = "encode";
+    public static final String STAGE_WEB = "web";
+    public static final String STAGE_PHOTO = "photo";
+    public static final String STAGE_RECORD = "record";
+    public static final String STAGE_LINES = "lines";
+
+    private static final MetricsRegistry registry = MetricsRegistry.getDefault();
+
+    // Frame flow per stage
+    public static final Counter CAMERA_FRAMES_IN = framesIn(STAGE_CAMERA);
+    public static final Counter PIPELINE_FRAMES_IN = framesIn(STAGE_PIPELINE);
+    public static final Counter PIPELINE_FRAMES_OUT = framesOut(STAGE_PIPELINE);
+    public static final Counter PIPELINE_FRAMES_DROPPED = framesDropped(STAGE_PIPELINE);
+    public static final Counter PIPELINE_FRAMES_SKIPPED = registry.counter("edge_frames_skipped_total",
+            "Frames passed through unfiltered by the frame-rate governor", "stage", STAGE_PIPELINE);
+    public static final Counter ENCODE_FRAMES_IN = framesIn(STAGE_ENCODE);
+    public static final Counter ENCODE_FRAMES_OUT = framesOut(STAGE_ENCODE);
+    public static final Counter ENCODE_FRAMES_DROPPED = framesDropped(STAGE_ENCODE);
+    public static final Counter WEB_FRAMES_OUT = framesOut(STAGE_WEB);
+    public static final Counter WEB_FRAMES_DROPPED = framesDropped(STAGE_WEB);
+    public static final Counter PHOTO_FRAMES_IN = framesIn(STAGE_PHOTO);
+    public static final Counter PHOTO_FRAMES_OUT = framesOut(STAGE_PHOTO);
+    public static final Counter RECORD_FRAMES_IN = framesIn(STAGE_RECORD);
+    public static final Counter RECORD_FRAMES_OUT = framesOut(STAGE_RECORD);
+    public static final Counter RECORD_FRAMES_DROPPED = framesDropped(STAGE_RECORD);
+    public static final Counter LINES_FRAMES_OUT = framesOut(STAGE_LINES);
+
+    // Stage timings
+    public static final Histogram PIPELINE_PROCESS_TIME = registry.histogram("edge_stage_seconds",
+            "Time spent in a pipeline stage per frame", MetricsRegistry.LATENCY_BUCKETS, "stage", STAGE_PIPELINE);
+    public static final Histogram ENCODE_TIME = registry.histogram("edge_stage_seconds",
+            "Time spent in a pipeline stage per frame", MetricsRegistry.LATENCY_BUCKETS, "stage", STAGE_ENCODE);
+    public static final Histogram JNI_GRAYSCALE_TIME = jniTime("processGrayscale");
+    public static final Histogram JNI_CANNY_TIME = jniTime("processCannyEdge");
+
+    // Encoding and web
+    public static final Counter ENCODE_BYTES = registry.counter("edge_encode_bytes_total",
+            "Bytes produced by JPEG encoding for the web stream");
+    public static final Counter LINE_SEGMENTS = registry.counter("edge_line_segments_total",
+            "Line segments extracted from streamed edge maps");
+    public static final Counter LINES_BYTES = registry.counter("edge_lines_bytes_total",
+            "Bytes of line segment responses sent to web clients");
+    public static final Gauge WEB_ACTIVE_CONNECTIONS = registry.gauge("edge_web_active_connections",
+            "HTTP connections currently being served");
+    public static final Counter WEB_CONNECTIONS_REJECTED = registry.counter("edge_web_connections_rejected_total",
+            "HTTP connections answered 503 because the I/O queue was full");
+
+    // Preview
+    public static final Gauge PREVIEW_FPS = registry.gauge("edge_preview_fps",
+            "Preview frames per second measured in the camera callback");
+
+    // Per-frame Java allocations that feed GC pressure
+    public static final Counter BITMAP_ALLOCATIONS = allocations("bitmap");
+    public static final Counter BITMAP_ALLOCATED_BYTES = allocatedBytes("bitmap");
+    public static final Counter JPEG_ALLOCATIONS = allocations("jpeg");
+    public static final Counter JPEG_ALLOCATED_BYTES = allocatedBytes("jpeg");
+
+    private static volatile boolean runtimeGaugesRegistered = false;
+
+    private PipelineMetrics() {}
+
+    public static Counter framesIn(String stage) {
+        return registry.counter("edge_frames_in_total", "Frames received by a pipeline stage", "stage", stage);
+    }
+
+    public static Counter framesOut(String stage) {
+        return registry.counter("edge_frames_out_total", "Frames emitted by a pipeline stage", "stage", stage);
+    }
+
+    public static Counter framesDropped(String stage) {
+        return registry.counter("edge_frames_dropped_total", "Frames discarded by a pipeline stage", "stage", stage);
+    }
+
+    public static Histogram jniTime(String call) {
+        return registry.histogram("edge_jni_seconds", "Wall time of JNI processing calls",
+                MetricsRegistry.LATENCY_BUCKETS, "call", call);
+    }
+
+    public static Counter allocations(String kind) {
+        return registry.counter("edge_java_allocations_total",
+                "Per-frame Java buffer allocations by kind", "kind", kind);
+    }
+
+    public static Counter allocatedBytes(String kind) {
+        return registry.counter("edge_java_allocated_bytes_total",
+                "Bytes allocated for per-frame Java buffers by kind", "kind", kind);
+    }
+
+    /**
+     * Register gauges sampled from the runtime and the native layer at scrape time:
+     * heap usage, ART GC statistics and the native frame counters.
+     */
+    public static void registerRuntimeGauges() {
+        if (runtimeGaugesRegistered) {
+            return;
+        }
+        runtimeGaugesRegistered = true;
+
+        Runtime runtime = Runtime.getRuntime();
+        registry.gauge("edge_java_heap_used_bytes", "Java heap in use",
+                () -> runtime.totalMemory() - runtime.freeMemory());
+        registry.gauge("edge_native_heap_allocated_bytes", "Native heap allocated (includes OpenCV Mats)",
+                () -> Debug.getNativeHeapAllocatedSize());
+        registry.gauge("edge_art_gc_count", "Garbage collections since process start",
+                () -> runtimeStat("art.gc.gc-count"));
+        registry.gauge("edge_art_gc_time_ms", "Total time spent in garbage collection",
+                () -> runtimeStat("art.gc.gc-time"));
+        registry.gauge("edge_art_blocking_gc_count", "Blocking garbage collections since process start",
+                () -> runtimeStat("art.gc.blocking-gc-count"));
+        registry.gauge("edge_art_bytes_allocated", "Bytes allocated on the Java heap since process start",
+                () -> runtimeStat("art.gc.bytes-allocated"));
+
+        registry.gauge("edge_native_frames_processed", "Frames processed by the native NV21 path",
+                () -> NativeImageProcessor.getFrameStats() >>> 32);
+        registry.gauge("edge_native_frame_avg_ms", "Average native NV21 frame processing time",
+                () -> NativeImageProcessor.getFrameStats() & 0xFFFFFFFFL);
+
+        String[] outcomes = {"reused", "partial", "full"};
+        for (int i = 0; i < outcomes.length; i++) {
+            final int index = i + 1;
+            registry.gauge("edge_scene_cache_frames", "Streamed Canny frames by edge map cache outcome",
+                    () -> NativeImageProcessor.getSceneCacheStats()[index], "outcome", outcomes[i]);
+        }
+        registry.gauge("edge_scene_cache_tiles_recomputed", "Tiles recomputed by partial edge map updates",
+                () -> NativeImageProcessor.getSceneCacheStats()[4]);
+        String[] presenterOutcomes = {"submitted", "presented", "dropped", "lock_failed"};
+        for (int i = 0; i < presenterOutcomes.length; i++) {
+            final int index = i;
+            registry.gauge("edge_presenter_frames", "Frames handed to the native surface presenter by outcome",
+                    () -> NativeImageProcessor.getPresenterStats()[index], "outcome", presenterOutcomes[i]);
+        }
+        registry.gauge("edge_presenter_last_present_seconds", "Time to convert and post the last presented frame",
+                () -> NativeImageProcessor.getPresenterStats()[4] / 1e9);
+        String[] quadOutcomes = {"detection", "tracked", "lost"};
+        for (int i = 0; i < quadOutcomes.length; i++) {
+            final int index = i + 1;
+            registry.gauge("edge_quad_frames", "Streamed frames by document tracker activity",
+                    () -> NativeImageProcessor.getQuadStats()[index], "outcome", quadOutcomes[i]);
+        }
+        String[] gateOutcomes = {"idle", "gated", "full"};
+        for (int i = 0; i < gateOutcomes.length; i++) {
+            final int index = i + 1;
+            registry.gauge("edge_motion_gate_frames", "Streamed Canny frames by motion gate outcome",
+                    () -> NativeImageProcessor.getMotionGateStats()[index], "outcome", gateOutcomes[i]);
+        }
+        registry.gauge("edge_motion_gate_regions", "Moving regions recomputed by the motion gate",
+                () -> NativeImageProcessor.getMotionGateStats()[4]);
+        registry.gauge("edge_motion_gate_pixel_fraction", "Fraction of gated frame pixels that ran edge detection",
+                () -> {
+                    long[] stats = NativeImageProcessor.getMotionGateStats();
+                    return stats[6] == 0 ? 0.0 : (double) stats[5] / stats[6];
+                });
+        String[] stabilizerOutcomes = {"warped", "partial", "full"};
+        for (int i = 0; i < stabilizerOutcomes.length; i++) {
+            final int index = i + 1;
+            registry.gauge("edge_stabilizer_frames", "Streamed Canny frames by edge stabilizer outcome",
+                    () -> NativeImageProcessor.getEdgeStabilizerStats()[index], "outcome", stabilizerOutcomes[i]);
+        }
+        registry.gauge("edge_stabilizer_tiles_recomputed", "Tiles recomputed after motion compensation",
+                () -> NativeImageProcessor.getEdgeStabilizerStats()[4]);
+        registry.gauge("edge_stabilizer_motion_failures", "Frames whose global motion could not be estimated",
+                () -> NativeImageProcessor.getEdgeStabilizerStats()[5]);
+        ComputeScheduler.getDefault().registerMetrics(registry);
+        registry.gauge("edge_scene_cache_hit_ratio", "Fraction of streamed Canny frames that reused the edge map",
+                () -> {
+                    long[] stats = NativeImageProcessor.getSceneCacheStats();
+                    return stats[0] == 0 ? 0.0 : (double) stats[1] / stats[0];
+                });
+
+        Log.d(TAG, "Runtime gauges registered");
+    }
+
+    private static double runtimeStat(String name) {
+        String value = Debug.getRuntimeStat(name);
+        if (value == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
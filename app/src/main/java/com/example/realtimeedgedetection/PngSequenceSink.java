@@ -0,0 +1,68 @@
+package com.example.realtimeedgedetection;
+
+import android.util.Log;
+
+import com.example.realtimeedgedetection.recording.VideoSink;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Records frames losslessly as numbered PNG files in a directory.
+ *
+ * In bilevel mode each frame is stored at 1 bit per pixel, which suits Canny
+ * edge maps: they stay exact and take far less space than 8-bit gray. Frame
+ * times go to timestamps.txt in mkvmerge's "timestamp format v2" (one
+ * millisecond value per frame), so a sequence with dropped frames can be
+ * muxed at its real pace.
+ */
+public final class PngSequenceSink implements VideoSink {
+    private static final String TAG = "PngSequenceSink";
+    static final String TIMESTAMPS_FILE = "timestamps.txt";
+
+    private final File directory;
+    private final boolean bilevel;
+    private Writer timestamps;
+    private int width;
+    private int height;
+    private int frameIndex = 0;
+
+    public PngSequenceSink(File directory, boolean bilevel) {
+        this.directory = directory;
+        this.bilevel = bilevel;
+    }
+
+    @Override
+    public void open(int width, int height) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.width = width;
+        this.height = height;
+        timestamps = new FileWriter(new File(directory, TIMESTAMPS_FILE));
+        timestamps.write("# timestamp format v2\n");
+        Log.i(TAG, "Recording " + width + "x" + height + (bilevel ? " 1-bit" : "") + " PNGs to " + directory);
+    }
+
+    @Override
+    public boolean write(byte[] rgba, long timestampUs) throws IOException {
+        File file = new File(directory, String.format(Locale.US, "frame_%06d.png", frameIndex));
+        if (!NativeImageProcessor.writePng(rgba, width, height, file.getPath(), bilevel)) {
+            throw new IOException("Cannot write " + file);
+        }
+        frameIndex++;
+        timestamps.write(String.format(Locale.US, "%.3f\n", timestampUs / 1000.0));
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (timestamps != null) {
+            timestamps.close();
+            timestamps = null;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.realtimeedgedetection;
+
+import android.util.Log;
+
+/** Logs tasks of the default ComputeScheduler that threw */
+final class TaskFailureLog implements ComputeScheduler.FailureHandler {
+    private static final String TAG = "ComputeScheduler";
+
+    @Override
+    public void onFailure(ComputeScheduler.Priority priority, Throwable failure) {
+        Log.e(TAG, priority.label + " task failed", failure);
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.realtimeedgedetection;
+
+import android.os.Process;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Lightweight in-process span tracer for the Java side of the pipeline.
+ *
+ * Spans are recorded as complete events into a preallocated ring buffer owned by
+ * the calling thread, so recording never allocates or takes a lock:
+ *
+ *     long t = Tracer.begin();
+ *     try { ... } finally { Tracer.end("DataFlow.processFrame", t); }
+ *
+ * When tracing is disabled begin() returns 0 and end() returns immediately.
+ * Timestamps come from System.nanoTime(), the same monotonic clock the native
+ * trace ring uses, so both merge onto one timeline in exportChromeJson()
+ * (load the result in chrome://tracing or ui.perfetto.dev).
+ */
+public final class Tracer {
+    private static final int BUFFER_CAPACITY = 1024; // events per thread, power of two
+    private static final int BUFFER_MASK = BUFFER_CAPACITY - 1;
+    private static final int MAX_THREAD_BUFFERS = 32;
+
+    private static volatile boolean enabled = true;
+
+    private static final CopyOnWriteArrayList<ThreadBuffer> buffers = new CopyOnWriteArrayList<>();
+
+    private static final ThreadLocal<ThreadBuffer> localBuffer = new ThreadLocal<ThreadBuffer>() {
+        @Override
+        protected ThreadBuffer initialValue() {
+            ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread(), Process.myTid());
+            register(buffer);
+            return buffer;
+        }
+    };
+
+    private Tracer() {}
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /**
+     * Start a span on the calling thread
+     * @return Start token to pass to end(), or 0 when tracing is disabled
+     */
+    public static long begin() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Finish a span started with begin()
+     * @param name Span name; use constants or literals so no string is built per call
+     * @param startToken Value returned by begin()
+     */
+    public static void end(String name, long startToken) {
+        if (startToken == 0L) {
+            return;
+        }
+        long now = System.nanoTime();
+        localBuffer.get().record(name, startToken, now - startToken);
+    }
+
+    /** Record a zero-duration marker, e.g. a dropped frame */
+    public static void instant(String name) {
+        if (enabled) {
+            localBuffer.get().record(name, System.nanoTime(), -1L);
+        }
+    }
+
+    /** Drop all recorded events; buffers stay allocated */
+    public static void clear() {
+        for (ThreadBuffer buffer : buffers) {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Export all buffered spans as Chrome trace JSON
+     * @param nativeEvents Comma-separated event objects from
+     *                     NativeImageProcessor.exportNativeTraceJson(), or null
+     */
+    public static String exportChromeJson(String nativeEvents) {
+        int pid = Process.myPid();
+        StringBuilder json = new StringBuilder(64 * 1024);
+        json.append("{\"traceEvents\":[");
+        json.append("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":").append(pid)
+                .append(",\"args\":{\"name\":\"RealTimeEdgeDetection\"}}");
+
+        for (ThreadBuffer buffer : buffers) {
+            buffer.appendTo(json, pid);
+        }
+
+        if (nativeEvents != null && !nativeEvents.isEmpty()) {
+            json.append(',').append(nativeEvents);
+        }
+        json.append("],\"displayTimeUnit\":\"ms\"}");
+        return json.toString();
+    }
+
+    private static void register(ThreadBuffer buffer) {
+        // Short-lived threads (e.g. per-connection web handlers) each get a buffer,
+        // so drop buffers of finished threads once the registry grows too large
+        if (buffers.size() >= MAX_THREAD_BUFFERS) {
+            List<ThreadBuffer> dead = new ArrayList<>();
+            for (ThreadBuffer existing : buffers) {
+                if (!existing.isThreadAlive()) {
+                    dead.add(existing);
+                }
+            }
+            buffers.removeAll(dead);
+        }
+        buffers.add(buffer);
+    }
+
+    private static void appendEscaped(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(' ');
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    /** Trace timestamps are microseconds; keep ns precision without exponent notation */
+    private static void appendMicros(StringBuilder out, long nanos) {
+        long fraction = nanos % 1000;
+        out.append(nanos / 1000).append('.');
+        if (fraction < 100) out.append('0');
+        if (fraction < 10) out.append('0');
+        out.append(fraction);
+    }
+
+    /**
+     * Single-writer ring owned by one thread. The volatile count publishes each
+     * event to exporting threads; an export racing with a wrap-around may see a
+     * few overwritten entries, which is acceptable for diagnostics.
+     */
+    private static final class ThreadBuffer {
+        private final WeakReference<Thread> thread;
+        private final String threadName;
+        private final int tid;
+        private final String[] names = new String[BUFFER_CAPACITY];
+        private final long[] startNs = new long[BUFFER_CAPACITY];
+        private final long[] durationNs = new long[BUFFER_CAPACITY];
+        private volatile long count;
+        private volatile long clearedAt;
+
+        ThreadBuffer(Thread owner, int tid) {
+            this.thread = new WeakReference<>(owner);
+            this.threadName = owner.getName();
+            this.tid = tid;
+        }
+
+        void record(String name, long start, long duration) {
+            long n = count;
+            int i = (int) (n & BUFFER_MASK);
+            names[i] = name;
+            startNs[i] = start;
+            durationNs[i] = duration;
+            count = n + 1;
+        }
+
+        void clear() {
+            clearedAt = count;
+        }
+
+        boolean isThreadAlive() {
+            Thread owner = thread.get();
+            return owner != null && owner.isAlive();
+        }
+
+        void appendTo(StringBuilder json, int pid) {
+            long end = count;
+            long start = Math.max(Math.max(0L, end - BUFFER_CAPACITY), clearedAt);
+            if (start >= end) {
+                return;
+            }
+
+            json.append(",{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":").append(pid)
+                    .append(",\"tid\":").append(tid).append(",\"args\":{\"name\":\"");
+            appendEscaped(json, threadName);
+            json.append("\"}}");
+
+            for (long n = start; n < end; n++) {
+                int i = (int) (n & BUFFER_MASK);
+                String name = names[i];
+                if (name == null) {
+                    continue;
+                }
+                long duration = durationNs[i];
+                json.append(",{\"name\":\"");
+                appendEscaped(json, name);
+                json.append("\",\"cat\":\"java\",\"ph\":\"").append(duration < 0 ? "i\",\"s\":\"t" : "X")
+                        .append("\",\"ts\":");
+                appendMicros(json, startNs[i]);
+                if (duration >= 0) {
+                    json.append(",\"dur\":");
+                    appendMicros(json, duration);
+                }
+                json.append(",\"pid\":").append(pid).append(",\"tid\":").append(tid).append('}');
+            }
+        }
+    }
+}
@@ -6,6 +6,9 @@ import android.util.Log
 import java.io.*
 import java.net.ServerSocket
 import java.net.Socket
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.Executors
 import java.util.concurrent.atomic.AtomicBoolean
 
@@ -19,6 +22,30 @@ class WebServerManager(private val context: Context) {
     private var currentFrameBitmap: Bitmap? = null
     @Volatile
     private var currentFrameBytes: ByteArray? = null
+    // Set once the current frame has been sent to at least one viewer
+    private val currentFrameServed = AtomicBoolean(true)
+    
+    // Line segments of the latest Canny frame, packed x1, y1, x2, y2 in frame pixels
+    private class LineFrame(val frameId: Long, val width: Int, val height: Int, val timestamp: Long,
+                            val lines: FloatArray)
+    @Volatile
+    private var currentLines: LineFrame? = null
+    
+    // Remote address -> last /api/frame request time, for the viewer gauge
+    private val viewerLastSeen = ConcurrentHashMap<String, Long>()
+    private val VIEWER_TIMEOUT_MS = 5000L
+    // Last /api/frame and /api/lines requests, so the pipeline can idle without clients
+    @Volatile
+    private var lastFrameRequestMs = 0L
+    @Volatile
+    private var lastLinesRequestMs = 0L
+    // Bounds how long a stalled client can hold an I/O worker
+    private val CLIENT_READ_TIMEOUT_MS = 5000
+    
+    init {
+        MetricsRegistry.getDefault().gauge("edge_web_viewers",
+            "Distinct clients that fetched a frame in the last 5 seconds", { countActiveViewers().toDouble() })
+    }
     
     fun startServer() {
         if (isRunning.getAndSet(true)) {
@@ -44,7 +71,38 @@ class WebServerManager(private val context: Context) {
     
     fun updateFrame(bitmap: Bitmap) {
         currentFrameBitmap = bitmap
-        currentFrameBytes = bitmapToJpegBytes(bitmap)
+        val traceStart = Tracer.begin()
+        val encodeStart = System.nanoTime()
+        PipelineMetrics.ENCODE_FRAMES_IN.inc()
+        val bytes = bitmapToJpegBytes(bitmap)
+        PipelineMetrics.ENCODE_TIME.observeNanos(System.nanoTime() - encodeStart)
+        PipelineMetrics.ENCODE_FRAMES_OUT.inc()
+        PipelineMetrics.ENCODE_BYTES.add(bytes.size.toLong())
+        PipelineMetrics.JPEG_ALLOCATIONS.inc()
+        PipelineMetrics.JPEG_ALLOCATED_BYTES.add(bytes.size.toLong())
+        
+        // A frame replaced before any viewer fetched it never left the device
+        if (!currentFrameServed.getAndSet(false) && currentFrameBytes != null) {
+            PipelineMetrics.WEB_FRAMES_DROPPED.inc()
+        }
+        currentFrameBytes = bytes
+        Tracer.end("Web.encodeJpeg", traceStart)
+    }
+    
+    fun updateLines(frameId: Long, width: Int, height: Int, timestamp: Long, lines: FloatArray) {
+        currentLines = LineFrame(frameId, width, height, timestamp, lines)
+    }
+    
+    /** Whether a client fetched /api/frame within the viewer timeout */
+    fun hasFrameViewers(): Boolean = System.currentTimeMillis() - lastFrameRequestMs < VIEWER_TIMEOUT_MS
+    
+    /** Whether a client fetched /api/lines within the viewer timeout */
+    fun hasLineViewers(): Boolean = System.currentTimeMillis() - lastLinesRequestMs < VIEWER_TIMEOUT_MS
+    
+    private fun countActiveViewers(): Int {
+        val cutoff = System.currentTimeMillis() - VIEWER_TIMEOUT_MS
+        viewerLastSeen.values.removeIf { it < cutoff }
+        return viewerLastSeen.size
     }
     
     private fun runServer() {
@@ -56,9 +114,13 @@ class WebServerManager(private val context: Context) {
                 try {
                     val clientSocket = serverSocket.acceptWithTimeout(1000)
                     if (clientSocket != null) {
-                        Thread {
+                        clientSocket.soTimeout = CLIENT_READ_TIMEOUT_MS
+                        val accepted = ComputeScheduler.getDefault().execute(ComputeScheduler.Priority.IO) {
                             handleClient(clientSocket)
-                        }.start()
+                        }
+                        if (!accepted) {
+                            rejectClient(clientSocket)
+                        }
                     }
                 } catch (e: Exception) {
                     if (isRunning.get()) {
@@ -83,6 +145,7 @@ class WebServerManager(private val context: Context) {
     }
     
     private fun handleClient(clientSocket: Socket) {
+        PipelineMetrics.WEB_ACTIVE_CONNECTIONS.inc()
         try {
             val reader = BufferedReader(InputStreamReader(clientSocket.inputStream))
             val writer = OutputStreamWriter(clientSocket.outputStream)
@@ -106,9 +169,24 @@ class WebServerManager(private val context: Context) {
                     sendHtmlResponse(writer)
                 }
                 path == "/api/frame" -> {
+                    lastFrameRequestMs = System.currentTimeMillis()
+                    clientSocket.inetAddress?.hostAddress?.let {
+                        viewerLastSeen[it] = lastFrameRequestMs
+                    }
                     sendFrameResponse(clientSocket)
                 }
+                path.startsWith("/api/lines") -> {
+                    lastLinesRequestMs = System.currentTimeMillis()
+                    sendLinesResponse(clientSocket, path)
+                }
+                path == "/metrics" -> {
+                    sendMetricsResponse(clientSocket)
+                }
+                path.startsWith("/api/trace") -> {
+                    sendTraceResponse(clientSocket, path)
+                }
                 path.startsWith("/api/control") -> {
+                    applyControl(parseQuery(path))
                     sendJsonResponse(writer, """{"status": "ok"}""")
                 }
                 else -> {
@@ -123,6 +201,8 @@ class WebServerManager(private val context: Context) {
             try {
                 clientSocket.close()
             } catch (ignored: Exception) {}
+        } finally {
+            PipelineMetrics.WEB_ACTIVE_CONNECTIONS.dec()
         }
     }
     
@@ -140,6 +220,7 @@ class WebServerManager(private val context: Context) {
     }
     
     private fun sendFrameResponse(clientSocket: Socket) {
+        val traceStart = Tracer.begin()
         try {
             val frameData = currentFrameBytes
             if (frameData != null) {
@@ -154,6 +235,8 @@ class WebServerManager(private val context: Context) {
                 out.write(response.toByteArray())
                 out.write(frameData)
                 out.flush()
+                currentFrameServed.set(true)
+                PipelineMetrics.WEB_FRAMES_OUT.inc()
             } else {
                 val response = "HTTP/1.1 204 No Content\r\n" +
                         "Connection: close\r\n" +
@@ -163,6 +246,206 @@ class WebServerManager(private val context: Context) {
             }
         } catch (e: Exception) {
             Log.e(TAG, "Error sending frame", e)
+        } finally {
+            Tracer.end("Web.sendFrame", traceStart)
+        }
+    }
+    
+    /**
+     * Chrome trace JSON of recent Java and native spans (open in chrome://tracing
+     * or ui.perfetto.dev). Query options: enabled=true|false, clear=true
+     */
+    private fun sendTraceResponse(clientSocket: Socket, path: String) {
+        try {
+            val params = parseQuery(path)
+            
+            params["enabled"]?.let { value ->
+                val enabled = value.toBoolean()
+                Tracer.setEnabled(enabled)
+                NativeImageProcessor.setNativeTraceEnabled(enabled)
+                Log.d(TAG, "Tracing enabled: $enabled")
+            }
+            
+            val json = Tracer.exportChromeJson(
+                NativeImageProcessor.exportNativeTraceJson(android.os.Process.myPid())
+            ).toByteArray(Charsets.UTF_8)
+            
+            if (params["clear"] == "true") {
+                Tracer.clear()
+                NativeImageProcessor.clearNativeTrace()
+            }
+            
+            val response = "HTTP/1.1 200 OK\r\n" +
+                    "Content-Type: application/json\r\n" +
+                    "Content-Length: ${json.size}\r\n" +
+                    "Cache-Control: no-cache\r\n" +
+                    "Connection: close\r\n" +
+                    "\r\n"
+            
+            val out = clientSocket.outputStream
+            out.write(response.toByteArray())
+            out.write(json)
+            out.flush()
+        } catch (e: Exception) {
+            Log.e(TAG, "Error sending trace", e)
+        }
+    }
+    
+    /**
+     * Line segments of the latest Canny frame: a few kilobytes where a frame is a
+     * JPEG. JSON by default, {"enabled", "frame", "width", "height", "timestamp",
+     * "lines": [x1, y1, x2, y2, ...]}; format=f32 sends the coordinates as packed
+     * little-endian float32 with the frame fields in X-Frame-* headers. Query
+     * options also configure the detector: enabled, overlay,
+     * roi=left,top,right,bottom (fractions of the frame), scale, threshold,
+     * minLength, maxGap, maxLines.
+     */
+    private fun sendLinesResponse(clientSocket: Socket, path: String) {
+        try {
+            val params = parseQuery(path)
+            applyLineParams(params)
+            
+            val frame = currentLines
+            val out = clientSocket.outputStream
+            if (params["format"] == "f32") {
+                if (frame == null) {
+                    out.write("HTTP/1.1 204 No Content\r\nConnection: close\r\n\r\n".toByteArray())
+                    out.flush()
+                    return
+                }
+                val body = ByteBuffer.allocate(frame.lines.size * 4).order(ByteOrder.LITTLE_ENDIAN)
+                body.asFloatBuffer().put(frame.lines)
+                val response = "HTTP/1.1 200 OK\r\n" +
+                        "Content-Type: application/octet-stream\r\n" +
+                        "Content-Length: ${body.capacity()}\r\n" +
+                        "X-Frame-Id: ${frame.frameId}\r\n" +
+                        "X-Frame-Width: ${frame.width}\r\n" +
+                        "X-Frame-Height: ${frame.height}\r\n" +
+                        "X-Frame-Timestamp: ${frame.timestamp}\r\n" +
+                        "Cache-Control: no-cache\r\n" +
+                        "Connection: close\r\n" +
+                        "\r\n"
+                out.write(response.toByteArray())
+                out.write(body.array())
+                out.flush()
+                PipelineMetrics.LINES_BYTES.add(body.capacity().toLong())
+                return
+            }
+            
+            val json = StringBuilder(64 + (frame?.lines?.size ?: 0) * 8)
+            json.append("{\"enabled\": ").append(LineDetection.enabled)
+            if (frame != null) {
+                json.append(", \"frame\": ").append(frame.frameId)
+                    .append(", \"width\": ").append(frame.width)
+                    .append(", \"height\": ").append(frame.height)
+                    .append(", \"timestamp\": ").append(frame.timestamp)
+            }
+            json.append(", \"lines\": [")
+            frame?.lines?.forEachIndexed { i, value ->
+                if (i > 0) json.append(',')
+                // Tenths of a pixel are below the detector's precision
+                json.append(Math.round(value * 10f) / 10f)
+            }
+            json.append("]}")
+            val body = json.toString().toByteArray(Charsets.UTF_8)
+            val response = "HTTP/1.1 200 OK\r\n" +
+                    "Content-Type: application/json\r\n" +
+                    "Content-Length: ${body.size}\r\n" +
+                    "Cache-Control: no-cache\r\n" +
+                    "Connection: close\r\n" +
+                    "\r\n"
+            out.write(response.toByteArray())
+            out.write(body)
+            out.flush()
+            PipelineMetrics.LINES_BYTES.add(body.size.toLong())
+        } catch (e: Exception) {
+            Log.e(TAG, "Error sending lines", e)
+        }
+    }
+    
+    private fun applyLineParams(params: Map<String, String>) {
+        var settings = LineDetection.settings
+        params["roi"]?.split(',')?.mapNotNull { it.toFloatOrNull() }?.takeIf { it.size == 4 }?.let {
+            settings = settings.copy(left = it[0], top = it[1], right = it[2], bottom = it[3])
+        }
+        params["scale"]?.toFloatOrNull()?.let { settings = settings.copy(scale = it) }
+        params["threshold"]?.toIntOrNull()?.let { settings = settings.copy(threshold = it) }
+        params["minLength"]?.toFloatOrNull()?.let { settings = settings.copy(minLength = it) }
+        params["maxGap"]?.toFloatOrNull()?.let { settings = settings.copy(maxGap = it) }
+        params["maxLines"]?.toIntOrNull()?.let { settings = settings.copy(maxLines = it) }
+        if (settings != LineDetection.settings) {
+            LineDetection.update(settings)
+            Log.d(TAG, "Line detection settings: $settings")
+        }
+        
+        val enabled = params["enabled"]?.toBoolean()
+        val overlay = params["overlay"]?.toBoolean()
+        if (enabled != null || overlay != null) {
+            LineDetection.setEnabled(enabled ?: LineDetection.enabled, overlay ?: LineDetection.overlay)
+            if (enabled == false) {
+                currentLines = null
+            }
+            Log.d(TAG, "Line detection enabled: ${LineDetection.enabled}, overlay: ${LineDetection.overlay}")
+        }
+    }
+    
+    /**
+     * Remote pipeline switches. motion=true gates Canny on background
+     * subtraction; motionMethod (mog2, knn), motionWidth, motionPadding and
+     * motionRefresh tune it. stabilize=true warps edges along with camera
+     * motion; stabilizeMethod (lk, ecc), stabilizeRefresh and stabilizeResidual
+     * tune it.
+     */
+    private fun applyControl(params: Map<String, String>) {
+        params["motion"]?.toBoolean()?.let { motion ->
+            val method = if (params["motionMethod"].equals("knn", ignoreCase = true)) {
+                NativeImageProcessor.MOTION_METHOD_KNN
+            } else {
+                NativeImageProcessor.MOTION_METHOD_MOG2
+            }
+            NativeImageProcessor.setMotionGating(motion, method,
+                params["motionWidth"]?.toIntOrNull() ?: DataFlowController.MOTION_ANALYSIS_WIDTH,
+                params["motionPadding"]?.toIntOrNull() ?: DataFlowController.MOTION_PADDING,
+                params["motionRefresh"]?.toIntOrNull() ?: DataFlowController.MOTION_REFRESH_INTERVAL)
+            Log.d(TAG, "Motion gating: $motion")
+        }
+        params["stabilize"]?.toBoolean()?.let { stabilize ->
+            val method = if (params["stabilizeMethod"].equals("ecc", ignoreCase = true)) {
+                NativeImageProcessor.STABILIZE_METHOD_ECC
+            } else {
+                NativeImageProcessor.STABILIZE_METHOD_LK
+            }
+            NativeImageProcessor.setEdgeStabilization(stabilize, method,
+                params["stabilizeRefresh"]?.toIntOrNull() ?: DataFlowController.STABILIZE_REFRESH_INTERVAL,
+                params["stabilizeResidual"]?.toIntOrNull() ?: DataFlowController.STABILIZE_RESIDUAL_THRESHOLD)
+            Log.d(TAG, "Edge stabilization: $stabilize")
+        }
+    }
+    
+    private fun parseQuery(path: String): Map<String, String> {
+        return path.substringAfter('?', "").split('&').filter { it.contains('=') }
+            .associate { it.substringBefore('=') to it.substringAfter('=') }
+    }
+    
+    /**
+     * Pipeline counters, gauges and histograms in Prometheus text format (0.0.4)
+     */
+    private fun sendMetricsResponse(clientSocket: Socket) {
+        try {
+            val body = MetricsRegistry.getDefault().scrape().toByteArray(Charsets.UTF_8)
+            val response = "HTTP/1.1 200 OK\r\n" +
+                    "Content-Type: text/plain; version=0.0.4; charset=utf-8\r\n" +
+                    "Content-Length: ${body.size}\r\n" +
+                    "Cache-Control: no-cache\r\n" +
+                    "Connection: close\r\n" +
+                    "\r\n"
+            
+            val out = clientSocket.outputStream
+            out.write(response.toByteArray())
+            out.write(body)
+            out.flush()
+        } catch (e: Exception) {
+            Log.e(TAG, "Error sending metrics", e)
         }
     }
     
@@ -178,6 +461,25 @@ class WebServerManager(private val context: Context) {
         writer.flush()
     }
     
+    /** Turn a connection away while every I/O worker slot is queued up */
+    private fun rejectClient(clientSocket: Socket) {
+        PipelineMetrics.WEB_CONNECTIONS_REJECTED.inc()
+        try {
+            val writer = OutputStreamWriter(clientSocket.outputStream)
+            writer.write("HTTP/1.1 503 Service Unavailable\r\n" +
+                    "Retry-After: 1\r\n" +
+                    "Content-Length: 0\r\n" +
+                    "Connection: close\r\n" +
+                    "\r\n")
+            writer.flush()
+        } catch (ignored: Exception) {
+        } finally {
+            try {
+                clientSocket.close()
+            } catch (ignored: Exception) {}
+        }
+    }
+    
     private fun send404Response(writer: OutputStreamWriter) {
         val message = "Not Found"
         val response = "HTTP/1.1 404 Not Found\r\n" +
@@ -236,6 +538,7 @@ class WebServerManager(private val context: Context) {
             <button id="startBtn" onclick="viewer?.startStream()">▶ Start</button>
             <button id="stopBtn" onclick="viewer?.stopStream()" disabled>⏹ Stop</button>
             <button id="screenshotBtn" onclick="viewer?.takeScreenshot()">📸 Screenshot</button>
+            <button id="linesBtn" onclick="viewer?.toggleLines()">📐 Lines</button>
         </div>
     </div>
     
@@ -248,6 +551,7 @@ class WebServerManager(private val context: Context) {
                 this.canvas = canvasEl;
                 this.ctx = canvasEl.getContext('2d');
                 this.isStreaming = false;
+                this.linesMode = false;
                 this.frameCount = 0;
                 this.lastFpsTime = Date.now();
                 this.resizeCanvas();
@@ -278,8 +582,46 @@ class WebServerManager(private val context: Context) {
                 this.ctx.fillRect(0, 0, this.canvas.width, this.canvas.height);
             }
             
+            async toggleLines() {
+                this.linesMode = !this.linesMode;
+                document.getElementById('linesBtn').textContent = this.linesMode ? '🖼 Frames' : '📐 Lines';
+                // Segments are only extracted while someone asks for them
+                await fetch('/api/lines?enabled=' + this.linesMode, { cache: 'no-store' });
+            }
+            
+            async drawLines() {
+                const response = await fetch('/api/lines?format=f32', { cache: 'no-store' });
+                if (!response.ok || response.status === 204) return;
+                const width = Number(response.headers.get('X-Frame-Width'));
+                const height = Number(response.headers.get('X-Frame-Height'));
+                const lines = new Float32Array(await response.arrayBuffer());
+                const sx = this.canvas.width / width;
+                const sy = this.canvas.height / height;
+                this.ctx.fillStyle = '#000';
+                this.ctx.fillRect(0, 0, this.canvas.width, this.canvas.height);
+                this.ctx.strokeStyle = '#4CAF50';
+                this.ctx.lineWidth = 2;
+                this.ctx.beginPath();
+                for (let i = 0; i + 3 < lines.length; i += 4) {
+                    this.ctx.moveTo(lines[i] * sx, lines[i + 1] * sy);
+                    this.ctx.lineTo(lines[i + 2] * sx, lines[i + 3] * sy);
+                }
+                this.ctx.stroke();
+                this.frameCount++;
+                this.updateFps();
+            }
+            
             async streamLoop() {
                 while (this.isStreaming) {
+                    if (this.linesMode) {
+                        try {
+                            await this.drawLines();
+                        } catch(e) {
+                            console.error('Lines fetch error:', e);
+                        }
+                        await new Promise(r => setTimeout(r, 33));
+                        continue;
+                    }
                     try {
                         const response = await fetch('/api/frame', { cache: 'no-store' });
                         if (response.ok && response.status !== 204) {
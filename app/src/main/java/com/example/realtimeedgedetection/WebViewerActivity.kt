@@ -10,11 +10,14 @@ import androidx.appcompat.app.AppCompatActivity
 import com.google.gson.Gson
 import java.io.File
 import java.io.FileOutputStream
+import java.util.concurrent.FutureTask
+import java.util.concurrent.TimeUnit
 
 class WebViewerActivity : AppCompatActivity() {
 
     private lateinit var webView: WebView
     private val gson = Gson()
+    private val INDEX_TIMEOUT_SECONDS = 10L
 
     @SuppressLint("SetJavaScriptEnabled")
     override fun onCreate(savedInstanceState: Bundle?) {
@@ -49,6 +52,22 @@ class WebViewerActivity : AppCompatActivity() {
 
         @JavascriptInterface
         fun getImages(): String {
+            // Reading metadata of every capture is indexing work: run it in the BACKGROUND
+            // class, whose worker cap leaves the preview workers alone
+            val index = FutureTask<String> { indexImages() }
+            if (!ComputeScheduler.getDefault().execute(ComputeScheduler.Priority.BACKGROUND, index)) {
+                return gson.toJson(emptyList<Any>())
+            }
+            return try {
+                index.get(INDEX_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            } catch (e: Exception) {
+                index.cancel(true)
+                e.printStackTrace()
+                gson.toJson(emptyList<Any>())
+            }
+        }
+
+        private fun indexImages(): String {
             return try {
                 val images = ImageStorageUtils.getAllCapturedImages(this@WebViewerActivity)
                 val imageDataList = images.map { file ->
@@ -0,0 +1,261 @@
+package com.example.realtimeedgedetection.recording;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands processed frames from the pipeline to a VideoSink on a dedicated
+ * encoder thread.
+ *
+ * Frames travel through a fixed ring of reusable buffers: offer() copies the
+ * frame into a free slot and returns immediately, and the encoder thread
+ * returns the slot once the sink has written it. When the sink falls behind
+ * and every slot is taken, offer() drops the frame and counts it instead of
+ * waiting, so recording never stalls processing. Each frame keeps the
+ * timestamp it was offered with, so sinks can preserve real-time pacing
+ * across drops.
+ *
+ * The ring is allocated on the first offer, for that frame size; frames of
+ * any other size are dropped. A recorder is used for one recording.
+ */
+public final class FrameRecorder {
+
+    public static final int DEFAULT_CAPACITY = 4;
+
+    /** Snapshot of recorder counters */
+    public static final class Stats {
+        public final long offered;
+        public final long queued;         // copied into the ring
+        public final long written;        // accepted by the sink
+        public final long droppedFull;    // ring full: the sink is behind
+        public final long droppedSink;    // the sink declined the frame
+        public final long droppedOther;   // wrong size, or after stop or a sink failure
+        public final long encodeNanos;    // total time spent in VideoSink.write
+        public final long durationUs;     // timestamp of the last frame written
+        public final IOException error;
+
+        Stats(long offered, long queued, long written, long droppedFull, long droppedSink, long droppedOther,
+              long encodeNanos, long durationUs, IOException error) {
+            this.offered = offered;
+            this.queued = queued;
+            this.written = written;
+            this.droppedFull = droppedFull;
+            this.droppedSink = droppedSink;
+            this.droppedOther = droppedOther;
+            this.encodeNanos = encodeNanos;
+            this.durationUs = durationUs;
+            this.error = error;
+        }
+
+        public long dropped() {
+            return droppedFull + droppedSink + droppedOther;
+        }
+
+        @Override
+        public String toString() {
+            return "FrameRecorder [ offered=" + offered + ", queued=" + queued + ", written=" + written +
+                    ", droppedFull=" + droppedFull + ", droppedSink=" + droppedSink + ", droppedOther=" + droppedOther +
+                    ", avgEncodeMs=" + (written == 0 ? 0 : encodeNanos / written / 1_000_000.0) +
+                    ", durationUs=" + durationUs + (error != null ? ", error=" + error : "") + " ]";
+        }
+    }
+
+    private static final class Slot {
+        final byte[] data;
+        long timestampUs;
+
+        Slot(int size) {
+            data = new byte[size];
+        }
+    }
+
+    private static final Slot END = new Slot(0);
+
+    private final VideoSink sink;
+    private final int capacity;
+    private final ArrayBlockingQueue<Slot> free;
+    private final ArrayBlockingQueue<Slot> filled;
+    private final Thread encoder;
+
+    private volatile boolean accepting = false;
+    private volatile IOException error;
+
+    // Ring geometry, set by the first offer (pipeline thread only)
+    private int width;
+    private int height;
+    private long firstTimestampNs = -1;
+
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong droppedFull = new AtomicLong();
+    private final AtomicLong droppedSink = new AtomicLong();
+    private final AtomicLong droppedOther = new AtomicLong();
+    private final AtomicLong encodeNanos = new AtomicLong();
+    private volatile long lastTimestampUs = 0;
+
+    /**
+     * @param capacity Frames that may wait for the sink before new ones are dropped
+     */
+    public FrameRecorder(VideoSink sink, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.sink = sink;
+        this.capacity = capacity;
+        this.free = new ArrayBlockingQueue<Slot>(capacity);
+        this.filled = new ArrayBlockingQueue<Slot>(capacity + 1);   // room for END
+        this.encoder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                encodeLoop();
+            }
+        }, "FrameRecorder");
+    }
+
+    public FrameRecorder(VideoSink sink) {
+        this(sink, DEFAULT_CAPACITY);
+    }
+
+    public synchronized void start() {
+        if (encoder.getState() != Thread.State.NEW) {
+            throw new IllegalStateException("FrameRecorder already started");
+        }
+        accepting = true;
+        encoder.start();
+    }
+
+    /**
+     * Queue a frame for recording without blocking. Call from one thread.
+     * @param rgba Tightly packed RGBA, copied before this returns
+     * @param timestampNs Capture time on any monotonic clock
+     * @return false if the frame was dropped
+     */
+    public boolean offer(byte[] rgba, int width, int height, long timestampNs) {
+        offered.incrementAndGet();
+        if (!accepting) {
+            droppedOther.incrementAndGet();
+            return false;
+        }
+        if (firstTimestampNs < 0) {
+            if (width <= 0 || height <= 0) {
+                droppedOther.incrementAndGet();
+                return false;
+            }
+            this.width = width;
+            this.height = height;
+            this.firstTimestampNs = timestampNs;
+            for (int i = 0; i < capacity; i++) {
+                free.offer(new Slot(width * height * 4));
+            }
+        }
+        if (width != this.width || height != this.height || rgba.length < width * height * 4) {
+            droppedOther.incrementAndGet();
+            return false;
+        }
+
+        Slot slot = free.poll();
+        if (slot == null) {
+            droppedFull.incrementAndGet();
+            return false;
+        }
+        System.arraycopy(rgba, 0, slot.data, 0, slot.data.length);
+        slot.timestampUs = Math.max(0, (timestampNs - firstTimestampNs) / 1000);
+        synchronized (this) {
+            // stop() may have queued END while the frame was copied
+            if (!accepting) {
+                free.offer(slot);
+                droppedOther.incrementAndGet();
+                return false;
+            }
+            queued.incrementAndGet();
+            filled.offer(slot);
+        }
+        return true;
+    }
+
+    public boolean isRecording() {
+        return accepting;
+    }
+
+    /** The failure that ended recording early, or null */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * Stop accepting frames, let the sink write everything already queued and
+     * close it. Blocks until the encoder thread has finished.
+     */
+    public Stats stop() throws InterruptedException {
+        synchronized (this) {
+            if (encoder.getState() == Thread.State.NEW) {
+                closeSink();
+                return stats();
+            }
+            accepting = false;
+            filled.offer(END);
+        }
+        encoder.join();
+        return stats();
+    }
+
+    public Stats stats() {
+        return new Stats(offered.get(), queued.get(), written.get(), droppedFull.get(), droppedSink.get(),
+                droppedOther.get(), encodeNanos.get(), lastTimestampUs, error);
+    }
+
+    private void encodeLoop() {
+        boolean opened = false;
+        try {
+            while (true) {
+                Slot slot = filled.take();
+                if (slot == END) {
+                    break;
+                }
+                if (error == null) {
+                    try {
+                        if (!opened) {
+                            opened = true;
+                            sink.open(width, height);
+                        }
+                        long start = System.nanoTime();
+                        if (sink.write(slot.data, slot.timestampUs)) {
+                            written.incrementAndGet();
+                            lastTimestampUs = slot.timestampUs;
+                        } else {
+                            droppedSink.incrementAndGet();
+                        }
+                        encodeNanos.addAndGet(System.nanoTime() - start);
+                    } catch (IOException e) {
+                        fail(e);
+                        droppedOther.incrementAndGet();
+                    }
+                } else {
+                    droppedOther.incrementAndGet();
+                }
+                free.offer(slot);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeSink();
+        }
+    }
+
+    private void closeSink() {
+        try {
+            sink.close();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        accepting = false;
+        if (error == null) {
+            error = e;
+        }
+    }
+}
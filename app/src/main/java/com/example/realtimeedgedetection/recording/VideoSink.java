@@ -0,0 +1,29 @@
+package com.example.realtimeedgedetection.recording;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for recorded frames. FrameRecorder calls every method from its
+ * encoder thread, so implementations need no locking and may block for as
+ * long as encoding takes; the processing pipeline never waits on them.
+ *
+ * Frames are tightly packed RGBA (width * height * 4 bytes). The buffer is
+ * reused for later frames once write returns.
+ */
+public interface VideoSink extends Closeable {
+
+    /** Prepare for frames of the given size; called once, before the first write */
+    void open(int width, int height) throws IOException;
+
+    /**
+     * Encode one frame
+     * @param timestampUs Presentation time relative to the first recorded frame
+     * @return false if the sink had to drop the frame (e.g. no encoder input buffer free)
+     */
+    boolean write(byte[] rgba, long timestampUs) throws IOException;
+
+    /** Flush pending output and finish the file; called once, also after a failed open */
+    @Override
+    void close() throws IOException;
+}
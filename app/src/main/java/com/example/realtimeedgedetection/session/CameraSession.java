@@ -0,0 +1,392 @@
+package com.example.realtimeedgedetection.session;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Size;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One camera streaming YUV frames into its own StreamSession.
+ *
+ * The camera runs on a private handler thread and delivers into an
+ * ImageReader. Each image is copied to NV21 in a buffer from a small fixed
+ * pool and handed to the session's FairScheduler client for filtering; when
+ * every buffer is in flight the image is dropped on the spot rather than
+ * queued behind stale work. The filter and whether the output is displayed
+ * can be changed at any time and apply from the next frame. While a
+ * FrameListener is set, the displayed session's filtered frames are also
+ * copied out to it, e.g. for recording.
+ */
+public final class CameraSession implements AutoCloseable {
+    private static final String TAG = "CameraSession";
+
+    /** Receives the filtered frames of the displayed session */
+    public interface FrameListener {
+        /**
+         * Called on a scheduler worker; rgba is reused once this returns
+         * @param timestampNs System.nanoTime() when the camera delivered the frame
+         */
+        void onFrame(byte[] rgba, int width, int height, long timestampNs);
+    }
+
+    private static final int MAX_IMAGES = 3;
+    private static final int POOL_SIZE = 3;
+    // Concurrent streams are only guaranteed up to 720p
+    private static final int MAX_WIDTH = 1280;
+    private static final int MAX_HEIGHT = 720;
+
+    private final Context context;
+    private final String cameraId;
+    private final int facing;
+    private final FairScheduler.Client client;
+    private final StreamSession stream = new StreamSession();
+    private final ArrayBlockingQueue<FrameTask> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final AtomicLong framesIn = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+
+    private volatile int filterType = 1;
+    private volatile boolean displayed = false;
+    private volatile FrameListener frameListener;
+    private boolean streamClosed = false;   // guarded by stream
+
+    private Size size;
+    private HandlerThread thread;
+    private Handler handler;
+    private ImageReader reader;
+    private CameraDevice device;
+    private CameraCaptureSession captureSession;
+
+    /** A pooled NV21 buffer; runs the filter and returns itself to the pool */
+    private final class FrameTask implements Runnable {
+        final byte[] nv21;
+        byte[] rgba;            // allocated on the first frame copied out
+        long timestampNs;
+
+        FrameTask(int length) {
+            nv21 = new byte[length];
+        }
+
+        @Override
+        public void run() {
+            try {
+                int width = size.getWidth();
+                int height = size.getHeight();
+                boolean shown = displayed;
+                FrameListener listener = shown ? frameListener : null;
+                if (listener != null && rgba == null) {
+                    rgba = new byte[width * height * 4];
+                }
+                boolean processed;
+                synchronized (stream) {
+                    if (streamClosed) {
+                        return;
+                    }
+                    processed = stream.process(nv21, width, height, filterType, shown,
+                            listener != null ? rgba : null);
+                }
+                if (!processed) {
+                    framesDropped.incrementAndGet();
+                } else if (listener != null) {
+                    listener.onFrame(rgba, width, height, timestampNs);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Camera " + cameraId + ": processing failed", e);
+                framesDropped.incrementAndGet();
+            } finally {
+                pool.offer(this);
+            }
+        }
+    }
+
+    /**
+     * @param client Scheduler share for this camera's frames; closed with the session
+     */
+    public CameraSession(Context context, String cameraId, int facing, FairScheduler.Client client) {
+        this.context = context.getApplicationContext();
+        this.cameraId = cameraId;
+        this.facing = facing;
+        this.client = client;
+    }
+
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    /** CameraCharacteristics.LENS_FACING_* */
+    public int getFacing() {
+        return facing;
+    }
+
+    public FairScheduler.Client getClient() {
+        return client;
+    }
+
+    public void setFilterType(int filterType) {
+        this.filterType = filterType;
+    }
+
+    public int getFilterType() {
+        return filterType;
+    }
+
+    /** Send this session's frames to the preview presenter */
+    public void setDisplayed(boolean displayed) {
+        this.displayed = displayed;
+    }
+
+    public boolean isDisplayed() {
+        return displayed;
+    }
+
+    /** Copy the filtered frames out to listener while this session is displayed; null stops it */
+    public void setFrameListener(FrameListener listener) {
+        this.frameListener = listener;
+    }
+
+    public long getFramesIn() {
+        return framesIn.get();
+    }
+
+    /** Frames dropped for lack of a buffer, evicted from the queue or failed in processing */
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    /** @return {frames, displayed, processNs} of the native session */
+    public long[] getStreamStats() {
+        synchronized (stream) {
+            return streamClosed ? new long[3] : stream.getStats();
+        }
+    }
+
+    /**
+     * Open the camera and start streaming. The caller must hold the CAMERA
+     * permission.
+     */
+    @SuppressLint("MissingPermission")
+    public synchronized void start() throws CameraAccessException {
+        if (thread != null) {
+            return;
+        }
+        CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        StreamConfigurationMap map = manager.getCameraCharacteristics(cameraId)
+                .get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (map == null) {
+            throw new IllegalStateException("Camera " + cameraId + " has no stream configurations");
+        }
+        size = chooseSize(map.getOutputSizes(ImageFormat.YUV_420_888));
+        pool.clear();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool.offer(new FrameTask(size.getWidth() * size.getHeight() * 3 / 2));
+        }
+
+        thread = new HandlerThread("CameraSession-" + cameraId);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        reader = ImageReader.newInstance(size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, MAX_IMAGES);
+        reader.setOnImageAvailableListener(this::onImageAvailable, handler);
+        manager.openCamera(cameraId, stateCallback, handler);
+        Log.d(TAG, "Camera " + cameraId + " starting at " + size);
+    }
+
+    /** Close the camera and wait for its thread; frames already queued still run */
+    public void stop() {
+        HandlerThread stopping;
+        ImageReader stoppingReader;
+        synchronized (this) {
+            if (thread == null) {
+                return;
+            }
+            if (captureSession != null) {
+                captureSession.close();
+                captureSession = null;
+            }
+            if (device != null) {
+                device.close();
+                device = null;
+            }
+            stopping = thread;
+            stoppingReader = reader;
+            thread = null;
+            handler = null;
+            reader = null;
+        }
+        // Outside the lock: camera callbacks on this thread take it
+        stopping.quitSafely();
+        try {
+            stopping.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stoppingReader.close();
+        Log.d(TAG, "Camera " + cameraId + " stopped");
+    }
+
+    /** Stop, unregister from the scheduler and free the native session */
+    @Override
+    public void close() {
+        stop();
+        client.close();
+        // A task still running holds the stream; it returns within one frame
+        synchronized (stream) {
+            streamClosed = true;
+            stream.close();
+        }
+    }
+
+    private void onImageAvailable(ImageReader imageReader) {
+        Image image = imageReader.acquireLatestImage();
+        if (image == null) {
+            return;
+        }
+        long timestampNs = System.nanoTime();
+        framesIn.incrementAndGet();
+        FrameTask task = pool.poll();
+        if (task == null) {
+            framesDropped.incrementAndGet();
+            image.close();
+            return;
+        }
+        try {
+            toNV21(image, task.nv21);
+            task.timestampNs = timestampNs;
+        } finally {
+            image.close();
+        }
+        // Either a stale frame pushed out of the queue or this one if the client is closed
+        Runnable notRun = client.submit(task);
+        if (notRun != null) {
+            framesDropped.incrementAndGet();
+            pool.offer((FrameTask) notRun);
+        }
+    }
+
+    private final CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(@NonNull CameraDevice camera) {
+            synchronized (CameraSession.this) {
+                if (thread == null) {
+                    camera.close();
+                    return;
+                }
+                device = camera;
+                createCaptureSession();
+            }
+        }
+
+        @Override
+        public void onDisconnected(@NonNull CameraDevice camera) {
+            Log.w(TAG, "Camera " + cameraId + " disconnected");
+            camera.close();
+        }
+
+        @Override
+        public void onError(@NonNull CameraDevice camera, int error) {
+            Log.e(TAG, "Camera " + cameraId + " error: " + error);
+            camera.close();
+        }
+    };
+
+    private void createCaptureSession() {
+        try {
+            device.createCaptureSession(Collections.singletonList(reader.getSurface()),
+                    new CameraCaptureSession.StateCallback() {
+                        @Override
+                        public void onConfigured(@NonNull CameraCaptureSession session) {
+                            synchronized (CameraSession.this) {
+                                if (device == null) {
+                                    session.close();
+                                    return;
+                                }
+                                captureSession = session;
+                                try {
+                                    CaptureRequest.Builder request =
+                                            device.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+                                    request.addTarget(reader.getSurface());
+                                    request.set(CaptureRequest.CONTROL_MODE, CaptureRequest.CONTROL_MODE_AUTO);
+                                    session.setRepeatingRequest(request.build(), null, handler);
+                                } catch (CameraAccessException e) {
+                                    Log.e(TAG, "Camera " + cameraId + ": repeating request failed", e);
+                                }
+                            }
+                        }
+
+                        @Override
+                        public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+                            Log.e(TAG, "Camera " + cameraId + ": capture session configuration failed");
+                        }
+                    }, handler);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Camera " + cameraId + ": createCaptureSession failed", e);
+        }
+    }
+
+    /** Largest size within the concurrent-stream limit, or the smallest one offered */
+    public static Size chooseSize(Size[] choices) {
+        Size best = null;
+        Size smallest = null;
+        for (Size option : choices) {
+            long area = (long) option.getWidth() * option.getHeight();
+            if (smallest == null || area < (long) smallest.getWidth() * smallest.getHeight()) {
+                smallest = option;
+            }
+            if (option.getWidth() <= MAX_WIDTH && option.getHeight() <= MAX_HEIGHT
+                    && (best == null || area > (long) best.getWidth() * best.getHeight())) {
+                best = option;
+            }
+        }
+        return best != null ? best : smallest;
+    }
+
+    /** Copy a YUV_420_888 image into an NV21 buffer, honouring row and pixel strides */
+    public static void toNV21(Image image, byte[] nv21) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Image.Plane[] planes = image.getPlanes();
+
+        ByteBuffer y = planes[0].getBuffer();
+        int yStride = planes[0].getRowStride();
+        if (yStride == width) {
+            y.get(nv21, 0, width * height);
+        } else {
+            for (int row = 0; row < height; row++) {
+                y.position(row * yStride);
+                y.get(nv21, row * width, width);
+            }
+        }
+
+        ByteBuffer u = planes[1].getBuffer();
+        ByteBuffer v = planes[2].getBuffer();
+        int uvStride = planes[1].getRowStride();
+        int pixelStride = planes[1].getPixelStride();
+        int chromaWidth = width / 2;
+        int offset = width * height;
+        for (int row = 0; row < height / 2; row++) {
+            int base = row * uvStride;
+            for (int col = 0; col < chromaWidth; col++) {
+                int index = base + col * pixelStride;
+                nv21[offset++] = v.get(index);
+                nv21[offset++] = u.get(index);
+            }
+        }
+    }
+}
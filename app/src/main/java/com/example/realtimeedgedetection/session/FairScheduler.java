@@ -0,0 +1,341 @@
+package com.example.realtimeedgedetection.session;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Shares a bounded number of workers of an Executor between several streams.
+ *
+ * Each stream registers a Client with a worker budget (the most of its tasks
+ * that may run at once), a weight and a bounded queue. A full queue drops its
+ * oldest task, so a stream that falls behind loses stale frames instead of
+ * adding latency. Runners take the next task by stride scheduling: among
+ * clients with pending work and spare budget, the one that has been served
+ * least relative to its weight goes first. A client that sat idle rejoins at
+ * the current pass instead of spending credit saved while idle, so one busy
+ * stream cannot starve another and an idle one cannot burst past it.
+ *
+ * The scheduler owns no threads. Up to parallelism runners are handed to the
+ * executor (normally the PREVIEW class of ComputeScheduler) while there is
+ * eligible work; each runs tasks until none is left and then returns its
+ * worker. A task that throws is counted against its client and passed to the
+ * FailureHandler. Pure Java, so the scheduling can be tested off-device.
+ */
+public final class FairScheduler {
+
+    /** Told about each task that threw, on the worker that ran it */
+    public interface FailureHandler {
+        void onFailure(Client client, Throwable failure);
+    }
+
+    private final Object lock = new Object();
+    private final List<Client> clients = new ArrayList<>();
+    private final Executor executor;
+    private final int parallelism;
+    private final FailureHandler failureHandler;
+    private int runners = 0;        // handed to the executor and not yet finished
+    private int starting = 0;       // of those, not yet running
+    private double pass = 0.0;      // pass of the last task dispatched
+    private boolean shutdown = false;
+
+    /**
+     * @param parallelism Most tasks running at once, across all clients
+     */
+    public FairScheduler(Executor executor, int parallelism) {
+        this(executor, parallelism, null);
+    }
+
+    /**
+     * @param parallelism Most tasks running at once, across all clients
+     * @param failureHandler Told about tasks that threw; may be null
+     */
+    public FairScheduler(Executor executor, int parallelism, FailureHandler failureHandler) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.failureHandler = failureHandler;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Add a stream
+     * @param budget Most tasks of this client running at once; 1 keeps them in submission order
+     * @param weight Relative share of the workers when clients compete
+     * @param capacity Pending tasks kept before the oldest is dropped
+     */
+    public Client register(String name, int budget, int weight, int capacity) {
+        if (budget <= 0 || weight <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("budget, weight and capacity must be positive");
+        }
+        synchronized (lock) {
+            if (shutdown) {
+                throw new IllegalStateException("Scheduler is shut down");
+            }
+            Client client = new Client(name, budget, weight, capacity);
+            client.pass = pass;
+            clients.add(client);
+            return client;
+        }
+    }
+
+    /** Clients in registration order */
+    public List<Client> getClients() {
+        synchronized (lock) {
+            return new ArrayList<>(clients);
+        }
+    }
+
+    /** Stop dispatching; pending tasks are discarded, running ones finish */
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            for (Client client : clients) {
+                client.queue.clear();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /** @return true if every runner returned its worker within timeoutMs */
+    public boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (lock) {
+            while (runners > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                lock.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    /** Hand out runners until each eligible task has one or parallelism is reached */
+    private void dispatchLocked() {
+        int eligible = 0;
+        if (!shutdown) {
+            for (Client client : clients) {
+                eligible += Math.min(client.queue.size(), Math.max(0, client.budget - client.running));
+            }
+        }
+        while (starting < eligible && runners < parallelism) {
+            runners++;
+            starting++;
+            try {
+                executor.execute(this::runLoop);
+            } catch (RejectedExecutionException e) {
+                // Tasks stay queued; the next submit or completion tries again
+                runners--;
+                starting--;
+                return;
+            }
+        }
+    }
+
+    private void runLoop() {
+        synchronized (lock) {
+            starting--;
+        }
+        while (true) {
+            Client client;
+            Runnable task;
+            synchronized (lock) {
+                client = pickLocked();
+                if (client == null) {
+                    runners--;
+                    lock.notifyAll();
+                    return;
+                }
+                task = client.queue.pollFirst();
+                client.running++;
+                client.pass += 1.0 / client.weight;
+                pass = client.pass;
+                dispatchLocked();
+            }
+
+            long start = System.nanoTime();
+            Throwable failure = null;
+            try {
+                task.run();
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                synchronized (lock) {
+                    client.running--;
+                    client.completed++;
+                    client.busyNanos += elapsed;
+                    if (failure != null) {
+                        client.failed++;
+                    }
+                    if (failure instanceof Error) {
+                        // This runner ends with the Error; hand its work to another
+                        runners--;
+                        lock.notifyAll();
+                        dispatchLocked();
+                    }
+                }
+            }
+            if (failure != null) {
+                reportFailure(client, failure);
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+    }
+
+    private void reportFailure(Client client, Throwable failure) {
+        if (failureHandler == null) {
+            return;
+        }
+        try {
+            failureHandler.onFailure(client, failure);
+        } catch (RuntimeException e) {
+            // A broken handler must not end the runner
+        }
+    }
+
+    private Client pickLocked() {
+        if (shutdown) {
+            return null;
+        }
+        Client best = null;
+        for (Client client : clients) {
+            if (client.closed || client.queue.isEmpty() || client.running >= client.budget) {
+                continue;
+            }
+            if (best == null || client.pass < best.pass) {
+                best = client;
+            }
+        }
+        return best;
+    }
+
+    /** A stream's handle on the scheduler. Statistics are cumulative since registration. */
+    public final class Client {
+        private final String name;
+        private final int budget;
+        private final int weight;
+        private final int capacity;
+        private final ArrayDeque<Runnable> queue;
+        private int running = 0;
+        private double pass;
+        private boolean closed = false;
+        private long submitted = 0;
+        private long completed = 0;
+        private long dropped = 0;
+        private long failed = 0;
+        private long busyNanos = 0;
+
+        Client(String name, int budget, int weight, int capacity) {
+            this.name = name;
+            this.budget = budget;
+            this.weight = weight;
+            this.capacity = capacity;
+            this.queue = new ArrayDeque<>(capacity);
+        }
+
+        /**
+         * Queue a task
+         * @return The task that will not run because of this call: the oldest
+         *         pending one if the queue was full, task itself if the client
+         *         or scheduler is closed, otherwise null. Lets callers recycle
+         *         buffers the task holds.
+         */
+        public Runnable submit(Runnable task) {
+            synchronized (lock) {
+                if (closed || shutdown) {
+                    return task;
+                }
+                submitted++;
+                Runnable evicted = null;
+                if (queue.size() >= capacity) {
+                    evicted = queue.pollFirst();
+                    dropped++;
+                }
+                if (queue.isEmpty() && running == 0) {
+                    // Idle clients rejoin at the current pass
+                    pass = Math.max(pass, FairScheduler.this.pass);
+                }
+                queue.addLast(task);
+                dispatchLocked();
+                return evicted;
+            }
+        }
+
+        /** Unregister; pending tasks are discarded, running ones finish */
+        public void close() {
+            synchronized (lock) {
+                closed = true;
+                queue.clear();
+                clients.remove(this);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getBudget() {
+            return budget;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getPending() {
+            synchronized (lock) {
+                return queue.size();
+            }
+        }
+
+        public int getRunning() {
+            synchronized (lock) {
+                return running;
+            }
+        }
+
+        public long getSubmitted() {
+            synchronized (lock) {
+                return submitted;
+            }
+        }
+
+        public long getCompleted() {
+            synchronized (lock) {
+                return completed;
+            }
+        }
+
+        public long getDropped() {
+            synchronized (lock) {
+                return dropped;
+            }
+        }
+
+        /** Tasks that threw; the worker survives anything short of an Error */
+        public long getFailed() {
+            synchronized (lock) {
+                return failed;
+            }
+        }
+
+        /** Worker time spent in this client's tasks */
+        public long getBusyNanos() {
+            synchronized (lock) {
+                return busyNanos;
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.realtimeedgedetection.session;
+
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.realtimeedgedetection.ComputeScheduler;
+import com.example.realtimeedgedetection.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs the back and front cameras at the same time, each in its own
+ * CameraSession with its own filter, buffers and scheduler share. The
+ * sessions' frames run on PREVIEW workers of the shared ComputeScheduler.
+ *
+ * Both sessions keep processing whichever one is shown, so flipping the
+ * display only changes which session hands frames to the preview presenter:
+ * no camera is closed or reopened and the edge cache of the newly shown
+ * stream is already warm. Needs a device that reports the back/front pair in
+ * CameraManager.getConcurrentCameraIds() (API 30+); check isSupported()
+ * first and fall back to reopening a single camera otherwise.
+ */
+public final class MultiCameraController implements AutoCloseable {
+    private static final String TAG = "MultiCameraController";
+
+    // Per-camera scheduler share: one frame in flight keeps frames in order
+    private static final int SESSION_BUDGET = 1;
+    private static final int SESSION_WEIGHT = 1;
+    private static final int SESSION_QUEUE = 1;
+
+    private static final String[] SESSION_METRICS = {
+            "edge_session_frames_in_total", "edge_session_frames_dropped_total",
+            "edge_session_frames_processed_total", "edge_session_frames_displayed_total",
+            "edge_session_busy_seconds_total", "edge_session_tasks_failed_total", "edge_session_pending",
+    };
+
+    private final FairScheduler scheduler;
+    private final List<CameraSession> sessions = new ArrayList<>();
+    private CameraSession displayed;
+
+    /**
+     * Find a back/front pair that can stream concurrently
+     * @return {backId, frontId}, or null if the device cannot run both at once
+     */
+    public static String[] findConcurrentPair(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            return null;
+        }
+        CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        try {
+            for (Set<String> combination : manager.getConcurrentCameraIds()) {
+                String back = null;
+                String front = null;
+                for (String id : combination) {
+                    Integer facing = manager.getCameraCharacteristics(id).get(CameraCharacteristics.LENS_FACING);
+                    if (facing == null) {
+                        continue;
+                    }
+                    if (facing == CameraCharacteristics.LENS_FACING_BACK && back == null) {
+                        back = id;
+                    } else if (facing == CameraCharacteristics.LENS_FACING_FRONT && front == null) {
+                        front = id;
+                    }
+                }
+                if (back != null && front != null) {
+                    return new String[] {back, front};
+                }
+            }
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "findConcurrentPair: ", e);
+        }
+        return null;
+    }
+
+    public static boolean isSupported(Context context) {
+        return findConcurrentPair(context) != null;
+    }
+
+    /**
+     * @param pair {backId, frontId} from findConcurrentPair
+     */
+    public MultiCameraController(Context context, String[] pair) {
+        // One runner per camera; each session's budget keeps it to one of them
+        scheduler = new FairScheduler(ComputeScheduler.getDefault().executor(ComputeScheduler.Priority.PREVIEW),
+                pair.length, (client, failure) -> Log.e(TAG, client.getName() + " camera frame failed", failure));
+        int[] facings = {CameraCharacteristics.LENS_FACING_BACK, CameraCharacteristics.LENS_FACING_FRONT};
+        for (int i = 0; i < 2; i++) {
+            String name = facingName(facings[i]);
+            FairScheduler.Client client = scheduler.register(name, SESSION_BUDGET, SESSION_WEIGHT, SESSION_QUEUE);
+            sessions.add(new CameraSession(context, pair[i], facings[i], client));
+        }
+        registerMetrics();
+    }
+
+    /** Open both cameras; the caller must hold the CAMERA permission */
+    public void start() throws CameraAccessException {
+        for (CameraSession session : sessions) {
+            session.start();
+        }
+    }
+
+    public void stop() {
+        for (CameraSession session : sessions) {
+            session.stop();
+        }
+    }
+
+    /**
+     * Show the session of the given camera; the other keeps running
+     * @param facing CameraCharacteristics.LENS_FACING_BACK or LENS_FACING_FRONT
+     */
+    public synchronized void setDisplayed(int facing) {
+        for (CameraSession session : sessions) {
+            boolean shown = session.getFacing() == facing;
+            session.setDisplayed(shown);
+            if (shown) {
+                displayed = session;
+            }
+        }
+        Log.d(TAG, "Displaying " + facingName(facing) + " camera");
+    }
+
+    /** The displayed session, or null before setDisplayed */
+    public synchronized CameraSession getDisplayed() {
+        return displayed;
+    }
+
+    /** Copy the displayed camera's filtered frames out to listener, following setDisplayed; null stops it */
+    public void setFrameListener(CameraSession.FrameListener listener) {
+        for (CameraSession session : sessions) {
+            session.setFrameListener(listener);
+        }
+    }
+
+    public List<CameraSession> getSessions() {
+        return sessions;
+    }
+
+    /** Stop both cameras and the scheduler, and drop their metrics */
+    @Override
+    public void close() {
+        unregisterMetrics();
+        for (CameraSession session : sessions) {
+            session.close();
+        }
+        scheduler.shutdown();
+    }
+
+    private static String facingName(int facing) {
+        return facing == CameraCharacteristics.LENS_FACING_FRONT ? "front" : "back";
+    }
+
+    /**
+     * Per-camera frame flow and scheduler share, sampled at scrape time. A
+     * later controller replaces these series; close() removes them so the
+     * closed sessions do not linger as frozen values.
+     */
+    private void registerMetrics() {
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        for (CameraSession session : sessions) {
+            String camera = facingName(session.getFacing());
+            FairScheduler.Client client = session.getClient();
+            registry.counter("edge_session_frames_in_total", "Frames delivered by a concurrent camera session",
+                    session::getFramesIn, "camera", camera);
+            registry.counter("edge_session_frames_dropped_total", "Frames a concurrent camera session did not process",
+                    session::getFramesDropped, "camera", camera);
+            registry.counter("edge_session_frames_processed_total", "Frames filtered by a concurrent camera session",
+                    () -> session.getStreamStats()[0], "camera", camera);
+            registry.counter("edge_session_frames_displayed_total", "Session frames handed to the preview presenter",
+                    () -> session.getStreamStats()[1], "camera", camera);
+            registry.counter("edge_session_busy_seconds_total", "Scheduler worker time spent on a camera session",
+                    () -> client.getBusyNanos() / 1e9, "camera", camera);
+            registry.counter("edge_session_tasks_failed_total", "Frames of a camera session whose processing threw",
+                    client::getFailed, "camera", camera);
+            registry.gauge("edge_session_pending", "Frames queued for a camera session",
+                    client::getPending, "camera", camera);
+        }
+        registry.gauge("edge_session_workers", "Most compute workers the camera sessions hold at once",
+                scheduler::getParallelism);
+    }
+
+    private void unregisterMetrics() {
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        for (CameraSession session : sessions) {
+            String camera = facingName(session.getFacing());
+            for (String name : SESSION_METRICS) {
+                registry.remove(name, "camera", camera);
+            }
+        }
+        registry.remove("edge_session_workers");
+    }
+}
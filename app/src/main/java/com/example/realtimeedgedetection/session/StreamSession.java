@@ -0,0 +1,73 @@
+package com.example.realtimeedgedetection.session;
+
+/**
+ * Native filter state for one of several camera streams processed at once.
+ *
+ * The main streaming path keeps a single scene cache, so two cameras feeding
+ * it would evict each other's edge maps every frame. Each session owns its
+ * own cache instead. Frames of the displayed session go to the preview
+ * presenter bound with MainActivity.processFrame; the others are processed
+ * all the same, so switching which one is shown needs no warm-up.
+ *
+ * One frame at a time: process() must not be called concurrently on the
+ * same instance. close() frees the native state.
+ */
+public final class StreamSession implements AutoCloseable {
+
+    static {
+        System.loadLibrary("realtimeedgedetection");
+    }
+
+    private long handle;
+
+    public StreamSession() {
+        handle = nativeCreate();
+    }
+
+    /**
+     * Filter one frame
+     * @param nv21 NV21 frame, at least width * height * 3 / 2 bytes
+     * @param filterType 0 grayscale, 1 Canny, 2 original
+     * @param display Hand the result to the preview presenter
+     * @return false if the frame could not be processed
+     */
+    public boolean process(byte[] nv21, int width, int height, int filterType, boolean display) {
+        return process(nv21, width, height, filterType, display, null);
+    }
+
+    /**
+     * Filter one frame and copy the result out
+     * @param rgbaOut Receives the filtered RGBA frame, at least width * height * 4 bytes; may be null
+     * @return false if the frame could not be processed; rgbaOut is then left unspecified
+     */
+    public boolean process(byte[] nv21, int width, int height, int filterType, boolean display, byte[] rgbaOut) {
+        checkOpen();
+        return nativeProcess(handle, nv21, width, height, filterType, display, rgbaOut);
+    }
+
+    /** @return {frames, displayed, processNs} since creation */
+    public long[] getStats() {
+        checkOpen();
+        return nativeGetStats(handle);
+    }
+
+    @Override
+    public void close() {
+        if (handle != 0) {
+            nativeDestroy(handle);
+            handle = 0;
+        }
+    }
+
+    private void checkOpen() {
+        if (handle == 0) {
+            throw new IllegalStateException("StreamSession is closed");
+        }
+    }
+
+    private static native long nativeCreate();
+    private static native void nativeDestroy(long handle);
+    private static native boolean nativeProcess(long handle, byte[] nv21, int width, int height,
+                                                int filterType, boolean display, byte[] rgbaOut);
+    private static native long[] nativeGetStats(long handle);
+}
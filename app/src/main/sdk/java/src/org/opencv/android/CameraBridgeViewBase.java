@@ -2,7 +2,6 @@ package org.opencv.android;
 
 import java.util.List;
 
-import org.opencv.BuildConfig;
 import org.opencv.R;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
@@ -38,7 +37,18 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     private static final int STARTED = 1;
 
     private int mState = STOPPED;
-    private Bitmap mCacheBitmap;
+    private volatile Bitmap[] mCacheBitmaps;       // double buffer: one being converted, one being drawn
+    private final Object mDrawLock = new Object();
+    private int mDrawingIndex = -1;                // guarded by mDrawLock
+    private int mPendingIndex = -1;                // converted, waiting for the draw thread
+    private Thread mDrawThread;
+    private boolean mStopDrawThread;
+    private final Rect mSrcRect = new Rect();
+    private final Rect mDstRect = new Rect();
+    private int mRectCanvasWidth = -1;
+    private int mRectCanvasHeight = -1;
+    private float mRectScale = -1;
+    private boolean mClearCanvas = true;
     private CvCameraViewListener2 mListener;
     private boolean mSurfaceExist;
     private final Object mSyncObject = new Object();
@@ -196,25 +206,73 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         public void release();
     };
 
+    /**
+     * Presents a sensor-oriented frame in display orientation.
+     *
+     * Rotation is lazy and cached: rgba() and gray() rotate at most once per frame,
+     * and the rotated Mats are reused from frame to frame. Consumers that only need
+     * a small or single-channel result can skip rotating the input entirely by
+     * working on rgbaSensor()/graySensor() and rotating just their output with
+     * rotateForDisplay(); rotating an 8-bit edge map moves a quarter of the bytes
+     * of the RGBA frame.
+     */
     public class RotatedCameraFrame implements CvCameraViewFrame {
         @Override
         public Mat gray() {
-            if (mRotation != 0) {
-                Core.rotate(mFrame.gray(), mGrayRotated, getCvRotationCode(mRotation));
-                return mGrayRotated;
-            } else {
+            if (mRotation == 0) {
                 return mFrame.gray();
             }
+            if (!mGrayReady) {
+                Core.rotate(mFrame.gray(), mGrayRotated, getCvRotationCode(mRotation));
+                mGrayReady = true;
+            }
+            return mGrayRotated;
         }
 
         @Override
         public Mat rgba() {
-            if (mRotation != 0) {
-                Core.rotate(mFrame.rgba(), mRgbaRotated, getCvRotationCode(mRotation));
-                return mRgbaRotated;
-            } else {
+            if (mRotation == 0) {
                 return mFrame.rgba();
             }
+            if (!mRgbaReady) {
+                Core.rotate(mFrame.rgba(), mRgbaRotated, getCvRotationCode(mRotation));
+                mRgbaReady = true;
+            }
+            return mRgbaRotated;
+        }
+
+        /** RGBA frame in sensor orientation; no rotation is performed */
+        public Mat rgbaSensor() {
+            return mFrame.rgba();
+        }
+
+        /** Gray frame in sensor orientation; no rotation is performed */
+        public Mat graySensor() {
+            return mFrame.gray();
+        }
+
+        /** Clockwise rotation in degrees from sensor to display orientation (0, 90, 180 or 270) */
+        public int getRotation() {
+            return mRotation;
+        }
+
+        /**
+         * Rotate a result computed in sensor orientation to display orientation.
+         * The returned Mat is owned by this frame and reused for the next frame;
+         * when no rotation is needed the input is returned as-is.
+         */
+        public Mat rotateForDisplay(Mat sensorOriented) {
+            if (mRotation == 0) {
+                return sensorOriented;
+            }
+            Core.rotate(sensorOriented, mOutputRotated, getCvRotationCode(mRotation));
+            return mOutputRotated;
+        }
+
+        /** Forget cached rotations; call when the underlying frame gets new content */
+        public void invalidate() {
+            mRgbaReady = false;
+            mGrayReady = false;
         }
 
         private int getCvRotationCode(int degrees) {
@@ -232,19 +290,25 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             mFrame = frame;
             mRgbaRotated = new Mat();
             mGrayRotated = new Mat();
+            mOutputRotated = new Mat();
             mRotation = rotation;
         }
 
         @Override
         public void release() {
+            invalidate();
             mRgbaRotated.release();
             mGrayRotated.release();
+            mOutputRotated.release();
         }
 
         public CvCameraViewFrame mFrame;
         private Mat mRgbaRotated;
         private Mat mGrayRotated;
+        private Mat mOutputRotated;
         private int mRotation;
+        private boolean mRgbaReady;
+        private boolean mGrayReady;
     };
 
     /**
@@ -478,8 +542,11 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
     private void onExitStartedState() {
         disconnectCamera();
-        if (mCacheBitmap != null) {
-            mCacheBitmap.recycle();
+        stopDrawThread();
+        if (mCacheBitmaps != null) {
+            mCacheBitmaps[0].recycle();
+            mCacheBitmaps[1].recycle();
+            mCacheBitmaps = null;
         }
     }
 
@@ -487,55 +554,151 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
      * This method shall be called by the subclasses when they have valid
      * object and want it to be delivered to external client (via callback) and
      * then displayed on the screen.
+     * The frame is converted into one of two cache bitmaps on the calling thread
+     * and drawn by a separate draw thread, so converting frame k+1 overlaps with
+     * posting frame k. If the draw thread falls behind, the undrawn bitmap is
+     * overwritten and only the newest frame is shown.
      * @param frame - the current frame to be delivered
      */
     protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
         Mat modified;
 
+        // Views reuse frame objects, so drop rotations cached for the previous image
+        if (frame instanceof RotatedCameraFrame) {
+            ((RotatedCameraFrame) frame).invalidate();
+        }
+
         if (mListener != null) {
             modified = mListener.onCameraFrame(frame);
         } else {
             modified = frame.rgba();
         }
 
-        boolean bmpValid = true;
-        if (modified != null) {
-            try {
-                Utils.matToBitmap(modified, mCacheBitmap);
-            } catch(Exception e) {
-                Log.e(TAG, "Mat type: " + modified);
-                Log.e(TAG, "Bitmap type: " + mCacheBitmap.getWidth() + "*" + mCacheBitmap.getHeight());
-                Log.e(TAG, "Utils.matToBitmap() throws an exception: " + e.getMessage());
-                bmpValid = false;
+        if (modified == null)
+            return;
+
+        Bitmap[] bitmaps = mCacheBitmaps;
+        if (bitmaps == null)
+            return;
+
+        int target;
+        synchronized (mDrawLock) {
+            if (mPendingIndex >= 0) {
+                target = mPendingIndex; // not drawn yet: replace it with the newer frame
+                mPendingIndex = -1;
+            } else {
+                target = (mDrawingIndex == 0) ? 1 : 0;
+            }
+        }
+
+        try {
+            Utils.matToBitmap(modified, bitmaps[target]);
+        } catch(Exception e) {
+            Log.e(TAG, "Mat type: " + modified);
+            Log.e(TAG, "Bitmap type: " + bitmaps[target].getWidth() + "*" + bitmaps[target].getHeight());
+            Log.e(TAG, "Utils.matToBitmap() throws an exception: " + e.getMessage());
+            return;
+        }
+
+        synchronized (mDrawLock) {
+            mPendingIndex = target;
+            if (mDrawThread == null) {
+                mStopDrawThread = false;
+                mDrawThread = new Thread(new DrawWorker(), "CameraBridgeDraw");
+                mDrawThread.start();
             }
+            mDrawLock.notify();
         }
+    }
 
-        if (bmpValid && mCacheBitmap != null) {
-            Canvas canvas = getHolder().lockCanvas();
-            if (canvas != null) {
-                canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
-                if (BuildConfig.DEBUG)
-                    Log.d(TAG, "mStretch value: " + mScale);
-
-                if (mScale != 0) {
-                    canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2),
-                         (int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2 + mScale*mCacheBitmap.getWidth()),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight())), null);
-                } else {
-                     canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((canvas.getWidth() - mCacheBitmap.getWidth()) / 2,
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2,
-                         (canvas.getWidth() - mCacheBitmap.getWidth()) / 2 + mCacheBitmap.getWidth(),
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2 + mCacheBitmap.getHeight()), null);
+    private class DrawWorker implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                int index;
+                synchronized (mDrawLock) {
+                    while (mPendingIndex < 0 && !mStopDrawThread) {
+                        try {
+                            mDrawLock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (mStopDrawThread)
+                        return;
+                    index = mPendingIndex;
+                    mPendingIndex = -1;
+                    mDrawingIndex = index;
                 }
 
-                if (mFpsMeter != null) {
-                    mFpsMeter.measure();
-                    mFpsMeter.draw(canvas, 20, 30);
+                drawCacheBitmap(mCacheBitmaps[index]);
+
+                synchronized (mDrawLock) {
+                    mDrawingIndex = -1;
                 }
-                getHolder().unlockCanvasAndPost(canvas);
+            }
+        }
+    }
+
+    private void drawCacheBitmap(Bitmap bitmap) {
+        Canvas canvas = getHolder().lockCanvas();
+        if (canvas == null)
+            return;
+
+        updateDrawRects(canvas.getWidth(), canvas.getHeight(), bitmap.getWidth(), bitmap.getHeight());
+        if (mClearCanvas)
+            canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
+        canvas.drawBitmap(bitmap, mSrcRect, mDstRect, null);
+
+        if (mFpsMeter != null) {
+            mFpsMeter.measure();
+            mFpsMeter.draw(canvas, 20, 30);
+        }
+        getHolder().unlockCanvasAndPost(canvas);
+    }
+
+    /** Recompute the source/destination rects only when the canvas, bitmap or scale changes */
+    private void updateDrawRects(int canvasWidth, int canvasHeight, int bitmapWidth, int bitmapHeight) {
+        if (canvasWidth == mRectCanvasWidth && canvasHeight == mRectCanvasHeight &&
+                bitmapWidth == mSrcRect.width() && bitmapHeight == mSrcRect.height() && mScale == mRectScale)
+            return;
+
+        mSrcRect.set(0, 0, bitmapWidth, bitmapHeight);
+        if (mScale != 0) {
+            float scaledWidth = mScale * bitmapWidth;
+            float scaledHeight = mScale * bitmapHeight;
+            mDstRect.set((int)((canvasWidth - scaledWidth) / 2),
+                         (int)((canvasHeight - scaledHeight) / 2),
+                         (int)((canvasWidth - scaledWidth) / 2 + scaledWidth),
+                         (int)((canvasHeight - scaledHeight) / 2 + scaledHeight));
+        } else {
+            mDstRect.set((canvasWidth - bitmapWidth) / 2,
+                         (canvasHeight - bitmapHeight) / 2,
+                         (canvasWidth - bitmapWidth) / 2 + bitmapWidth,
+                         (canvasHeight - bitmapHeight) / 2 + bitmapHeight);
+        }
+        // Surface contents are not preserved between frames, so letterbox bars need clearing
+        mClearCanvas = mDstRect.left > 0 || mDstRect.top > 0 ||
+                mDstRect.right < canvasWidth || mDstRect.bottom < canvasHeight;
+        mRectCanvasWidth = canvasWidth;
+        mRectCanvasHeight = canvasHeight;
+        mRectScale = mScale;
+    }
+
+    private void stopDrawThread() {
+        Thread thread;
+        synchronized (mDrawLock) {
+            thread = mDrawThread;
+            mDrawThread = null;
+            mStopDrawThread = true;
+            mPendingIndex = -1;
+            mDrawLock.notify();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Log.e(TAG, "stopDrawThread", e);
             }
         }
     }
@@ -558,7 +721,11 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     // NOTE: On Android 4.1.x the function must be called before SurfaceTexture constructor!
     protected void AllocateCache()
     {
-        mCacheBitmap = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
+        stopDrawThread();
+        mCacheBitmaps = new Bitmap[] {
+                Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888),
+                Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888)
+        };
     }
 
     public interface ListItemAccessor {
@@ -1,7 +1,5 @@
 package org.opencv.android;
 
-import java.text.DecimalFormat;
-
 import org.opencv.core.Core;
 
 import android.graphics.Canvas;
@@ -12,12 +10,14 @@ import android.util.Log;
 public class FpsMeter {
     private static final String TAG               = "FpsMeter";
     private static final int    STEP              = 20;
-    private static final DecimalFormat FPS_FORMAT = new DecimalFormat("0.00");
 
     private int                 mFramesCounter;
     private double              mFrequency;
     private long                mprevFrameTime;
-    private String              mStrfps;
+    private double              mFps;
+    // Label is formatted in place so measuring and drawing don't allocate per frame
+    private final char[]        mText = new char[48];
+    private int                 mTextLength;
     Paint                       mPaint;
     boolean                     mIsInitialized = false;
     int                         mWidth = 0;
@@ -27,7 +27,7 @@ public class FpsMeter {
         mFramesCounter = 0;
         mFrequency = Core.getTickFrequency();
         mprevFrameTime = Core.getTickCount();
-        mStrfps = "";
+        mTextLength = 0;
 
         mPaint = new Paint();
         mPaint.setColor(Color.BLUE);
@@ -42,26 +42,66 @@ public class FpsMeter {
             mFramesCounter++;
             if (mFramesCounter % STEP == 0) {
                 long time = Core.getTickCount();
-                double fps = STEP * mFrequency / (time - mprevFrameTime);
+                mFps = STEP * mFrequency / (time - mprevFrameTime);
                 mprevFrameTime = time;
-                if (mWidth != 0 && mHeight != 0)
-                    mStrfps = FPS_FORMAT.format(fps) + " FPS@" + Integer.valueOf(mWidth) + "x" + Integer.valueOf(mHeight);
-                else
-                    mStrfps = FPS_FORMAT.format(fps) + " FPS";
-                Log.i(TAG, mStrfps);
+                formatText();
             }
         }
     }
 
+    /** Most recent measurement in frames per second */
+    public double getFps() {
+        return mFps;
+    }
+
     public void setResolution(int width, int height) {
-        Log.d(TAG, "FpsMeter.setResolution " + Integer.valueOf(mWidth) + "x" + Integer.valueOf(mHeight));
+        Log.d(TAG, "FpsMeter.setResolution " + Integer.valueOf(width) + "x" + Integer.valueOf(height));
         mWidth = width;
         mHeight = height;
     }
 
     public void draw(Canvas canvas, float offsetx, float offsety) {
-        Log.d(TAG, mStrfps);
-        canvas.drawText(mStrfps, offsetx, offsety, mPaint);
+        if (mTextLength > 0)
+            canvas.drawText(mText, 0, mTextLength, offsetx, offsety, mPaint);
+    }
+
+    /** Writes "12.34 FPS@640x480" (or "12.34 FPS") into mText */
+    private void formatText() {
+        long hundredths = Math.round(mFps * 100);
+        int pos = appendInt(0, hundredths / 100);
+        mText[pos++] = '.';
+        mText[pos++] = (char) ('0' + (hundredths / 10) % 10);
+        mText[pos++] = (char) ('0' + hundredths % 10);
+        pos = appendChars(pos, " FPS");
+        if (mWidth != 0 && mHeight != 0) {
+            mText[pos++] = '@';
+            pos = appendInt(pos, mWidth);
+            mText[pos++] = 'x';
+            pos = appendInt(pos, mHeight);
+        }
+        mTextLength = pos;
+    }
+
+    private int appendChars(int pos, String s) {
+        for (int i = 0; i < s.length(); i++)
+            mText[pos++] = s.charAt(i);
+        return pos;
+    }
+
+    private int appendInt(int pos, long value) {
+        if (value < 0)
+            value = 0;
+        int start = pos;
+        do {
+            mText[pos++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0 && pos < mText.length - 24);
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            char c = mText[i];
+            mText[i] = mText[j];
+            mText[j] = c;
+        }
+        return pos;
     }
 
 }
@@ -57,6 +57,11 @@ public class JavaCamera2View extends CameraBridgeViewBase {
     private HandlerThread mBackgroundThread;
     protected Handler mBackgroundHandler;
 
+    // Reused for every image so the preview path doesn't allocate frame-sized buffers
+    private final FrameBufferPool mFrameBuffers = new FrameBufferPool();
+    private final JavaCamera2Frame mCameraFrame = new JavaCamera2Frame(mFrameBuffers);
+    private RotatedCameraFrame mRotatedFrame;
+
     public JavaCamera2View(Context context, int cameraId) {
         super(context, cameraId);
     }
@@ -214,10 +219,9 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     assert (planes.length == 3);
                     assert (image.getFormat() == mPreviewFormat);
 
-                    RotatedCameraFrame tempFrame = new RotatedCameraFrame(new JavaCamera2Frame(image), mFrameRotation);
-                    deliverAndDrawFrame(tempFrame);
-                    tempFrame.mFrame.release();
-                    tempFrame.release();
+                    mCameraFrame.setImage(image);
+                    deliverAndDrawFrame(mRotatedFrame);
+                    mCameraFrame.release();
                     image.close();
                 }
             }, mBackgroundHandler);
@@ -252,6 +256,11 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 mImageReader.close();
                 mImageReader = null;
             }
+            // The background thread has exited, so no frame is using the pool
+            mFrameBuffers.release();
+            if (mRotatedFrame != null) {
+                mRotatedFrame.release();
+            }
         }
         Log.i(LOGTAG, "camera closed!");
     }
@@ -313,6 +322,12 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     characteristics.get(CameraCharacteristics.LENS_FACING) == CameraCharacteristics.LENS_FACING_FRONT,
                     characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION));
 
+            // Rotation is fixed for the session, so one wrapper serves every image
+            if (mRotatedFrame != null) {
+                mRotatedFrame.release();
+            }
+            mRotatedFrame = new RotatedCameraFrame(mCameraFrame, mFrameRotation);
+
             boolean needReconfig = calcPreviewSize(width, height);
             if (mFrameRotation % 180 == 0) {
                 mFrameWidth = mPreviewSize.getWidth();
@@ -351,122 +366,194 @@ public class JavaCamera2View extends CameraBridgeViewBase {
         return true;
     }
 
+    /**
+     * Mats that live as long as the camera session: the RGBA output and, for
+     * planar (I420-style) devices, a contiguous staging image the three planes
+     * are copied into. Touched only from the camera background thread.
+     */
+    private static class FrameBufferPool {
+        final Mat rgba = new Mat();
+        private Mat mStaging;
+        private Mat mStagingY;
+        private Mat mStagingU;
+        private Mat mStagingV;
+        private int mStagingWidth;
+        private int mStagingHeight;
+        private final Mat mStagingFallback = new Mat();
+        private byte[] mStagingBytes;
+
+        /**
+         * Views into the I420 staging image for a w x h frame. The chroma views are
+         * (h/2) x (w/2) headers over the contiguous U and V blocks, so strided
+         * planes can be copied into them with Mat.copyTo and no Java byte[].
+         */
+        boolean ensureStaging(int w, int h) {
+            if (h % 4 != 0 || w % 2 != 0)
+                return false;
+            if (mStaging != null && mStagingWidth == w && mStagingHeight == h)
+                return true;
+            releaseStaging();
+            mStaging = new Mat(h + h / 2, w, CvType.CV_8UC1);
+            mStagingY = mStaging.submat(0, h, 0, w);
+            Mat u = mStaging.submat(h, h + h / 4, 0, w);
+            Mat v = mStaging.submat(h + h / 4, h + h / 2, 0, w);
+            mStagingU = u.reshape(1, h / 2);
+            mStagingV = v.reshape(1, h / 2);
+            u.release();
+            v.release();
+            mStagingWidth = w;
+            mStagingHeight = h;
+            return true;
+        }
+
+        private void releaseStaging() {
+            if (mStaging == null)
+                return;
+            mStagingY.release();
+            mStagingU.release();
+            mStagingV.release();
+            mStaging.release();
+            mStaging = null;
+        }
+
+        byte[] stagingBytes(int size) {
+            if (mStagingBytes == null || mStagingBytes.length != size)
+                mStagingBytes = new byte[size];
+            return mStagingBytes;
+        }
+
+        Mat stagingMat(int rows, int cols) {
+            mStagingFallback.create(rows, cols, CvType.CV_8UC1);
+            return mStagingFallback;
+        }
+
+        void release() {
+            releaseStaging();
+            mStagingFallback.release();
+            mStagingBytes = null;
+            rgba.release();
+        }
+    }
+
+    /**
+     * One instance per view, pointed at each new Image in turn. Results are cached
+     * until release(), so repeated gray()/rgba() calls on a frame are free.
+     */
     private class JavaCamera2Frame implements CvCameraViewFrame {
         @Override
         public Mat gray() {
-            Image.Plane[] planes = mImage.getPlanes();
-            int w = mImage.getWidth();
-            int h = mImage.getHeight();
-            assert(planes[0].getPixelStride() == 1);
-            ByteBuffer y_plane = planes[0].getBuffer();
-            int y_plane_step = planes[0].getRowStride();
-            mGray = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
+            if (mGray == null) {
+                Image.Plane[] planes = mImage.getPlanes();
+                int w = mImage.getWidth();
+                int h = mImage.getHeight();
+                assert(planes[0].getPixelStride() == 1);
+                ByteBuffer y_plane = planes[0].getBuffer();
+                int y_plane_step = planes[0].getRowStride();
+                mGray = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
+            }
             return mGray;
         }
 
         @Override
         public Mat rgba() {
+            if (mRgbaValid)
+                return mBuffers.rgba;
+
             Image.Plane[] planes = mImage.getPlanes();
             int w = mImage.getWidth();
             int h = mImage.getHeight();
             int chromaPixelStride = planes[1].getPixelStride();
-
+            Mat rgba = mBuffers.rgba;
 
             if (chromaPixelStride == 2) { // Chroma channels are interleaved
                 assert(planes[0].getPixelStride() == 1);
                 assert(planes[2].getPixelStride() == 2);
-                ByteBuffer y_plane = planes[0].getBuffer();
-                int y_plane_step = planes[0].getRowStride();
+                Mat y_mat = gray();
                 ByteBuffer uv_plane1 = planes[1].getBuffer();
                 int uv_plane1_step = planes[1].getRowStride();
                 ByteBuffer uv_plane2 = planes[2].getBuffer();
                 int uv_plane2_step = planes[2].getRowStride();
-                Mat y_mat = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
                 Mat uv_mat1 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane1, uv_plane1_step);
                 Mat uv_mat2 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane2, uv_plane2_step);
                 long addr_diff = uv_mat2.dataAddr() - uv_mat1.dataAddr();
                 if (addr_diff > 0) {
                     assert(addr_diff == 1);
-                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat1, mRgba, Imgproc.COLOR_YUV2RGBA_NV12);
+                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat1, rgba, Imgproc.COLOR_YUV2RGBA_NV12);
                 } else {
                     assert(addr_diff == -1);
-                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat2, mRgba, Imgproc.COLOR_YUV2RGBA_NV21);
-                }
-                return mRgba;
-            } else { // Chroma channels are not interleaved
-                byte[] yuv_bytes = new byte[w*(h+h/2)];
-                ByteBuffer y_plane = planes[0].getBuffer();
-                ByteBuffer u_plane = planes[1].getBuffer();
-                ByteBuffer v_plane = planes[2].getBuffer();
-
-                int yuv_bytes_offset = 0;
-
-                int y_plane_step = planes[0].getRowStride();
-                if (y_plane_step == w) {
-                    y_plane.get(yuv_bytes, 0, w*h);
-                    yuv_bytes_offset = w*h;
-                } else {
-                    int padding = y_plane_step - w;
-                    for (int i = 0; i < h; i++){
-                        y_plane.get(yuv_bytes, yuv_bytes_offset, w);
-                        yuv_bytes_offset += w;
-                        if (i < h - 1) {
-                            y_plane.position(y_plane.position() + padding);
-                        }
-                    }
-                    assert(yuv_bytes_offset == w * h);
+                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat2, rgba, Imgproc.COLOR_YUV2RGBA_NV21);
                 }
+                uv_mat1.release();
+                uv_mat2.release();
+            } else if (mBuffers.ensureStaging(w, h)) { // Chroma channels are not interleaved
+                // Wrap each plane with its row stride and copy natively into the
+                // reusable I420 staging image; padding bytes are skipped by copyTo
+                assert(chromaPixelStride == 1);
+                Mat u_mat = new Mat(h / 2, w / 2, CvType.CV_8UC1, planes[1].getBuffer(), planes[1].getRowStride());
+                Mat v_mat = new Mat(h / 2, w / 2, CvType.CV_8UC1, planes[2].getBuffer(), planes[2].getRowStride());
+                gray().copyTo(mBuffers.mStagingY);
+                u_mat.copyTo(mBuffers.mStagingU);
+                v_mat.copyTo(mBuffers.mStagingV);
+                u_mat.release();
+                v_mat.release();
+                Imgproc.cvtColor(mBuffers.mStaging, rgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
+            } else {
+                // Heights not divisible by 4 don't map the chroma planes onto whole
+                // staging rows; copy through a pooled byte[] instead
+                byte[] yuv_bytes = mBuffers.stagingBytes(w * (h + h / 2));
+                int yuv_bytes_offset = copyPlane(planes[0], w, h, yuv_bytes, 0);
+                yuv_bytes_offset = copyPlane(planes[1], w / 2, h / 2, yuv_bytes, yuv_bytes_offset);
+                copyPlane(planes[2], w / 2, h / 2, yuv_bytes, yuv_bytes_offset);
+                Mat yuv_mat = mBuffers.stagingMat(h + h / 2, w);
+                yuv_mat.put(0, 0, yuv_bytes);
+                Imgproc.cvtColor(yuv_mat, rgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
+            }
+            mRgbaValid = true;
+            return rgba;
+        }
 
-                int chromaRowStride = planes[1].getRowStride();
-                int chromaRowPadding = chromaRowStride - w/2;
+        public JavaCamera2Frame(FrameBufferPool buffers) {
+            super();
+            mBuffers = buffers;
+        }
 
-                if (chromaRowPadding == 0){
-                    // When the row stride of the chroma channels equals their width, we can copy
-                    // the entire channels in one go
-                    u_plane.get(yuv_bytes, yuv_bytes_offset, w*h/4);
-                    yuv_bytes_offset += w*h/4;
-                    v_plane.get(yuv_bytes, yuv_bytes_offset, w*h/4);
-                } else {
-                    // When not equal, we need to copy the channels row by row
-                    for (int i = 0; i < h/2; i++){
-                        u_plane.get(yuv_bytes, yuv_bytes_offset, w/2);
-                        yuv_bytes_offset += w/2;
-                        if (i < h/2-1){
-                            u_plane.position(u_plane.position() + chromaRowPadding);
-                        }
-                    }
-                    for (int i = 0; i < h/2; i++){
-                        v_plane.get(yuv_bytes, yuv_bytes_offset, w/2);
-                        yuv_bytes_offset += w/2;
-                        if (i < h/2-1){
-                            v_plane.position(v_plane.position() + chromaRowPadding);
-                        }
-                    }
+        /** Copy a width x height plane with pixel stride 1, skipping row padding */
+        private int copyPlane(Image.Plane plane, int width, int height, byte[] dst, int offset) {
+            ByteBuffer buffer = plane.getBuffer();
+            int rowStride = plane.getRowStride();
+            if (rowStride == width) {
+                buffer.get(dst, offset, width * height);
+                return offset + width * height;
+            }
+            for (int i = 0; i < height; i++) {
+                buffer.get(dst, offset, width);
+                offset += width;
+                if (i < height - 1) {
+                    buffer.position(buffer.position() + rowStride - width);
                 }
-
-                Mat yuv_mat = new Mat(h+h/2, w, CvType.CV_8UC1);
-                yuv_mat.put(0, 0, yuv_bytes);
-                Imgproc.cvtColor(yuv_mat, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
-                return mRgba;
             }
+            return offset;
         }
 
-
-        public JavaCamera2Frame(Image image) {
-            super();
+        void setImage(Image image) {
             mImage = image;
-            mRgba = new Mat();
-            mGray = new Mat();
+            mRgbaValid = false;
         }
 
         @Override
         public void release() {
-            mRgba.release();
-            mGray.release();
+            // Pooled Mats stay alive; only the per-image plane wrapper goes away
+            if (mGray != null) {
+                mGray.release();
+                mGray = null;
+            }
+            mRgbaValid = false;
+            mImage = null;
         }
 
+        private final FrameBufferPool mBuffers;
         private Image mImage;
-        private Mat mRgba;
         private Mat mGray;
+        private boolean mRgbaValid;
     };
 }
@@ -1,6 +1,8 @@
 package org.opencv.core;
 
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 
 // C++: class Mat
 //javadoc: Mat
@@ -12,6 +14,7 @@ public class Mat {
         if (addr == 0)
             throw new UnsupportedOperationException("Native object address is NULL");
         nativeObj = addr;
+        MatCleaner.register(this);
     }
 
     //
@@ -21,6 +24,7 @@ public class Mat {
     // javadoc: Mat::Mat()
     public Mat() {
         nativeObj = n_Mat();
+        MatCleaner.register(this);
     }
 
     //
@@ -30,6 +34,7 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type)
     public Mat(int rows, int cols, int type) {
         nativeObj = n_Mat(rows, cols, type);
+        MatCleaner.register(this);
     }
 
     //
@@ -39,6 +44,7 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type, data)
     public Mat(int rows, int cols, int type, ByteBuffer data) {
         nativeObj = n_Mat(rows, cols, type, data);
+        MatCleaner.register(this);
     }
 
     //
@@ -48,6 +54,7 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type, data, step)
     public Mat(int rows, int cols, int type, ByteBuffer data, long step) {
         nativeObj = n_Mat(rows, cols, type, data, step);
+        MatCleaner.register(this);
     }
 
     //
@@ -57,6 +64,7 @@ public class Mat {
     // javadoc: Mat::Mat(size, type)
     public Mat(Size size, int type) {
         nativeObj = n_Mat(size.width, size.height, type);
+        MatCleaner.register(this);
     }
 
     //
@@ -66,6 +74,7 @@ public class Mat {
     // javadoc: Mat::Mat(sizes, type)
     public Mat(int[] sizes, int type) {
         nativeObj = n_Mat(sizes.length, sizes, type);
+        MatCleaner.register(this);
     }
 
     //
@@ -75,6 +84,7 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type, s)
     public Mat(int rows, int cols, int type, Scalar s) {
         nativeObj = n_Mat(rows, cols, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        MatCleaner.register(this);
     }
 
     //
@@ -84,6 +94,7 @@ public class Mat {
     // javadoc: Mat::Mat(size, type, s)
     public Mat(Size size, int type, Scalar s) {
         nativeObj = n_Mat(size.width, size.height, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        MatCleaner.register(this);
     }
 
     //
@@ -93,6 +104,7 @@ public class Mat {
     // javadoc: Mat::Mat(sizes, type, s)
     public Mat(int[] sizes, int type, Scalar s) {
         nativeObj = n_Mat(sizes.length, sizes, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        MatCleaner.register(this);
     }
 
     //
@@ -102,11 +114,13 @@ public class Mat {
     // javadoc: Mat::Mat(m, rowRange, colRange)
     public Mat(Mat m, Range rowRange, Range colRange) {
         nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end, colRange.start, colRange.end);
+        MatCleaner.register(this);
     }
 
     // javadoc: Mat::Mat(m, rowRange)
     public Mat(Mat m, Range rowRange) {
         nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end);
+        MatCleaner.register(this);
     }
 
     //
@@ -116,6 +130,7 @@ public class Mat {
     // javadoc: Mat::Mat(m, ranges)
     public Mat(Mat m, Range[] ranges) {
         nativeObj = n_Mat(m.nativeObj, ranges);
+        MatCleaner.register(this);
     }
 
     //
@@ -125,6 +140,7 @@ public class Mat {
     // javadoc: Mat::Mat(m, roi)
     public Mat(Mat m, Rect roi) {
         nativeObj = n_Mat(m.nativeObj, roi.y, roi.y + roi.height, roi.x, roi.x + roi.width);
+        MatCleaner.register(this);
     }
 
     //
@@ -754,10 +770,15 @@ public class Mat {
         return new Mat(n_zeros(sizes.length, sizes, type));
     }
 
-    @Override
-    protected void finalize() throws Throwable {
+    // Native headers are deleted by MatCleaner once the Mat is unreachable, instead of in finalize()
+
+    /** Pixel bytes referenced by the header at nativeObj; used by MatCleaner */
+    static long nativeDataBytes(long nativeObj) {
+        return n_total(nativeObj) * n_elemSize(nativeObj);
+    }
+
+    static void nativeDelete(long nativeObj) {
         n_delete(nativeObj);
-        super.finalize();
     }
 
     // javadoc:Mat::toString()
@@ -1125,6 +1146,80 @@ public class Mat {
         throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
     }
 
+    // Bulk copies of the first length values of an array that may be larger than
+    // the data copied, e.g. a buffer reused across frames. length, not the array
+    // size, must be a multiple of the channel count.
+
+    // javadoc:Mat::get(row,col,data,length)
+    public int get(int row, int col, byte[] data, int length) {
+        int t = checkLength(data == null ? -1 : data.length, length);
+        if (CvType.depth(t) == CvType.CV_8U || CvType.depth(t) == CvType.CV_8S) {
+            return nGetB(nativeObj, row, col, length, data);
+        }
+        throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
+    // javadoc:Mat::get(row,col,data,length)
+    public int get(int row, int col, int[] data, int length) {
+        int t = checkLength(data == null ? -1 : data.length, length);
+        if (CvType.depth(t) == CvType.CV_32S) {
+            return nGetI(nativeObj, row, col, length, data);
+        }
+        throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
+    // javadoc:Mat::get(row,col,data,length)
+    public int get(int row, int col, float[] data, int length) {
+        int t = checkLength(data == null ? -1 : data.length, length);
+        if (CvType.depth(t) == CvType.CV_32F) {
+            return nGetF(nativeObj, row, col, length, data);
+        }
+        throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
+    // javadoc:Mat::get(row,col,data,length)
+    public int get(int row, int col, double[] data, int length) {
+        int t = checkLength(data == null ? -1 : data.length, length);
+        if (CvType.depth(t) == CvType.CV_64F) {
+            return nGetD(nativeObj, row, col, length, data);
+        }
+        throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
+    // javadoc:Mat::put(row,col,data,length)
+    public int put(int row, int col, int[] data, int length) {
+        int t = checkLength(data == null ? -1 : data.length, length);
+        if (CvType.depth(t) == CvType.CV_32S) {
+            return nPutI(nativeObj, row, col, length, data);
+        }
+        throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
+    // javadoc:Mat::put(row,col,data,length)
+    public int put(int row, int col, float[] data, int length) {
+        int t = checkLength(data == null ? -1 : data.length, length);
+        if (CvType.depth(t) == CvType.CV_32F) {
+            return nPutF(nativeObj, row, col, length, data);
+        }
+        throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
+    // javadoc:Mat::put(row,col,data,length)
+    public int put(int row, int col, double[] data, int length) {
+        int t = checkLength(data == null ? -1 : data.length, length);
+        return nPutD(nativeObj, row, col, length, data);
+    }
+
+    private int checkLength(int capacity, int length) {
+        int t = type();
+        if (capacity < 0 || length < 0 || length > capacity || length % CvType.channels(t) != 0)
+            throw new UnsupportedOperationException(
+                    "Provided data element number (" + length + " of " + Math.max(capacity, 0) +
+                            ") should be a multiple of the Mat channels count (" +
+                            CvType.channels(t) + ") within the array");
+        return t;
+    }
+
     // javadoc:Mat::get(row,col)
     public double[] get(int row, int col) {
         return nGet(nativeObj, row, col);
@@ -1147,6 +1242,97 @@ public class Mat {
         return cols();
     }
 
+    // javadoc:Mat::asByteBuffer()
+    /**
+     * Zero-copy view of the Mat data as a direct buffer in native byte order.
+     * Element (row, col, channel) is at byte row * step1() * elemSize1() + (col * channels() + channel) * elemSize1();
+     * for non-continuous Mats the buffer also spans the padding between rows.
+     * The view stays valid only while this Mat is reachable and its data is not released or reallocated.
+     */
+    public ByteBuffer asByteBuffer() {
+        return MatBuffers.wrap(this);
+    }
+
+    // javadoc:Mat::asIntBuffer()
+    /**
+     * Zero-copy view of a CV_32S Mat; element (row, col, channel) is at row * step1() + col * channels() + channel.
+     * Same lifetime rules as asByteBuffer().
+     */
+    public IntBuffer asIntBuffer() {
+        MatBuffers.checkDepth(this, CvType.CV_32S);
+        return MatBuffers.wrap(this).asIntBuffer();
+    }
+
+    // javadoc:Mat::asFloatBuffer()
+    /**
+     * Zero-copy view of a CV_32F Mat; element (row, col, channel) is at row * step1() + col * channels() + channel.
+     * Same lifetime rules as asByteBuffer().
+     */
+    public FloatBuffer asFloatBuffer() {
+        MatBuffers.checkDepth(this, CvType.CV_32F);
+        return MatBuffers.wrap(this).asFloatBuffer();
+    }
+
+    /** Receives one row of a Mat; read data with absolute gets in [offset, offset + length) */
+    public interface ByteRowVisitor {
+        void visitRow(int row, ByteBuffer data, int offset, int length);
+    }
+
+    /** Receives one row of a CV_32S Mat; length counts ints (cols * channels) */
+    public interface IntRowVisitor {
+        void visitRow(int row, IntBuffer data, int offset, int length);
+    }
+
+    /** Receives one row of a CV_32F Mat; length counts floats (cols * channels) */
+    public interface FloatRowVisitor {
+        void visitRow(int row, FloatBuffer data, int offset, int length);
+    }
+
+    /**
+     * Visit every row of a 2D Mat through a single shared view: no copies and no
+     * per-element or per-row allocation
+     */
+    // javadoc:Mat::forEachByteRow(visitor)
+    public void forEachByteRow(ByteRowVisitor visitor) {
+        checkRowIterable();
+        ByteBuffer data = asByteBuffer();
+        int step = (int) MatBuffers.rowStepBytes(this);
+        int length = (int) (cols() * elemSize());
+        int rows = rows();
+        for (int row = 0; row < rows; row++) {
+            visitor.visitRow(row, data, row * step, length);
+        }
+    }
+
+    // javadoc:Mat::forEachIntRow(visitor)
+    public void forEachIntRow(IntRowVisitor visitor) {
+        checkRowIterable();
+        IntBuffer data = asIntBuffer();
+        int step = (int) step1(0);
+        int length = cols() * channels();
+        int rows = rows();
+        for (int row = 0; row < rows; row++) {
+            visitor.visitRow(row, data, row * step, length);
+        }
+    }
+
+    // javadoc:Mat::forEachFloatRow(visitor)
+    public void forEachFloatRow(FloatRowVisitor visitor) {
+        checkRowIterable();
+        FloatBuffer data = asFloatBuffer();
+        int step = (int) step1(0);
+        int length = cols() * channels();
+        int rows = rows();
+        for (int row = 0; row < rows; row++) {
+            visitor.visitRow(row, data, row * step, length);
+        }
+    }
+
+    private void checkRowIterable() {
+        if (dims() > 2)
+            throw new UnsupportedOperationException("Row iteration needs dims <= 2, got " + dims());
+    }
+
     // javadoc:Mat::at(clazz, row, col)
     @SuppressWarnings("unchecked")
     public <T> Atable<T> at(Class<T> clazz, int row, int col) {
@@ -1834,7 +2020,7 @@ public class Mat {
     // C++: static Mat Mat::zeros(int ndims, const int* sizes, int type)
     private static native long n_zeros(int ndims, int[] sizes, int type);
 
-    // native support for java finalize()
+    // native support for MatCleaner (formerly java finalize())
     private static native void n_delete(long nativeObj);
 
     private static native int nPutD(long self, int row, int col, int count, double[] data);
@@ -0,0 +1,56 @@
+package org.opencv.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Direct NIO views over Mat pixel memory, used by Mat.asByteBuffer() and friends.
+ * The only native code is a NewDirectByteBuffer call in libopencv_mat_buffers
+ * (built from libcxx_helper), so no element is copied.
+ */
+final class MatBuffers {
+
+    static {
+        System.loadLibrary("opencv_mat_buffers");
+    }
+
+    private MatBuffers() {}
+
+    /** Bytes from the first to one past the last element of m, including row padding */
+    static long span(Mat m) {
+        if (m.dims() <= 2) {
+            int rows = m.rows();
+            return rows == 0 ? 0 : (rows - 1) * rowStepBytes(m) + m.cols() * m.elemSize();
+        }
+        if (!m.isContinuous())
+            throw new UnsupportedOperationException("Buffer views of non-continuous Mats need dims <= 2");
+        return m.total() * m.elemSize();
+    }
+
+    static long rowStepBytes(Mat m) {
+        return m.step1(0) * m.elemSize1();
+    }
+
+    static ByteBuffer wrap(Mat m) {
+        if (m.empty())
+            throw new UnsupportedOperationException("Mat is empty");
+        long address = m.dataAddr();
+        long capacity = span(m);
+        if (address == 0)
+            throw new UnsupportedOperationException("Mat has no data");
+        if (capacity > Integer.MAX_VALUE)
+            throw new UnsupportedOperationException("Mat data exceeds 2GB (" + capacity + " bytes)");
+        ByteBuffer buffer = nWrap(address, capacity);
+        if (buffer == null)
+            throw new UnsupportedOperationException("JNI direct buffer access is not supported");
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+
+    static void checkDepth(Mat m, int depth) {
+        int t = m.type();
+        if (CvType.depth(t) != depth)
+            throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
+    private static native ByteBuffer nWrap(long address, long capacity);
+}
@@ -0,0 +1,140 @@
+package org.opencv.core;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+
+/**
+ * Deletes the native header of unreachable Mats from a daemon thread.
+ *
+ * Replaces Mat.finalize(): a phantom reference is enqueued as soon as the Mat
+ * becomes unreachable, without resurrecting it or waiting behind the shared
+ * finalizer queue, and the cleanup action holds only the native address.
+ * Live references form an intrusive list so registration and removal are O(1);
+ * the same list backs the live-Mat and live-byte counters and the leak detector.
+ */
+final class MatCleaner {
+
+    /** Allocation sites are recorded only while leak detection is on */
+    static volatile boolean leakDetection = false;
+    static volatile MatScope.LeakListener leakListener = MatScope.LOG_LEAKS;
+
+    private static final ReferenceQueue<Mat> queue = new ReferenceQueue<Mat>();
+    private static final Object lock = new Object();
+    private static final Ref head = new Ref();      // sentinel of the live list
+    private static long liveCount = 0;
+    private static long reclaimedCount = 0;
+    private static long leakedCount = 0;
+    private static Thread thread;
+
+    private MatCleaner() {}
+
+    static final class Ref extends PhantomReference<Mat> {
+        final long nativeObj;
+        final Throwable allocationSite;
+        Ref prev;
+        Ref next;
+
+        Ref() {
+            super(null, null);
+            nativeObj = 0;
+            allocationSite = null;
+            prev = this;
+            next = this;
+        }
+
+        Ref(Mat mat, Throwable allocationSite) {
+            super(mat, queue);
+            this.nativeObj = mat.nativeObj;
+            this.allocationSite = allocationSite;
+        }
+    }
+
+    /** Called by every Mat constructor once nativeObj is set */
+    static void register(Mat mat) {
+        Throwable site = leakDetection ? new Throwable("Mat allocated here") : null;
+        Ref ref = new Ref(mat, site);
+        synchronized (lock) {
+            ref.next = head.next;
+            ref.prev = head;
+            head.next.prev = ref;
+            head.next = ref;
+            liveCount++;
+            if (thread == null) {
+                startThread();
+            }
+        }
+        MatScope.onCreate(mat);
+    }
+
+    static long liveCount() {
+        synchronized (lock) {
+            return liveCount;
+        }
+    }
+
+    static long reclaimedCount() {
+        synchronized (lock) {
+            return reclaimedCount;
+        }
+    }
+
+    static long leakedCount() {
+        synchronized (lock) {
+            return leakedCount;
+        }
+    }
+
+    /**
+     * Sum of total() * elemSize() over live Mats. Submatrices and Mats sharing
+     * data are counted once per header, so this is an upper bound.
+     */
+    static long liveBytes() {
+        long bytes = 0;
+        synchronized (lock) {
+            // Headers stay valid while on the list: they are unlinked before deletion
+            for (Ref ref = head.next; ref != head; ref = ref.next) {
+                bytes += Mat.nativeDataBytes(ref.nativeObj);
+            }
+        }
+        return bytes;
+    }
+
+    private static void startThread() {
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        clean((Ref) queue.remove());
+                    } catch (InterruptedException e) {
+                        // daemon thread, keep draining
+                    }
+                }
+            }
+        }, "OpenCV-MatCleaner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void clean(Ref ref) {
+        synchronized (lock) {
+            ref.prev.next = ref.next;
+            ref.next.prev = ref.prev;
+            ref.prev = null;
+            ref.next = null;
+            liveCount--;
+            reclaimedCount++;
+        }
+        long leaked = ref.allocationSite != null ? Mat.nativeDataBytes(ref.nativeObj) : 0;
+        Mat.nativeDelete(ref.nativeObj);
+        if (leaked > 0) {
+            synchronized (lock) {
+                leakedCount++;
+            }
+            MatScope.LeakListener listener = leakListener;
+            if (listener != null) {
+                listener.onLeak(leaked, ref.allocationSite);
+            }
+        }
+    }
+}
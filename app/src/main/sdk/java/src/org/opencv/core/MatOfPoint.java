@@ -75,4 +75,13 @@ public class MatOfPoint extends Mat {
         Point[] ap = toArray();
         return Arrays.asList(ap);
     }
+
+    /** Copy the points into dst with one JNI call and no per-point objects */
+    public void toPointArray(PointArrayF dst) {
+        dst.copyFrom(this);
+    }
+
+    public void fromPointArray(PointArrayF src) {
+        src.copyTo(this, _depth);
+    }
 }
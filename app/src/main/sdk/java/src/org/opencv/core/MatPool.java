@@ -0,0 +1,286 @@
+package org.opencv.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recycles same-shaped Mats between frames, keyed by (rows, cols, type).
+ *
+ * acquire() first looks in a small cache owned by the calling thread (no
+ * locking), then in a global free list shared by all threads, and only then
+ * allocates. PooledMat.close() puts the Mat back, preferring the thread cache.
+ * The global list is bounded in bytes; when it is full the least recently
+ * returned Mats are released. With a fixed camera resolution the per-frame
+ * buffers are all hits after the first frame, so steady state allocates no
+ * native memory.
+ */
+public final class MatPool {
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_THREAD_CACHE_SIZE = 4;
+
+    private static final int MAX_DIM = (1 << 24) - 1;
+    private static final MatPool DEFAULT = new MatPool(DEFAULT_MAX_BYTES, DEFAULT_THREAD_CACHE_SIZE);
+
+    /** Snapshot of pool counters */
+    public static final class Stats {
+        public final long threadHits;     // served from the calling thread's cache
+        public final long globalHits;     // served from the shared free list
+        public final long misses;         // newly allocated
+        public final long returns;
+        public final long evictions;      // released to stay under the byte limit
+        public final long discarded;      // returned after being released or reshaped
+        public final long pooledBytes;    // held in the shared free list
+        public final int pooledMats;
+
+        Stats(long threadHits, long globalHits, long misses, long returns, long evictions,
+              long discarded, long pooledBytes, int pooledMats) {
+            this.threadHits = threadHits;
+            this.globalHits = globalHits;
+            this.misses = misses;
+            this.returns = returns;
+            this.evictions = evictions;
+            this.discarded = discarded;
+            this.pooledBytes = pooledBytes;
+            this.pooledMats = pooledMats;
+        }
+
+        public double hitRatio() {
+            long total = threadHits + globalHits + misses;
+            return total == 0 ? 0.0 : (double) (threadHits + globalHits) / total;
+        }
+
+        @Override
+        public String toString() {
+            return "MatPool [ threadHits=" + threadHits + ", globalHits=" + globalHits + ", misses=" + misses +
+                    ", returns=" + returns + ", evictions=" + evictions + ", discarded=" + discarded +
+                    ", pooledBytes=" + pooledBytes + ", pooledMats=" + pooledMats + " ]";
+        }
+    }
+
+    private static final class Bucket {
+        final long key;
+        final ArrayDeque<PooledMat> free = new ArrayDeque<PooledMat>();   // newest first
+
+        Bucket(long key) {
+            this.key = key;
+        }
+    }
+
+    private final long maxBytes;
+    private final int threadCacheSize;
+    private final ThreadLocal<PooledMat[]> threadCache;
+
+    // Shared free list, guarded by this. Few distinct shapes are in use at a
+    // time, so buckets are scanned linearly instead of boxing keys into a map.
+    private final ArrayList<Bucket> buckets = new ArrayList<Bucket>();
+    private PooledMat lruNewest;
+    private PooledMat lruOldest;
+    private long pooledBytes = 0;
+    private int pooledMats = 0;
+
+    private final AtomicLong threadHits = new AtomicLong();
+    private final AtomicLong globalHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong returns = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    public static MatPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param maxBytes Upper bound for pixel memory held in the shared free list
+     * @param threadCacheSize Mats each thread may keep for itself, outside that bound
+     */
+    public MatPool(long maxBytes, final int threadCacheSize) {
+        if (maxBytes < 0 || threadCacheSize < 0)
+            throw new IllegalArgumentException("Pool limits must not be negative");
+        this.maxBytes = maxBytes;
+        this.threadCacheSize = threadCacheSize;
+        this.threadCache = new ThreadLocal<PooledMat[]>() {
+            @Override
+            protected PooledMat[] initialValue() {
+                return new PooledMat[threadCacheSize];
+            }
+        };
+    }
+
+    /** Lease a Mat of the given shape; its contents are undefined */
+    public PooledMat acquire(int rows, int cols, int type) {
+        long key = key(rows, cols, type);
+
+        PooledMat[] cache = threadCache.get();
+        for (int i = 0; i < cache.length; i++) {
+            PooledMat mat = cache[i];
+            if (mat != null && mat.key == key) {
+                cache[i] = null;
+                mat.pooled = false;
+                threadHits.incrementAndGet();
+                return mat;
+            }
+        }
+
+        synchronized (this) {
+            Bucket bucket = findBucket(key);
+            if (bucket != null && !bucket.free.isEmpty()) {
+                PooledMat mat = bucket.free.pollFirst();
+                unlinkLru(mat);
+                pooledBytes -= mat.bytes;
+                pooledMats--;
+                mat.pooled = false;
+                globalHits.incrementAndGet();
+                return mat;
+            }
+        }
+
+        misses.incrementAndGet();
+        PooledMat mat = new PooledMat(this, key, rows, cols, type);
+        // Pool buffers outlive any MatScope they happen to be created in
+        MatScope scope = MatScope.current();
+        if (scope != null) {
+            scope.keep(mat);
+        }
+        return mat;
+    }
+
+    public PooledMat acquire(Size size, int type) {
+        return acquire((int) size.height, (int) size.width, type);
+    }
+
+    void recycle(PooledMat mat) {
+        if (mat.pool != this)
+            throw new IllegalArgumentException("Mat belongs to a different pool");
+        if (mat.pooled) {
+            return; // closed twice
+        }
+        returns.incrementAndGet();
+
+        // The caller may have released or re-created it (e.g. used it as a differently sized output)
+        if (mat.empty() || mat.dims() != 2 || mat.rows() != (int) (mat.key >>> 40) ||
+                mat.cols() != (int) ((mat.key >>> 16) & MAX_DIM) || mat.type() != (int) (mat.key & 0xFFFF)) {
+            discarded.incrementAndGet();
+            mat.release();
+            return;
+        }
+        mat.pooled = true;
+
+        PooledMat[] cache = threadCache.get();
+        for (int i = 0; i < cache.length; i++) {
+            if (cache[i] == null) {
+                cache[i] = mat;
+                return;
+            }
+        }
+
+        synchronized (this) {
+            Bucket bucket = findBucket(mat.key);
+            if (bucket == null) {
+                bucket = new Bucket(mat.key);
+                buckets.add(bucket);
+            }
+            bucket.free.addFirst(mat);
+            linkLruNewest(mat);
+            pooledBytes += mat.bytes;
+            pooledMats++;
+            while (pooledBytes > maxBytes && lruOldest != null) {
+                evict(lruOldest);
+            }
+        }
+    }
+
+    /** Release everything in the shared free list; thread caches are left alone */
+    public synchronized void trim() {
+        while (lruOldest != null) {
+            evict(lruOldest);
+        }
+        buckets.clear();
+    }
+
+    /** Release the Mats cached by the calling thread, e.g. before it exits */
+    public void clearThreadCache() {
+        PooledMat[] cache = threadCache.get();
+        for (int i = 0; i < cache.length; i++) {
+            if (cache[i] != null) {
+                cache[i].release();
+                cache[i] = null;
+            }
+        }
+    }
+
+    public Stats stats() {
+        long bytes;
+        int count;
+        synchronized (this) {
+            bytes = pooledBytes;
+            count = pooledMats;
+        }
+        return new Stats(threadHits.get(), globalHits.get(), misses.get(), returns.get(),
+                evictions.get(), discarded.get(), bytes, count);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getThreadCacheSize() {
+        return threadCacheSize;
+    }
+
+    private static long key(int rows, int cols, int type) {
+        if (rows <= 0 || cols <= 0 || rows > MAX_DIM || cols > MAX_DIM)
+            throw new IllegalArgumentException("Unsupported Mat size for pooling: " + rows + "x" + cols);
+        return ((long) rows << 40) | ((long) cols << 16) | (type & 0xFFFF);
+    }
+
+    private Bucket findBucket(long key) {
+        for (int i = 0; i < buckets.size(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.key == key) {
+                return bucket;
+            }
+        }
+        return null;
+    }
+
+    private void evict(PooledMat mat) {
+        Bucket bucket = findBucket(mat.key);
+        // The oldest Mat of a bucket is always at its tail
+        bucket.free.removeLastOccurrence(mat);
+        unlinkLru(mat);
+        pooledBytes -= mat.bytes;
+        pooledMats--;
+        mat.pooled = false;
+        mat.release();
+        evictions.incrementAndGet();
+    }
+
+    private void linkLruNewest(PooledMat mat) {
+        mat.lruPrev = null;
+        mat.lruNext = lruNewest;
+        if (lruNewest != null) {
+            lruNewest.lruPrev = mat;
+        }
+        lruNewest = mat;
+        if (lruOldest == null) {
+            lruOldest = mat;
+        }
+    }
+
+    private void unlinkLru(PooledMat mat) {
+        if (mat.lruPrev != null) {
+            mat.lruPrev.lruNext = mat.lruNext;
+        } else {
+            lruNewest = mat.lruNext;
+        }
+        if (mat.lruNext != null) {
+            mat.lruNext.lruPrev = mat.lruPrev;
+        } else {
+            lruOldest = mat.lruPrev;
+        }
+        mat.lruPrev = null;
+        mat.lruNext = null;
+    }
+}
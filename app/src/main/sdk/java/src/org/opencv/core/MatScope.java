@@ -0,0 +1,183 @@
+package org.opencv.core;
+
+import java.util.ArrayList;
+
+/**
+ * Releases every Mat created on the current thread while the scope is open.
+ *
+ *     try (MatScope scope = MatScope.open()) {
+ *         Mat gray = new Mat();
+ *         Imgproc.cvtColor(frame, gray, Imgproc.COLOR_RGBA2GRAY);
+ *         Mat edges = scope.keep(new Mat());   // survives close()
+ *         Imgproc.Canny(gray, edges, 50, 150);
+ *         return edges;
+ *     }
+ *
+ * close() calls release() on the tracked Mats in reverse creation order, so
+ * their pixel memory is returned immediately instead of whenever the GC gets
+ * to them. Scopes nest; a Mat belongs to the innermost open scope of the
+ * thread that created it. Mats that are never released are still reclaimed
+ * once unreachable (see MatCleaner); with leak detection enabled each such
+ * Mat is reported with the stack trace of its allocation.
+ */
+public final class MatScope implements AutoCloseable {
+
+    /** Receives Mats that became unreachable without being released */
+    public interface LeakListener {
+        void onLeak(long bytes, Throwable allocationSite);
+    }
+
+    /** Default listener: prints the allocation site to stderr (logcat on Android) */
+    public static final LeakListener LOG_LEAKS = new LeakListener() {
+        @Override
+        public void onLeak(long bytes, Throwable allocationSite) {
+            System.err.println("OpenCV: Mat with " + bytes + " bytes was never released");
+            allocationSite.printStackTrace();
+        }
+    };
+
+    private static final ThreadLocal<MatScope> current = new ThreadLocal<MatScope>();
+    private static volatile int openScopes = 0;     // any thread; lets onCreate skip the ThreadLocal
+
+    private final MatScope parent;
+    private final Thread owner;
+    private final ArrayList<Mat> mats = new ArrayList<Mat>();
+    private boolean closed = false;
+
+    private MatScope(MatScope parent) {
+        this.parent = parent;
+        this.owner = Thread.currentThread();
+    }
+
+    /** Open a scope on the calling thread, nested inside the current one if any */
+    public static MatScope open() {
+        MatScope scope = new MatScope(current.get());
+        current.set(scope);
+        synchronized (MatScope.class) {
+            openScopes++;
+        }
+        return scope;
+    }
+
+    /** Innermost open scope of the calling thread, or null */
+    public static MatScope current() {
+        return openScopes == 0 ? null : current.get();
+    }
+
+    static void onCreate(Mat mat) {
+        if (openScopes == 0) {
+            return;
+        }
+        MatScope scope = current.get();
+        if (scope != null) {
+            scope.mats.add(mat);
+        }
+    }
+
+    /** Track a Mat created elsewhere (e.g. on another thread) so close() releases it */
+    public <T extends Mat> T track(T mat) {
+        checkOpen();
+        mats.add(mat);
+        return mat;
+    }
+
+    /** Stop tracking mat so it outlives the scope; returns it for chaining */
+    public <T extends Mat> T keep(T mat) {
+        checkOpen();
+        for (int i = mats.size() - 1; i >= 0; i--) {
+            if (mats.get(i) == mat) {
+                mats.remove(i);
+                break;
+            }
+        }
+        return mat;
+    }
+
+    /** Number of Mats that close() would release */
+    public int size() {
+        return mats.size();
+    }
+
+    /**
+     * Release the tracked Mats. Closing an outer scope first also closes the
+     * scopes still open inside it.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        if (Thread.currentThread() != owner)
+            throw new IllegalStateException("MatScope must be closed by the thread that opened it");
+
+        MatScope inner = current.get();
+        while (inner != null && inner != this) {
+            inner.close();
+            inner = current.get();
+        }
+
+        closed = true;
+        for (int i = mats.size() - 1; i >= 0; i--) {
+            mats.get(i).release();
+        }
+        mats.clear();
+
+        if (parent != null) {
+            current.set(parent);
+        } else {
+            current.remove();
+        }
+        synchronized (MatScope.class) {
+            openScopes--;
+        }
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("MatScope is closed");
+    }
+
+    // ==================== Native memory accounting ====================
+
+    /** Mat headers not yet reclaimed, across all threads */
+    public static long liveMatCount() {
+        return MatCleaner.liveCount();
+    }
+
+    /**
+     * Pixel bytes referenced by live Mats. Headers sharing data (submatrices,
+     * shallow copies) each count their own view, so this is an upper bound.
+     * Walks every live Mat; meant for diagnostics and metrics, not per frame.
+     */
+    public static long liveNativeBytes() {
+        return MatCleaner.liveBytes();
+    }
+
+    /** Mats reclaimed after becoming unreachable */
+    public static long reclaimedMatCount() {
+        return MatCleaner.reclaimedCount();
+    }
+
+    /** Reclaimed Mats that still held data, counted only while leak detection is on */
+    public static long leakedMatCount() {
+        return MatCleaner.leakedCount();
+    }
+
+    /**
+     * Record the allocation site of every new Mat and report the ones that are
+     * reclaimed without having been released. Costs a stack capture per Mat, so
+     * enable it in debug builds only.
+     */
+    public static void setLeakDetection(boolean enabled) {
+        MatCleaner.leakDetection = enabled;
+    }
+
+    public static boolean isLeakDetectionEnabled() {
+        return MatCleaner.leakDetection;
+    }
+
+    /** @param listener Receiver of leak reports, or null to only count them */
+    public static void setLeakListener(LeakListener listener) {
+        MatCleaner.leakListener = listener;
+    }
+}
@@ -0,0 +1,193 @@
+package org.opencv.core;
+
+/**
+ * Growable list of 2D points stored as two primitive arrays (structure of
+ * arrays), for moving large point sets to and from Mats without a Point
+ * object per element. Reuse one instance across frames: the arrays only grow.
+ *
+ *     PointArrayF pts = new PointArrayF();
+ *     contour.toPointArray(pts);            // one JNI call
+ *     for (int i = 0; i < pts.size(); i++) {
+ *         sum += pts.x(i) * pts.y(i);
+ *     }
+ */
+public final class PointArrayF {
+
+    private float[] x;
+    private float[] y;
+    private int size;
+
+    // Interleaved staging for Mat transfers, kept to avoid per-call allocation
+    private float[] packedF = new float[0];
+    private int[] packedI = new int[0];
+
+    public PointArrayF() {
+        this(16);
+    }
+
+    public PointArrayF(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Negative capacity: " + capacity);
+        x = new float[capacity];
+        y = new float[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public float x(int i) {
+        checkIndex(i);
+        return x[i];
+    }
+
+    public float y(int i) {
+        checkIndex(i);
+        return y[i];
+    }
+
+    public void set(int i, float px, float py) {
+        checkIndex(i);
+        x[i] = px;
+        y[i] = py;
+    }
+
+    public void add(float px, float py) {
+        ensureCapacity(size + 1);
+        x[size] = px;
+        y[size] = py;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Set the size, growing the arrays if needed. New entries are not cleared.
+     */
+    public void resize(int newSize) {
+        if (newSize < 0)
+            throw new IllegalArgumentException("Negative size: " + newSize);
+        ensureCapacity(newSize);
+        size = newSize;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > x.length) {
+            int grown = Math.max(capacity, x.length + (x.length >> 1) + 1);
+            float[] nx = new float[grown];
+            float[] ny = new float[grown];
+            System.arraycopy(x, 0, nx, 0, size);
+            System.arraycopy(y, 0, ny, 0, size);
+            x = nx;
+            y = ny;
+        }
+    }
+
+    /** Backing x coordinates; valid in [0, size()), replaced when the array grows */
+    public float[] xs() {
+        return x;
+    }
+
+    /** Backing y coordinates; valid in [0, size()), replaced when the array grows */
+    public float[] ys() {
+        return y;
+    }
+
+    // ==================== Mat transfer ====================
+
+    /**
+     * Replace the contents with the points of a CV_32FC2 or CV_32SC2 Mat
+     * (e.g. MatOfPoint2f, MatOfPoint) using a single JNI copy
+     */
+    public void copyFrom(Mat m) {
+        int count = m.checkVector(2);
+        if (count < 0)
+            throw new IllegalArgumentException("Mat is not a 2-channel point vector: " + m);
+        resize(count);
+        if (count == 0)
+            return;
+
+        int depth = m.depth();
+        if (depth == CvType.CV_32F) {
+            float[] buff = packedFloats(count * 2);
+            m.get(0, 0, buff);
+            for (int i = 0, j = 0; i < count; i++, j += 2) {
+                x[i] = buff[j];
+                y[i] = buff[j + 1];
+            }
+        } else if (depth == CvType.CV_32S) {
+            int[] buff = packedInts(count * 2);
+            m.get(0, 0, buff);
+            for (int i = 0, j = 0; i < count; i++, j += 2) {
+                x[i] = buff[j];
+                y[i] = buff[j + 1];
+            }
+        } else {
+            throw new UnsupportedOperationException("Mat data type is not compatible: " + m.type());
+        }
+    }
+
+    /**
+     * Write the points into m as a size() x 1 vector of the given depth
+     * (CV_32F, or CV_32S with coordinates rounded), reallocating m only if its shape differs
+     */
+    public void copyTo(Mat m, int depth) {
+        if (depth != CvType.CV_32F && depth != CvType.CV_32S)
+            throw new UnsupportedOperationException("Unsupported point depth: " + depth);
+        if (size == 0) {
+            m.release();
+            return;
+        }
+        m.create(size, 1, CvType.makeType(depth, 2));
+
+        // put() copies only as many elements as fit, so oversized staging arrays are fine
+        if (depth == CvType.CV_32F) {
+            float[] buff = packedFloats(size * 2);
+            for (int i = 0, j = 0; i < size; i++, j += 2) {
+                buff[j] = x[i];
+                buff[j + 1] = y[i];
+            }
+            m.put(0, 0, buff);
+        } else {
+            int[] buff = packedInts(size * 2);
+            for (int i = 0, j = 0; i < size; i++, j += 2) {
+                buff[j] = Math.round(x[i]);
+                buff[j + 1] = Math.round(y[i]);
+            }
+            m.put(0, 0, buff);
+        }
+    }
+
+    private float[] packedFloats(int length) {
+        if (packedF.length < length)
+            packedF = new float[evenGrowth(packedF.length, length)];
+        return packedF;
+    }
+
+    private int[] packedInts(int length) {
+        if (packedI.length < length)
+            packedI = new int[evenGrowth(packedI.length, length)];
+        return packedI;
+    }
+
+    // Mat.get/put require a whole number of 2-channel elements
+    private static int evenGrowth(int current, int required) {
+        return (Math.max(required, current + (current >> 1)) + 1) & ~1;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + size);
+    }
+
+    @Override
+    public String toString() {
+        return "PointArrayF [ size=" + size + ", capacity=" + x.length + " ]";
+    }
+}
@@ -0,0 +1,38 @@
+package org.opencv.core;
+
+/**
+ * Mat leased from a MatPool. close() hands it back to the pool instead of
+ * freeing it, so use it with try-with-resources:
+ *
+ *     try (PooledMat gray = pool.acquire(rows, cols, CvType.CV_8UC1)) {
+ *         Imgproc.cvtColor(rgba, gray, Imgproc.COLOR_RGBA2GRAY);
+ *         ...
+ *     }
+ *
+ * Contents are whatever the previous user left behind. Do not keep references
+ * after close(): the same native buffer will be handed to the next caller.
+ */
+public final class PooledMat extends Mat implements AutoCloseable {
+
+    final MatPool pool;
+    final long key;
+    final long bytes;
+    boolean pooled;            // sitting in a free list, guarded by the pool
+
+    // Global LRU links, guarded by the pool
+    PooledMat lruPrev;
+    PooledMat lruNext;
+
+    PooledMat(MatPool pool, long key, int rows, int cols, int type) {
+        super(rows, cols, type);
+        this.pool = pool;
+        this.key = key;
+        this.bytes = (long) rows * cols * CvType.ELEM_SIZE(type);
+    }
+
+    /** Return this Mat to its pool */
+    @Override
+    public void close() {
+        pool.recycle(this);
+    }
+}
@@ -0,0 +1,178 @@
+package org.opencv.utils;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.PointArrayF;
+
+/**
+ * Primitive-array counterparts of {@link Converters}. Each conversion is one
+ * JNI copy into or out of a caller-supplied array, with no boxing and no
+ * per-element objects, so arrays can be reused across frames.
+ *
+ * Multi-channel data stays interleaved: a CV_32SC4 Mat of rectangles becomes
+ * x0, y0, w0, h0, x1, ... and a KeyPoint Mat becomes KEYPOINT_STRIDE floats
+ * per keypoint in the order x, y, size, angle, response, octave, class_id.
+ * The Mat_to_* methods return the number of values written; a destination
+ * that is too small is an error rather than a silent truncation. Arrays may be
+ * larger than the data, and of any length: only the values counted are copied,
+ * so a buffer grown for 4-channel rectangles also works for 7-channel keypoints.
+ */
+public class ArrayConverters {
+
+    public static final int RECT_STRIDE = 4;
+    public static final int KEYPOINT_STRIDE = 7;
+
+    /** Number of primitive values (elements times channels) held by m */
+    public static int valueCount(Mat m) {
+        long count = m.total() * m.channels();
+        if (count > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Mat too large for a Java array: " + m);
+        return (int) count;
+    }
+
+    public static int Mat_to_array_int(Mat m, int[] dst) {
+        int count = prepareRead(m, CvType.CV_32S, dst == null ? -1 : dst.length);
+        if (count > 0)
+            m.get(0, 0, dst, count);
+        return count;
+    }
+
+    public static int[] Mat_to_array_int(Mat m) {
+        int[] dst = new int[valueCount(m)];
+        Mat_to_array_int(m, dst);
+        return dst;
+    }
+
+    public static int Mat_to_array_float(Mat m, float[] dst) {
+        int count = prepareRead(m, CvType.CV_32F, dst == null ? -1 : dst.length);
+        if (count > 0)
+            m.get(0, 0, dst, count);
+        return count;
+    }
+
+    public static float[] Mat_to_array_float(Mat m) {
+        float[] dst = new float[valueCount(m)];
+        Mat_to_array_float(m, dst);
+        return dst;
+    }
+
+    public static int Mat_to_array_double(Mat m, double[] dst) {
+        int count = prepareRead(m, CvType.CV_64F, dst == null ? -1 : dst.length);
+        if (count > 0)
+            m.get(0, 0, dst, count);
+        return count;
+    }
+
+    public static double[] Mat_to_array_double(Mat m) {
+        double[] dst = new double[valueCount(m)];
+        Mat_to_array_double(m, dst);
+        return dst;
+    }
+
+    public static int Mat_to_array_uchar(Mat m, byte[] dst) {
+        int count = prepareRead(m, CvType.CV_8U, dst == null ? -1 : dst.length);
+        if (count > 0)
+            m.get(0, 0, dst, count);
+        return count;
+    }
+
+    public static byte[] Mat_to_array_uchar(Mat m) {
+        byte[] dst = new byte[valueCount(m)];
+        Mat_to_array_uchar(m, dst);
+        return dst;
+    }
+
+    /**
+     * Write the first length values of src into dst as a (length / channels) x 1 Mat
+     * @param channels Values per element, e.g. 2 for points or RECT_STRIDE for rectangles
+     */
+    public static void array_int_to_Mat(int[] src, int length, int channels, Mat dst) {
+        if (prepareWrite(src == null ? -1 : src.length, length, CvType.makeType(CvType.CV_32S, channels), dst))
+            dst.put(0, 0, src, length);   // only the first length values; the rest of src is ignored
+    }
+
+    public static void array_float_to_Mat(float[] src, int length, int channels, Mat dst) {
+        if (prepareWrite(src == null ? -1 : src.length, length, CvType.makeType(CvType.CV_32F, channels), dst))
+            dst.put(0, 0, src, length);
+    }
+
+    public static void array_double_to_Mat(double[] src, int length, int channels, Mat dst) {
+        if (prepareWrite(src == null ? -1 : src.length, length, CvType.makeType(CvType.CV_64F, channels), dst))
+            dst.put(0, 0, src, length);
+    }
+
+    public static void array_uchar_to_Mat(byte[] src, int length, int channels, Mat dst) {
+        if (prepareWrite(src == null ? -1 : src.length, length, CvType.makeType(CvType.CV_8U, channels), dst))
+            dst.put(0, 0, src, 0, length);
+    }
+
+    // ==================== Structures ====================
+
+    /** CV_32SC2 or CV_32FC2 points (MatOfPoint, MatOfPoint2f) into a reusable PointArrayF */
+    public static void Mat_to_PointArrayF(Mat m, PointArrayF dst) {
+        dst.copyFrom(m);
+    }
+
+    /** @param depth CvType.CV_32S (coordinates rounded) or CvType.CV_32F */
+    public static void PointArrayF_to_Mat(PointArrayF src, Mat dst, int depth) {
+        src.copyTo(dst, depth);
+    }
+
+    /** CV_32SC4 rectangles (MatOfRect) as x, y, width, height quadruples */
+    public static int Mat_to_array_Rect(Mat m, int[] dst) {
+        checkChannels(m, RECT_STRIDE);
+        return Mat_to_array_int(m, dst);
+    }
+
+    public static void array_Rect_to_Mat(int[] src, int count, Mat dst) {
+        array_int_to_Mat(src, count * RECT_STRIDE, RECT_STRIDE, dst);
+    }
+
+    /** CV_32FC(7) keypoints (MatOfKeyPoint), KEYPOINT_STRIDE floats each */
+    public static int Mat_to_array_KeyPoint(Mat m, float[] dst) {
+        checkChannels(m, KEYPOINT_STRIDE);
+        return Mat_to_array_float(m, dst);
+    }
+
+    public static void array_KeyPoint_to_Mat(float[] src, int count, Mat dst) {
+        array_float_to_Mat(src, count * KEYPOINT_STRIDE, KEYPOINT_STRIDE, dst);
+    }
+
+    private static int prepareRead(Mat m, int depth, int capacity) {
+        if (m == null)
+            throw new IllegalArgumentException("m == null");
+        if (capacity < 0)
+            throw new IllegalArgumentException("Output array == null");
+        if (m.empty())
+            return 0;
+        if (m.depth() != depth)
+            throw new IllegalArgumentException("CvType." + CvType.typeToString(m.type()) + " != " +
+                    CvType.typeToString(CvType.makeType(depth, m.channels())));
+        int count = valueCount(m);
+        if (capacity < count)
+            throw new IllegalArgumentException("Output array holds " + capacity + " values, Mat has " + count);
+        return count;
+    }
+
+    private static boolean prepareWrite(int srcLength, int length, int type, Mat dst) {
+        if (dst == null)
+            throw new IllegalArgumentException("dst == null");
+        if (srcLength < 0)
+            throw new IllegalArgumentException("Input array == null");
+        int channels = CvType.channels(type);
+        if (length < 0 || length > srcLength || length % channels != 0)
+            throw new IllegalArgumentException("Length " + length + " is not a whole number of " +
+                    channels + "-channel elements within an array of " + srcLength);
+        if (length == 0) {
+            dst.release();
+            return false;
+        }
+        dst.create(length / channels, 1, type);
+        return true;
+    }
+
+    private static void checkChannels(Mat m, int channels) {
+        if (!m.empty() && m.channels() != channels)
+            throw new IllegalArgumentException("Expected " + channels + " channels, got " + m.channels());
+    }
+}
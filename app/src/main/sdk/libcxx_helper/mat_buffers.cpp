@@ -0,0 +1,10 @@
+#include <jni.h>
+
+// Backs org.opencv.core.MatBuffers: wraps Mat memory in a direct ByteBuffer without copying.
+// The buffer does not own the memory; the Java side keeps the Mat alive.
+
+extern "C" JNIEXPORT jobject JNICALL
+Java_org_opencv_core_MatBuffers_nWrap(JNIEnv* env, jclass, jlong address, jlong capacity)
+{
+    return env->NewDirectByteBuffer(reinterpret_cast<void*>(address), capacity);
+}
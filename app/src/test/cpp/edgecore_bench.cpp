@@ -0,0 +1,237 @@
+#include <benchmark/benchmark.h>
+
+#include "image_processor.h"
+#include "strip_edge_detector.h"
+#include "contour_set.h"
+#include "line_detector.h"
+#include "quad_tracker.h"
+#include "motion_gate.h"
+#include "edge_stabilizer.h"
+
+#include <opencv2/imgproc.hpp>
+#include <vector>
+
+// Google Benchmark suite for edgecore. Frames are synthetic but seeded, so
+// runs are comparable; see the JMH suites in :benchmarks for the photo-based ones.
+
+namespace {
+
+const int RESOLUTIONS[][2] = {{640, 480}, {1280, 720}, {1920, 1080}};
+
+cv::Mat makeFrame(int width, int height) {
+    cv::RNG rng(0x5eed);
+    cv::Mat rgba(height, width, CV_8UC4);
+    rng.fill(rgba, cv::RNG::UNIFORM, 0, 256);
+    // Smooth the noise into blobs so Canny finds edges of realistic density
+    cv::GaussianBlur(rgba, rgba, cv::Size(0, 0), 6.0);
+    cv::normalize(rgba, rgba, 0, 255, cv::NORM_MINMAX);
+    return rgba;
+}
+
+void resolutionArgs(benchmark::internal::Benchmark* b) {
+    for (const auto& r : RESOLUTIONS) {
+        b->Args({r[0], r[1]});
+    }
+}
+
+void setPixelCounters(benchmark::State& state, int width, int height) {
+    state.SetItemsProcessed(state.iterations() * (int64_t) width * height);
+    state.counters["fps"] = benchmark::Counter((double) state.iterations(), benchmark::Counter::kIsRate);
+}
+
+} // namespace
+
+static void BM_NV21ToRGBA(benchmark::State& state) {
+    int width = (int) state.range(0), height = (int) state.range(1);
+    // Planar rather than interleaved chroma, but the same size and cost as a real NV21 frame
+    cv::Mat yuv;
+    cv::cvtColor(makeFrame(width, height), yuv, cv::COLOR_RGBA2YUV_YV12);
+    for (auto _ : state) {
+        cv::Mat rgba = ImageProcessor::convertNV21ToRGBA(yuv.data, width, height);
+        benchmark::DoNotOptimize(rgba.data);
+    }
+    setPixelCounters(state, width, height);
+}
+BENCHMARK(BM_NV21ToRGBA)->Apply(resolutionArgs)->Unit(benchmark::kMicrosecond);
+
+static void BM_Grayscale(benchmark::State& state) {
+    int width = (int) state.range(0), height = (int) state.range(1);
+    cv::Mat frame = makeFrame(width, height);
+    for (auto _ : state) {
+        cv::Mat gray = ImageProcessor::convertToGrayscale(frame);
+        benchmark::DoNotOptimize(gray.data);
+    }
+    setPixelCounters(state, width, height);
+}
+BENCHMARK(BM_Grayscale)->Apply(resolutionArgs)->Unit(benchmark::kMicrosecond);
+
+static void BM_Canny(benchmark::State& state) {
+    int width = (int) state.range(0), height = (int) state.range(1);
+    cv::Mat frame = makeFrame(width, height);
+    for (auto _ : state) {
+        cv::Mat edges = ImageProcessor::applyCanny(frame);
+        benchmark::DoNotOptimize(edges.data);
+    }
+    setPixelCounters(state, width, height);
+}
+BENCHMARK(BM_Canny)->Apply(resolutionArgs)->Unit(benchmark::kMillisecond);
+
+static void BM_CannyInBands(benchmark::State& state) {
+    int width = (int) state.range(0), height = (int) state.range(1);
+    cv::Mat frame = makeFrame(width, height);
+    cv::Mat work;
+    StripEdgeDetector detector(50, 150, (int) state.range(2));
+    for (auto _ : state) {
+        state.PauseTiming();
+        frame.copyTo(work);
+        state.ResumeTiming();
+        detector.process(work);
+    }
+    setPixelCounters(state, width, height);
+    state.counters["workingBytes"] = (double) detector.workingBytes();
+}
+BENCHMARK(BM_CannyInBands)
+        ->Args({1920, 1080, 64})
+        ->Args({1920, 1080, 256})
+        ->Args({4000, 3000, 128})
+        ->Unit(benchmark::kMillisecond);
+
+static void BM_ContourFind(benchmark::State& state) {
+    int width = (int) state.range(0), height = (int) state.range(1);
+    cv::Mat edges;
+    cv::Mat gray;
+    cv::cvtColor(makeFrame(width, height), gray, cv::COLOR_RGBA2GRAY);
+    ImageProcessor::detectEdges(gray, edges);
+
+    ContourSet set;
+    ContourSet::Filter filter;
+    filter.minLength = (double) state.range(2);
+    for (auto _ : state) {
+        benchmark::DoNotOptimize(set.find(edges, cv::RETR_LIST, filter));
+    }
+    setPixelCounters(state, width, height);
+    state.counters["contours"] = (double) set.size();
+}
+BENCHMARK(BM_ContourFind)
+        ->Args({1280, 720, 0})
+        ->Args({1280, 720, 50})
+        ->Unit(benchmark::kMicrosecond);
+
+// Third argument: edge map scale for the Hough transform, in percent
+static void BM_HoughLines(benchmark::State& state) {
+    int width = (int) state.range(0), height = (int) state.range(1);
+    cv::Mat edges;
+    cv::Mat gray;
+    cv::cvtColor(makeFrame(width, height), gray, cv::COLOR_RGBA2GRAY);
+    ImageProcessor::detectEdges(gray, edges);
+
+    LineDetector::Params params;
+    params.scale = (float) state.range(2) / 100.0f;
+    LineDetector detector;
+    detector.setParams(params);
+    for (auto _ : state) {
+        benchmark::DoNotOptimize(detector.detect(edges));
+    }
+    setPixelCounters(state, width, height);
+    state.counters["lines"] = (double) detector.size();
+}
+BENCHMARK(BM_HoughLines)
+        ->Args({1920, 1080, 100})
+        ->Args({1920, 1080, 50})
+        ->Args({1920, 1080, 25})
+        ->Unit(benchmark::kMillisecond);
+
+// Third argument: frames between full detections; 1 detects on every frame
+static void BM_QuadTracker(benchmark::State& state) {
+    int width = (int) state.range(0), height = (int) state.range(1);
+    cv::Mat frames[2];
+    cv::cvtColor(makeFrame(width, height), frames[0], cv::COLOR_RGBA2GRAY);
+    std::vector<cv::Point> page;
+    page.push_back(cv::Point(width * 3 / 10, height / 5));
+    page.push_back(cv::Point(width * 7 / 10, height / 4));
+    page.push_back(cv::Point(width * 2 / 3, height * 4 / 5));
+    page.push_back(cv::Point(width / 4, height * 3 / 4));
+    cv::fillConvexPoly(frames[0], page, cv::Scalar(240));
+    // A small camera shake, so tracking has motion to follow
+    cv::Mat shift = (cv::Mat_<double>(2, 3) << 1, 0, 3, 0, 1, 2);
+    cv::warpAffine(frames[0], frames[1], shift, frames[0].size(), cv::INTER_LINEAR, cv::BORDER_REPLICATE);
+
+    QuadTracker::Params params;
+    params.detectInterval = (int) state.range(2);
+    QuadTracker tracker;
+    tracker.setParams(params);
+    int64_t frame = 0;
+    for (auto _ : state) {
+        benchmark::DoNotOptimize(tracker.update(frames[frame++ & 1]));
+    }
+    setPixelCounters(state, width, height);
+    QuadTracker::Stats stats = tracker.stats();
+    state.counters["detect_ratio"] = stats.frames == 0 ? 0.0 : (double) stats.detections / stats.frames;
+    state.counters["lost"] = (double) stats.lost;
+}
+BENCHMARK(BM_QuadTracker)
+        ->Args({1920, 1080, 1})
+        ->Args({1920, 1080, 10})
+        ->Unit(benchmark::kMicrosecond);
+
+// Static background with one object moving across it; compare with BM_Canny
+static void BM_MotionGate(benchmark::State& state) {
+    int width = (int) state.range(0), height = (int) state.range(1);
+    cv::Mat background;
+    cv::cvtColor(makeFrame(width, height), background, cv::COLOR_RGBA2GRAY);
+    const int STEPS = 16;
+    std::vector<cv::Mat> frames;
+    for (int i = 0; i < STEPS; i++) {
+        cv::Mat frame = background.clone();
+        cv::Rect object(width / 8 + i * width / (2 * STEPS), height / 3, width / 10, height / 6);
+        cv::rectangle(frame, object, cv::Scalar(240), cv::FILLED);
+        frames.push_back(frame);
+    }
+
+    MotionGate::Params params;
+    params.method = (int) state.range(2);
+    MotionGate gate;
+    gate.setParams(params);
+    cv::Mat edges;
+    int64_t frame = 0;
+    for (auto _ : state) {
+        benchmark::DoNotOptimize(gate.process(frames[frame++ % STEPS], edges, &ImageProcessor::detectEdges));
+    }
+    setPixelCounters(state, width, height);
+    MotionGate::Stats stats = gate.stats();
+    state.counters["pixel_fraction"] =
+            stats.pixelsTotal == 0 ? 0.0 : (double) stats.pixelsProcessed / stats.pixelsTotal;
+}
+BENCHMARK(BM_MotionGate)
+        ->Args({1920, 1080, MotionGate::METHOD_MOG2})
+        ->Args({1920, 1080, MotionGate::METHOD_KNN})
+        ->Unit(benchmark::kMillisecond);
+
+// A steady pan across a wider frame; compare with BM_Canny
+static void BM_EdgeStabilizer(benchmark::State& state) {
+    int width = (int) state.range(0), height = (int) state.range(1);
+    const int STEPS = 32, STEP = 4;
+    cv::Mat wide;
+    cv::cvtColor(makeFrame(width + STEPS * STEP, height), wide, cv::COLOR_RGBA2GRAY);
+
+    EdgeStabilizer::Params params;
+    params.method = (int) state.range(2);
+    EdgeStabilizer stabilizer;
+    stabilizer.setParams(params);
+    cv::Mat edges;
+    int64_t frame = 0;
+    for (auto _ : state) {
+        cv::Mat view = wide(cv::Rect((int) (frame++ % STEPS) * STEP, 0, width, height));
+        benchmark::DoNotOptimize(stabilizer.process(view, edges, &ImageProcessor::detectEdges));
+    }
+    setPixelCounters(state, width, height);
+    EdgeStabilizer::Stats stats = stabilizer.stats();
+    state.counters["full_ratio"] = stats.frames == 0 ? 0.0 : (double) stats.full / stats.frames;
+    state.counters["tiles_per_frame"] = stats.frames == 0 ? 0.0 : (double) stats.tilesRecomputed / stats.frames;
+}
+BENCHMARK(BM_EdgeStabilizer)
+        ->Args({1920, 1080, EdgeStabilizer::METHOD_LK})
+        ->Args({1920, 1080, EdgeStabilizer::METHOD_ECC})
+        ->Unit(benchmark::kMillisecond);
+
+BENCHMARK_MAIN();
@@ -0,0 +1,499 @@
+#define CATCH_CONFIG_MAIN
+#include <catch2/catch.hpp>
+
+#include "image_processor.h"
+#include "edge_map_cache.h"
+#include "motion_gate.h"
+#include "edge_stabilizer.h"
+#include "strip_edge_detector.h"
+#include "contour_set.h"
+#include "line_detector.h"
+#include "quad_tracker.h"
+
+#include <opencv2/imgproc.hpp>
+#include <cmath>
+#include <vector>
+
+// Host tests for edgecore against desktop OpenCV
+
+namespace {
+
+/** Deterministic RGBA scene: flat background, a few solid shapes and a soft gradient */
+cv::Mat makeScene(int width, int height) {
+    cv::Mat rgba(height, width, CV_8UC4, cv::Scalar(40, 40, 40, 255));
+    for (int x = 0; x < width; x++) {
+        uint8_t v = (uint8_t) (40 + 60 * x / width);
+        rgba.row(height - 1).col(x).setTo(cv::Scalar(v, v, v, 255));
+    }
+    cv::rectangle(rgba, cv::Rect(width / 10, height / 10, width / 4, height / 5),
+                  cv::Scalar(220, 200, 180, 255), cv::FILLED);
+    cv::circle(rgba, cv::Point(width * 2 / 3, height / 2), height / 5,
+               cv::Scalar(30, 160, 230, 255), cv::FILLED);
+    cv::line(rgba, cv::Point(0, height * 3 / 4), cv::Point(width - 1, height / 3),
+             cv::Scalar(255, 255, 255, 255), 3);
+    return rgba;
+}
+
+cv::Mat toGray(const cv::Mat& rgba) {
+    cv::Mat gray;
+    cv::cvtColor(rgba, gray, cv::COLOR_RGBA2GRAY);
+    return gray;
+}
+
+double mismatchFraction(const cv::Mat& a, const cv::Mat& b) {
+    cv::Mat diff;
+    cv::compare(a, b, diff, cv::CMP_NE);
+    return (double) cv::countNonZero(diff) / (double) a.total();
+}
+
+} // namespace
+
+TEST_CASE("NV21 frames convert to opaque RGBA", "[yuv]") {
+    const int width = 64, height = 48;
+    std::vector<uint8_t> nv21(width * height * 3 / 2, 128);
+    std::fill(nv21.begin(), nv21.begin() + width * height, 200);
+
+    cv::Mat rgba = ImageProcessor::convertNV21ToRGBA(nv21.data(), width, height);
+    REQUIRE(rgba.type() == CV_8UC4);
+    REQUIRE(rgba.size() == cv::Size(width, height));
+
+    // Neutral chroma: a gray pixel close to the luma value
+    cv::Vec4b px = rgba.at<cv::Vec4b>(10, 10);
+    CHECK(px[0] == px[1]);
+    CHECK(px[1] == px[2]);
+    CHECK(std::abs(px[0] - 214) <= 2);   // video-range Y: 1.164 * (200 - 16)
+    CHECK(px[3] == 255);
+}
+
+TEST_CASE("Grayscale keeps four equal channels", "[filters]") {
+    cv::Mat result = ImageProcessor::convertToGrayscale(makeScene(160, 120));
+    REQUIRE(result.type() == CV_8UC4);
+
+    std::vector<cv::Mat> channels;
+    cv::split(result, channels);
+    CHECK(cv::countNonZero(channels[0] != channels[1]) == 0);
+    CHECK(cv::countNonZero(channels[1] != channels[2]) == 0);
+}
+
+TEST_CASE("applyCanny matches detectEdges", "[canny]") {
+    cv::Mat scene = makeScene(320, 240);
+    cv::Mat expected;
+    ImageProcessor::detectEdges(toGray(scene), expected);
+
+    cv::Mat result = ImageProcessor::applyCanny(scene);
+    REQUIRE(result.type() == CV_8UC4);
+    std::vector<cv::Mat> channels;
+    cv::split(result, channels);
+    CHECK(mismatchFraction(channels[0], expected) == 0.0);
+    CHECK(cv::countNonZero(expected) > 0);
+}
+
+TEST_CASE("Banded Canny follows the full-frame edge map", "[canny][strips]") {
+    cv::Mat scene = makeScene(640, 480);
+    cv::Mat expected;
+    ImageProcessor::detectEdges(toGray(scene), expected);
+
+    int bandRows = GENERATE(8, 37, 128, 480);
+    CAPTURE(bandRows);
+
+    cv::Mat rgba = scene.clone();
+    StripEdgeDetector detector(50, 150, bandRows);
+    detector.process(rgba);
+
+    std::vector<cv::Mat> channels;
+    cv::split(rgba, channels);
+    CHECK(cv::countNonZero(channels[3] != 255) == 0);
+
+    // Gradients are exact; only hysteresis across far-apart bands may differ
+    CHECK(mismatchFraction(channels[0], expected) < 0.001);
+    CHECK(detector.workingBytes() < scene.total() * scene.elemSize());
+}
+
+TEST_CASE("Banded Canny handles padded rows and a short last band", "[canny][strips]") {
+    cv::Mat parent = makeScene(200, 130);
+    cv::Mat padded(130, 220, CV_8UC4, cv::Scalar(0, 0, 0, 255));
+    parent.copyTo(padded.colRange(0, 200));
+    cv::Mat view = padded.colRange(0, 200);   // rows are 220 pixels apart
+    cv::Mat tail = padded.colRange(200, 220).clone();
+
+    ImageProcessor::applyCannyInPlace(view, 16);
+
+    cv::Mat expected;
+    ImageProcessor::detectEdges(toGray(parent), expected);
+    std::vector<cv::Mat> channels;
+    cv::split(view, channels);
+    CHECK(mismatchFraction(channels[0], expected) < 0.005);
+    // Pixels beyond the view are untouched
+    CHECK(cv::countNonZero(padded.colRange(200, 220).reshape(1) != tail.reshape(1)) == 0);
+}
+
+TEST_CASE("ContourSet extracts and filters contours in place", "[contours]") {
+    cv::Mat mask = cv::Mat::zeros(200, 300, CV_8UC1);
+    cv::rectangle(mask, cv::Rect(10, 10, 100, 50), cv::Scalar(255), cv::FILLED);
+    cv::rectangle(mask, cv::Rect(150, 20, 40, 40), cv::Scalar(255), cv::FILLED);
+    cv::rectangle(mask, cv::Rect(250, 150, 5, 5), cv::Scalar(255), cv::FILLED);
+
+    ContourSet set;
+    REQUIRE(set.find(mask, cv::RETR_EXTERNAL, ContourSet::Filter()) == 3);
+
+    int points = 0;
+    bool foundLarge = false;
+    for (int i = 0; i < set.size(); i++) {
+        points += set.pointCount(i);
+        if (set.bounds(i) == cv::Rect(10, 10, 100, 50)) {
+            foundLarge = true;
+            CHECK(set.area(i) == Approx(99.0 * 49.0));
+            CHECK(set.length(i) == Approx(2.0 * (99.0 + 49.0)));
+        }
+    }
+    CHECK(foundLarge);
+    CHECK(points == set.totalPoints());
+    CHECK(set.offsetData()[set.size()] == set.totalPoints());
+
+    ContourSet::Filter filter;
+    filter.minArea = 100.0;
+    REQUIRE(set.filter(filter) == 2);
+    for (int i = 0; i < set.size(); i++) {
+        CHECK(set.area(i) >= 100.0f);
+        // Points still belong to the contour they describe after compaction
+        CHECK(set.bounds(i) == cv::boundingRect(std::vector<cv::Point>(
+                set.points(i), set.points(i) + set.pointCount(i))));
+    }
+
+    filter.minArea = 0.0;
+    filter.minLength = 1000.0;
+    CHECK(set.filter(filter) == 0);
+    CHECK(set.totalPoints() == 0);
+}
+
+TEST_CASE("ContourSet filters while finding", "[contours]") {
+    cv::Mat mask = cv::Mat::zeros(100, 100, CV_8UC1);
+    cv::rectangle(mask, cv::Rect(10, 10, 50, 50), cv::Scalar(255), cv::FILLED);
+    cv::rectangle(mask, cv::Rect(80, 80, 3, 3), cv::Scalar(255), cv::FILLED);
+
+    ContourSet::Filter filter;
+    filter.minLength = 20.0;
+    ContourSet set;
+    CHECK(set.find(mask, cv::RETR_LIST, filter) == 1);
+    CHECK(set.find(cv::Mat(), cv::RETR_LIST, filter) == 0);
+}
+
+TEST_CASE("LineDetector finds long segments at reduced scale", "[lines]") {
+    cv::Mat edges = cv::Mat::zeros(240, 320, CV_8UC1);
+    cv::line(edges, cv::Point(20, 40), cv::Point(300, 40), cv::Scalar(255), 1);      // shelf edge
+    cv::line(edges, cv::Point(160, 60), cv::Point(160, 230), cv::Scalar(255), 1);    // upright
+    cv::line(edges, cv::Point(10, 200), cv::Point(25, 205), cv::Scalar(255), 1);     // too short
+
+    LineDetector::Params params;
+    params.scale = 0.5f;
+    params.threshold = 40;
+    params.minLength = 50.0f;
+    params.maxGap = 4.0f;
+    LineDetector detector;
+    detector.setParams(params);
+
+    // RGBA input, as the streaming path hands it over
+    cv::Mat rgba;
+    cv::cvtColor(edges, rgba, cv::COLOR_GRAY2RGBA);
+    REQUIRE(detector.detect(rgba) >= 2);
+
+    // Longest first, back in input coordinates within a pixel or two of the drawn line
+    const float* longest = detector.data();
+    CHECK(std::abs(longest[1] - 40.0f) <= 2.0f);
+    CHECK(std::abs(longest[3] - 40.0f) <= 2.0f);
+    CHECK(std::abs(longest[2] - longest[0]) >= 250.0f);
+    for (int i = 0; i < detector.size(); i++) {
+        const float* line = detector.data() + i * LineDetector::FLOATS_PER_LINE;
+        CHECK(std::hypot(line[2] - line[0], line[3] - line[1]) >= 45.0f);
+    }
+
+    params.maxLines = 1;
+    detector.setParams(params);
+    CHECK(detector.detect(edges) == 1);
+}
+
+TEST_CASE("LineDetector only looks inside the region of interest", "[lines]") {
+    cv::Mat edges = cv::Mat::zeros(200, 200, CV_8UC1);
+    cv::line(edges, cv::Point(10, 20), cv::Point(190, 20), cv::Scalar(255), 1);
+    cv::line(edges, cv::Point(10, 150), cv::Point(190, 150), cv::Scalar(255), 1);
+
+    LineDetector::Params params;
+    params.scale = 1.0f;
+    params.threshold = 50;
+    params.minLength = 100.0f;
+    params.roiTop = 0.5f;
+    LineDetector detector;
+    detector.setParams(params);
+    CHECK(detector.roiFor(edges.size()) == cv::Rect(0, 100, 200, 100));
+
+    REQUIRE(detector.detect(edges) >= 1);
+    for (int i = 0; i < detector.size(); i++) {
+        const float* line = detector.data() + i * LineDetector::FLOATS_PER_LINE;
+        CHECK(line[1] == Approx(150.0f).margin(1.0));
+        CHECK(line[3] == Approx(150.0f).margin(1.0));
+    }
+
+    params.roiBottom = 0.5f;   // empty region
+    detector.setParams(params);
+    CHECK(detector.detect(edges) == 0);
+}
+
+namespace {
+
+/** Dark frame with a bright page, shifted by (dx, dy) */
+cv::Mat makePage(const std::vector<cv::Point>& page, int dx, int dy) {
+    cv::Mat gray(480, 640, CV_8UC1, cv::Scalar(50));
+    std::vector<cv::Point> moved;
+    for (size_t i = 0; i < page.size(); i++) {
+        moved.push_back(page[i] + cv::Point(dx, dy));
+    }
+    cv::fillConvexPoly(gray, moved, cv::Scalar(220));
+    return gray;
+}
+
+} // namespace
+
+TEST_CASE("QuadTracker detects a page and tracks it between detections", "[quad]") {
+    // Listed counter-clockwise on purpose; corners come back clockwise from top-left
+    std::vector<cv::Point> page;
+    page.push_back(cv::Point(200, 100));
+    page.push_back(cv::Point(170, 370));
+    page.push_back(cv::Point(430, 400));
+    page.push_back(cv::Point(460, 130));
+    const cv::Point expected[4] = {cv::Point(200, 100), cv::Point(460, 130), cv::Point(430, 400), cv::Point(170, 370)};
+
+    QuadTracker::Params params;
+    params.detectWidth = 320;
+    params.detectInterval = 5;
+    QuadTracker tracker;
+    tracker.setParams(params);
+
+    REQUIRE(tracker.update(makePage(page, 0, 0)) == QuadTracker::DETECTED);
+    for (int i = 0; i < 4; i++) {
+        CHECK(std::abs(tracker.corners()[i].x - expected[i].x) <= 6.0f);
+        CHECK(std::abs(tracker.corners()[i].y - expected[i].y) <= 6.0f);
+    }
+
+    // Slow drift: optical flow carries the corners until the next detection is due
+    for (int frame = 1; frame < params.detectInterval; frame++) {
+        REQUIRE(tracker.update(makePage(page, 2 * frame, frame)) == QuadTracker::TRACKED);
+    }
+    for (int i = 0; i < 4; i++) {
+        CHECK(std::abs(tracker.corners()[i].x - (expected[i].x + 8)) <= 6.0f);
+        CHECK(std::abs(tracker.corners()[i].y - (expected[i].y + 4)) <= 6.0f);
+    }
+    CHECK(tracker.update(makePage(page, 10, 5)) == QuadTracker::DETECTED);
+
+    QuadTracker::Stats stats = tracker.stats();
+    CHECK(stats.frames == 6);
+    CHECK(stats.detections == 2);
+    CHECK(stats.tracked == 4);
+    CHECK(stats.lost == 0);
+
+    tracker.reset();
+    CHECK(tracker.update(cv::Mat(480, 640, CV_8UC1, cv::Scalar(50))) == QuadTracker::NONE);
+}
+
+TEST_CASE("QuadTracker rectifies the page", "[quad]") {
+    cv::Point2f quad[4] = {cv::Point2f(430, 400), cv::Point2f(170, 370), cv::Point2f(200, 100), cv::Point2f(460, 130)};
+    QuadTracker::orderCorners(quad);
+    CHECK(quad[0] == cv::Point2f(200, 100));
+    CHECK(quad[2] == cv::Point2f(430, 400));
+
+    cv::Size size = QuadTracker::cropSize(quad);
+    CHECK(size.width == (int) std::lround(std::hypot(260.0, 30.0)));
+    CHECK(size.height == (int) std::lround(std::hypot(30.0, 270.0)));
+
+    std::vector<cv::Point> page;
+    for (int i = 0; i < 4; i++) {
+        page.push_back(cv::Point((int) quad[i].x, (int) quad[i].y));
+    }
+    cv::Mat gray = makePage(page, 0, 0);
+    cv::Mat document(size, CV_8UC1);
+    QuadTracker::warp(gray, quad, document);
+    // All page apart from a sliver of resampled border
+    CHECK(cv::countNonZero(document > 128) >= (int) (0.97 * document.total()));
+}
+
+TEST_CASE("EdgeMapCache reuses edges of an unchanged frame", "[cache]") {
+    cv::Mat gray = toGray(makeScene(256, 256));
+    EdgeMapCache cache;
+    cv::Mat first, second;
+
+    CHECK(cache.process(gray, first, &ImageProcessor::detectEdges) == EdgeMapCache::OUTCOME_FULL);
+    CHECK(cache.process(gray, second, &ImageProcessor::detectEdges) == EdgeMapCache::OUTCOME_REUSED);
+    CHECK(mismatchFraction(first, second) == 0.0);
+
+    cache.setEnabled(false);
+    CHECK(cache.process(gray, second, &ImageProcessor::detectEdges) == EdgeMapCache::OUTCOME_FULL);
+    CHECK(cache.stats().frames == 3);
+}
+
+TEST_CASE("MotionGate pads, clips and merges regions", "[motion]") {
+    std::vector<cv::Rect> boxes;
+    boxes.push_back(cv::Rect(10, 10, 20, 20));
+    boxes.push_back(cv::Rect(40, 10, 20, 20));     // 10px from the first: joins once padded
+    boxes.push_back(cv::Rect(150, 150, 20, 20));   // runs off the frame once padded
+
+    MotionGate::mergeRegions(boxes, 8, cv::Size(160, 160));
+    REQUIRE(boxes.size() == 2);
+    CHECK(boxes[0] == cv::Rect(2, 2, 66, 36));
+    CHECK(boxes[1] == cv::Rect(142, 142, 18, 18));
+}
+
+TEST_CASE("MotionGate recomputes only where the scene moves", "[motion]") {
+    cv::Mat background = toGray(makeScene(256, 256));
+    MotionGate gate;
+    cv::Mat edges;
+
+    CHECK(gate.process(background, edges, &ImageProcessor::detectEdges) == MotionGate::OUTCOME_FULL);
+    CHECK(gate.process(background, edges, &ImageProcessor::detectEdges) == MotionGate::OUTCOME_IDLE);
+    CHECK(gate.regions().empty());
+
+    cv::Mat moved = background.clone();
+    cv::rectangle(moved, cv::Rect(170, 180, 40, 40), cv::Scalar(250), cv::FILLED);
+    CHECK(gate.process(moved, edges, &ImageProcessor::detectEdges) == MotionGate::OUTCOME_GATED);
+    std::vector<cv::Rect> regions = gate.regions();
+    REQUIRE(regions.size() == 1);
+    CHECK((regions[0] & cv::Rect(170, 180, 40, 40)) == cv::Rect(170, 180, 40, 40));
+
+    // Cached edges outside the region plus fresh ones inside it match a full run
+    cv::Mat expected;
+    ImageProcessor::detectEdges(moved, expected);
+    CHECK(mismatchFraction(edges, expected) < 0.002);
+
+    MotionGate::Stats stats = gate.stats();
+    CHECK(stats.frames == 3);
+    CHECK(stats.full == 1);
+    CHECK(stats.idle == 1);
+    CHECK(stats.gated == 1);
+    CHECK(stats.pixelsTotal == 3 * 256 * 256);
+    // One full frame plus one small region
+    CHECK(stats.pixelsProcessed < stats.pixelsTotal / 2);
+}
+
+TEST_CASE("MotionGate clears the edges an object leaves behind", "[motion]") {
+    cv::Mat background = toGray(makeScene(256, 256));
+    MotionGate gate;
+    cv::Mat edges;
+
+    gate.process(background, edges, &ImageProcessor::detectEdges);
+    gate.process(background, edges, &ImageProcessor::detectEdges);
+
+    // The blob jumps much further than the padding between two frames
+    const cv::Rect before(20, 150, 40, 40);
+    const cv::Rect after(180, 150, 40, 40);
+    cv::Mat first = background.clone();
+    cv::rectangle(first, before, cv::Scalar(250), cv::FILLED);
+    CHECK(gate.process(first, edges, &ImageProcessor::detectEdges) == MotionGate::OUTCOME_GATED);
+    cv::Mat second = background.clone();
+    cv::rectangle(second, after, cv::Scalar(250), cv::FILLED);
+    CHECK(gate.process(second, edges, &ImageProcessor::detectEdges) == MotionGate::OUTCOME_GATED);
+
+    // Only the new position is foreground, yet the old one is clear within the frame
+    std::vector<cv::Rect> regions = gate.regions();
+    REQUIRE(regions.size() == 1);
+    CHECK((regions[0] & before).area() == 0);
+    cv::Mat expected;
+    ImageProcessor::detectEdges(second, expected);
+    cv::Rect vacated(before.x - 2, before.y - 2, before.width + 4, before.height + 4);
+    // Left behind, the blob's outline would cover a good tenth of this area
+    CHECK(mismatchFraction(edges(vacated), expected(vacated)) < 0.01);
+    CHECK(mismatchFraction(edges, expected) < 0.002);
+
+    // Once the blob is gone as well, its last position is cleared the same way
+    CHECK(gate.process(background, edges, &ImageProcessor::detectEdges) == MotionGate::OUTCOME_GATED);
+    ImageProcessor::detectEdges(background, expected);
+    CHECK(mismatchFraction(edges, expected) < 0.002);
+    CHECK(gate.stats().full == 1);
+}
+
+TEST_CASE("EdgeStabilizer fits a similarity transform", "[stabilizer]") {
+    const double angle = 0.05, scale = 1.02, tx = 3.5, ty = -2.0;
+    std::vector<cv::Point2f> from, to;
+    for (int i = 0; i < 12; i++) {
+        cv::Point2f p((float) (10 + 17 * (i % 4)), (float) (20 + 23 * (i / 4)));
+        from.push_back(p);
+        to.push_back(cv::Point2f((float) (scale * (std::cos(angle) * p.x - std::sin(angle) * p.y) + tx),
+                                 (float) (scale * (std::sin(angle) * p.x + std::cos(angle) * p.y) + ty)));
+    }
+
+    cv::Mat transform;
+    REQUIRE(EdgeStabilizer::fitSimilarity(from, to, transform));
+    CHECK(transform.at<double>(0, 0) == Approx(scale * std::cos(angle)).epsilon(1e-4));
+    CHECK(transform.at<double>(1, 0) == Approx(scale * std::sin(angle)).epsilon(1e-4));
+    CHECK(transform.at<double>(0, 2) == Approx(tx).epsilon(1e-3));
+    CHECK(transform.at<double>(1, 2) == Approx(ty).epsilon(1e-3));
+
+    std::vector<cv::Point2f> same(4, cv::Point2f(5.0f, 5.0f));
+    CHECK_FALSE(EdgeStabilizer::fitSimilarity(same, same, transform));
+}
+
+TEST_CASE("EdgeStabilizer warps edges along a pan", "[stabilizer]") {
+    // Smoothed noise: plenty of corners to track and edges to compare
+    cv::RNG rng(0x5eed);
+    cv::Mat texture(300, 400, CV_8UC1);
+    rng.fill(texture, cv::RNG::UNIFORM, 0, 256);
+    cv::GaussianBlur(texture, texture, cv::Size(0, 0), 3.0);
+    cv::normalize(texture, texture, 0, 255, cv::NORM_MINMAX);
+
+    EdgeStabilizer::Params params;
+    params.refreshInterval = 3;
+    EdgeStabilizer stabilizer;
+    stabilizer.setParams(params);
+    cv::Mat edges, expected;
+
+    // The camera pans right 3 pixels per frame, so the scene moves left
+    CHECK(stabilizer.process(texture(cv::Rect(0, 20, 256, 256)), edges, &ImageProcessor::detectEdges) ==
+          EdgeStabilizer::OUTCOME_FULL);
+    cv::Mat frame = texture(cv::Rect(3, 20, 256, 256));
+    EdgeStabilizer::Outcome outcome = stabilizer.process(frame, edges, &ImageProcessor::detectEdges);
+    // The strip uncovered on the right is recomputed
+    CHECK(outcome == EdgeStabilizer::OUTCOME_PARTIAL);
+    cv::Mat motion = stabilizer.lastMotion();
+    REQUIRE(!motion.empty());
+    CHECK(motion.at<double>(0, 2) == Approx(-3.0).margin(0.5));
+    CHECK(motion.at<double>(1, 2) == Approx(0.0).margin(0.5));
+    ImageProcessor::detectEdges(frame, expected);
+    CHECK(mismatchFraction(edges, expected) < 0.01);
+
+    stabilizer.process(texture(cv::Rect(6, 20, 256, 256)), edges, &ImageProcessor::detectEdges);
+    CHECK(stabilizer.process(texture(cv::Rect(9, 20, 256, 256)), edges, &ImageProcessor::detectEdges) ==
+          EdgeStabilizer::OUTCOME_FULL);
+
+    EdgeStabilizer::Stats stats = stabilizer.stats();
+    CHECK(stats.frames == 4);
+    CHECK(stats.full == 2);
+    CHECK(stats.motionFailures == 0);
+    CHECK(stats.tilesRecomputed > 0);
+}
+
+TEST_CASE("EdgeStabilizer continues fresh edges across a tile seam", "[stabilizer]") {
+    // Texture on top for the tracker, flat below where the seam is checked
+    cv::RNG rng(0x5eed);
+    cv::Mat frame(256, 256, CV_8UC1, cv::Scalar(128));
+    cv::Mat texture = frame(cv::Rect(0, 0, 256, 64));
+    rng.fill(texture, cv::RNG::UNIFORM, 0, 256);
+    cv::GaussianBlur(texture, texture, cv::Size(0, 0), 3.0);
+    cv::normalize(texture, texture, 0, 255, cv::NORM_MINMAX);
+
+    EdgeStabilizer stabilizer;
+    cv::Mat edges, expected;
+    CHECK(stabilizer.process(frame, edges, &ImageProcessor::detectEdges) == EdgeStabilizer::OUTCOME_FULL);
+
+    // A bar appears in tile (2, 3), x 64-95, and pokes 2 pixels into tile (3, 3),
+    // too little for that tile to be recomputed
+    cv::Mat next = frame.clone();
+    cv::rectangle(next, cv::Rect(70, 104, 28, 6), cv::Scalar(250), cv::FILLED);
+    CHECK(stabilizer.process(next, edges, &ImageProcessor::detectEdges) == EdgeStabilizer::OUTCOME_PARTIAL);
+    cv::Mat motion = stabilizer.lastMotion();
+    REQUIRE(!motion.empty());
+    CHECK(motion.at<double>(0, 2) == Approx(0.0).margin(0.5));
+
+    // Cut at the seam, the bar's outline would stay open until the next full pass
+    ImageProcessor::detectEdges(next, expected);
+    cv::Rect band(96, 96, EdgeStabilizer::SEAM_BAND, 24);
+    REQUIRE(cv::countNonZero(expected(band)) > 0);
+    CHECK(mismatchFraction(edges(band), expected(band)) == 0.0);
+    CHECK(mismatchFraction(edges, expected) < 0.002);
+}
@@ -0,0 +1,78 @@
+#ifndef MEMORY_WINDOW_TARGET_H
+#define MEMORY_WINDOW_TARGET_H
+
+#include "window_presenter.h"
+#include <atomic>
+#include <vector>
+
+/**
+ * In-memory WindowTarget for host tests. Buffers are padded to a stride wider
+ * than the frame, like real gralloc buffers, and every posted buffer is kept
+ * so tests can inspect exactly what would have reached the screen.
+ */
+class MemoryWindowTarget : public WindowTarget {
+public:
+    struct Posted {
+        std::vector<uint8_t> pixels;
+        int32_t width;
+        int32_t height;
+        int32_t stride;
+        int32_t format;
+    };
+
+    explicit MemoryWindowTarget(int32_t strideAlign = 64)
+            : failNextLocks(0), configureCalls(0), strideAlign_(strideAlign),
+              width_(0), height_(0), format_(0), locked_(false) {}
+
+    bool configure(int32_t width, int32_t height, int32_t format) override {
+        width_ = width;
+        height_ = height;
+        format_ = format;
+        configureCalls++;
+        return true;
+    }
+
+    bool lock(WindowBuffer& buffer) override {
+        if (locked_ || width_ == 0) {
+            return false;
+        }
+        if (failNextLocks > 0) {
+            failNextLocks--;
+            return false;
+        }
+        int32_t stride = (width_ + strideAlign_ - 1) / strideAlign_ * strideAlign_;
+        int32_t bpp = format_ == WINDOW_PIXEL_RGB_565 ? 2 : 4;
+        current_.pixels.assign((size_t) stride * height_ * bpp, 0xCD);   // garbage, must be overwritten
+        current_.width = width_;
+        current_.height = height_;
+        current_.stride = stride;
+        current_.format = format_;
+
+        buffer.bits = current_.pixels.data();
+        buffer.width = width_;
+        buffer.height = height_;
+        buffer.stride = stride;
+        buffer.format = format_;
+        locked_ = true;
+        return true;
+    }
+
+    void unlockAndPost() override {
+        locked_ = false;
+        posted.push_back(current_);
+    }
+
+    std::vector<Posted> posted;
+    std::atomic<int> failNextLocks;
+    int configureCalls;
+
+private:
+    int32_t strideAlign_;
+    int32_t width_;
+    int32_t height_;
+    int32_t format_;
+    bool locked_;
+    Posted current_;
+};
+
+#endif // MEMORY_WINDOW_TARGET_H
@@ -0,0 +1,320 @@
+#include "window_presenter.h"
+#include "memory_window_target.h"
+
+#include <condition_variable>
+#include <cstdio>
+#include <cstring>
+#include <mutex>
+#include <vector>
+
+// Minimal self-registering test harness; the tests run on the host, no device needed
+
+namespace {
+
+struct TestCase {
+    const char* name;
+    void (*run)();
+};
+
+std::vector<TestCase>& registry() {
+    static std::vector<TestCase> tests;
+    return tests;
+}
+
+struct Registrar {
+    Registrar(const char* name, void (*run)()) {
+        registry().push_back(TestCase{name, run});
+    }
+};
+
+int failures = 0;
+
+#define TEST(name)                                          \
+    void name();                                            \
+    Registrar name##_registrar(#name, name);                \
+    void name()
+
+#define EXPECT_EQ(expected, actual)                                                   \
+    do {                                                                              \
+        long long e_ = (long long) (expected), a_ = (long long) (actual);            \
+        if (e_ != a_) {                                                               \
+            std::printf("  %s:%d: expected %s == %lld, got %lld\n",                  \
+                        __FILE__, __LINE__, #actual, e_, a_);                         \
+            failures++;                                                               \
+        }                                                                             \
+    } while (0)
+
+#define EXPECT_TRUE(cond)                                                             \
+    do {                                                                              \
+        if (!(cond)) {                                                                \
+            std::printf("  %s:%d: expected %s\n", __FILE__, __LINE__, #cond);        \
+            failures++;                                                               \
+        }                                                                             \
+    } while (0)
+
+std::vector<uint8_t> makeRgba(int width, int height, uint8_t seed) {
+    std::vector<uint8_t> pixels((size_t) width * height * 4);
+    for (size_t i = 0; i < pixels.size(); i++) {
+        pixels[i] = (uint8_t) (seed + i * 7);
+    }
+    return pixels;
+}
+
+const uint8_t* pixelAt(const MemoryWindowTarget::Posted& buffer, int x, int y) {
+    int bpp = buffer.format == WINDOW_PIXEL_RGB_565 ? 2 : 4;
+    return buffer.pixels.data() + ((size_t) y * buffer.stride + x) * bpp;
+}
+
+uint16_t pixel565At(const MemoryWindowTarget::Posted& buffer, int x, int y) {
+    uint16_t value;
+    std::memcpy(&value, pixelAt(buffer, x, y), 2);
+    return value;
+}
+
+/** Holds the render thread inside lock() until released */
+class GatedWindowTarget : public MemoryWindowTarget {
+public:
+    GatedWindowTarget() : open_(false), waiting_(false) {}
+
+    bool lock(WindowBuffer& buffer) override {
+        std::unique_lock<std::mutex> guard(mutex_);
+        waiting_ = true;
+        changed_.notify_all();
+        changed_.wait(guard, [this] { return open_; });
+        guard.unlock();
+        return MemoryWindowTarget::lock(buffer);
+    }
+
+    void waitUntilBlocked() {
+        std::unique_lock<std::mutex> guard(mutex_);
+        changed_.wait(guard, [this] { return waiting_; });
+    }
+
+    void open() {
+        std::lock_guard<std::mutex> guard(mutex_);
+        open_ = true;
+        changed_.notify_all();
+    }
+
+private:
+    std::mutex mutex_;
+    std::condition_variable changed_;
+    bool open_;
+    bool waiting_;
+};
+
+} // namespace
+
+// ==================== Conversion ====================
+
+TEST(convertRgbaHonoursStride) {
+    const int w = 5, h = 3;
+    std::vector<uint8_t> src = makeRgba(w, h, 1);
+    const int stride = 8;
+    std::vector<uint8_t> dst((size_t) stride * h * 4, 0xCD);
+    WindowBuffer buffer = {dst.data(), w, h, stride, WINDOW_PIXEL_RGBA_8888};
+
+    EXPECT_TRUE(WindowPresenter::convert(src.data(), w, h, w * 4, 4, buffer));
+    for (int y = 0; y < h; y++) {
+        EXPECT_EQ(0, std::memcmp(&dst[(size_t) y * stride * 4], &src[(size_t) y * w * 4], w * 4));
+        EXPECT_EQ(0xCD, dst[((size_t) y * stride + w) * 4]);   // row padding is left alone
+    }
+}
+
+TEST(convertGrayToRgbaIsOpaque) {
+    const uint8_t gray[4] = {0, 64, 128, 255};
+    uint8_t dst[16];
+    WindowBuffer buffer = {dst, 4, 1, 4, WINDOW_PIXEL_RGBX_8888};
+
+    EXPECT_TRUE(WindowPresenter::convert(gray, 4, 1, 4, 1, buffer));
+    for (int x = 0; x < 4; x++) {
+        EXPECT_EQ(gray[x], dst[x * 4]);
+        EXPECT_EQ(gray[x], dst[x * 4 + 1]);
+        EXPECT_EQ(gray[x], dst[x * 4 + 2]);
+        EXPECT_EQ(255, dst[x * 4 + 3]);
+    }
+}
+
+TEST(convertToRgb565PacksRedHigh) {
+    const uint8_t rgba[12] = {255, 0, 0, 255,   0, 255, 0, 255,   0, 0, 255, 255};
+    const uint8_t gray[3] = {255, 0, 8};
+    uint16_t dst[4 * 2];
+    WindowBuffer buffer = {dst, 3, 1, 4, WINDOW_PIXEL_RGB_565};
+
+    EXPECT_TRUE(WindowPresenter::convert(rgba, 3, 1, 12, 4, buffer));
+    EXPECT_EQ(0xF800, dst[0]);
+    EXPECT_EQ(0x07E0, dst[1]);
+    EXPECT_EQ(0x001F, dst[2]);
+
+    EXPECT_TRUE(WindowPresenter::convert(gray, 3, 1, 3, 1, buffer));
+    EXPECT_EQ(0xFFFF, dst[0]);
+    EXPECT_EQ(0x0000, dst[1]);
+    EXPECT_EQ((1 << 11) | (2 << 5) | 1, dst[2]);
+}
+
+TEST(convertClearsAreaOutsideSmallerFrame) {
+    const int w = 2, h = 2;
+    std::vector<uint8_t> src(w * h * 4, 0x11);
+    std::vector<uint8_t> dst(4 * 3 * 4, 0xCD);
+    WindowBuffer buffer = {dst.data(), 3, 3, 4, WINDOW_PIXEL_RGBA_8888};
+
+    EXPECT_TRUE(WindowPresenter::convert(src.data(), w, h, w * 4, 4, buffer));
+    EXPECT_EQ(0x11, dst[0]);
+    EXPECT_EQ(0, dst[2 * 4]);                 // right of the frame
+    EXPECT_EQ(0, dst[(2 * 4 + 1) * 4]);       // below the frame
+    EXPECT_EQ(0xCD, dst[3 * 4]);              // stride padding
+}
+
+TEST(convertRejectsUnknownFormat) {
+    uint8_t src[4] = {0};
+    uint8_t dst[4];
+    WindowBuffer buffer = {dst, 1, 1, 1, 0x7F};
+    EXPECT_TRUE(!WindowPresenter::convert(src, 1, 1, 4, 4, buffer));
+}
+
+// ==================== Presenter ====================
+
+TEST(presentsSubmittedFrame) {
+    WindowPresenter presenter;
+    MemoryWindowTarget* target = new MemoryWindowTarget();
+    presenter.attach(std::unique_ptr<WindowTarget>(target), WINDOW_PIXEL_RGBA_8888);
+
+    const int w = 33, h = 7;
+    std::vector<uint8_t> frame = makeRgba(w, h, 3);
+    EXPECT_TRUE(presenter.submit(frame.data(), w, h, w * 4, 4));
+    presenter.flush();
+
+    EXPECT_EQ(1, (int) target->posted.size());
+    EXPECT_EQ(1, target->configureCalls);
+    const MemoryWindowTarget::Posted& posted = target->posted[0];
+    EXPECT_EQ(w, posted.width);
+    EXPECT_EQ(64, posted.stride);
+    EXPECT_EQ(0, std::memcmp(pixelAt(posted, 0, h - 1), &frame[(size_t) (h - 1) * w * 4], w * 4));
+
+    WindowPresenter::Stats stats = presenter.stats();
+    EXPECT_EQ(1, stats.submitted);
+    EXPECT_EQ(1, stats.presented);
+    EXPECT_EQ(0, stats.dropped);
+}
+
+TEST(submitHonoursSourceRowStep) {
+    WindowPresenter presenter;
+    MemoryWindowTarget* target = new MemoryWindowTarget();
+    presenter.attach(std::unique_ptr<WindowTarget>(target), WINDOW_PIXEL_RGB_565);
+
+    // 4x2 gray region of a wider image, as an OpenCV ROI would hand it over
+    const uint8_t image[2 * 6] = {255, 255, 255, 255, 9, 9,
+                                  0, 0, 0, 0, 9, 9};
+    EXPECT_TRUE(presenter.submit(image, 4, 2, 6, 1));
+    presenter.flush();
+
+    EXPECT_EQ(1, (int) target->posted.size());
+    EXPECT_EQ(0xFFFF, pixel565At(target->posted[0], 3, 0));
+    EXPECT_EQ(0x0000, pixel565At(target->posted[0], 0, 1));
+}
+
+TEST(geometryReconfiguredOnlyOnSizeChange) {
+    WindowPresenter presenter;
+    MemoryWindowTarget* target = new MemoryWindowTarget();
+    presenter.attach(std::unique_ptr<WindowTarget>(target), WINDOW_PIXEL_RGBA_8888);
+
+    std::vector<uint8_t> small = makeRgba(8, 8, 0);
+    std::vector<uint8_t> large = makeRgba(16, 8, 0);
+    for (int i = 0; i < 3; i++) {
+        presenter.submit(small.data(), 8, 8, 32, 4);
+        presenter.flush();
+    }
+    presenter.submit(large.data(), 16, 8, 64, 4);
+    presenter.flush();
+
+    EXPECT_EQ(2, target->configureCalls);
+    EXPECT_EQ(4, (int) target->posted.size());
+    EXPECT_EQ(16, target->posted.back().width);
+}
+
+TEST(newestFrameReplacesPendingOne) {
+    WindowPresenter presenter;
+    GatedWindowTarget* target = new GatedWindowTarget();
+    presenter.attach(std::unique_ptr<WindowTarget>(target), WINDOW_PIXEL_RGBA_8888);
+
+    const int w = 4, h = 4;
+    std::vector<uint8_t> first = makeRgba(w, h, 10);
+    std::vector<uint8_t> second = makeRgba(w, h, 20);
+    std::vector<uint8_t> third = makeRgba(w, h, 30);
+
+    EXPECT_TRUE(presenter.submit(first.data(), w, h, w * 4, 4));
+    target->waitUntilBlocked();                  // render thread now owns the first slot
+    EXPECT_TRUE(presenter.submit(second.data(), w, h, w * 4, 4));
+    EXPECT_TRUE(presenter.submit(third.data(), w, h, w * 4, 4));
+    target->open();
+    presenter.flush();
+
+    EXPECT_EQ(2, (int) target->posted.size());
+    EXPECT_EQ(0, std::memcmp(target->posted[1].pixels.data(), third.data(), w * 4));
+    WindowPresenter::Stats stats = presenter.stats();
+    EXPECT_EQ(3, stats.submitted);
+    EXPECT_EQ(2, stats.presented);
+    EXPECT_EQ(1, stats.dropped);
+}
+
+TEST(lockFailureIsCountedAndRecovers) {
+    WindowPresenter presenter;
+    MemoryWindowTarget* target = new MemoryWindowTarget();
+    target->failNextLocks = 1;
+    presenter.attach(std::unique_ptr<WindowTarget>(target), WINDOW_PIXEL_RGBA_8888);
+
+    std::vector<uint8_t> frame = makeRgba(4, 4, 0);
+    presenter.submit(frame.data(), 4, 4, 16, 4);
+    presenter.flush();
+    presenter.submit(frame.data(), 4, 4, 16, 4);
+    presenter.flush();
+
+    WindowPresenter::Stats stats = presenter.stats();
+    EXPECT_EQ(1, stats.lockFailures);
+    EXPECT_EQ(1, stats.presented);
+    EXPECT_EQ(1, (int) target->posted.size());
+}
+
+TEST(submitWithoutTargetIsRejected) {
+    WindowPresenter presenter;
+    std::vector<uint8_t> frame = makeRgba(4, 4, 0);
+    EXPECT_TRUE(!presenter.submit(frame.data(), 4, 4, 16, 4));
+
+    presenter.attach(std::unique_ptr<WindowTarget>(new MemoryWindowTarget()), WINDOW_PIXEL_RGBA_8888);
+    EXPECT_TRUE(!presenter.submit(frame.data(), 4, 4, 16, 3));   // 3 channels unsupported
+    presenter.detach();
+    EXPECT_TRUE(!presenter.isAttached());
+    EXPECT_TRUE(!presenter.submit(frame.data(), 4, 4, 16, 4));
+}
+
+TEST(detachDropsPendingFrame) {
+    WindowPresenter presenter;
+    GatedWindowTarget* target = new GatedWindowTarget();
+    presenter.attach(std::unique_ptr<WindowTarget>(target), WINDOW_PIXEL_RGBA_8888);
+
+    std::vector<uint8_t> frame = makeRgba(4, 4, 0);
+    presenter.submit(frame.data(), 4, 4, 16, 4);
+    target->waitUntilBlocked();
+    presenter.submit(frame.data(), 4, 4, 16, 4);
+    target->open();
+    presenter.detach();
+
+    WindowPresenter::Stats stats = presenter.stats();
+    EXPECT_EQ(2, stats.submitted);
+    EXPECT_EQ(stats.submitted, stats.presented + stats.dropped);
+}
+
+int main() {
+    int failedTests = 0;
+    for (const TestCase& test : registry()) {
+        int before = failures;
+        test.run();
+        bool passed = failures == before;
+        std::printf("[%s] %s\n", passed ? "  OK  " : " FAIL ", test.name);
+        if (!passed) {
+            failedTests++;
+        }
+    }
+    std::printf("%d of %d tests failed\n", failedTests, (int) registry().size());
+    return failedTests == 0 ? 0 : 1;
+}
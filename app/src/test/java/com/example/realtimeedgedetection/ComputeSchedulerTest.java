@@ -0,0 +1,142 @@
+package com.example.realtimeedgedetection;
+
+import com.example.realtimeedgedetection.ComputeScheduler.Priority;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs ComputeScheduler with real workers held busy by latch tasks, so the
+ * order in which queued work is picked is deterministic.
+ */
+public class ComputeSchedulerTest {
+    private static final long TIMEOUT_MS = 5_000;
+
+    private ComputeScheduler scheduler;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        if (scheduler != null) {
+            scheduler.shutdown();
+            assertTrue(scheduler.awaitTermination(TIMEOUT_MS));
+        }
+    }
+
+    /** Queue a task that holds its worker until release; returns a latch counted down when it starts */
+    private CountDownLatch hold(Priority priority) {
+        CountDownLatch started = new CountDownLatch(1);
+        assertTrue(scheduler.execute(priority, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        return started;
+    }
+
+    @Test
+    public void higherClassRunsFirst() throws InterruptedException {
+        scheduler = new ComputeScheduler("test", 1);
+        assertTrue(hold(Priority.PREVIEW).await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        List<Priority> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(3);
+        for (Priority priority : new Priority[] {Priority.BACKGROUND, Priority.IO, Priority.PREVIEW}) {
+            scheduler.execute(priority, () -> {
+                order.add(priority);
+                done.countDown();
+            });
+        }
+        release.countDown();
+
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList(Priority.PREVIEW, Priority.IO, Priority.BACKGROUND), order);
+    }
+
+    @Test
+    public void lowerClassesLeavePreviewReserve() throws InterruptedException {
+        scheduler = new ComputeScheduler("test", 4);
+        assertEquals(3, scheduler.getLimit(Priority.IO));
+        assertEquals(1, scheduler.getLimit(Priority.BACKGROUND));
+
+        // More background and I/O work than the pool has workers. Tasks of a
+        // class start in queue order, so once the first background task and
+        // the first two I/O tasks run, the caps hold the rest back.
+        List<CountDownLatch> background = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            background.add(hold(Priority.BACKGROUND));
+        }
+        assertTrue(background.get(0).await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        List<CountDownLatch> io = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            io.add(hold(Priority.IO));
+        }
+        assertTrue(io.get(0).await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(io.get(1).await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, scheduler.getStats(Priority.BACKGROUND).running);
+        assertEquals(2, scheduler.getStats(Priority.IO).running);
+
+        CountDownLatch preview = new CountDownLatch(1);
+        assertTrue(scheduler.execute(Priority.PREVIEW, preview::countDown));
+        assertTrue(preview.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void errorReplacesWorker() throws InterruptedException {
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        scheduler = new ComputeScheduler("test", 1, (priority, failure) -> failures.add(failure));
+        Error error = new Error("task error");
+        assertTrue(scheduler.execute(Priority.IO, () -> {
+            throw error;
+        }));
+
+        // Only a replacement for the single worker can run this
+        assertTrue(hold(Priority.PREVIEW).await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, scheduler.getThreadCount());
+        assertEquals(Collections.singletonList(error), failures);
+        ComputeScheduler.Stats stats = scheduler.getStats(Priority.IO);
+        assertEquals(1, stats.failed);
+        assertEquals(0, stats.running);
+
+        // The dead worker has exited; awaitTermination must wait for its replacement
+        scheduler.shutdown();
+        assertFalse(scheduler.awaitTermination(100));
+        release.countDown();
+        assertTrue(scheduler.awaitTermination(TIMEOUT_MS));
+    }
+
+    @Test
+    public void fullQueueRejects() throws InterruptedException {
+        scheduler = new ComputeScheduler("test", 1);
+        assertTrue(hold(Priority.PREVIEW).await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        int accepted = 0;
+        while (scheduler.execute(Priority.CAPTURE, () -> {})) {
+            accepted++;
+        }
+        assertEquals(Priority.CAPTURE.capacity, accepted);
+        try {
+            scheduler.executor(Priority.CAPTURE).execute(() -> {});
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException expected) {
+            // queue still full
+        }
+        ComputeScheduler.Stats stats = scheduler.getStats(Priority.CAPTURE);
+        assertEquals(2, stats.rejected);
+        assertEquals(accepted, stats.pending);
+    }
+}
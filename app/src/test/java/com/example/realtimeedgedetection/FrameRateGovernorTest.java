@@ -0,0 +1,153 @@
+package com.example.realtimeedgedetection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives FrameRateGovernor with a simulated clock at 30 fps.
+ */
+public class FrameRateGovernorTest {
+    private static final long MS = 1_000_000L;
+    private static final long BUDGET_NS = 33 * MS;
+    private static final long FRAME_INTERVAL_NS = 33 * MS;
+
+    private long now;
+    private FrameRateGovernor governor;
+    private final List<FrameRateGovernor.Settings> changes = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        now = 0;
+        changes.clear();
+        governor = new FrameRateGovernor(BUDGET_NS, () -> now);
+        governor.setListener(changes::add);
+    }
+
+    /** Feed frames with a fixed latency for the given simulated duration */
+    private void run(long durationNs, long latencyNs, int queueDepth) {
+        long end = now + durationNs;
+        while (now < end) {
+            now += FRAME_INTERVAL_NS;
+            if (governor.shouldProcess()) {
+                governor.onFrameProcessed(latencyNs, queueDepth);
+            }
+        }
+    }
+
+    @Test
+    public void staysAtFullQualityUnderBudget() {
+        run(10_000 * MS, 15 * MS, 0);
+        assertEquals(0, governor.getSettings().level);
+        assertTrue(changes.isEmpty());
+        assertEquals(15 * MS, governor.getP95Nanos());
+    }
+
+    @Test
+    public void stepsDownWhileOverBudget() {
+        run(1_500 * MS, 50 * MS, 0);
+        assertEquals(1, governor.getSettings().level);
+
+        run(20_000 * MS, 50 * MS, 0);
+        assertEquals(FrameRateGovernor.MAX_LEVEL, governor.getSettings().level);
+        assertTrue(governor.getSettings().frameSkip > 1);
+        for (int i = 0; i < changes.size(); i++) {
+            assertEquals(i + 1, changes.get(i).level);
+        }
+    }
+
+    @Test
+    public void p95IgnoresOccasionalSpikes() {
+        // One 80ms frame in 30 stays above the 95th percentile cut
+        long end = now + 10_000 * MS;
+        int frame = 0;
+        while (now < end) {
+            now += FRAME_INTERVAL_NS;
+            governor.shouldProcess();
+            governor.onFrameProcessed(frame++ % 30 == 0 ? 80 * MS : 15 * MS, 0);
+        }
+        assertEquals(0, governor.getSettings().level);
+    }
+
+    @Test
+    public void recoversOnlyAfterHoldPeriod() {
+        run(2_000 * MS, 50 * MS, 0);
+        int degraded = governor.getSettings().level;
+        assertTrue(degraded > 0);
+
+        // Fast frames, but not for long enough to step back up. Slow samples
+        // still in the window may push it down once more, never up.
+        run(FrameRateGovernor.UPGRADE_HOLD_NS / 2, 10 * MS, 0);
+        assertTrue(governor.getSettings().level >= degraded);
+
+        run(60_000 * MS, 10 * MS, 0);
+        assertEquals(0, governor.getSettings().level);
+    }
+
+    @Test
+    public void latencyNearBudgetHoldsLevel() {
+        run(1_500 * MS, 50 * MS, 0);
+        run(2_000 * MS, 28 * MS, 0); // let the slow samples age out
+        int level = governor.getSettings().level;
+        assertTrue(level > 0);
+
+        // Under budget but inside the headroom band: neither up nor down
+        run(30_000 * MS, 28 * MS, 0);
+        assertEquals(level, governor.getSettings().level);
+    }
+
+    @Test
+    public void queuePressureStepsDownEvenWhenFast() {
+        run(1_500 * MS, 10 * MS, FrameRateGovernor.QUEUE_PRESSURE_DEPTH);
+        assertTrue(governor.getSettings().level > 0);
+    }
+
+    @Test
+    public void thermalStatusSetsFloor() {
+        governor.setThermalStatus(FrameRateGovernor.THERMAL_SEVERE);
+        int floor = FrameRateGovernor.thermalFloor(FrameRateGovernor.THERMAL_SEVERE);
+        assertEquals(floor, governor.getSettings().level);
+        assertEquals(1, changes.size());
+
+        run(60_000 * MS, 5 * MS, 0);
+        assertEquals(floor, governor.getSettings().level);
+
+        governor.setThermalStatus(FrameRateGovernor.THERMAL_NONE);
+        run(60_000 * MS, 5 * MS, 0);
+        assertEquals(0, governor.getSettings().level);
+    }
+
+    @Test
+    public void frameSkipPassesThroughBetweenProcessedFrames() {
+        governor.setThermalStatus(FrameRateGovernor.THERMAL_CRITICAL);
+        int skip = governor.getSettings().frameSkip;
+        assertTrue(skip > 1);
+
+        int processed = 0;
+        for (int i = 0; i < skip * 10; i++) {
+            if (governor.shouldProcess()) {
+                processed++;
+            }
+        }
+        assertEquals(10, processed);
+    }
+
+    @Test
+    public void sameInputsGiveSameDecisions() {
+        run(5_000 * MS, 45 * MS, 1);
+        run(10_000 * MS, 12 * MS, 0);
+        List<FrameRateGovernor.Settings> first = new ArrayList<>(changes);
+
+        setUp();
+        run(5_000 * MS, 45 * MS, 1);
+        run(10_000 * MS, 12 * MS, 0);
+        assertEquals(first.size(), changes.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), changes.get(i));
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.realtimeedgedetection.recording;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives FrameRecorder with an in-memory sink that can be held back to
+ * simulate a slow encoder.
+ */
+public class FrameRecorderTest {
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 2;
+    private static final long FRAME_NS = 33_000_000L;
+
+    /** Records the first byte and timestamp of every frame */
+    private static class MemorySink implements VideoSink {
+        final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Long> timestamps = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch release;
+        final CountDownLatch firstWrite = new CountDownLatch(1);
+        int openWidth = -1;
+        int openHeight = -1;
+        volatile boolean closed = false;
+        IOException failOnWrite;
+
+        MemorySink(boolean blocked) {
+            release = new CountDownLatch(blocked ? 1 : 0);
+        }
+
+        @Override
+        public void open(int width, int height) {
+            openWidth = width;
+            openHeight = height;
+        }
+
+        @Override
+        public boolean write(byte[] rgba, long timestampUs) throws IOException {
+            firstWrite.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (failOnWrite != null) {
+                throw failOnWrite;
+            }
+            values.add((int) rgba[0]);
+            timestamps.add(timestampUs);
+            return true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static byte[] frame(int value) {
+        byte[] rgba = new byte[WIDTH * HEIGHT * 4];
+        rgba[0] = (byte) value;
+        return rgba;
+    }
+
+    @Test
+    public void writesFramesInOrderWithRelativeTimestamps() throws Exception {
+        MemorySink sink = new MemorySink(false);
+        FrameRecorder recorder = new FrameRecorder(sink, 4);
+        recorder.start();
+
+        long base = 5_000_000_000L;
+        for (int i = 0; i < 3; i++) {
+            assertTrue(recorder.offer(frame(i), WIDTH, HEIGHT, base + i * FRAME_NS));
+            Thread.sleep(20);   // let the encoder keep up so nothing is dropped
+        }
+        FrameRecorder.Stats stats = recorder.stop();
+
+        assertEquals(WIDTH, sink.openWidth);
+        assertEquals(HEIGHT, sink.openHeight);
+        assertEquals(3, stats.written);
+        assertEquals(0, stats.dropped());
+        assertEquals(Arrays.asList(0, 1, 2), sink.values);
+        assertEquals(Arrays.asList(0L, 33_000L, 66_000L), sink.timestamps);
+        assertEquals(66_000L, stats.durationUs);
+        assertTrue(sink.closed);
+    }
+
+    @Test
+    public void keepsPacingAcrossASourceSwitch() throws Exception {
+        // The pipeline and the camera sessions offer from their own threads, both
+        // stamping frames with System.nanoTime(); a recording may switch mid-way
+        final MemorySink sink = new MemorySink(false);
+        final FrameRecorder recorder = new FrameRecorder(sink, 8);
+        recorder.start();
+
+        long start = System.nanoTime();
+        for (int source = 0; source < 2; source++) {
+            final int first = source * 3;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = first; i < first + 3; i++) {
+                        recorder.offer(frame(i), WIDTH, HEIGHT, System.nanoTime());
+                    }
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+        long elapsedUs = (System.nanoTime() - start) / 1000;
+        FrameRecorder.Stats stats = recorder.stop();
+
+        assertEquals(6, stats.written);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), sink.values);
+        for (int i = 1; i < sink.timestamps.size(); i++) {
+            assertTrue("timestamps " + sink.timestamps, sink.timestamps.get(i) >= sink.timestamps.get(i - 1));
+        }
+        assertTrue(stats.durationUs <= elapsedUs);
+    }
+
+    @Test
+    public void dropsInsteadOfBlockingWhenTheSinkIsBehind() throws Exception {
+        MemorySink sink = new MemorySink(true);
+        FrameRecorder recorder = new FrameRecorder(sink, 2);
+        recorder.start();
+
+        // The encoder takes frame 0 and stalls in write; frames 1 and 2 fill the ring
+        assertTrue(recorder.offer(frame(0), WIDTH, HEIGHT, 0));
+        assertTrue(sink.firstWrite.await(5, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+        int accepted = 0;
+        for (int i = 1; i <= 10; i++) {
+            if (recorder.offer(frame(i), WIDTH, HEIGHT, i * FRAME_NS)) {
+                accepted++;
+            }
+        }
+        assertTrue("offer must not wait for the sink", System.nanoTime() - start < 1_000_000_000L);
+        assertEquals(1, accepted);   // one slot left while frame 0 is being written
+
+        sink.release.countDown();
+        FrameRecorder.Stats stats = recorder.stop();
+
+        assertEquals(11, stats.offered);
+        assertEquals(2, stats.queued);
+        assertEquals(2, stats.written);
+        assertEquals(9, stats.droppedFull);
+        assertEquals(Arrays.asList(0, 1), sink.values);
+        // The kept frame keeps its capture time, so the gap stays visible to the sink
+        assertEquals(Long.valueOf(FRAME_NS / 1000), sink.timestamps.get(1));
+    }
+
+    @Test
+    public void dropsFramesOfAnotherSize() throws Exception {
+        MemorySink sink = new MemorySink(false);
+        FrameRecorder recorder = new FrameRecorder(sink);
+        recorder.start();
+
+        assertTrue(recorder.offer(frame(1), WIDTH, HEIGHT, 0));
+        assertFalse(recorder.offer(new byte[2 * 2 * 4], 2, 2, FRAME_NS));
+        FrameRecorder.Stats stats = recorder.stop();
+
+        assertEquals(1, stats.written);
+        assertEquals(1, stats.droppedOther);
+    }
+
+    @Test
+    public void sinkFailureEndsRecording() throws Exception {
+        MemorySink sink = new MemorySink(false);
+        sink.failOnWrite = new IOException("disk full");
+        FrameRecorder recorder = new FrameRecorder(sink);
+        recorder.start();
+
+        assertTrue(recorder.offer(frame(1), WIDTH, HEIGHT, 0));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (recorder.isRecording() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertFalse(recorder.isRecording());
+        assertFalse(recorder.offer(frame(2), WIDTH, HEIGHT, FRAME_NS));
+
+        FrameRecorder.Stats stats = recorder.stop();
+        assertEquals("disk full", stats.error.getMessage());
+        assertEquals(0, stats.written);
+        assertTrue(sink.closed);
+    }
+
+    @Test
+    public void stopWithoutStartClosesTheSink() throws Exception {
+        MemorySink sink = new MemorySink(false);
+        FrameRecorder.Stats stats = new FrameRecorder(sink).stop();
+        assertTrue(sink.closed);
+        assertEquals(0, stats.offered);
+    }
+}
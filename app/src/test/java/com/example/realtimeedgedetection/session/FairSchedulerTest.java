@@ -0,0 +1,170 @@
+package com.example.realtimeedgedetection.session;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs FairScheduler on a real thread pool; a latch task holds the workers
+ * busy while the queues are filled, so dispatch order is deterministic.
+ */
+public class FairSchedulerTest {
+    private static final long TIMEOUT_MS = 5_000;
+
+    private ExecutorService pool;
+    private FairScheduler scheduler;
+
+    private FairScheduler create(int parallelism) {
+        pool = Executors.newFixedThreadPool(parallelism);
+        return new FairScheduler(pool, parallelism);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            assertTrue(scheduler.awaitTermination(TIMEOUT_MS));
+            pool.shutdownNow();
+        }
+    }
+
+    /** Occupy one worker until the returned latch is counted down */
+    private CountDownLatch block(FairScheduler.Client client) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        client.submit(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        return release;
+    }
+
+    @Test
+    public void sharesWorkersByWeight() throws InterruptedException {
+        scheduler = create(1);
+        FairScheduler.Client gate = scheduler.register("gate", 1, 1, 1);
+        FairScheduler.Client heavy = scheduler.register("heavy", 1, 2, 16);
+        FairScheduler.Client light = scheduler.register("light", 1, 1, 16);
+
+        CountDownLatch release = block(gate);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(12);
+        for (int i = 0; i < 6; i++) {
+            heavy.submit(() -> { order.add("heavy"); done.countDown(); });
+            light.submit(() -> { order.add("light"); done.countDown(); });
+        }
+        release.countDown();
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        // While both have work, heavy gets two turns for each of light's
+        assertEquals(6, Collections.frequency(order.subList(0, 9), "heavy"));
+        assertEquals(3, Collections.frequency(order.subList(0, 9), "light"));
+        // Counters are updated after a task returns
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(TIMEOUT_MS));
+        assertEquals(6, heavy.getCompleted());
+        assertEquals(6, light.getCompleted());
+    }
+
+    @Test
+    public void fullQueueDropsOldest() throws InterruptedException {
+        scheduler = create(1);
+        FairScheduler.Client client = scheduler.register("camera", 1, 1, 2);
+
+        CountDownLatch release = block(client);
+        List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final int frame = i;
+            tasks.add(() -> { ran.add(frame); done.countDown(); });
+        }
+        assertNull(client.submit(tasks.get(0)));
+        assertNull(client.submit(tasks.get(1)));
+        assertSame(tasks.get(0), client.submit(tasks.get(2)));
+        assertSame(tasks.get(1), client.submit(tasks.get(3)));
+        release.countDown();
+
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList(2, 3), ran);
+        assertEquals(2, client.getDropped());
+        assertEquals(5, client.getSubmitted());
+    }
+
+    @Test
+    public void budgetCapsConcurrentTasks() throws InterruptedException {
+        scheduler = create(4);
+        FairScheduler.Client client = scheduler.register("camera", 2, 1, 64);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(32);
+        for (int i = 0; i < 32; i++) {
+            client.submit(() -> {
+                int now = running.incrementAndGet();
+                peak.accumulateAndGet(now, Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(peak.get() <= 2);
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(TIMEOUT_MS));
+        assertEquals(32, client.getCompleted());
+        assertTrue(client.getBusyNanos() > 0);
+    }
+
+    @Test
+    public void failedTaskIsReported() throws InterruptedException {
+        pool = Executors.newFixedThreadPool(1);
+        List<String> failed = Collections.synchronizedList(new ArrayList<>());
+        scheduler = new FairScheduler(pool, 1,
+                (client, failure) -> failed.add(client.getName() + ": " + failure.getMessage()));
+        FairScheduler.Client client = scheduler.register("camera", 1, 1, 4);
+
+        CountDownLatch done = new CountDownLatch(1);
+        client.submit(() -> {
+            throw new IllegalStateException("bad frame");
+        });
+        client.submit(done::countDown);
+
+        // The runner survives the exception and takes the next task
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(Collections.singletonList("camera: bad frame"), failed);
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(TIMEOUT_MS));
+        assertEquals(1, client.getFailed());
+        assertEquals(2, client.getCompleted());
+    }
+
+    @Test
+    public void closedClientRejectsTasks() {
+        scheduler = create(1);
+        FairScheduler.Client client = scheduler.register("camera", 1, 1, 2);
+        client.close();
+        Runnable task = () -> {};
+        assertSame(task, client.submit(task));
+        assertTrue(scheduler.getClients().isEmpty());
+    }
+}
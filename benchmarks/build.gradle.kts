@@ -0,0 +1,44 @@
+// JMH suites for the image pipeline, run on a desktop JVM:
+//
+//   ./gradlew :benchmarks:jmh -PopencvJavaLibDir=/usr/local/share/java/opencv4
+//
+// Needs a desktop OpenCV 4.12 with Java bindings (the directory holding
+// libopencv_java4120.so), CMake and a C++ compiler; the native side is
+// :desktop's edgecore_jni. Results go to build/results/jmh/results.json.
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+val opencvJavaLibDir = providers.gradleProperty("opencvJavaLibDir")
+    .orElse(providers.environmentVariable("OPENCV_JAVA_LIB_DIR"))
+    .orElse("/usr/local/share/java/opencv4")
+val edgeCoreJniDir = project(":desktop").layout.buildDirectory.dir("native")
+
+dependencies {
+    jmhImplementation(project(":desktop"))
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    jvmArgsAppend.addAll(
+        "-Djava.library.path=${edgeCoreJniDir.get().asFile.path}:${opencvJavaLibDir.get()}",
+        "-Dedge.bench.imageDir=${rootProject.projectDir.path}"
+    )
+    // e.g. -Pjmh.includes=EdgeDetection to run one suite
+    providers.gradleProperty("jmh.includes").orNull?.let { includes.add(it) }
+}
+
+tasks.named("jmh") {
+    dependsOn(":desktop:buildEdgeCoreJni")
+}
@@ -0,0 +1,86 @@
+package com.example.realtimeedgedetection.benchmarks;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+
+/**
+ * Inputs shared by the suites. Every run starts from the same checked-in
+ * photo (repo root), resized to the requested resolution, so results from
+ * different machines and commits measure the same pixels.
+ */
+final class BenchmarkImages {
+
+    /** Directory holding the reference images; the Gradle build points it at the repo root */
+    static final String IMAGE_DIR_PROPERTY = "edge.bench.imageDir";
+    static final String REFERENCE_IMAGE = "IMG-20251123-WA0003.jpg";
+
+    private static boolean loaded = false;
+
+    private BenchmarkImages() {
+    }
+
+    static synchronized void loadOpenCv() {
+        if (!loaded) {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+            loaded = true;
+        }
+    }
+
+    /** Reference image as RGBA at "WIDTHxHEIGHT" */
+    static Mat rgba(String resolution) {
+        loadOpenCv();
+        File file = new File(System.getProperty(IMAGE_DIR_PROPERTY, "."), REFERENCE_IMAGE);
+        Mat bgr = Imgcodecs.imread(file.getPath(), Imgcodecs.IMREAD_COLOR);
+        if (bgr.empty()) {
+            throw new IllegalStateException("Cannot read reference image " + file.getAbsolutePath());
+        }
+
+        Size size = parseResolution(resolution);
+        Mat resized = new Mat();
+        int interpolation = size.width < bgr.cols() ? Imgproc.INTER_AREA : Imgproc.INTER_LINEAR;
+        Imgproc.resize(bgr, resized, size, 0, 0, interpolation);
+        Mat rgba = new Mat();
+        Imgproc.cvtColor(resized, rgba, Imgproc.COLOR_BGR2RGBA);
+        bgr.release();
+        resized.release();
+        return rgba;
+    }
+
+    /** NV21 frame (full-res Y plane, then interleaved V/U at half resolution) as delivered by the camera */
+    static Mat nv21(Mat rgba) {
+        int width = rgba.cols();
+        int height = rgba.rows();
+        Mat i420 = new Mat();
+        Imgproc.cvtColor(rgba, i420, Imgproc.COLOR_RGBA2YUV_I420);
+        byte[] planar = new byte[(int) i420.total()];
+        i420.get(0, 0, planar);
+        i420.release();
+
+        int ySize = width * height;
+        int chromaSize = ySize / 4;
+        byte[] nv21 = new byte[planar.length];
+        System.arraycopy(planar, 0, nv21, 0, ySize);
+        for (int i = 0; i < chromaSize; i++) {
+            nv21[ySize + 2 * i] = planar[ySize + chromaSize + i];   // V
+            nv21[ySize + 2 * i + 1] = planar[ySize + i];            // U
+        }
+
+        Mat frame = new Mat(height + height / 2, width, CvType.CV_8UC1);
+        frame.put(0, 0, nv21);
+        return frame;
+    }
+
+    static Size parseResolution(String resolution) {
+        int x = resolution.indexOf('x');
+        if (x <= 0) {
+            throw new IllegalArgumentException("Resolution must look like 1280x720: " + resolution);
+        }
+        return new Size(Integer.parseInt(resolution.substring(0, x)), Integer.parseInt(resolution.substring(x + 1)));
+    }
+}
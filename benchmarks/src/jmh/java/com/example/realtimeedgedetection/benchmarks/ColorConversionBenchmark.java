@@ -0,0 +1,56 @@
+package com.example.realtimeedgedetection.benchmarks;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/** Camera frame conversions done before any filter runs */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColorConversionBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private Mat nv21;
+    private Mat rgba;
+    private Mat out;
+
+    @Setup
+    public void setUp() {
+        rgba = BenchmarkImages.rgba(resolution);
+        nv21 = BenchmarkImages.nv21(rgba);
+        out = new Mat();
+    }
+
+    @TearDown
+    public void tearDown() {
+        nv21.release();
+        rgba.release();
+        out.release();
+    }
+
+    /** Same call as convertYUVToRGBA in native-lib.cpp */
+    @Benchmark
+    public Mat nv21ToRgba() {
+        Imgproc.cvtColor(nv21, out, Imgproc.COLOR_YUV2RGBA_NV21);
+        return out;
+    }
+
+    @Benchmark
+    public Mat rgbaToGray() {
+        Imgproc.cvtColor(rgba, out, Imgproc.COLOR_RGBA2GRAY);
+        return out;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.realtimeedgedetection.benchmarks;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.PointArrayF;
+import org.opencv.utils.ArrayConverters;
+import org.opencv.utils.Converters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point vector round trips (Mat -> Java -> Mat), the way contour code uses
+ * them: the List&lt;Point&gt; converters against the primitive-array ones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConvertersBenchmark {
+
+    @Param({"64", "4096"})
+    public int points;
+
+    private Mat src;
+    private Mat dst;
+    private MatOfPoint2f srcPoints;
+    private List<Point> list;
+    private PointArrayF soa;
+    private float[] packed;
+
+    @Setup
+    public void setUp() {
+        BenchmarkImages.loadOpenCv();
+        src = new Mat(points, 1, CvType.CV_32FC2);
+        Core.randu(src, 0, 1920);
+        srcPoints = new MatOfPoint2f(src);
+        dst = new Mat();
+        list = new ArrayList<Point>(points);
+        soa = new PointArrayF(points);
+        packed = new float[points * 2];
+    }
+
+    @TearDown
+    public void tearDown() {
+        src.release();
+        srcPoints.release();
+        dst.release();
+    }
+
+    @Benchmark
+    public Mat listConverters() {
+        list.clear();
+        Converters.Mat_to_vector_Point2f(src, list);
+        Mat m = Converters.vector_Point2f_to_Mat(list);
+        m.release();
+        return m;
+    }
+
+    @Benchmark
+    public MatOfPoint2f listMatOfPoint2f() {
+        List<Point> pts = srcPoints.toList();
+        MatOfPoint2f m = new MatOfPoint2f();
+        m.fromList(pts);
+        m.release();
+        return m;
+    }
+
+    @Benchmark
+    public Mat pointArrayF() {
+        ArrayConverters.Mat_to_PointArrayF(src, soa);
+        ArrayConverters.PointArrayF_to_Mat(soa, dst, CvType.CV_32F);
+        return dst;
+    }
+
+    @Benchmark
+    public Mat floatArray() {
+        int n = ArrayConverters.Mat_to_array_float(src, packed);
+        ArrayConverters.array_float_to_Mat(packed, n, 2, dst);
+        return dst;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.realtimeedgedetection.benchmarks;
+
+import com.example.realtimeedgedetection.desktop.EdgeCore;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame filters of the streaming path: the app's native ImageProcessor
+ * next to the equivalent calls through the OpenCV Java bindings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EdgeDetectionBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private Mat rgba;
+    private Mat gray;
+    private Mat blurred;
+    private Mat edges;
+    private Mat out;
+
+    @Setup
+    public void setUp() {
+        rgba = BenchmarkImages.rgba(resolution);
+        gray = new Mat();
+        Imgproc.cvtColor(rgba, gray, Imgproc.COLOR_RGBA2GRAY);
+        blurred = new Mat();
+        edges = new Mat();
+        out = new Mat();
+        EdgeCore.resetSceneCache();
+    }
+
+    @TearDown
+    public void tearDown() {
+        rgba.release();
+        gray.release();
+        blurred.release();
+        edges.release();
+        out.release();
+    }
+
+    @Benchmark
+    public Mat grayscaleNative() {
+        EdgeCore.grayscale(rgba, out);
+        return out;
+    }
+
+    @Benchmark
+    public Mat cannyNative() {
+        EdgeCore.canny(rgba, out, 1.0f, false);
+        return out;
+    }
+
+    /** Canny at half resolution, as the frame-rate governor selects under load */
+    @Benchmark
+    public Mat cannyNativeHalfScale() {
+        EdgeCore.canny(rgba, out, 0.5f, false);
+        return out;
+    }
+
+    /** Static scene: every call after the first reuses the cached edge map */
+    @Benchmark
+    public Mat cannyNativeSceneCache() {
+        EdgeCore.canny(rgba, out, 1.0f, true);
+        return out;
+    }
+
+    /** Blur + Canny only, on a prepared gray frame, with ImageProcessor::detectEdges' parameters */
+    @Benchmark
+    public Mat blurCannyJava() {
+        Imgproc.GaussianBlur(gray, blurred, new Size(5, 5), 1.5);
+        Imgproc.Canny(blurred, edges, 50, 150);
+        return edges;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.realtimeedgedetection.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Camera-to-processing handoff of DataFlowController: a two-slot queue where
+ * the camera thread drops the oldest frame when processing falls behind.
+ * DataFlowController itself needs an Android Context, so its submitFrame and
+ * processing-loop poll are reproduced here with the same queue and policy.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameQueueBenchmark {
+
+    /** Stand-in for DataFlowController.FrameData; the payload is shared, as only references move */
+    static final class Frame {
+        final long frameId;
+        final byte[] rawData;
+
+        Frame(long frameId, byte[] rawData) {
+            this.frameId = frameId;
+            this.rawData = rawData;
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Outcomes {
+        public long dropped;
+        public long consumed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            dropped = 0;
+            consumed = 0;
+        }
+    }
+
+    private final byte[] payload = new byte[1280 * 720 * 3 / 2];
+    private LinkedBlockingQueue<Frame> frameQueue;
+    private long nextFrameId;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        frameQueue = new LinkedBlockingQueue<Frame>(2);
+        nextFrameId = 0;
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean submitFrame(Outcomes outcomes) {
+        Frame frame = new Frame(nextFrameId++, payload);
+        if (!frameQueue.offer(frame)) {
+            frameQueue.poll(); // Drop oldest
+            frameQueue.offer(frame);
+            outcomes.dropped++;
+        }
+        return true;
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public Frame pollFrame(Outcomes outcomes) {
+        Frame frame = frameQueue.poll();
+        if (frame != null) {
+            outcomes.consumed++;
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.realtimeedgedetection.benchmarks;
+
+import com.example.realtimeedgedetection.desktop.EdgeCore;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JPEG encoding of processed frames for the web viewer. The app encodes with
+ * Bitmap.compress (quality 80 for the stream, 85 in BitmapUtils); libjpeg via
+ * imencode is the closest desktop stand-in.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JpegEncodeBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"80", "85"})
+    public int quality;
+
+    private Mat bgr;
+    private Mat edgesBgr;
+    private MatOfByte encoded;
+    private MatOfInt params;
+
+    @Setup
+    public void setUp() {
+        Mat rgba = BenchmarkImages.rgba(resolution);
+        bgr = new Mat();
+        Imgproc.cvtColor(rgba, bgr, Imgproc.COLOR_RGBA2BGR);
+
+        // Edge maps are mostly black and compress very differently from camera frames
+        Mat edges = new Mat();
+        EdgeCore.canny(rgba, edges, 1.0f, false);
+        edgesBgr = new Mat();
+        Imgproc.cvtColor(edges, edgesBgr, Imgproc.COLOR_RGBA2BGR);
+        rgba.release();
+        edges.release();
+
+        encoded = new MatOfByte();
+        params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, quality);
+    }
+
+    @TearDown
+    public void tearDown() {
+        bgr.release();
+        edgesBgr.release();
+        encoded.release();
+        params.release();
+    }
+
+    @Benchmark
+    public MatOfByte encodeFrame() {
+        Imgcodecs.imencode(".jpg", bgr, encoded, params);
+        return encoded;
+    }
+
+    @Benchmark
+    public MatOfByte encodeEdgeMap() {
+        Imgcodecs.imencode(".jpg", edgesBgr, encoded, params);
+        return encoded;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.realtimeedgedetection.benchmarks;
+
+import com.example.realtimeedgedetection.desktop.EdgeCore;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Canny on full-resolution stills: whole-frame Mats versus the banded in-place path */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class StillEdgeDetectionBenchmark {
+
+    @Param({"4000x3000", "8000x6000"})
+    public String resolution;
+
+    @Param({"128"})
+    public int bandRows;
+
+    private Mat source;
+    private Mat work;
+    private Mat out;
+
+    @Setup
+    public void setUp() {
+        source = BenchmarkImages.rgba(resolution);
+        work = new Mat();
+        out = new Mat();
+    }
+
+    @Setup(Level.Invocation)
+    public void restore() {
+        source.copyTo(work);
+    }
+
+    @TearDown
+    public void tearDown() {
+        source.release();
+        work.release();
+        out.release();
+    }
+
+    @Benchmark
+    public Mat fullFrame() {
+        EdgeCore.canny(work, out, 1.0f, false);
+        return out;
+    }
+
+    @Benchmark
+    public Mat inBands() {
+        EdgeCore.cannyInBands(work, bandRows);
+        return work;
+    }
+}
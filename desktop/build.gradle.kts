@@ -0,0 +1,84 @@
+// Desktop JVM build of the app's native core: the OpenCV Java bindings from the
+// bundled SDK plus EdgeCore, a JNI shim over the same edgecore library the app
+// links (app/src/main/cpp/edgecore).
+//
+//   ./gradlew :desktop:buildEdgeCoreJni
+//
+// Needs a desktop OpenCV 4.12 with Java bindings (built with FFmpeg for the
+// video tools), CMake and a C++ compiler. The shim is written to build/native;
+// put that directory and the one holding libopencv_java4120.so on
+// java.library.path. `run` does both and starts the batch video processor:
+//
+//   ./gradlew :desktop:run -PopencvJavaLibDir=/usr/local/share/java/opencv4 \
+//       --args="$PWD/VID-20251123-WA0002.mp4 $PWD/edges.avi --progress"
+plugins {
+    `java-library`
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+val opencvJavaLibDir = providers.gradleProperty("opencvJavaLibDir")
+    .orElse(providers.environmentVariable("OPENCV_JAVA_LIB_DIR"))
+    .orElse("/usr/local/share/java/opencv4")
+val nativeBuildDir = layout.buildDirectory.dir("native")
+
+// Java side of the bundled OpenCV SDK, plus the app's platform-neutral
+// recording classes; the Android-only packages are left out
+sourceSets {
+    named("main") {
+        java {
+            srcDir(rootProject.file("app/src/main/sdk/java/src"))
+            srcDir(rootProject.file("app/src/main/java"))
+            include(
+                "com/example/realtimeedgedetection/desktop/**",
+                "com/example/realtimeedgedetection/recording/**",
+                "org/opencv/core/**",
+                "org/opencv/imgproc/**",
+                "org/opencv/imgcodecs/**",
+                "org/opencv/utils/**",
+                "org/opencv/videoio/**"
+            )
+        }
+    }
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+val configureEdgeCoreJni by tasks.registering(Exec::class) {
+    val sourceDir = file("src/main/cpp")
+    inputs.dir(sourceDir)
+    outputs.dir(nativeBuildDir)
+    commandLine(
+        "cmake", "-S", sourceDir.path, "-B", nativeBuildDir.get().asFile.path,
+        "-DCMAKE_BUILD_TYPE=Release"
+    )
+}
+
+val buildEdgeCoreJni by tasks.registering(Exec::class) {
+    dependsOn(configureEdgeCoreJni)
+    inputs.dir(rootProject.file("app/src/main/cpp/edgecore"))
+    inputs.dir(file("src/main/cpp"))
+    commandLine("cmake", "--build", nativeBuildDir.get().asFile.path, "--parallel")
+}
+
+application {
+    mainClass.set("com.example.realtimeedgedetection.desktop.VideoBatchMain")
+    applicationDefaultJvmArgs = listOf(
+        "-Djava.library.path=${nativeBuildDir.get().asFile.path}:${opencvJavaLibDir.get()}"
+    )
+}
+
+tasks.named("run") {
+    dependsOn(buildEdgeCoreJni)
+}
+
+// Tests that need OpenCV skip themselves when the library is not found
+tasks.named<Test>("test") {
+    jvmArgs("-Djava.library.path=${opencvJavaLibDir.get()}")
+}
@@ -0,0 +1,131 @@
+#include <jni.h>
+#include <opencv2/core.hpp>
+#include "image_processor.h"
+#include "edge_map_cache.h"
+
+#define LOG_TAG "EdgeCoreJNI"
+#include "edge_log.h"
+
+// ==================== Desktop JNI Shim ====================
+//
+// Thin bindings from com.example.realtimeedgedetection.desktop.EdgeCore to
+// edgecore. Mats are passed as org.opencv.core.Mat.nativeObj addresses, so
+// this library and the OpenCV Java bindings must use the same OpenCV build.
+
+static EdgeMapCache sceneCache;
+
+/**
+ * Helper: Copy a result into the caller's Mat, reusing its buffer when the shape matches
+ */
+static void assignResult(jlong dstAddr, const cv::Mat& result) {
+    cv::Mat& dst = *(cv::Mat*) dstAddr;
+    if (result.data != dst.data) {
+        result.copyTo(dst);
+    }
+}
+
+/**
+ * JNI Method: ImageProcessor::convertNV21ToRGBA
+ * Java signature: nNv21ToRgba(byte[] nv21, int width, int height, long dstAddr) -> boolean
+ */
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_realtimeedgedetection_desktop_EdgeCore_nNv21ToRgba(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jbyteArray nv21,
+        jint width,
+        jint height,
+        jlong dstAddr) {
+
+    jbyte* data = env->GetByteArrayElements(nv21, nullptr);
+    if (data == nullptr) {
+        return JNI_FALSE;
+    }
+    cv::Mat rgba = ImageProcessor::convertNV21ToRGBA((const uint8_t*) data, width, height);
+    env->ReleaseByteArrayElements(nv21, data, JNI_ABORT);
+    if (rgba.empty()) {
+        return JNI_FALSE;
+    }
+    assignResult(dstAddr, rgba);
+    return JNI_TRUE;
+}
+
+/**
+ * JNI Method: ImageProcessor::convertToGrayscale
+ * Java signature: nGrayscale(long srcAddr, long dstAddr) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_desktop_EdgeCore_nGrayscale(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong srcAddr,
+        jlong dstAddr) {
+    assignResult(dstAddr, ImageProcessor::convertToGrayscale(*(cv::Mat*) srcAddr));
+}
+
+/**
+ * JNI Method: ImageProcessor::processImage
+ * Java signature: nProcess(long srcAddr, long dstAddr, int filterType) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_desktop_EdgeCore_nProcess(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong srcAddr,
+        jlong dstAddr,
+        jint filterType) {
+    assignResult(dstAddr, ImageProcessor::processImage(*(cv::Mat*) srcAddr, filterType));
+}
+
+/**
+ * JNI Method: ImageProcessor::applyCanny (gray, blur, Canny, back to RGBA)
+ * Java signature: nCanny(long srcAddr, long dstAddr, float cannyScale, boolean useSceneCache) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_desktop_EdgeCore_nCanny(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong srcAddr,
+        jlong dstAddr,
+        jfloat cannyScale,
+        jboolean useSceneCache) {
+    assignResult(dstAddr, ImageProcessor::applyCanny(*(cv::Mat*) srcAddr, cannyScale,
+                                                     useSceneCache ? &sceneCache : nullptr));
+}
+
+/**
+ * JNI Method: ImageProcessor::applyCannyInPlace (banded, for stills)
+ * Java signature: nCannyInBands(long rgbaAddr, int bandRows) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_desktop_EdgeCore_nCannyInBands(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jlong rgbaAddr,
+        jint bandRows) {
+    ImageProcessor::applyCannyInPlace(*(cv::Mat*) rgbaAddr, bandRows);
+}
+
+/**
+ * JNI Method: Forget the edges cached for the useSceneCache variant of canny
+ * Java signature: resetSceneCache() -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_desktop_EdgeCore_resetSceneCache(
+        JNIEnv *env,
+        jclass /* clazz */) {
+    sceneCache.invalidate();
+    sceneCache.resetStats();
+}
+
+/**
+ * JNI Method: Set the runtime native log level
+ * Java signature: setLogLevel(int level) -> void
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_realtimeedgedetection_desktop_EdgeCore_setLogLevel(
+        JNIEnv *env,
+        jclass /* clazz */,
+        jint level) {
+    edgelog::setRuntimeLevel(level);
+}
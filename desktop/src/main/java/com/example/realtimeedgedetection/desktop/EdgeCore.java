@@ -0,0 +1,75 @@
+package com.example.realtimeedgedetection.desktop;
+
+import org.opencv.core.Mat;
+
+/**
+ * The app's native processing core (edgecore) on a desktop JVM, backed by
+ * libedgecore_jni (see src/main/cpp). Results are written into the given
+ * destination Mat, which is reallocated only when its shape changes.
+ *
+ * Load the OpenCV Java library before using this class.
+ */
+public final class EdgeCore {
+
+    static {
+        System.loadLibrary("edgecore_jni");
+    }
+
+    // Filter type constants, same values as NativeImageProcessor
+    public static final int FILTER_GRAYSCALE = 0;
+    public static final int FILTER_CANNY_EDGE = 1;
+    public static final int FILTER_ORIGINAL = 2;
+
+    private EdgeCore() {
+    }
+
+    /**
+     * Convert an NV21 camera frame to RGBA
+     * @return false if the conversion failed
+     */
+    public static boolean nv21ToRgba(byte[] nv21, int width, int height, Mat dst) {
+        if (nv21.length < width * height * 3 / 2) {
+            throw new IllegalArgumentException("NV21 buffer of " + nv21.length + " bytes is too small for "
+                    + width + "x" + height);
+        }
+        return nNv21ToRgba(nv21, width, height, dst.nativeObj);
+    }
+
+    /** Apply one of the FILTER_* filters to an RGBA frame, as the app's streaming path does */
+    public static void process(Mat rgba, Mat dst, int filterType) {
+        nProcess(rgba.nativeObj, dst.nativeObj, filterType);
+    }
+
+    /** Grayscale conversion of an RGBA frame */
+    public static void grayscale(Mat rgba, Mat dst) {
+        nGrayscale(rgba.nativeObj, dst.nativeObj);
+    }
+
+    /**
+     * Canny filter of the streaming path
+     * @param cannyScale Resolution scale of the blur + Canny stage, in (0, 1]
+     * @param useSceneCache Reuse edges of unchanged tiles between calls (see resetSceneCache)
+     */
+    public static void canny(Mat rgba, Mat dst, float cannyScale, boolean useSceneCache) {
+        nCanny(rgba.nativeObj, dst.nativeObj, cannyScale, useSceneCache);
+    }
+
+    /**
+     * Banded Canny for large stills; replaces rgba with its edge map
+     * @param bandRows Rows per band, or 0 for the default
+     */
+    public static void cannyInBands(Mat rgba, int bandRows) {
+        nCannyInBands(rgba.nativeObj, bandRows);
+    }
+
+    public static native void resetSceneCache();
+
+    /** @param level 0 (verbose) to 5 (none); only errors are compiled into the desktop build */
+    public static native void setLogLevel(int level);
+
+    private static native boolean nNv21ToRgba(byte[] nv21, int width, int height, long dstAddr);
+    private static native void nGrayscale(long srcAddr, long dstAddr);
+    private static native void nProcess(long srcAddr, long dstAddr, int filterType);
+    private static native void nCanny(long srcAddr, long dstAddr, float cannyScale, boolean useSceneCache);
+    private static native void nCannyInBands(long rgbaAddr, int bandRows);
+}
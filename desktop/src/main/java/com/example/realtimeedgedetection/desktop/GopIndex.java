@@ -0,0 +1,91 @@
+package com.example.realtimeedgedetection.desktop;
+
+import org.opencv.core.MatOfInt;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Key frame positions of a video file, found by reading its packets without
+ * decoding them (FFmpeg backend, CAP_PROP_FORMAT = -1). A segment that starts
+ * on a key frame decodes to the same pixels as the sequential run, because
+ * no frame in it references anything before that key frame.
+ *
+ * Frame numbers count packets, which matches presentation order for the
+ * closed GOPs that phone and camera encoders produce.
+ */
+final class GopIndex {
+
+    final int frameCount;
+    final int[] keyFrames;   // ascending, first is always 0
+
+    GopIndex(int frameCount, int[] keyFrames) {
+        this.frameCount = frameCount;
+        this.keyFrames = keyFrames;
+    }
+
+    /** Index of a file, or null if the backend cannot report key frames */
+    static GopIndex scan(String path) {
+        VideoCapture raw = new VideoCapture(path, Videoio.CAP_FFMPEG,
+                new MatOfInt(Videoio.CAP_PROP_FORMAT, -1));
+        try {
+            if (!raw.isOpened()) {
+                return null;
+            }
+            int[] keys = new int[64];
+            int keyCount = 0;
+            int frames = 0;
+            while (raw.grab()) {
+                if (raw.get(Videoio.CAP_PROP_LRF_HAS_KEY_FRAME) != 0) {
+                    if (keyCount == keys.length) {
+                        int[] grown = new int[keys.length * 2];
+                        System.arraycopy(keys, 0, grown, 0, keyCount);
+                        keys = grown;
+                    }
+                    keys[keyCount++] = frames;
+                }
+                frames++;
+            }
+            if (keyCount == 0 || keys[0] != 0) {
+                return null;
+            }
+            int[] keyFrames = new int[keyCount];
+            System.arraycopy(keys, 0, keyFrames, 0, keyCount);
+            return new GopIndex(frames, keyFrames);
+        } finally {
+            raw.release();
+        }
+    }
+
+    /** A file whose key frames are unknown: one GOP spanning every frame */
+    static GopIndex single(int frameCount) {
+        return new GopIndex(frameCount, new int[] {0});
+    }
+
+    /**
+     * Split the file into runs of whole GOPs of at most targetFrames each, as
+     * [start, end) frame ranges. Each run takes as many GOPs as fit; a GOP
+     * longer than targetFrames becomes a run of its own.
+     */
+    List<int[]> segments(int targetFrames) {
+        List<int[]> segments = new ArrayList<int[]>();
+        int start = 0;
+        int cut = 0;    // last key frame (or the end) that closes a run within targetFrames
+        for (int i = 1; i <= keyFrames.length; i++) {
+            int boundary = i < keyFrames.length ? keyFrames[i] : frameCount;
+            if (boundary - start > targetFrames && cut > start) {
+                segments.add(new int[] {start, cut});
+                start = cut;
+            }
+            cut = boundary;
+        }
+        segments.add(new int[] {start, frameCount});
+        return segments;
+    }
+
+    double averageGop() {
+        return keyFrames.length == 0 ? 0.0 : (double) frameCount / keyFrames.length;
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.realtimeedgedetection.desktop;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the frames of segments produced in parallel to a single consumer in
+ * frame order.
+ *
+ * Each segment queues its frames in a buffer of its own, sized by the caller
+ * to hold the whole segment, so the producers of segments behind the one
+ * being consumed never wait for the consumer to reach them. At most `ahead`
+ * segments past the current one are started, which bounds the frames held.
+ * The consumer takes segment after segment and checks that frame numbers
+ * follow on without gaps.
+ */
+final class OrderedSegments<T> {
+
+    /** Starts producing the frames of a segment on other threads */
+    interface Starter<T> {
+        void start(Segment<T> segment);
+    }
+
+    /** Receives frames in order on the consuming thread, and owns them from then on */
+    interface Consumer<T> {
+        void accept(int index, T frame, Segment<T> segment);
+    }
+
+    /** Frees a frame the consumer never received */
+    interface Releaser<T> {
+        void release(T frame);
+    }
+
+    private static final class Entry<T> {
+        final int index;
+        final T frame;
+
+        Entry(int index, T frame) {
+            this.index = index;
+            this.frame = frame;
+        }
+    }
+
+    private static final Entry<Object> END = new Entry<Object>(-1, null);
+    private static final long POLL_MS = 100;
+
+    static final class Segment<T> {
+        final int number;
+        final int start;
+        final int end;        // exclusive; Integer.MAX_VALUE reads to the end of the input
+        private final ArrayBlockingQueue<Entry<T>> frames;
+
+        /** @param capacity Frames buffered before put() blocks; the segment length keeps it from ever blocking */
+        Segment(int number, int start, int end, int capacity) {
+            this.number = number;
+            this.start = start;
+            this.end = end;
+            // One more slot for the end marker
+            this.frames = new ArrayBlockingQueue<Entry<T>>(capacity + 1);
+        }
+
+        /** Queue the next frame of this segment */
+        void put(int index, T frame) throws InterruptedException {
+            frames.put(new Entry<T>(index, frame));
+        }
+
+        /** Mark the segment complete once its last frame is queued */
+        @SuppressWarnings("unchecked")
+        void finish() throws InterruptedException {
+            frames.put((Entry<T>) END);
+        }
+    }
+
+    private final List<Segment<T>> segments;
+    private final int ahead;
+    private final Releaser<T> releaser;
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private long waitNanos = 0;
+
+    /** @param ahead Segments produced at once, counting the one being consumed */
+    OrderedSegments(List<Segment<T>> segments, int ahead, Releaser<T> releaser) {
+        if (ahead < 1) {
+            throw new IllegalArgumentException("ahead must be at least 1: " + ahead);
+        }
+        this.segments = segments;
+        this.ahead = ahead;
+        this.releaser = releaser;
+    }
+
+    /**
+     * Start the segments and pass their frames to consumer in order, on the
+     * calling thread
+     * @return Frames consumed
+     * @throws IllegalStateException if a segment skips or repeats a frame; a
+     *         failure reported with fail() is rethrown
+     */
+    int run(Starter<T> starter, Consumer<T> consumer) throws InterruptedException {
+        int started = 0;
+        int consumed = 0;
+        for (Segment<T> segment : segments) {
+            while (started < segments.size() && started < segment.number + ahead) {
+                starter.start(segments.get(started++));
+            }
+
+            while (true) {
+                long waitStart = System.nanoTime();
+                Entry<T> entry = segment.frames.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                waitNanos += System.nanoTime() - waitStart;
+                if (failure.get() != null) {
+                    if (entry != null && entry != END) {
+                        releaser.release(entry.frame);
+                    }
+                    checkFailure();
+                }
+                if (entry == null) {
+                    continue;
+                }
+                if (entry == END) {
+                    break;
+                }
+                if (entry.index != consumed) {
+                    releaser.release(entry.frame);
+                    throw new IllegalStateException("Segment " + segment.number + " delivered frame " +
+                            entry.index + " where " + consumed + " was expected");
+                }
+                consumer.accept(entry.index, entry.frame, segment);
+                consumed++;
+            }
+        }
+        return consumed;
+    }
+
+    /** Report a producer failure; run() rethrows the first one */
+    void fail(Throwable t) {
+        if (!(t instanceof InterruptedException)) {
+            failure.compareAndSet(null, t);
+        }
+    }
+
+    /** Release the frames still queued, once the producers have stopped */
+    void releaseQueued() {
+        for (Segment<T> segment : segments) {
+            Entry<T> entry;
+            while ((entry = segment.frames.poll()) != null) {
+                if (entry != END) {
+                    releaser.release(entry.frame);
+                }
+            }
+        }
+    }
+
+    /** Time run() spent waiting for the next frame in order */
+    long getWaitNanos() {
+        return waitNanos;
+    }
+
+    private void checkFailure() {
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t != null) {
+            throw new IllegalStateException("Segment producer failed", t);
+        }
+    }
+}
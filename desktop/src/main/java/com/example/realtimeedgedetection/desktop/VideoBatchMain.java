@@ -0,0 +1,140 @@
+package com.example.realtimeedgedetection.desktop;
+
+import org.opencv.core.Core;
+
+import java.util.Locale;
+
+/**
+ * Headless command line for VideoBatchProcessor:
+ *
+ *   ./gradlew :desktop:run --args="VID-20251123-WA0002.mp4 edges.avi --progress"
+ *
+ * Exit status is 0 on success, 1 on a processing error, 2 on bad arguments
+ * and 3 when --verify finds the parallel output differs from the sequential.
+ */
+public final class VideoBatchMain {
+
+    private static final String USAGE =
+            "Usage: VideoBatchMain INPUT [OUTPUT] [options]\n" +
+            "  OUTPUT omitted: decode and filter only\n" +
+            "  --filter canny|grayscale|original   (default canny)\n" +
+            "  --canny-scale S      Canny resolution scale in (0, 1] (default 1)\n" +
+            "  --threads N          segments processed in parallel, 1 = sequential (default: cores)\n" +
+            "  --buffer-frames N    filtered frames held ahead of the writer (default 128)\n" +
+            "  --queue-frames N     decoded frames queued per segment (default 4)\n" +
+            "  --fourcc CODE        output codec, e.g. MJPG or mp4v (default from extension)\n" +
+            "  --digest             print a CRC32 of all output frames\n" +
+            "  --verify             also run sequentially and compare digests\n" +
+            "  --progress           print frames/sec while running\n";
+
+    private VideoBatchMain() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        String input = null;
+        String output = null;
+        boolean verify = false;
+        VideoBatchProcessor.Options options = new VideoBatchProcessor.Options();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--filter")) {
+                    options.filterType = parseFilter(value(args, ++i, arg));
+                } else if (arg.equals("--canny-scale")) {
+                    options.cannyScale = Float.parseFloat(value(args, ++i, arg));
+                } else if (arg.equals("--threads")) {
+                    options.threads = Integer.parseInt(value(args, ++i, arg));
+                } else if (arg.equals("--buffer-frames")) {
+                    options.bufferFrames = Integer.parseInt(value(args, ++i, arg));
+                } else if (arg.equals("--queue-frames")) {
+                    options.queueFrames = Integer.parseInt(value(args, ++i, arg));
+                } else if (arg.equals("--fourcc")) {
+                    options.fourcc = value(args, ++i, arg);
+                } else if (arg.equals("--digest")) {
+                    options.digest = true;
+                } else if (arg.equals("--verify")) {
+                    verify = true;
+                } else if (arg.equals("--progress")) {
+                    options.progress = true;
+                } else if (arg.equals("-h") || arg.equals("--help")) {
+                    System.out.print(USAGE);
+                    return 0;
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else if (input == null) {
+                    input = arg;
+                } else if (output == null) {
+                    output = arg;
+                } else {
+                    throw new IllegalArgumentException("Unexpected argument " + arg);
+                }
+            }
+            if (input == null) {
+                throw new IllegalArgumentException("No input file");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            return 2;
+        }
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        EdgeCore.setLogLevel(4);
+        options.digest |= verify;
+
+        try {
+            VideoBatchProcessor.Report report = new VideoBatchProcessor(input, output, options).run();
+            System.out.println(report);
+            if (!verify) {
+                return 0;
+            }
+
+            VideoBatchProcessor.Options sequential = new VideoBatchProcessor.Options();
+            sequential.filterType = options.filterType;
+            sequential.cannyScale = options.cannyScale;
+            sequential.threads = 1;
+            sequential.bufferFrames = options.bufferFrames;
+            sequential.queueFrames = options.queueFrames;
+            sequential.digest = true;
+            VideoBatchProcessor.Report reference = new VideoBatchProcessor(input, null, sequential).run();
+            System.out.println("sequential: " + reference);
+            if (reference.frames != report.frames || reference.digest != report.digest) {
+                System.err.printf(Locale.US, "MISMATCH: %d frames %08x, sequential %d frames %08x%n",
+                        report.frames, report.digest, reference.frames, reference.digest);
+                return 3;
+            }
+            System.out.println("verified: output matches the sequential run");
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        } catch (RuntimeException e) {
+            System.err.println("Processing failed: " + e);
+            return 1;
+        }
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[i];
+    }
+
+    private static int parseFilter(String name) {
+        String lower = name.toLowerCase(Locale.US);
+        if (lower.equals("canny")) {
+            return EdgeCore.FILTER_CANNY_EDGE;
+        } else if (lower.equals("grayscale") || lower.equals("gray")) {
+            return EdgeCore.FILTER_GRAYSCALE;
+        } else if (lower.equals("original")) {
+            return EdgeCore.FILTER_ORIGINAL;
+        }
+        throw new IllegalArgumentException("Unknown filter " + name);
+    }
+}
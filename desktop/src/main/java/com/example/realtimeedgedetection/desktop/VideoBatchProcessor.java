@@ -0,0 +1,432 @@
+package com.example.realtimeedgedetection.desktop;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatPool;
+import org.opencv.core.PooledMat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.VideoWriter;
+import org.opencv.videoio.Videoio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Runs the app's per-frame filter over a video file: decode, filter and
+ * encode as three stages connected by bounded queues.
+ *
+ * The file is cut into segments of whole GOPs (see GopIndex) of at most
+ * `bufferFrames / threads` frames where the GOPs allow, which are decoded
+ * and filtered in parallel, each by its own decoder and filter thread, with
+ * at most `threads` segments in flight. A single writer on the calling
+ * thread drains the segments in order (see OrderedSegments), so the encoder
+ * sees exactly the frame sequence of a one-segment run and the output is
+ * identical to it. Each segment buffers all of its filtered frames, so the
+ * segments ahead of the writer never stall waiting for it. Memory is bounded
+ * by about `bufferFrames` filtered frames, or `threads` times the longest
+ * GOP if that is more, plus `queueFrames` decoded frames per segment in
+ * flight.
+ *
+ * Frames are filtered statelessly (no EdgeMapCache), since a cache would
+ * carry state across segment boundaries.
+ */
+public final class VideoBatchProcessor {
+
+    /** Run settings; the defaults match the app's live Canny preview */
+    public static final class Options {
+        public int filterType = EdgeCore.FILTER_CANNY_EDGE;
+        public float cannyScale = 1.0f;
+        /** Segments decoded and filtered at once; 1 is the sequential run */
+        public int threads = Runtime.getRuntime().availableProcessors();
+        /** Filtered frames buffered ahead of the writer, across all segments (see the class comment) */
+        public int bufferFrames = 128;
+        /** Decoded frames queued between the decoder and filter of one segment */
+        public int queueFrames = 4;
+        /** Four-character codec code, or null to pick one from the output extension */
+        public String fourcc = null;
+        /** CRC32 over all output pixels, for comparing runs */
+        public boolean digest = false;
+        /** Print frames/sec to stderr about once a second */
+        public boolean progress = false;
+    }
+
+    /** Outcome of a run */
+    public static final class Report {
+        public final int frames;
+        public final int segments;
+        public final int threads;
+        public final long wallNs;
+        public final long decodeNs;   // summed over decoder threads
+        public final long filterNs;   // summed over filter threads
+        public final long writeNs;
+        public final long writerWaitNs; // writer idle, waiting for the next frame in order
+        public final long digest;     // -1 unless Options.digest
+
+        Report(int frames, int segments, int threads, long wallNs, long decodeNs, long filterNs,
+               long writeNs, long writerWaitNs, long digest) {
+            this.frames = frames;
+            this.segments = segments;
+            this.threads = threads;
+            this.wallNs = wallNs;
+            this.decodeNs = decodeNs;
+            this.filterNs = filterNs;
+            this.writeNs = writeNs;
+            this.writerWaitNs = writerWaitNs;
+            this.digest = digest;
+        }
+
+        public double fps() {
+            return wallNs == 0 ? 0.0 : frames * 1e9 / wallNs;
+        }
+
+        @Override
+        public String toString() {
+            String s = String.format(Locale.US,
+                    "%d frames in %.2f s: %.1f fps (%d segments, %d threads)%n" +
+                    "  decode %.2f ms/frame, filter %.2f ms/frame, encode %.2f ms/frame, writer waited %.2f s",
+                    frames, wallNs / 1e9, fps(), segments, threads,
+                    perFrameMs(decodeNs), perFrameMs(filterNs), perFrameMs(writeNs), writerWaitNs / 1e9);
+            if (digest >= 0) {
+                s += String.format(Locale.US, "%n  output digest %08x", digest);
+            }
+            return s;
+        }
+
+        private double perFrameMs(long ns) {
+            return frames == 0 ? 0.0 : ns / 1e6 / frames;
+        }
+    }
+
+    private static final class Frame {
+        final int index;
+        final PooledMat mat;
+
+        Frame(int index, PooledMat mat) {
+            this.index = index;
+            this.mat = mat;
+        }
+    }
+
+    private static final Frame END = new Frame(-1, null);
+
+    private final String input;
+    private final String output;
+    private final Options options;
+
+    // Decoded frames between the decoder and filter of each started segment
+    private final List<ArrayBlockingQueue<Frame>> decodedQueues = new ArrayList<ArrayBlockingQueue<Frame>>();
+    private OrderedSegments<PooledMat> ordered;
+    private final AtomicLong decodeNs = new AtomicLong();
+    private final AtomicLong filterNs = new AtomicLong();
+    private MatPool pool;
+
+    /**
+     * @param output File to encode to, or null to only decode and filter
+     *               (for timing the pipeline or computing a digest)
+     */
+    public VideoBatchProcessor(String input, String output, Options options) {
+        if (options.threads < 1 || options.bufferFrames < 1 || options.queueFrames < 1) {
+            throw new IllegalArgumentException("threads, bufferFrames and queueFrames must be at least 1");
+        }
+        if (options.fourcc != null && options.fourcc.length() != 4) {
+            throw new IllegalArgumentException("fourcc must be four characters: " + options.fourcc);
+        }
+        this.input = input;
+        this.output = output;
+        this.options = options;
+    }
+
+    public Report run() throws InterruptedException {
+        long startNs = System.nanoTime();
+
+        VideoCapture probe = new VideoCapture(input, Videoio.CAP_FFMPEG);
+        if (!probe.isOpened()) {
+            throw new IllegalArgumentException("Cannot open video " + input);
+        }
+        double fps = probe.get(Videoio.CAP_PROP_FPS);
+        int width = (int) probe.get(Videoio.CAP_PROP_FRAME_WIDTH);
+        int height = (int) probe.get(Videoio.CAP_PROP_FRAME_HEIGHT);
+        int estimatedFrames = (int) probe.get(Videoio.CAP_PROP_FRAME_COUNT);
+        probe.release();
+
+        List<OrderedSegments.Segment<PooledMat>> segments = plan(estimatedFrames);
+        int threads = Math.min(options.threads, segments.size());
+        ordered = new OrderedSegments<PooledMat>(segments, threads, new OrderedSegments.Releaser<PooledMat>() {
+            @Override
+            public void release(PooledMat frame) {
+                frame.close();
+            }
+        });
+        // Enough for every buffered frame plus a few in each stage, so steady state never allocates
+        long frameBytes = (long) width * height * 3;
+        pool = new MatPool(frameBytes * (options.bufferFrames + (options.queueFrames + 4) * threads), 4);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2 * threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "VideoBatch-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        Writer writer = new Writer(fps, segments.size(), startNs);
+        int frames;
+
+        try {
+            frames = ordered.run(new OrderedSegments.Starter<PooledMat>() {
+                @Override
+                public void start(OrderedSegments.Segment<PooledMat> segment) {
+                    VideoBatchProcessor.this.start(executor, segment);
+                }
+            }, writer);
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+            writer.release();
+            ordered.releaseQueued();
+            for (ArrayBlockingQueue<Frame> decoded : decodedQueues) {
+                drain(decoded);
+            }
+            pool.trim();
+            pool.clearThreadCache();
+        }
+
+        return new Report(frames, segments.size(), threads, System.nanoTime() - startNs,
+                decodeNs.get(), filterNs.get(), writer.writeNs, ordered.getWaitNanos(),
+                writer.crc != null ? writer.crc.getValue() : -1);
+    }
+
+    private List<OrderedSegments.Segment<PooledMat>> plan(int estimatedFrames) {
+        List<OrderedSegments.Segment<PooledMat>> segments = new ArrayList<OrderedSegments.Segment<PooledMat>>();
+        if (options.threads == 1) {
+            segments.add(new OrderedSegments.Segment<PooledMat>(0, 0, Integer.MAX_VALUE, options.bufferFrames));
+            return segments;
+        }
+
+        GopIndex index = GopIndex.scan(input);
+        if (index == null) {
+            System.err.println("No key frame index for " + input + "; processing it as one segment");
+            index = GopIndex.single(Math.max(estimatedFrames, 0));
+        }
+        // Segments of about their share of the buffer keep `threads` of them within it.
+        // Each one can queue all of its frames, so the segments ahead of the writer run
+        // to completion instead of stalling until the writer reaches them.
+        int share = Math.max(1, options.bufferFrames / options.threads);
+        List<int[]> ranges = index.segments(share);
+        for (int i = 0; i < ranges.size(); i++) {
+            int[] range = ranges.get(i);
+            boolean last = i == ranges.size() - 1;
+            // The last segment reads to the end of the file, which may hold more frames than indexed;
+            // being last it never blocks a later one
+            int length = Math.max(1, range[1] - range[0]);
+            segments.add(new OrderedSegments.Segment<PooledMat>(i, range[0],
+                    last ? Integer.MAX_VALUE : range[1], length));
+        }
+        return segments;
+    }
+
+    private void start(ExecutorService executor, final OrderedSegments.Segment<PooledMat> segment) {
+        final ArrayBlockingQueue<Frame> decoded = new ArrayBlockingQueue<Frame>(options.queueFrames);
+        decodedQueues.add(decoded);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    decode(segment, decoded);
+                } catch (Throwable t) {
+                    ordered.fail(t);
+                }
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    filter(segment, decoded);
+                } catch (Throwable t) {
+                    ordered.fail(t);
+                }
+            }
+        });
+    }
+
+    // ==================== Stage 1: Decode ====================
+
+    private void decode(OrderedSegments.Segment<PooledMat> segment, ArrayBlockingQueue<Frame> decoded)
+            throws InterruptedException {
+        VideoCapture capture = new VideoCapture(input, Videoio.CAP_FFMPEG);
+        try {
+            if (!capture.isOpened()) {
+                throw new IllegalStateException("Cannot open video " + input);
+            }
+            if (segment.start > 0) {
+                capture.set(Videoio.CAP_PROP_POS_FRAMES, segment.start);
+                int position = (int) capture.get(Videoio.CAP_PROP_POS_FRAMES);
+                if (position != segment.start) {
+                    throw new IllegalStateException("Seek to frame " + segment.start + " landed on " + position +
+                            "; run with one thread for this file");
+                }
+            }
+
+            int width = (int) capture.get(Videoio.CAP_PROP_FRAME_WIDTH);
+            int height = (int) capture.get(Videoio.CAP_PROP_FRAME_HEIGHT);
+            int index = segment.start;
+            while (index < segment.end) {
+                long t0 = System.nanoTime();
+                PooledMat mat = pool.acquire(height, width, CvType.CV_8UC3);
+                if (!capture.read(mat)) {
+                    mat.close();
+                    break;
+                }
+                decodeNs.addAndGet(System.nanoTime() - t0);
+                decoded.put(new Frame(index++, mat));
+            }
+            if (index < segment.end && segment.end != Integer.MAX_VALUE) {
+                throw new IllegalStateException("Segment " + segment.number + " ended at frame " + index +
+                        ", expected " + segment.end);
+            }
+        } finally {
+            capture.release();
+        }
+        decoded.put(END);
+    }
+
+    // ==================== Stage 2: Filter ====================
+
+    private void filter(OrderedSegments.Segment<PooledMat> segment, ArrayBlockingQueue<Frame> decoded)
+            throws InterruptedException {
+        Mat rgba = new Mat();
+        Mat processed = new Mat();
+        try {
+            while (true) {
+                Frame frame = decoded.take();
+                if (frame == END) {
+                    break;
+                }
+                long t0 = System.nanoTime();
+                // The app filters RGBA camera frames; convert so gray weights match it
+                Imgproc.cvtColor(frame.mat, rgba, Imgproc.COLOR_BGR2RGBA);
+                if (options.filterType == EdgeCore.FILTER_CANNY_EDGE) {
+                    EdgeCore.canny(rgba, processed, options.cannyScale, false);
+                } else {
+                    EdgeCore.process(rgba, processed, options.filterType);
+                }
+                // Decoded frame becomes the output buffer (same shape and type)
+                Imgproc.cvtColor(processed, frame.mat, Imgproc.COLOR_RGBA2BGR);
+                filterNs.addAndGet(System.nanoTime() - t0);
+                segment.put(frame.index, frame.mat);
+            }
+        } finally {
+            rgba.release();
+            processed.release();
+        }
+        segment.finish();
+    }
+
+    // ==================== Stage 3: Encode ====================
+
+    /** Encodes the filtered frames in order on the calling thread, and digests them if asked */
+    private final class Writer implements OrderedSegments.Consumer<PooledMat> {
+        private final double fps;
+        private final int segmentCount;
+        final CRC32 crc = options.digest ? new CRC32() : null;
+        long writeNs = 0;
+
+        private VideoWriter writer;
+        private byte[] pixels;
+        private int frames = 0;
+        private long lastProgressNs;
+        private int lastProgressFrames = 0;
+
+        Writer(double fps, int segmentCount, long startNs) {
+            this.fps = fps;
+            this.segmentCount = segmentCount;
+            this.lastProgressNs = startNs;
+        }
+
+        @Override
+        public void accept(int index, PooledMat frame, OrderedSegments.Segment<PooledMat> segment) {
+            try {
+                long writeStart = System.nanoTime();
+                if (output != null) {
+                    if (writer == null) {
+                        writer = openWriter(fps, frame.size());
+                    }
+                    writer.write(frame);
+                }
+                if (crc != null) {
+                    int length = (int) frame.total() * frame.channels();
+                    if (pixels == null || pixels.length != length) {
+                        pixels = new byte[length];
+                    }
+                    frame.get(0, 0, pixels);
+                    crc.update(pixels, 0, length);
+                }
+                writeNs += System.nanoTime() - writeStart;
+                frames++;
+
+                if (options.progress && writeStart - lastProgressNs >= 1_000_000_000L) {
+                    double rate = (frames - lastProgressFrames) * 1e9 / (writeStart - lastProgressNs);
+                    System.err.printf(Locale.US, "frame %d (segment %d/%d): %.1f fps%n",
+                            frames, segment.number + 1, segmentCount, rate);
+                    lastProgressNs = writeStart;
+                    lastProgressFrames = frames;
+                }
+            } finally {
+                frame.close();
+            }
+        }
+
+        void release() {
+            if (writer != null) {
+                writer.release();
+            }
+        }
+    }
+
+    private VideoWriter openWriter(double fps, Size size) {
+        int fourcc = fourcc(options.fourcc != null ? options.fourcc : defaultFourcc(output));
+        VideoWriter writer = new VideoWriter(output, Videoio.CAP_FFMPEG, fourcc, fps > 0 ? fps : 30.0, size, true);
+        if (!writer.isOpened()) {
+            writer.release();
+            throw new IllegalStateException("Cannot open " + output + " for writing");
+        }
+        return writer;
+    }
+
+    static String defaultFourcc(String path) {
+        String lower = path.toLowerCase(Locale.US);
+        if (lower.endsWith(".mp4") || lower.endsWith(".m4v") || lower.endsWith(".mov")) {
+            return "mp4v";
+        }
+        return "MJPG";
+    }
+
+    private static int fourcc(String code) {
+        return VideoWriter.fourcc(code.charAt(0), code.charAt(1), code.charAt(2), code.charAt(3));
+    }
+
+    // ==================== Cleanup ====================
+
+    private static void drain(ArrayBlockingQueue<Frame> queue) {
+        Frame frame;
+        while ((frame = queue.poll()) != null) {
+            if (frame != END) {
+                frame.mat.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.realtimeedgedetection.desktop;
+
+import com.example.realtimeedgedetection.recording.VideoSink;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoWriter;
+
+import java.io.IOException;
+
+/**
+ * Records frames with OpenCV's VideoWriter at a constant frame rate.
+ *
+ * VideoWriter has no per-frame timestamps, so the recorder's timestamps are
+ * mapped onto frame slots of 1/fps: a gap left by dropped frames is filled
+ * by repeating the previous frame, and a frame landing in a slot that is
+ * already written is declined. Playback then keeps real-time pacing.
+ *
+ * lossless() stores 8-bit gray with FFV1, which keeps binary edge maps exact
+ * and compresses them well.
+ */
+public final class VideoWriterSink implements VideoSink {
+
+    /** Longest gap filled with repeats; longer pauses are shortened to this */
+    public static final double MAX_GAP_SECONDS = 2.0;
+
+    private final String path;
+    private final int fourcc;
+    private final double fps;
+    private final boolean gray;
+
+    private VideoWriter writer;
+    private Mat rgba;
+    private Mat converted;
+    private long nextSlot = 0;
+    private long repeated = 0;
+
+    /**
+     * @param fourcc Four-character codec code, e.g. "MJPG" or "FFV1"
+     * @param gray Write single-channel frames (luma of the RGBA input)
+     */
+    public VideoWriterSink(String path, String fourcc, double fps, boolean gray) {
+        if (fourcc.length() != 4) {
+            throw new IllegalArgumentException("fourcc must be four characters: " + fourcc);
+        }
+        if (!(fps > 0)) {
+            throw new IllegalArgumentException("fps must be positive: " + fps);
+        }
+        this.path = path;
+        this.fourcc = VideoWriter.fourcc(fourcc.charAt(0), fourcc.charAt(1), fourcc.charAt(2), fourcc.charAt(3));
+        this.fps = fps;
+        this.gray = gray;
+    }
+
+    /** Lossless 8-bit gray (FFV1, needs the FFmpeg backend; use .mkv or .avi) */
+    public static VideoWriterSink lossless(String path, double fps) {
+        return new VideoWriterSink(path, "FFV1", fps, true);
+    }
+
+    @Override
+    public void open(int width, int height) throws IOException {
+        writer = new VideoWriter(path, fourcc, fps, new Size(width, height), !gray);
+        if (!writer.isOpened()) {
+            writer.release();
+            writer = null;
+            throw new IOException("VideoWriter cannot open " + path + " with the requested codec");
+        }
+        rgba = new Mat(height, width, CvType.CV_8UC4);
+        converted = new Mat();
+    }
+
+    @Override
+    public boolean write(byte[] pixels, long timestampUs) throws IOException {
+        long slot = Math.round(timestampUs * fps / 1e6);
+        if (slot < nextSlot) {
+            return false;
+        }
+
+        if (nextSlot > 0) {
+            long gap = Math.min(slot - nextSlot, (long) Math.ceil(MAX_GAP_SECONDS * fps));
+            for (long i = 0; i < gap; i++) {
+                writer.write(converted);
+                repeated++;
+            }
+        }
+
+        rgba.put(0, 0, pixels);
+        Imgproc.cvtColor(rgba, converted, gray ? Imgproc.COLOR_RGBA2GRAY : Imgproc.COLOR_RGBA2BGR);
+        writer.write(converted);
+        nextSlot = slot + 1;
+        return true;
+    }
+
+    /** Frames written a second time to cover gaps */
+    public long getRepeatedFrames() {
+        return repeated;
+    }
+
+    @Override
+    public void close() {
+        if (writer != null) {
+            writer.release();
+            writer = null;
+        }
+        if (rgba != null) {
+            rgba.release();
+            converted.release();
+            rgba = null;
+            converted = null;
+        }
+    }
+}
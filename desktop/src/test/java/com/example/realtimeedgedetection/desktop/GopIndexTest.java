@@ -0,0 +1,57 @@
+package com.example.realtimeedgedetection.desktop;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Segment planning over synthetic key frame indexes; no OpenCV needed.
+ */
+public class GopIndexTest {
+
+    private static String ranges(List<int[]> segments) {
+        StringBuilder sb = new StringBuilder();
+        for (int[] segment : segments) {
+            sb.append('[').append(segment[0]).append(',').append(segment[1]).append(')');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void packsWholeGopsUpToTarget() {
+        GopIndex index = new GopIndex(100, new int[] {0, 10, 20, 30, 40, 50, 60, 70, 80, 90});
+        assertEquals("[0,30)[30,60)[60,90)[90,100)", ranges(index.segments(30)));
+        assertEquals("[0,20)[20,40)[40,60)[60,80)[80,100)", ranges(index.segments(25)));
+    }
+
+    @Test
+    public void longGopIsASegmentOfItsOwn() {
+        GopIndex index = new GopIndex(100, new int[] {0, 5, 60, 70});
+        assertEquals("[0,5)[5,60)[60,100)", ranges(index.segments(40)));
+    }
+
+    @Test
+    public void segmentsNeverExceedTargetWhenGopsFit() {
+        int[] keys = {0, 7, 19, 24, 38, 45, 50, 66, 71, 90};
+        GopIndex index = new GopIndex(97, keys);
+        for (int target = 20; target <= 100; target++) {
+            List<int[]> segments = index.segments(target);
+            int expectedStart = 0;
+            for (int[] segment : segments) {
+                assertEquals(expectedStart, segment[0]);
+                assertTrue(segment[1] > segment[0]);
+                assertTrue("target " + target + ": " + ranges(segments), segment[1] - segment[0] <= target);
+                expectedStart = segment[1];
+            }
+            assertEquals(97, expectedStart);
+        }
+    }
+
+    @Test
+    public void singleGopCoversTheFile() {
+        assertEquals("[0,42)", ranges(GopIndex.single(42).segments(10)));
+        assertEquals("[0,0)", ranges(GopIndex.single(0).segments(10)));
+    }
+}
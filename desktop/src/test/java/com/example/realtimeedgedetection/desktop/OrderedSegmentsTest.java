@@ -0,0 +1,191 @@
+package com.example.realtimeedgedetection.desktop;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs OrderedSegments with producer threads that finish in any order; no
+ * OpenCV needed.
+ */
+public class OrderedSegmentsTest {
+    private static final long TIMEOUT_MS = 5_000;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger released = new AtomicInteger();
+    private final OrderedSegments.Releaser<Integer> releaser = new OrderedSegments.Releaser<Integer>() {
+        @Override
+        public void release(Integer frame) {
+            released.incrementAndGet();
+        }
+    };
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    /** Segments of the given lengths, each buffering all of its frames */
+    private static List<OrderedSegments.Segment<Integer>> segments(int... lengths) {
+        List<OrderedSegments.Segment<Integer>> segments = new ArrayList<OrderedSegments.Segment<Integer>>();
+        int start = 0;
+        for (int i = 0; i < lengths.length; i++) {
+            segments.add(new OrderedSegments.Segment<Integer>(i, start, start + lengths[i], lengths[i]));
+            start += lengths[i];
+        }
+        return segments;
+    }
+
+    /** Starter whose producers queue each frame's index as the frame, later segments finishing first */
+    private OrderedSegments.Starter<Integer> producer(final OrderedSegments<Integer> ordered, final int segmentCount) {
+        return new OrderedSegments.Starter<Integer>() {
+            @Override
+            public void start(final OrderedSegments.Segment<Integer> segment) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = segment.start; i < segment.end; i++) {
+                                Thread.sleep(segmentCount - segment.number);
+                                segment.put(i, i);
+                            }
+                            segment.finish();
+                        } catch (Throwable t) {
+                            ordered.fail(t);
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    @Test
+    public void framesArriveInOrder() throws InterruptedException {
+        List<OrderedSegments.Segment<Integer>> segments = segments(5, 3, 8, 1, 6);
+        OrderedSegments<Integer> ordered = new OrderedSegments<Integer>(segments, 3, releaser);
+        final List<Integer> seen = new ArrayList<Integer>();
+
+        int frames = ordered.run(producer(ordered, segments.size()), new OrderedSegments.Consumer<Integer>() {
+            @Override
+            public void accept(int index, Integer frame, OrderedSegments.Segment<Integer> segment) {
+                assertTrue(index >= segment.start && index < segment.end);
+                seen.add(frame);
+            }
+        });
+
+        assertEquals(23, frames);
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 23; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, seen);
+        assertEquals(0, released.get());
+    }
+
+    @Test
+    public void laterSegmentsCompleteWhileWriterWaits() throws InterruptedException {
+        final List<OrderedSegments.Segment<Integer>> segments = segments(4, 4, 4, 4);
+        final CountDownLatch othersDone = new CountDownLatch(segments.size() - 1);
+        OrderedSegments<Integer> ordered = new OrderedSegments<Integer>(segments, segments.size(), releaser);
+        final List<Integer> seen = Collections.synchronizedList(new ArrayList<Integer>());
+
+        ordered.run(new OrderedSegments.Starter<Integer>() {
+            @Override
+            public void start(final OrderedSegments.Segment<Integer> segment) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = segment.start; i < segment.end; i++) {
+                                segment.put(i, i);
+                            }
+                            segment.finish();
+                            if (segment.number > 0) {
+                                othersDone.countDown();
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+        }, new OrderedSegments.Consumer<Integer>() {
+            @Override
+            public void accept(int index, Integer frame, OrderedSegments.Segment<Integer> segment) {
+                if (index == 0) {
+                    // Hold the writer on the first frame: every other segment must still finish
+                    try {
+                        assertTrue(othersDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+                seen.add(frame);
+            }
+        });
+
+        assertEquals(16, seen.size());
+    }
+
+    @Test
+    public void gapInFramesIsAnError() throws InterruptedException {
+        List<OrderedSegments.Segment<Integer>> segments = segments(2, 2);
+        OrderedSegments<Integer> ordered = new OrderedSegments<Integer>(segments, 2, releaser);
+
+        // The second segment skips its first frame
+        segments.get(0).put(0, 0);
+        segments.get(0).put(1, 1);
+        segments.get(0).finish();
+        segments.get(1).put(3, 3);
+        segments.get(1).finish();
+        try {
+            ordered.run(new OrderedSegments.Starter<Integer>() {
+                @Override
+                public void start(OrderedSegments.Segment<Integer> segment) {
+                }
+            }, new OrderedSegments.Consumer<Integer>() {
+                @Override
+                public void accept(int index, Integer frame, OrderedSegments.Segment<Integer> segment) {
+                }
+            });
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("frame 3 where 2"));
+        }
+        assertEquals(1, released.get());
+    }
+
+    @Test
+    public void producerFailureIsRethrown() throws InterruptedException {
+        List<OrderedSegments.Segment<Integer>> segments = segments(2, 2);
+        final OrderedSegments<Integer> ordered = new OrderedSegments<Integer>(segments, 2, releaser);
+        try {
+            ordered.run(new OrderedSegments.Starter<Integer>() {
+                @Override
+                public void start(OrderedSegments.Segment<Integer> segment) {
+                    if (segment.number == 1) {
+                        ordered.fail(new IllegalArgumentException("decode failed"));
+                    }
+                }
+            }, new OrderedSegments.Consumer<Integer>() {
+                @Override
+                public void accept(int index, Integer frame, OrderedSegments.Segment<Integer> segment) {
+                }
+            });
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("decode failed", expected.getMessage());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.realtimeedgedetection.desktop;
+
+import com.example.realtimeedgedetection.recording.FrameRecorder;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Records through FrameRecorder into VideoWriterSink and reads the file back.
+ * Needs the desktop OpenCV Java library on java.library.path; skipped without it.
+ */
+public class VideoWriterSinkTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final double FPS = 30.0;
+    private static final long FRAME_NS = (long) (1e9 / FPS);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void loadOpenCv() {
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        } catch (UnsatisfiedLinkError e) {
+            Assume.assumeNoException(e);
+        }
+    }
+
+    /** Binary edge-map-like frame: random 0/255 pixels, same value in R, G and B */
+    private static byte[] edgeFrame(Random random) {
+        byte[] rgba = new byte[WIDTH * HEIGHT * 4];
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            byte v = random.nextInt(8) == 0 ? (byte) 255 : 0;
+            rgba[i * 4] = v;
+            rgba[i * 4 + 1] = v;
+            rgba[i * 4 + 2] = v;
+            rgba[i * 4 + 3] = (byte) 255;
+        }
+        return rgba;
+    }
+
+    private static List<Mat> readAll(File file) {
+        VideoCapture capture = new VideoCapture(file.getPath());
+        assertTrue("cannot read back " + file, capture.isOpened());
+        List<Mat> frames = new ArrayList<Mat>();
+        Mat frame = new Mat();
+        while (capture.read(frame)) {
+            frames.add(frame.clone());
+        }
+        capture.release();
+        frame.release();
+        return frames;
+    }
+
+    /** Offer frames at 30 fps, leaving out the frame indices in skip */
+    private static void record(FrameRecorder recorder, List<byte[]> frames, int... skip) throws Exception {
+        int slot = 0;
+        for (byte[] rgba : frames) {
+            for (int s : skip) {
+                if (slot == s) {
+                    slot++;
+                }
+            }
+            assertTrue(recorder.offer(rgba, WIDTH, HEIGHT, slot * FRAME_NS));
+            slot++;
+            Thread.sleep(10);   // keep the ring from filling
+        }
+    }
+
+    @Test
+    public void fillsGapsToKeepPacing() throws Exception {
+        File file = new File(folder.getRoot(), "paced.avi");
+        VideoWriterSink sink = new VideoWriterSink(file.getPath(), "MJPG", FPS, false);
+        FrameRecorder recorder = new FrameRecorder(sink);
+        recorder.start();
+
+        Random random = new Random(1);
+        List<byte[]> frames = new ArrayList<byte[]>();
+        for (int i = 0; i < 10; i++) {
+            frames.add(edgeFrame(random));
+        }
+        // Slots 4 and 5 were dropped upstream
+        record(recorder, frames, 4, 5);
+        FrameRecorder.Stats stats = recorder.stop();
+
+        assertNull(stats.error);
+        assertEquals(10, stats.written);
+        assertEquals(2, sink.getRepeatedFrames());
+        assertEquals(12, readAll(file).size());
+    }
+
+    @Test
+    public void declinesFramesFasterThanTheFrameRate() throws Exception {
+        File file = new File(folder.getRoot(), "coalesced.avi");
+        VideoWriterSink sink = new VideoWriterSink(file.getPath(), "MJPG", FPS, false);
+        Random random = new Random(2);
+        sink.open(WIDTH, HEIGHT);
+        assertTrue(sink.write(edgeFrame(random), 0));
+        assertFalse(sink.write(edgeFrame(random), 10_000));   // same 33 ms slot
+        assertTrue(sink.write(edgeFrame(random), 33_333));
+        sink.close();
+        assertEquals(2, readAll(file).size());
+    }
+
+    @Test
+    public void losslessKeepsEdgeMapsExact() throws Exception {
+        File file = new File(folder.getRoot(), "edges.mkv");
+        VideoWriterSink sink = VideoWriterSink.lossless(file.getPath(), FPS);
+        try {
+            sink.open(WIDTH, HEIGHT);
+        } catch (IOException e) {
+            Assume.assumeNoException("FFV1 needs OpenCV built with FFmpeg", e);
+        }
+        Random random = new Random(3);
+        List<byte[]> frames = new ArrayList<byte[]>();
+        for (int i = 0; i < 5; i++) {
+            frames.add(edgeFrame(random));
+            assertTrue(sink.write(frames.get(i), Math.round(i * 1e6 / FPS)));
+        }
+        sink.close();
+
+        List<Mat> decoded = readAll(file);
+        assertEquals(frames.size(), decoded.size());
+        Mat rgba = new Mat(HEIGHT, WIDTH, CvType.CV_8UC4);
+        Mat expected = new Mat();
+        Mat actual = new Mat();
+        Mat diff = new Mat();
+        for (int i = 0; i < frames.size(); i++) {
+            rgba.put(0, 0, frames.get(i));
+            Imgproc.cvtColor(rgba, expected, Imgproc.COLOR_RGBA2GRAY);
+            Mat frame = decoded.get(i);
+            if (frame.channels() == 1) {
+                frame.copyTo(actual);
+            } else {
+                Imgproc.cvtColor(frame, actual, Imgproc.COLOR_BGR2GRAY);
+            }
+            // Decoders may return gray through a limited-range conversion; edges must stay on their side
+            Imgproc.threshold(actual, actual, 127, 255, Imgproc.THRESH_BINARY);
+            Core.absdiff(expected, actual, diff);
+            assertEquals("frame " + i, 0, Core.countNonZero(diff));
+        }
+    }
+}
@@ -21,4 +21,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "RealTimeEdgeDetection"
 include(":app")
+include(":desktop")
+include(":benchmarks")
  
\ No newline at end of file